@@ -0,0 +1,26 @@
+import benchmarks.AccountBenchmark;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+
+public class AccountBenchmarkFixture implements AccountBenchmark.Operations {
+
+    private static final BigDecimal AMOUNT = new BigDecimal("1.25");
+
+    private Account[] accounts;
+
+    @Override
+    public void setUp(String mode, int count) {
+        accounts = new Account[count];
+
+        for (int i = 0; i < count; i++) {
+            accounts[i] = new Account("user" + i, Currency.getInstance("USD"), BigDecimal.valueOf(1000000),
+                    Balance.Mode.fromName(mode));
+        }
+    }
+
+    @Override
+    public boolean withdrawAndDeposit(int account) {
+        return accounts[account].withdraw(AMOUNT) && accounts[account].deposit(AMOUNT);
+    }
+}
@@ -0,0 +1,49 @@
+import benchmarks.AccountFootprintBenchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+public class AccountFootprintBenchmarkFixture implements AccountFootprintBenchmark.Operations {
+
+    private Map<UUID, Account> accounts;
+
+    @Override
+    public double setUp(String mode, int size, int stripes) {
+        SplittableRandom random = new SplittableRandom(7);
+        Currency currency = Currency.getInstance("USD");
+        Balance.Mode balanceMode = Balance.Mode.fromName(mode);
+        long before = usedHeap();
+
+        accounts = new ConcurrentSkipListMap<>();
+        DataStore.setLockStripes(stripes > 0 ? new LockStripes(stripes) : null);
+
+        try {
+            for (int i = 0; i < size; i++) {
+                UUID id = new UUID(random.nextLong(), random.nextLong());
+                accounts.put(id, new Account(id, "user" + i, currency, BigDecimal.TEN, balanceMode));
+            }
+        } finally {
+            DataStore.setLockStripes(null);
+        }
+
+        return (double) (usedHeap() - before) / size;
+    }
+
+    @Override
+    public void tearDown() {
+        accounts = null;
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
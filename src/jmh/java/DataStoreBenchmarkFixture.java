@@ -0,0 +1,65 @@
+import benchmarks.DataStoreBenchmark;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentNavigableMap;
+
+public class DataStoreBenchmarkFixture implements DataStoreBenchmark.Operations {
+
+    /**
+     * The number of accounts kept aside for insertions and of IDs for misses.
+     */
+    private static final int SPARE = 1 << 16;
+
+    private final ConcurrentNavigableMap<UUID, Account> accounts = DataStore.getAccounts();
+
+    private UUID[] ids;
+
+    private final Account[] spare = new Account[SPARE];
+
+    private final UUID[] missing = new UUID[SPARE];
+
+    @Override
+    public void setUp(int size) {
+        SplittableRandom random = new SplittableRandom(7);
+        Currency currency = Currency.getInstance("USD");
+
+        accounts.clear();
+        ids = new UUID[size];
+
+        for (int i = 0; i < size; i++) {
+            ids[i] = new UUID(random.nextLong(), random.nextLong());
+            accounts.put(ids[i], new Account(ids[i], "user", currency, BigDecimal.TEN, Balance.Mode.FIXED_POINT));
+        }
+
+        for (int i = 0; i < SPARE; i++) {
+            spare[i] = new Account(new UUID(random.nextLong(), random.nextLong()), "user", currency,
+                    BigDecimal.TEN, Balance.Mode.FIXED_POINT);
+            missing[i] = new UUID(random.nextLong(), random.nextLong());
+        }
+    }
+
+    @Override
+    public Object get(int index) {
+        return accounts.get(ids[index]);
+    }
+
+    @Override
+    public Object getMissing(int index) {
+        return accounts.get(missing[index & (SPARE - 1)]);
+    }
+
+    @Override
+    public Object putAndRemove(int index) {
+        Account account = spare[index & (SPARE - 1)];
+        accounts.put(account.id, account);
+        return accounts.remove(account.id);
+    }
+
+    @Override
+    public void tearDown() {
+        accounts.clear();
+    }
+}
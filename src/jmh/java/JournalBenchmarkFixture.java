@@ -0,0 +1,83 @@
+import benchmarks.JournalBenchmark;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+public class JournalBenchmarkFixture implements JournalBenchmark.Operations {
+
+    private static final long SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    private Vertx vertx;
+
+    private Path directory;
+
+    private Journal journal;
+
+    @Override
+    public void setUp(String policy) {
+        vertx = Vertx.vertx();
+
+        if (!"memory".equals(policy)) {
+            try {
+                directory = Files.createTempDirectory("journal-benchmark");
+                journal = new Journal(directory, Journal.FsyncPolicy.fromName(policy), 10, SEGMENT_SIZE, record -> {});
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public Runnable appender() {
+        Context context = vertx.getOrCreateContext();
+        TransferRecord transfer = new TransferRecord(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(),
+                new BigDecimal("0.01"), System.currentTimeMillis(), TransferStatus.COMPLETED);
+        List<JournalRecord> records = Collections.singletonList(JournalRecord.transfer(transfer));
+
+        return () -> {
+            CompletableFuture<Void> acknowledged = new CompletableFuture<>();
+
+            // As in MoneyTransferVerticle.journal: the append is made, and acknowledged, on an event loop
+            context.runOnContext(v -> {
+                if (journal == null) {
+                    acknowledged.complete(null);
+                } else {
+                    journal.append(records).setHandler(appended -> acknowledged.complete(null));
+                }
+            });
+
+            acknowledged.join();
+        };
+    }
+
+    @Override
+    public void tearDown() {
+        try {
+            if (journal != null) {
+                journal.close();
+
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                    for (Path file : files) {
+                        Files.delete(file);
+                    }
+                }
+
+                Files.delete(directory);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            vertx.close();
+        }
+    }
+}
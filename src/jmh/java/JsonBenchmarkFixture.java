@@ -0,0 +1,52 @@
+import benchmarks.JsonBenchmark;
+import io.vertx.core.buffer.Buffer;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+
+public class JsonBenchmarkFixture implements JsonBenchmark.Operations {
+
+    private Account account;
+
+    private final List<TransferRecord> page = new ArrayList<>();
+
+    private Buffer request;
+
+    @Override
+    public void setUp(String mode, int size) {
+        Balance.Mode balanceMode = Balance.Mode.fromName(mode);
+        account = new Account("alex", Currency.getInstance("USD"), new BigDecimal("1234.56"), balanceMode);
+        Account destination = new Account("bob", Currency.getInstance("USD"), BigDecimal.ZERO, balanceMode);
+        TransferLog log = new TransferLog();
+
+        for (int i = 0; i < size; i++) {
+            page.add(log.append(new Transfer(account, destination, BigDecimal.valueOf(i + 1, 2)),
+                    TransferStatus.COMPLETED));
+        }
+
+        request = Buffer.buffer("{\"source-id\":\"" + account.id + "\",\"dest-id\":\"" + destination.id
+                + "\",\"amount\":12.34}");
+    }
+
+    @Override
+    public Buffer writeAccount() {
+        return JsonWriter.toBuffer(account);
+    }
+
+    @Override
+    public Buffer writeTransfer() {
+        return JsonWriter.toBuffer(page.get(0));
+    }
+
+    @Override
+    public Buffer writePage() {
+        return JsonWriter.toBuffer(page);
+    }
+
+    @Override
+    public Object parseTransfer() {
+        return RequestParser.parseTransfer(request);
+    }
+}
@@ -0,0 +1,32 @@
+import benchmarks.TransferBenchmark;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.function.BooleanSupplier;
+
+public class TransferBenchmarkFixture implements TransferBenchmark.Operations {
+
+    private static final BigDecimal AMOUNT = new BigDecimal("0.01");
+
+    private Account[] accounts;
+
+    @Override
+    public void setUp(String mode, int count, int stripes) {
+        accounts = new Account[count];
+        DataStore.setLockStripes(stripes > 0 ? new LockStripes(stripes) : null);
+
+        try {
+            for (int i = 0; i < count; i++) {
+                accounts[i] = new Account("user" + i, Currency.getInstance("USD"), BigDecimal.valueOf(1000000000),
+                        Balance.Mode.fromName(mode));
+            }
+        } finally {
+            DataStore.setLockStripes(null);
+        }
+    }
+
+    @Override
+    public BooleanSupplier transfer(int source, int destination) {
+        return new Transfer(accounts[source], accounts[destination], AMOUNT)::execute;
+    }
+}
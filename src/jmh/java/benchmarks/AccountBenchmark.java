@@ -0,0 +1,107 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A withdrawal followed by a deposit of the same amount on an account, with 1 to 8 threads either all on
+ * the same account or each on its own.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AccountBenchmark {
+
+    /**
+     * The operations measured, implemented by <code>AccountBenchmarkFixture</code>.
+     */
+    public interface Operations {
+
+        /**
+         * Create the accounts.
+         *
+         * @param mode the balance mode (see <code>Balance.Mode.fromName</code>)
+         * @param accounts the number of accounts
+         */
+        void setUp(String mode, int accounts);
+
+        /**
+         * Withdraw an amount from an account and deposit it back.
+         *
+         * @param account the index of the account
+         * @return <code>true</code> if both succeeded
+         */
+        boolean withdrawAndDeposit(int account);
+    }
+
+    @Param({"decimal", "fixed-point"})
+    public String mode;
+
+    /**
+     * The number of accounts: <code>1</code> puts every thread on the same account, <code>8</code> gives
+     * each thread its own.
+     */
+    @Param({"1", "8"})
+    public int accounts;
+
+    private Operations operations;
+
+    private final AtomicInteger threads = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        int account;
+
+        @Setup
+        public void setUp(AccountBenchmark benchmark) {
+            account = benchmark.threads.getAndIncrement() % benchmark.accounts;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        operations = Fixtures.create(Operations.class);
+        operations.setUp(mode, accounts);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean threads1(ThreadState thread) {
+        return operations.withdrawAndDeposit(thread.account);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public boolean threads2(ThreadState thread) {
+        return operations.withdrawAndDeposit(thread.account);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean threads4(ThreadState thread) {
+        return operations.withdrawAndDeposit(thread.account);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean threads8(ThreadState thread) {
+        return operations.withdrawAndDeposit(thread.account);
+    }
+}
@@ -0,0 +1,80 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A full collection with ten million accounts live in a <code>ConcurrentSkipListMap</code>, as in
+ * <code>DataStore</code>, with a lock per decimal account or a pool of lock stripes. The heap taken per account (the
+ * account, its ID, balance and lock, and its share of the map) is printed once the accounts are created.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+@State(Scope.Benchmark)
+public class AccountFootprintBenchmark {
+
+    /**
+     * The operations measured, implemented by <code>AccountFootprintBenchmarkFixture</code>.
+     */
+    public interface Operations {
+
+        /**
+         * Create the accounts.
+         *
+         * @param mode the balance mode (see <code>Balance.Mode.fromName</code>)
+         * @param size the number of accounts
+         * @param stripes the number of lock stripes, or <code>0</code> for a lock per account
+         * @return the heap taken per account (in bytes)
+         */
+        double setUp(String mode, int size, int stripes);
+
+        /**
+         * Drop the accounts.
+         */
+        void tearDown();
+    }
+
+    @Param({"fixed-point", "decimal"})
+    public String mode;
+
+    @Param({"10000000"})
+    public int size;
+
+    @Param({"0", "1024"})
+    public int stripes;
+
+    private Operations operations;
+
+    @Setup
+    public void setUp() {
+        operations = Fixtures.create(Operations.class);
+
+        double footprint = operations.setUp(mode, size, stripes);
+        System.out.printf("%n%d accounts (%s, %d stripes): %.1f bytes per account%n", size, mode, stripes, footprint);
+    }
+
+    @TearDown
+    public void tearDown() {
+        operations.tearDown();
+    }
+
+    @Benchmark
+    public void fullCollection() {
+        System.gc();
+    }
+}
@@ -0,0 +1,122 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups, misses and insertions in the account map of <code>DataStore</code>, from a thousand to ten
+ * million accounts. Keys are visited in a random order drawn up front.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+@State(Scope.Benchmark)
+public class DataStoreBenchmark {
+
+    /**
+     * The operations measured, implemented by <code>DataStoreBenchmarkFixture</code>.
+     */
+    public interface Operations {
+
+        /**
+         * Fill the account map.
+         *
+         * @param size the number of accounts
+         */
+        void setUp(int size);
+
+        /**
+         * Look up an account that exists.
+         *
+         * @param index the index of the account, below the size
+         * @return the account
+         */
+        Object get(int index);
+
+        /**
+         * Look up an account that does not exist.
+         *
+         * @param index any index
+         * @return <code>null</code>
+         */
+        Object getMissing(int index);
+
+        /**
+         * Add an account then remove it.
+         *
+         * @param index any index
+         * @return the removed account
+         */
+        Object putAndRemove(int index);
+
+        /**
+         * Empty the account map.
+         */
+        void tearDown();
+    }
+
+    /**
+     * The number of random indexes visited (a power of two).
+     */
+    private static final int INDEXES = 1 << 16;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int size;
+
+    private Operations operations;
+
+    private final int[] indexes = new int[INDEXES];
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        operations = Fixtures.create(Operations.class);
+        operations.setUp(size);
+
+        SplittableRandom random = new SplittableRandom(42);
+
+        for (int i = 0; i < INDEXES; i++) {
+            indexes[i] = random.nextInt(size);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        operations.tearDown();
+    }
+
+    private int next() {
+        return indexes[next++ & (INDEXES - 1)];
+    }
+
+    @Benchmark
+    public Object get() {
+        return operations.get(next());
+    }
+
+    @Benchmark
+    public Object getMissing() {
+        return operations.getMissing(next());
+    }
+
+    @Benchmark
+    public Object putAndRemove() {
+        return operations.putAndRemove(next());
+    }
+}
@@ -0,0 +1,33 @@
+package benchmarks;
+
+/**
+ * Loads the fixtures the benchmarks run against.
+ *
+ * JMH does not accept benchmarks in the default package, and classes of a named package cannot refer to
+ * the default package where the application lives. Each benchmark therefore declares the operations it
+ * measures as a nested <code>Operations</code> interface, implemented by a default-package class named after
+ * the benchmark (e.g. <code>AccountBenchmarkFixture</code> for {@link AccountBenchmark}).
+ */
+final class Fixtures {
+
+    private Fixtures() {
+
+    }
+
+    /**
+     * Create the fixture implementing a benchmark's operations.
+     *
+     * @param type the operations interface, nested in its benchmark class
+     * @return a new fixture
+     * @throws IllegalStateException if the fixture cannot be created
+     */
+    static <T> T create(Class<T> type) {
+        String name = type.getEnclosingClass().getSimpleName() + "Fixture";
+
+        try {
+            return type.cast(Class.forName(name).newInstance());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot create " + name, e);
+        }
+    }
+}
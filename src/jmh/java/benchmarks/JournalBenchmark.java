@@ -0,0 +1,97 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time until a transfer is acknowledged: right away as without a journal (<code>memory</code>), or once its
+ * record is durable with each <code>Journal.FsyncPolicy</code>. Every thread appends from an event loop context of
+ * its own and waits for the acknowledgement, as a request does, so with several threads the <code>group</code>
+ * policy syncs the concurrent appends together.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JournalBenchmark {
+
+    /**
+     * The operations measured, implemented by <code>JournalBenchmarkFixture</code>.
+     */
+    public interface Operations {
+
+        /**
+         * Open a journal in a temporary directory.
+         *
+         * @param policy <code>memory</code> for no journal, or the fsync policy (see
+         *               <code>Journal.FsyncPolicy.fromName</code>)
+         */
+        void setUp(String policy);
+
+        /**
+         * Create an appender for the calling thread.
+         *
+         * @return appends the record of a transfer and waits until it is acknowledged
+         */
+        Runnable appender();
+
+        /**
+         * Close the journal and delete its directory.
+         */
+        void tearDown();
+    }
+
+    @Param({"memory", "always", "group", "interval"})
+    public String policy;
+
+    private Operations operations;
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        Runnable appender;
+
+        @Setup
+        public void setUp(JournalBenchmark benchmark) {
+            appender = benchmark.operations.appender();
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        operations = Fixtures.create(Operations.class);
+        operations.setUp(policy);
+    }
+
+    @TearDown
+    public void tearDown() {
+        operations.tearDown();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void threads1(ThreadState thread) {
+        thread.appender.run();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void threads16(ThreadState thread) {
+        thread.appender.run();
+    }
+}
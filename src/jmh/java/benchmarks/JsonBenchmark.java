@@ -0,0 +1,104 @@
+package benchmarks;
+
+import io.vertx.core.buffer.Buffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing accounts and transfers as JSON the way the REST API does, and parsing a transfer request body.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonBenchmark {
+
+    /**
+     * The operations measured, implemented by <code>JsonBenchmarkFixture</code>.
+     */
+    public interface Operations {
+
+        /**
+         * Create an account, a page of transfers from it and a transfer request body.
+         *
+         * @param mode the balance mode (see <code>Balance.Mode.fromName</code>)
+         * @param page the number of transfers in the page
+         */
+        void setUp(String mode, int page);
+
+        /**
+         * Write the account.
+         *
+         * @return the JSON
+         */
+        Buffer writeAccount();
+
+        /**
+         * Write one transfer.
+         *
+         * @return the JSON
+         */
+        Buffer writeTransfer();
+
+        /**
+         * Write the page of transfers.
+         *
+         * @return the JSON
+         */
+        Buffer writePage();
+
+        /**
+         * Parse the transfer request body.
+         *
+         * @return the parsed request
+         */
+        Object parseTransfer();
+    }
+
+    @Param({"decimal", "fixed-point"})
+    public String mode;
+
+    @Param({"1000"})
+    public int page;
+
+    private Operations operations;
+
+    @Setup
+    public void setUp() {
+        operations = Fixtures.create(Operations.class);
+        operations.setUp(mode, page);
+    }
+
+    @Benchmark
+    public Buffer writeAccount() {
+        return operations.writeAccount();
+    }
+
+    @Benchmark
+    public Buffer writeTransfer() {
+        return operations.writeTransfer();
+    }
+
+    @Benchmark
+    public Buffer writePage() {
+        return operations.writePage();
+    }
+
+    @Benchmark
+    public Object parseTransfer() {
+        return operations.parseTransfer();
+    }
+}
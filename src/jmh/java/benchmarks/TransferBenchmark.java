@@ -0,0 +1,140 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * <code>Transfer.execute</code> between accounts picked uniformly, with a Zipf skew, or as one pair of
+ * accounts that half of the threads transfer between in one direction and half in the other. Decimal accounts are
+ * guarded by a lock each, or by a pool of lock stripes of the given size.
+ *
+ * Every thread draws its transfers up front, so the measurement is the execution alone.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransferBenchmark {
+
+    /**
+     * The operations measured, implemented by <code>TransferBenchmarkFixture</code>.
+     */
+    public interface Operations {
+
+        /**
+         * Create the accounts.
+         *
+         * @param mode the balance mode (see <code>Balance.Mode.fromName</code>)
+         * @param accounts the number of accounts
+         * @param stripes the number of lock stripes, or <code>0</code> for a lock per account
+         */
+        void setUp(String mode, int accounts, int stripes);
+
+        /**
+         * Create a transfer between two accounts.
+         *
+         * @param source the index of the source account
+         * @param destination the index of the destination account
+         * @return executes the transfer and tells whether it succeeded
+         */
+        BooleanSupplier transfer(int source, int destination);
+    }
+
+    /**
+     * The number of transfers each thread draws (a power of two).
+     */
+    private static final int TRANSFERS = 4096;
+
+    @Param({"decimal", "fixed-point"})
+    public String mode;
+
+    @Param({"uniform", "zipf", "opposing"})
+    public String selection;
+
+    @Param({"1000"})
+    public int accounts;
+
+    @Param({"0", "16", "256", "4096"})
+    public int stripes;
+
+    private Operations operations;
+
+    private Zipf zipf;
+
+    private final AtomicInteger threads = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+
+        final BooleanSupplier[] transfers = new BooleanSupplier[TRANSFERS];
+
+        int next;
+
+        @Setup
+        public void setUp(TransferBenchmark benchmark) {
+            int thread = benchmark.threads.getAndIncrement();
+            SplittableRandom random = new SplittableRandom(thread);
+
+            for (int i = 0; i < TRANSFERS; i++) {
+                int source;
+                int destination;
+
+                if ("opposing".equals(benchmark.selection)) {
+                    source = thread % 2;
+                    destination = 1 - source;
+                } else {
+                    do {
+                        source = benchmark.pick(random);
+                        destination = benchmark.pick(random);
+                    } while (source == destination);
+                }
+
+                transfers[i] = benchmark.operations.transfer(source, destination);
+            }
+        }
+
+        BooleanSupplier next() {
+            return transfers[next++ & (TRANSFERS - 1)];
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        operations = Fixtures.create(Operations.class);
+        operations.setUp(mode, accounts, stripes);
+        zipf = new Zipf(accounts, 1);
+    }
+
+    private int pick(SplittableRandom random) {
+        return "zipf".equals(selection) ? zipf.next(random) : random.nextInt(accounts);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean threads1(ThreadState thread) {
+        return thread.next().getAsBoolean();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean threads4(ThreadState thread) {
+        return thread.next().getAsBoolean();
+    }
+}
@@ -0,0 +1,44 @@
+package benchmarks;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Draws ranks in <code>[0, n)</code> with a Zipf distribution: rank <code>k</code> comes up with a
+ * probability proportional to <code>1 / (k + 1)^s</code>, so a few accounts take most of the traffic.
+ */
+final class Zipf {
+
+    private final double[] cumulative;
+
+    /**
+     * Create a distribution.
+     *
+     * @param n the number of ranks
+     * @param s the exponent (<code>1</code> is the classic Zipf law)
+     */
+    Zipf(int n, double s) {
+        cumulative = new double[n];
+        double sum = 0;
+
+        for (int k = 0; k < n; k++) {
+            sum += 1 / Math.pow(k + 1, s);
+            cumulative[k] = sum;
+        }
+
+        for (int k = 0; k < n; k++) {
+            cumulative[k] /= sum;
+        }
+    }
+
+    /**
+     * Draw a rank.
+     *
+     * @param random the source of randomness
+     * @return the rank
+     */
+    int next(SplittableRandom random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        return Math.min(index < 0 ? -index - 1 : index, cumulative.length - 1);
+    }
+}
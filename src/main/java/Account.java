@@ -1,9 +1,10 @@
+import io.vertx.core.Future;
+
 import java.math.BigDecimal;
 import java.util.Currency;
 import java.util.Objects;
 import java.util.UUID;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 public class Account {
     /**
@@ -24,15 +25,18 @@ public class Account {
     /**
      * The current balance of the account.
      */
-    private BigDecimal balance;
-
-    /**
-     * The lock used to perform changes on the balance safely.
-     */
-    private transient Lock lock;
+    private final Balance balance;
 
     public Account(String user, Currency currency, BigDecimal balance) {
-        this.id = UUID.randomUUID();
+        this(user, currency, balance, Balance.Mode.DECIMAL);
+    }
+
+    public Account(String user, Currency currency, BigDecimal balance, Balance.Mode mode) {
+        this(DataStore.getIdGenerator().next(), user, currency, balance, mode);
+    }
+
+    Account(UUID id, String user, Currency currency, BigDecimal balance, Balance.Mode mode) {
+        this.id = Objects.requireNonNull(id, "ID cannot be null");
         this.user = Objects.requireNonNull(user, "User cannot be null");
 
         if (user.isEmpty()){
@@ -40,13 +44,15 @@ public class Account {
         }
 
         this.currency = Objects.requireNonNull(currency, "Currency cannot be null");
-        this.balance = Objects.requireNonNull(balance, "Balance cannot be null");
+        Objects.requireNonNull(balance, "Balance cannot be null");
 
         if (balance.compareTo(BigDecimal.ZERO) < 0){
             throw new IllegalArgumentException("Balance must be non-negative");
         }
 
-        this.lock = new ReentrantLock();
+        LockStripes stripes = DataStore.getLockStripes();
+        this.balance = Balance.create(Objects.requireNonNull(mode, "Mode cannot be null"), currency, balance,
+                stripes == null ? null : stripes.get(id));
     }
 
     /**
@@ -55,7 +61,7 @@ public class Account {
      * @param amount the amount to be withdrawn
      * @return <code>true</code> if the operation was successful; <code>false</code> otherwise
      * @throws NullPointerException if amount is <code>null</code>
-     * @throws IllegalArgumentException if amount is not greater than zero
+     * @throws IllegalArgumentException if amount is not greater than zero or cannot be represented by the balance
      */
     public boolean withdraw(BigDecimal amount){
         Objects.requireNonNull(amount, "Amount cannot be null");
@@ -64,17 +70,15 @@ public class Account {
             throw new IllegalArgumentException("Amount must be positive");
         }
 
+        Lock lock = lock();
+
         try {
-            lock.lock();
-            if (balance.compareTo(amount) >= 0){
-                balance = balance.subtract(amount);
-                return true;
-            }
+            return balance.withdraw(amount);
         } finally {
-            lock.unlock();
+            if (lock != null) {
+                lock.unlock();
+            }
         }
-
-        return false;
     }
 
     /**
@@ -83,7 +87,7 @@ public class Account {
      * @param amount the amount to be deposited
      * @return <code>true</code> if the operation was successful; <code>false</code> otherwise
      * @throws NullPointerException if amount is <code>null</code>
-     * @throws IllegalArgumentException if amount is not greater than zero
+     * @throws IllegalArgumentException if amount is not greater than zero or cannot be represented by the balance
      */
     public boolean deposit(BigDecimal amount){
         Objects.requireNonNull(amount, "Amount cannot be null");
@@ -92,11 +96,14 @@ public class Account {
             throw new IllegalArgumentException("Amount must be positive");
         }
 
+        Lock lock = lock();
+
         try {
-            lock.lock();
-            balance = balance.add(amount);
+            balance.deposit(amount);
         } finally {
-            lock.unlock();
+            if (lock != null) {
+                lock.unlock();
+            }
         }
 
         return true;
@@ -126,42 +133,120 @@ public class Account {
      * @return the account's balance
      */
     public BigDecimal getBalance() {
-        try {
-            lock.lock();
-            return balance;
-        } finally {
-            lock.unlock();
-        }
+        return balance.get();
     }
 
     /**
      * Set the account's balance to a new value.
      *
      * @param balance the new balance
+     * @return the previous balance
      * @throws NullPointerException if balance is <code>null</code>
-     * @throws IllegalArgumentException if balance is negative
+     * @throws IllegalArgumentException if balance is negative or cannot be represented by the balance
      */
-    public void setBalance(BigDecimal balance) {
+    public BigDecimal setBalance(BigDecimal balance) {
         Objects.requireNonNull(balance, "Balance cannot be null");
 
         if (balance.compareTo(BigDecimal.ZERO) < 0) {
             throw new IllegalArgumentException("Balance must be non-negative");
         }
 
-        try {
-            lock.lock();
-            this.balance = balance;
-        } finally {
-            lock.unlock();
+        return this.balance.set(balance);
+    }
+
+    /**
+     * Add a (positive or negative) amount to the account's balance, e.g. to undo a {@link #setBalance(BigDecimal)}.
+     *
+     * @param delta the amount to add
+     * @return <code>true</code> if the balance was changed; <code>false</code> if it does not cover a negative delta
+     * @throws NullPointerException if delta is <code>null</code>
+     */
+    public boolean adjustBalance(BigDecimal delta) {
+        switch (delta.signum()) {
+            case 1:
+                return deposit(delta);
+            case -1:
+                return withdraw(delta.negate());
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Add an amount to the balance (see {@link #adjustBalance(BigDecimal)}) without parking the calling thread,
+     * claiming the account through the given lock manager (unless its balance is lock-free) so that the change
+     * never gets in the middle of a transfer claiming it too (see {@link Transfer#executeAsync(AccountLockManager)}).
+     *
+     * @param lockManager the lock manager guarding the account
+     * @param delta the amount to add
+     * @return a future completed with <code>true</code> if the balance was changed; <code>false</code> if it does not
+     * cover a negative delta
+     */
+    Future<Boolean> adjustBalanceAsync(AccountLockManager lockManager, BigDecimal delta) {
+        if (isLockFree()) {
+            try {
+                return Future.succeededFuture(adjustBalance(delta));
+            } catch (RuntimeException e) {
+                return Future.failedFuture(e);
+            }
         }
+
+        Future<Boolean> result = Future.future();
+
+        lockManager.acquire(id).setHandler(granted -> {
+            try {
+                result.complete(adjustBalance(delta));
+            } catch (Exception e) {
+                result.fail(e);
+            } finally {
+                lockManager.release(id);
+            }
+        });
+
+        return result;
     }
 
     /**
      * Get the account's lock.
      *
-     * @return the account's lock
+     * @return the account's lock (possibly a {@link LockStripes.Stripe} shared with other accounts), or
+     * <code>null</code> if the account's balance is lock-free
      */
     public Lock getLock() {
+        return balance.getLock();
+    }
+
+    /**
+     * Check whether the account's balance is updated without a lock (in minor units).
+     *
+     * @return <code>true</code> if the balance is lock-free; <code>false</code> otherwise
+     */
+    public boolean isLockFree() {
+        return balance instanceof FixedPointBalance;
+    }
+
+    /**
+     * Get the account's balance holder.
+     *
+     * @return the account's balance holder
+     */
+    Balance getBalanceHolder() {
+        return balance;
+    }
+
+    /**
+     * Take the account's lock (if any) ahead of the balance, so that waiting for it is seen by
+     * {@link Metrics#CONTENTION}; the balance then takes it again without contention.
+     *
+     * @return the lock taken, or <code>null</code> if the account's balance is lock-free
+     */
+    private Lock lock() {
+        Lock lock = balance.getLock();
+
+        if (lock != null) {
+            Metrics.CONTENTION.lock(lock, id);
+        }
+
         return lock;
     }
 
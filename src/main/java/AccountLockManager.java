@@ -0,0 +1,205 @@
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Grants exclusive access to accounts without ever parking the calling thread.
+ *
+ * Each held account has a FIFO queue of waiters; a waiter is a {@link Future} that is completed
+ * (on the context that asked for it) once the lock is handed over. The time a waiter spends queued
+ * is sampled into {@link Metrics#CONTENTION}.
+ */
+public class AccountLockManager {
+
+    /**
+     * The waiters of every held account; an account is held iff it has an entry here.
+     */
+    private final Map<UUID, Queue<Waiter>> waiters = new ConcurrentHashMap<>();
+
+    /**
+     * Acquire the lock of a given account.
+     *
+     * @param id the ID of the account
+     * @return a future completed once the lock is granted
+     * @throws NullPointerException if id is <code>null</code>
+     */
+    public Future<Void> acquire(UUID id) {
+        Objects.requireNonNull(id, "ID cannot be null");
+
+        Waiter waiter = new Waiter(Vertx.currentContext(), Future.future());
+
+        waiters.compute(id, (key, queue) -> {
+            if (queue == null) {
+                waiter.granted = true;
+                return new ArrayDeque<>();
+            }
+
+            waiter.queuedAt = System.nanoTime();
+            queue.add(waiter);
+            return queue;
+        });
+
+        if (waiter.granted) {
+            waiter.future.complete();
+        }
+
+        return waiter.future;
+    }
+
+    /**
+     * Release the lock of a given account, handing it over to the next waiter (if any).
+     *
+     * @param id the ID of the account
+     * @throws NullPointerException if id is <code>null</code>
+     * @throws IllegalStateException if the lock is not held
+     */
+    public void release(UUID id) {
+        Objects.requireNonNull(id, "ID cannot be null");
+
+        Waiter[] next = new Waiter[1];
+
+        waiters.compute(id, (key, queue) -> {
+            if (queue == null) {
+                throw new IllegalStateException("Lock of account " + id + " is not held");
+            }
+
+            next[0] = queue.poll();
+            return next[0] == null ? null : queue;
+        });
+
+        if (next[0] != null) {
+            Metrics.CONTENTION.record(id, System.nanoTime() - next[0].queuedAt);
+            next[0].grant();
+        }
+    }
+
+    /**
+     * Acquire the locks of two accounts, always in the same (ID) order so that opposing transfers
+     * cannot wait on each other. The time waited for each is recorded in {@link Metrics}, the first account
+     * being taken as the source of a transfer and the second as its destination.
+     *
+     * @param first the ID of the first account
+     * @param second the ID of the second account
+     * @return a future completed once both locks are granted
+     * @throws IllegalArgumentException if both IDs are the same
+     */
+    public Future<Void> acquireAll(UUID first, UUID second) {
+        if (first.equals(second)) {
+            throw new IllegalArgumentException("Accounts must differ");
+        }
+
+        UUID lower = first.compareTo(second) < 0 ? first : second;
+        UUID upper = lower == first ? second : first;
+
+        Future<Void> future = Future.future();
+        long start = System.nanoTime();
+
+        acquire(lower).setHandler(lowerResult -> {
+            long lowerGranted = System.nanoTime();
+
+            acquire(upper).setHandler(upperResult -> {
+                long upperGranted = System.nanoTime();
+                boolean sourceFirst = lower == first;
+
+                (sourceFirst ? Metrics.SOURCE_LOCK_WAIT : Metrics.DESTINATION_LOCK_WAIT).record(lowerGranted - start);
+                (sourceFirst ? Metrics.DESTINATION_LOCK_WAIT : Metrics.SOURCE_LOCK_WAIT).record(upperGranted - lowerGranted);
+                future.complete();
+            });
+        });
+
+        return future;
+    }
+
+    /**
+     * Release the locks of two accounts acquired with {@link #acquireAll(UUID, UUID)}.
+     *
+     * @param first the ID of the first account
+     * @param second the ID of the second account
+     */
+    public void releaseAll(UUID first, UUID second) {
+        release(first);
+        release(second);
+    }
+
+    /**
+     * Acquire the locks of several accounts, each exactly once and always in ID order.
+     *
+     * @param ids the IDs of the accounts (duplicates are ignored)
+     * @return a future completed with the (sorted) IDs that were locked, once all locks are granted
+     */
+    public Future<SortedSet<UUID>> acquireAll(Collection<UUID> ids) {
+        SortedSet<UUID> sorted = new TreeSet<>(ids);
+        Future<SortedSet<UUID>> future = Future.future();
+
+        acquireNext(sorted.iterator(), () -> future.complete(sorted));
+
+        return future;
+    }
+
+    /**
+     * Release the locks of several accounts acquired with {@link #acquireAll(Collection)}.
+     *
+     * @param ids the IDs of the accounts
+     */
+    public void releaseAll(Collection<UUID> ids) {
+        ids.forEach(this::release);
+    }
+
+    private void acquireNext(Iterator<UUID> ids, Runnable done) {
+        while (ids.hasNext()) {
+            Future<Void> granted = acquire(ids.next());
+
+            if (!granted.isComplete()) {
+                granted.setHandler(result -> acquireNext(ids, done));
+                return;
+            }
+        }
+
+        done.run();
+    }
+
+    /**
+     * Check whether the lock of a given account is currently held.
+     *
+     * @param id the ID of the account
+     * @return <code>true</code> if the lock is held; <code>false</code> otherwise
+     */
+    public boolean isLocked(UUID id) {
+        return waiters.containsKey(id);
+    }
+
+    private static class Waiter {
+
+        private final Context context;
+
+        private final Future<Void> future;
+
+        private boolean granted;
+
+        private long queuedAt;
+
+        private Waiter(Context context, Future<Void> future) {
+            this.context = context;
+            this.future = future;
+        }
+
+        private void grant() {
+            if (context == null) {
+                future.complete();
+            } else {
+                context.runOnContext(v -> future.complete());
+            }
+        }
+    }
+}
@@ -0,0 +1,417 @@
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.eventbus.MessageCodec;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Splits the ownership of the accounts across the instances of the verticle: the account with a given ID is
+ * only ever changed by one shard, on the event loop of the instance owning that shard, so shards need no locks
+ * and never wait on each other.
+ *
+ * Each instance owns one shard and forwards the changes of the accounts it does not own to their shard over
+ * the (local) event bus. A transfer between two accounts of the same shard runs in a single step on that shard.
+ * A transfer across shards is debited from the source on its shard, then credited to the destination on its
+ * shard; should the credit fail (e.g. the destination was deleted meanwhile) the source is refunded. A batch
+ * whose accounts are all owned by the same shard can likewise run in a single step on that shard. No shard
+ * holds anything while waiting for another one, so opposing transfers cannot deadlock; the money is however
+ * briefly in flight, debited but not yet credited, as seen by readers.
+ *
+ * The accounts themselves stay in the shared map of the {@link DataStore}, which readers go through directly.
+ * Their balances must be fixed-point: a decimal balance takes its own lock on every access, which the single
+ * owner would pay for nothing.
+ */
+public class AccountShards {
+
+    /**
+     * The operations run by the owner of an account.
+     */
+    enum Operation {
+        CREATE, SET_BALANCE, DELETE, TRANSFER, DEBIT, CREDIT, REFUND, REVERT, RECLAIM, BATCH, ADJUST
+    }
+
+    /**
+     * The prefix of the event bus address of each shard (followed by its index).
+     */
+    static final String ADDRESS = "account-shard.";
+
+    private static final String CODEC = "account-shard-command";
+
+    private final Vertx vertx;
+
+    private final Map<UUID, Account> accounts;
+
+    private final int index;
+
+    private final int count;
+
+    private Context context;
+
+    /**
+     * Create the shards as seen by one of their owners; the shard is served once {@link #start()} completes.
+     *
+     * @param vertx the Vert.x instance
+     * @param accounts the accounts of all shards
+     * @param index the index of the shard owned by the caller
+     * @param count the number of shards
+     * @throws IllegalArgumentException if count is not positive or index is not between <code>0</code> and count
+     */
+    public AccountShards(Vertx vertx, Map<UUID, Account> accounts, int index, int count) {
+        this.vertx = Objects.requireNonNull(vertx, "Vert.x cannot be null");
+        this.accounts = Objects.requireNonNull(accounts, "Accounts cannot be null");
+
+        if (count <= 0 || index < 0 || index >= count) {
+            throw new IllegalArgumentException("Shard index must be between 0 and the (positive) number of shards");
+        }
+
+        this.index = index;
+        this.count = count;
+    }
+
+    /**
+     * Get the shard owning a given account.
+     *
+     * @param id the ID of the account
+     * @param count the number of shards
+     * @return the index of the shard
+     */
+    public static int shardOf(UUID id, int count) {
+        // Time-ordered IDs drawn by one thread share their low bits, so all of them must be mixed in
+        long hash = IdGenerator.hash(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        return (int) Math.floorMod(hash, (long) count);
+    }
+
+    /**
+     * Serve the owned shard on the current context (or a new one if called outside of Vert.x).
+     *
+     * @return a future completed once the shard can be reached by the other instances
+     */
+    public Future<Void> start() {
+        context = vertx.getOrCreateContext();
+
+        synchronized (AccountShards.class) {
+            try {
+                vertx.eventBus().registerCodec(new LocalCodec());
+            } catch (IllegalStateException e) {
+                // Already registered by another instance
+            }
+        }
+
+        Future<Void> started = Future.future();
+
+        context.runOnContext(v -> vertx.eventBus().<Command>localConsumer(ADDRESS + index, message -> {
+            try {
+                message.reply(execute(message.body()), new DeliveryOptions().setCodecName(CODEC));
+            } catch (RuntimeException e) {
+                message.fail(400, String.valueOf(e.getMessage()));
+            }
+        }).completionHandler(started.completer()));
+
+        return started;
+    }
+
+    /**
+     * Add an account to the shard owning it.
+     *
+     * @param account the account
+     * @return a future completed once the account is added
+     */
+    public Future<Void> create(Account account) {
+        return this.<Boolean>send(account.id, new Command(Operation.CREATE, account, null, null)).map(added -> null);
+    }
+
+    /**
+     * Set the balance of an account on the shard owning it.
+     *
+     * @param account the account
+     * @param balance the new balance
+     * @return a future completed with the previous balance once the balance is set, or failed if the balance is
+     * invalid
+     */
+    public Future<BigDecimal> setBalance(Account account, BigDecimal balance) {
+        return send(account.id, new Command(Operation.SET_BALANCE, account, null, balance));
+    }
+
+    /**
+     * Add a (positive or negative) amount to the balance of an account on the shard owning it.
+     *
+     * @param account the account
+     * @param delta the amount to add
+     * @return a future completed with <code>true</code> if the balance was changed; <code>false</code> if it does not
+     * cover a negative delta
+     */
+    public Future<Boolean> adjustBalance(Account account, BigDecimal delta) {
+        return send(account.id, new Command(Operation.ADJUST, account, null, delta));
+    }
+
+    /**
+     * Remove an account from the shard owning it.
+     *
+     * @param account the account
+     * @return a future completed with <code>true</code> if the account was removed; <code>false</code> if it was gone
+     */
+    public Future<Boolean> delete(Account account) {
+        return send(account.id, new Command(Operation.DELETE, account, null, null));
+    }
+
+    /**
+     * Execute a transfer on the shards owning its accounts.
+     *
+     * @param transfer the transfer
+     * @return a future completed with <code>true</code> if the transfer was successful; <code>false</code> otherwise
+     */
+    public Future<Boolean> transfer(Transfer transfer) {
+        UUID source = transfer.getSource().id;
+        UUID destination = transfer.getDestination().id;
+
+        if (shardOf(source, count) == shardOf(destination, count)) {
+            return send(source, new Command(Operation.TRANSFER, null, transfer, null));
+        }
+
+        Future<Boolean> result = Future.future();
+
+        this.<Boolean>send(source, new Command(Operation.DEBIT, null, transfer, null)).setHandler(debited -> {
+            if (debited.failed() || !debited.result()) {
+                result.completer().handle(debited);
+                return;
+            }
+
+            this.<Boolean>send(destination, new Command(Operation.CREDIT, null, transfer, null)).setHandler(credited -> {
+                if (credited.succeeded() && credited.result()) {
+                    result.complete(true);
+                } else {
+                    this.<Boolean>send(source, new Command(Operation.REFUND, null, transfer, null))
+                            .setHandler(refunded -> {
+                                if (refunded.succeeded()) {
+                                    result.complete(false);
+                                } else {
+                                    result.fail(refunded.cause());
+                                }
+                            });
+                }
+            });
+        });
+
+        return result;
+    }
+
+    /**
+     * Revert a transfer executed by {@link #transfer(Transfer)} on the shards owning its accounts: the amount
+     * credited (in the destination's currency) is taken back out of the destination, then the amount debited is
+     * given back to the source.
+     *
+     * @param transfer the transfer
+     * @return a future completed with <code>true</code> if the transfer was reverted; <code>false</code> if the
+     * destination is gone or no longer covers it
+     */
+    public Future<Boolean> revert(Transfer transfer) {
+        UUID source = transfer.getSource().id;
+        UUID destination = transfer.getDestination().id;
+
+        if (shardOf(source, count) == shardOf(destination, count)) {
+            return send(source, new Command(Operation.REVERT, null, transfer, null));
+        }
+
+        Future<Boolean> result = Future.future();
+
+        this.<Boolean>send(destination, new Command(Operation.RECLAIM, null, transfer, null)).setHandler(reclaimed -> {
+            if (reclaimed.failed() || !reclaimed.result()) {
+                result.completer().handle(reclaimed);
+                return;
+            }
+
+            this.<Boolean>send(source, new Command(Operation.REFUND, null, transfer, null)).setHandler(refunded -> {
+                if (refunded.succeeded()) {
+                    result.complete(true);
+                } else {
+                    result.fail(refunded.cause());
+                }
+            });
+        });
+
+        return result;
+    }
+
+    /**
+     * Apply a batch in a single step on the shard owning all of its accounts, which nothing else changes meanwhile.
+     *
+     * @param batch the batch
+     * @param account the ID of one of the accounts of the batch
+     * @return a future completed with the result of each transfer of the batch, in request order
+     */
+    Future<List<TransferBatch.Result>> apply(TransferBatch batch, UUID account) {
+        return send(account, new Command(batch));
+    }
+
+    /**
+     * Get the index of the shard owned by the caller.
+     *
+     * @return the index of the shard
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Get the number of shards.
+     *
+     * @return the number of shards
+     */
+    public int getCount() {
+        return count;
+    }
+
+    private <T> Future<T> send(UUID id, Command command) {
+        int shard = shardOf(id, count);
+
+        if (shard == index && Vertx.currentContext() == context) {
+            try {
+                @SuppressWarnings("unchecked")
+                T result = (T) execute(command);
+                return Future.succeededFuture(result);
+            } catch (RuntimeException e) {
+                return Future.failedFuture(e);
+            }
+        }
+
+        Future<T> result = Future.future();
+
+        vertx.eventBus().<T>send(ADDRESS + shard, command, new DeliveryOptions().setCodecName(CODEC),
+                (AsyncResult<Message<T>> reply) -> {
+                    if (reply.succeeded()) {
+                        result.complete(reply.result().body());
+                    } else {
+                        result.fail(reply.cause());
+                    }
+                });
+
+        return result;
+    }
+
+    /**
+     * Run a command on the shard owning its account, i.e. on the event loop of that shard.
+     */
+    private Object execute(Command command) {
+        switch (command.operation) {
+            case CREATE:
+                return accounts.putIfAbsent(command.account.id, command.account) == null;
+            case SET_BALANCE:
+                return command.account.setBalance(command.amount);
+            case ADJUST:
+                return command.account.adjustBalance(command.amount);
+            case DELETE:
+                return accounts.remove(command.account.id) != null;
+            case TRANSFER:
+                if (!command.transfer.debit()) {
+                    return false;
+                }
+
+                if (!command.transfer.credit()) {
+                    command.transfer.refund();
+                    return false;
+                }
+
+                return true;
+            case DEBIT:
+                return command.transfer.debit();
+            case CREDIT:
+                return accounts.containsKey(command.transfer.getDestination().id) && command.transfer.credit();
+            case REFUND:
+                command.transfer.refund();
+                return false;
+            case REVERT:
+                return accounts.containsKey(command.transfer.getDestination().id) && command.transfer.revert();
+            case RECLAIM:
+                return accounts.containsKey(command.transfer.getDestination().id) && command.transfer.reclaim();
+            case BATCH:
+                return command.batch.apply();
+            default:
+                throw new IllegalArgumentException("Unknown operation " + command.operation);
+        }
+    }
+
+    /**
+     * Whether a failure of the event bus means that the owning shard is not (yet) served.
+     *
+     * @param cause the failure
+     * @return <code>true</code> if no shard is listening at the address; <code>false</code> otherwise
+     */
+    static boolean isUnreachable(Throwable cause) {
+        return cause instanceof ReplyException && ((ReplyException) cause).failureType() == ReplyFailure.NO_HANDLERS;
+    }
+
+    /**
+     * An operation on an account (and its arguments), sent by reference to the owner of the account.
+     */
+    static class Command {
+
+        private final Operation operation;
+
+        private final Account account;
+
+        private final Transfer transfer;
+
+        private final BigDecimal amount;
+
+        private final TransferBatch batch;
+
+        private Command(Operation operation, Account account, Transfer transfer, BigDecimal amount) {
+            this.operation = operation;
+            this.account = account;
+            this.transfer = transfer;
+            this.amount = amount;
+            this.batch = null;
+        }
+
+        private Command(TransferBatch batch) {
+            this.operation = Operation.BATCH;
+            this.account = null;
+            this.transfer = null;
+            this.amount = null;
+            this.batch = batch;
+        }
+    }
+
+    /**
+     * Passes commands and their results by reference between the instances of a single process; they are never
+     * sent over the wire.
+     */
+    private static class LocalCodec implements MessageCodec<Object, Object> {
+
+        @Override
+        public void encodeToWire(Buffer buffer, Object command) {
+            throw new UnsupportedOperationException("Shard commands are local");
+        }
+
+        @Override
+        public Object decodeFromWire(int pos, Buffer buffer) {
+            throw new UnsupportedOperationException("Shard commands are local");
+        }
+
+        @Override
+        public Object transform(Object command) {
+            return command;
+        }
+
+        @Override
+        public String name() {
+            return CODEC;
+        }
+
+        @Override
+        public byte systemCodecID() {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * The balance of an account. Amounts given to the balance are already validated by the account.
+ */
+public interface Balance {
+
+    /**
+     * The representations a balance can have.
+     */
+    enum Mode {
+        /**
+         * Arbitrary precision <code>BigDecimal</code> guarded by a lock.
+         */
+        DECIMAL,
+
+        /**
+         * A <code>long</code> in the currency's minor units updated with CAS, no lock involved.
+         */
+        FIXED_POINT;
+
+        /**
+         * Parse a mode from its configuration name (e.g. <code>"fixed-point"</code>).
+         *
+         * @param name the configuration name
+         * @return the mode
+         * @throws IllegalArgumentException if there is no mode with the given name
+         */
+        public static Mode fromName(String name) {
+            return valueOf(name.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    /**
+     * Create a balance with the given representation.
+     *
+     * @param mode the representation of the balance
+     * @param currency the currency of the account
+     * @param initial the initial balance
+     * @param lock the lock shared with other balances, or <code>null</code> for a lock of its own (ignored by
+     *             lock-free balances)
+     * @return the balance
+     */
+    static Balance create(Mode mode, Currency currency, BigDecimal initial, Lock lock) {
+        switch (mode) {
+            case FIXED_POINT:
+                return new FixedPointBalance(currency, initial);
+            default:
+                return lock == null ? new DecimalBalance(initial) : new DecimalBalance(initial, lock);
+        }
+    }
+
+    /**
+     * Get the current value.
+     *
+     * @return the current value
+     */
+    BigDecimal get();
+
+    /**
+     * Set the value.
+     *
+     * @param value the new value
+     * @return the previous value
+     */
+    BigDecimal set(BigDecimal value);
+
+    /**
+     * Withdraw a given amount if the balance covers it.
+     *
+     * @param amount the amount to be withdrawn
+     * @return <code>true</code> if the operation was successful; <code>false</code> otherwise
+     */
+    boolean withdraw(BigDecimal amount);
+
+    /**
+     * Deposit a given amount.
+     *
+     * @param amount the amount to be deposited
+     */
+    void deposit(BigDecimal amount);
+
+    /**
+     * Get the lock guarding the balance.
+     *
+     * @return the lock, or <code>null</code> if the balance is lock-free
+     */
+    Lock getLock();
+}
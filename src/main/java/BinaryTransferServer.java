@@ -0,0 +1,301 @@
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetServer;
+import io.vertx.core.net.NetSocket;
+import io.vertx.core.parsetools.RecordParser;
+
+import java.math.BigDecimal;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Accepts transfers over TCP in a fixed-size binary protocol, for clients sending many of them: a frame is parsed
+ * by reading a few fields at known offsets, with no HTTP headers, routing or JSON, and the response is as small.
+ * The transfers are validated and executed as those of <code>POST /transfers</code>.
+ *
+ * A request is <code>[length][correlation][source ID][destination ID][unscaled amount][scale]</code>: the length
+ * of the rest of the frame ({@link #REQUEST_SIZE}), a number chosen by the client, the two 128-bit IDs, and the
+ * amount as a 64-bit unscaled value and an 8-bit scale. A response is
+ * <code>[length][correlation][status][transfer ID][timestamp]</code>, the ID and timestamp being zero unless the
+ * transfer was recorded. Requests are pipelined: a client need not wait for a response before sending the next
+ * request, and responses are sent as the transfers complete, so they may come in another order than the requests
+ * and are matched to them by their correlation.
+ */
+public class BinaryTransferServer {
+
+    /**
+     * The outcomes of a transfer.
+     */
+    enum Status {
+        /**
+         * The transfer was executed (and journaled); <code>201</code> over REST.
+         */
+        COMPLETED,
+
+        /**
+         * The transfer to another node is not settled yet (see {@link ClusterLedger}); <code>202</code> over REST.
+         */
+        PENDING,
+
+        /**
+         * The source does not cover the amount, or the destination refused it; <code>400</code> over REST.
+         */
+        REFUSED,
+
+        /**
+         * The request is not valid (e.g. an unknown account or an amount which is not positive); <code>400</code>
+         * over REST.
+         */
+        INVALID,
+
+        /**
+         * The transfer could not be journaled, or an account could not be reached; <code>500</code> over REST.
+         */
+        FAILED
+    }
+
+    private static final Status[] STATUSES = Status.values();
+
+    /**
+     * The size of a request without its length.
+     */
+    static final int REQUEST_SIZE = 8 + 16 + 16 + 8 + 1;
+
+    /**
+     * The size of a response without its length.
+     */
+    static final int RESPONSE_SIZE = 8 + 1 + 16 + 8;
+
+    private final Vertx vertx;
+
+    private final Function<RequestParser.TransferRequest, Future<TransferRecord>> executor;
+
+    private NetServer server;
+
+    /**
+     * Create a server; clients can connect once it {@link #listen(int) listens}.
+     *
+     * @param vertx the Vert.x instance
+     * @param executor executes a transfer request, as <code>POST /transfers</code> does: returns a future completed
+     * with the recorded transfer, with <code>null</code> if the transfer was refused, or failed if it could not be
+     * executed; throws if the request is invalid
+     */
+    public BinaryTransferServer(Vertx vertx, Function<RequestParser.TransferRequest, Future<TransferRecord>> executor) {
+        this.vertx = Objects.requireNonNull(vertx, "Vert.x cannot be null");
+        this.executor = Objects.requireNonNull(executor, "Executor cannot be null");
+    }
+
+    /**
+     * Accept clients on a given port.
+     *
+     * @param port the TCP port
+     * @return a future completed once clients can connect
+     */
+    public Future<Void> listen(int port) {
+        Future<Void> listening = Future.future();
+
+        server = vertx.createNetServer().connectHandler(this::accept).listen(port, result -> {
+            if (result.succeeded()) {
+                listening.complete();
+            } else {
+                listening.fail(result.cause());
+            }
+        });
+
+        return listening;
+    }
+
+    private void accept(NetSocket socket) {
+        Connection connection = new Connection(socket);
+
+        socket.handler(RecordParser.newFixed(4 + REQUEST_SIZE, connection::receive));
+        socket.closeHandler(v -> connection.closed = true);
+        socket.exceptionHandler(e -> socket.close());
+    }
+
+    /**
+     * Execute a request (without its length) and answer it.
+     */
+    private void execute(Buffer request, Connection connection) {
+        long correlation = correlation(request);
+        Future<TransferRecord> executed;
+
+        try {
+            executed = executor.apply(request(request));
+        } catch (RuntimeException e) {
+            connection.respond(encodeResponse(correlation, Status.INVALID, null));
+            return;
+        }
+
+        executed.setHandler(result -> {
+            if (result.failed()) {
+                connection.respond(encodeResponse(correlation, Status.FAILED, null));
+            } else if (result.result() == null) {
+                connection.respond(encodeResponse(correlation, Status.REFUSED, null));
+            } else {
+                TransferRecord record = result.result();
+                Status status = record.getStatus() == TransferStatus.PENDING ? Status.PENDING : Status.COMPLETED;
+
+                connection.respond(encodeResponse(correlation, status, record));
+            }
+        });
+    }
+
+    /**
+     * Write a request.
+     *
+     * @param correlation the number the response is matched to the request by
+     * @param sourceID the ID of the source account
+     * @param destinationID the ID of the destination account
+     * @param amount the amount to transfer
+     * @return the request
+     * @throws IllegalArgumentException if the amount does not fit in a 64-bit unscaled value and an 8-bit scale
+     */
+    static Buffer encodeRequest(long correlation, UUID sourceID, UUID destinationID, BigDecimal amount) {
+        if (amount.unscaledValue().bitLength() >= Long.SIZE || amount.scale() != (byte) amount.scale()) {
+            throw new IllegalArgumentException("Amount has too many digits");
+        }
+
+        return Buffer.buffer(4 + REQUEST_SIZE)
+                .appendInt(REQUEST_SIZE)
+                .appendLong(correlation)
+                .appendLong(sourceID.getMostSignificantBits())
+                .appendLong(sourceID.getLeastSignificantBits())
+                .appendLong(destinationID.getMostSignificantBits())
+                .appendLong(destinationID.getLeastSignificantBits())
+                .appendLong(amount.unscaledValue().longValue())
+                .appendByte((byte) amount.scale());
+    }
+
+    /**
+     * Read the transfer of a request (without its length).
+     *
+     * @param request the request
+     * @return the transfer request
+     */
+    static RequestParser.TransferRequest request(Buffer request) {
+        return RequestParser.TransferRequest.of(request.getLong(8), request.getLong(16), request.getLong(24),
+                request.getLong(32), request.getLong(40), request.getByte(48));
+    }
+
+    /**
+     * Write a response.
+     *
+     * @param correlation the correlation of the request
+     * @param status the outcome of the transfer
+     * @param record the recorded transfer, or <code>null</code> if it was not recorded
+     * @return the response
+     */
+    static Buffer encodeResponse(long correlation, Status status, TransferRecord record) {
+        Buffer response = Buffer.buffer(4 + RESPONSE_SIZE)
+                .appendInt(RESPONSE_SIZE)
+                .appendLong(correlation)
+                .appendByte((byte) status.ordinal());
+
+        if (record == null) {
+            return response.appendLong(0).appendLong(0).appendLong(0);
+        }
+
+        return response.appendLong(record.id.getMostSignificantBits())
+                .appendLong(record.id.getLeastSignificantBits())
+                .appendLong(record.getTimestamp());
+    }
+
+    /**
+     * Get the correlation of a request or response (without its length).
+     *
+     * @param frame the request or response
+     * @return the correlation
+     */
+    static long correlation(Buffer frame) {
+        return frame.getLong(0);
+    }
+
+    /**
+     * Get the status of a response (without its length).
+     *
+     * @param response the response
+     * @return the status
+     * @throws IllegalArgumentException if the response is not valid
+     */
+    static Status status(Buffer response) {
+        int status = response.getByte(8);
+
+        if (status < 0 || status >= STATUSES.length) {
+            throw new IllegalArgumentException("Invalid transfer status " + status);
+        }
+
+        return STATUSES[status];
+    }
+
+    /**
+     * Get the ID of the transfer of a response (without its length).
+     *
+     * @param response the response
+     * @return the ID of the transfer, or <code>null</code> if it was not recorded
+     */
+    static UUID transferID(Buffer response) {
+        long mostSigBits = response.getLong(9);
+        long leastSigBits = response.getLong(17);
+
+        return mostSigBits == 0 && leastSigBits == 0 ? null : new UUID(mostSigBits, leastSigBits);
+    }
+
+    /**
+     * Get the time the transfer of a response was recorded at (without its length).
+     *
+     * @param response the response
+     * @return the time the transfer was recorded at (milliseconds since the epoch), or <code>0</code>
+     */
+    static long timestamp(Buffer response) {
+        return response.getLong(25);
+    }
+
+    /**
+     * A connected client, whose requests are only read and answered on the context it was accepted on.
+     */
+    private class Connection {
+
+        private final NetSocket socket;
+
+        private int inFlight;
+
+        private boolean closed;
+
+        private Connection(NetSocket socket) {
+            this.socket = socket;
+        }
+
+        private void receive(Buffer frame) {
+            if (frame.getInt(0) != REQUEST_SIZE) {
+                socket.close();
+                return;
+            }
+
+            // Stop reading while too many transfers are running, and resume once some of them are answered
+            if (++inFlight == Constants.BINARY_MAX_IN_FLIGHT) {
+                socket.pause();
+            }
+
+            execute(frame.getBuffer(4, frame.length()), this);
+        }
+
+        private void respond(Buffer response) {
+            if (closed) {
+                return;
+            }
+
+            socket.write(response);
+
+            if (inFlight-- == Constants.BINARY_MAX_IN_FLIGHT) {
+                if (socket.writeQueueFull()) {
+                    socket.drainHandler(v -> socket.resume());
+                } else {
+                    socket.resume();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,746 @@
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServerRequest;
+import io.vertx.core.http.HttpServerResponse;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Partitions the accounts across several nodes (processes), each running {@link MoneyTransferVerticle} with the
+ * same list of nodes: the account with a given ID is owned by a single node, picked by hashing the ID, and any
+ * node forwards the requests on the accounts it does not own to their node over HTTP.
+ *
+ * A transfer between accounts of two nodes is run by the node owning the source (the coordinator) in two phases:
+ * <ol>
+ *     <li>reserve: the amount is taken out of the source and a {@link JournalRecord.Type#TRANSFER_RESERVED}
+ *     record is journaled;</li>
+ *     <li>commit: the node owning the destination (the participant) is asked to put the amount into the
+ *     destination; it journals a {@link JournalRecord.Type#TRANSFER_COMMITTED} record, or refuses if the
+ *     destination is gone or has another currency.</li>
+ * </ol>
+ * The coordinator then journals the outcome: {@link JournalRecord.Type#TRANSFER_SETTLED} if the participant
+ * committed, or {@link JournalRecord.Type#TRANSFER_CANCELLED} (giving the amount back to the source) if it refused.
+ * A settled transfer is finally forgotten by the participant.
+ *
+ * Commits are idempotent (the participant remembers the transfers it committed until they are forgotten), so the
+ * coordinator asks again until it gets an answer: while the participant is unreachable, and for every reservation
+ * found in the journal after a restart. No node ever waits for another while holding a lock, and no coordination
+ * service is needed: the nodes only know each other's HTTP address.
+ */
+public class ClusterLedger {
+
+    /**
+     * The header marking a request forwarded by another node, which is never forwarded again.
+     */
+    static final String FORWARDED = "X-Ledger-Forwarded";
+
+    /**
+     * The path of the internal routes the nodes call each other on.
+     */
+    static final String INTERNAL_PATH = "/internal/transfers/";
+
+    /**
+     * The headers of a request (and of its response) carried over when it is forwarded.
+     */
+    private static final List<String> FORWARDED_HEADERS = Arrays.asList(
+            "content-type", "Idempotency-Key", "Idempotent-Replayed", "Link");
+
+    private final Vertx vertx;
+
+    /**
+     * The <code>host:port</code> of each node, in partition order.
+     */
+    private final List<String> nodes;
+
+    private final int node;
+
+    private final long timeout;
+
+    private final Map<UUID, Account> accounts;
+
+    private final TransferLog transfers;
+
+    private final Journal journal;
+
+    /**
+     * The shards owning the accounts of this node, or <code>null</code> if they are changed under their claims in
+     * the {@link #lockManager}.
+     */
+    private final AccountShards shards;
+
+    private final AccountLockManager lockManager;
+
+    private final ConcurrentMap<UUID, JournalRecord> reservations = DataStore.getReservations();
+
+    private final ConcurrentMap<UUID, Commit> commits = DataStore.getCommits();
+
+    /**
+     * The reservations whose commit is being asked for, shared by the instances of the verticle.
+     */
+    private static final Set<UUID> COMMITTING = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private final HttpClient client;
+
+    /**
+     * Join the nodes of a ledger.
+     *
+     * @param vertx the Vert.x instance
+     * @param nodes the <code>host:port</code> of each node, in the same order on every node
+     * @param node the index of this node
+     * @param timeout the time (in milliseconds) to wait for another node
+     * @param accounts the accounts of this node
+     * @param transfers the transfers of this node
+     * @param journal the journal of this node, or <code>null</code> if it is not persisted
+     * @param shards the shards owning the accounts of this node, or <code>null</code> if it is not sharded
+     * @param lockManager the lock manager guarding the accounts of this node when it is not sharded
+     * @throws IllegalArgumentException if there are no nodes or node is not one of them
+     */
+    public ClusterLedger(Vertx vertx, List<String> nodes, int node, long timeout, Map<UUID, Account> accounts,
+                         TransferLog transfers, Journal journal, AccountShards shards, AccountLockManager lockManager) {
+        this.vertx = Objects.requireNonNull(vertx, "Vert.x cannot be null");
+        this.nodes = new ArrayList<>(Objects.requireNonNull(nodes, "Nodes cannot be null"));
+
+        if (nodes.isEmpty() || node < 0 || node >= nodes.size()) {
+            throw new IllegalArgumentException("Node must be one of the (non-empty) list of nodes");
+        }
+
+        for (String address : nodes) {
+            if (address.lastIndexOf(':') <= 0) {
+                throw new IllegalArgumentException("Node address must be host:port, not " + address);
+            }
+        }
+
+        this.node = node;
+        this.timeout = timeout;
+        this.accounts = Objects.requireNonNull(accounts, "Accounts cannot be null");
+        this.transfers = Objects.requireNonNull(transfers, "Transfers cannot be null");
+        this.journal = journal;
+        this.shards = shards;
+        this.lockManager = Objects.requireNonNull(lockManager, "Lock manager cannot be null");
+        this.client = vertx.createHttpClient(new HttpClientOptions().setKeepAlive(true)
+                .setConnectTimeout((int) Math.min(timeout, Integer.MAX_VALUE)));
+    }
+
+    /**
+     * Join the nodes listed in a configuration (<code>cluster.nodes</code>, <code>cluster.node</code> and
+     * <code>cluster.timeout</code>).
+     *
+     * @param vertx the Vert.x instance
+     * @param config the configuration
+     * @param accounts the accounts of this node
+     * @param transfers the transfers of this node
+     * @param journal the journal of this node, or <code>null</code> if it is not persisted
+     * @param shards the shards owning the accounts of this node, or <code>null</code> if it is not sharded
+     * @param lockManager the lock manager guarding the accounts of this node when it is not sharded
+     * @return the ledger, or <code>null</code> if no nodes are configured
+     */
+    public static ClusterLedger fromConfig(Vertx vertx, JsonObject config, Map<UUID, Account> accounts,
+                                           TransferLog transfers, Journal journal, AccountShards shards,
+                                           AccountLockManager lockManager) {
+        JsonArray nodes = config.getJsonArray("cluster.nodes");
+
+        if (nodes == null) {
+            return null;
+        }
+
+        List<String> addresses = new ArrayList<>(nodes.size());
+
+        for (Object address : nodes) {
+            addresses.add(String.valueOf(address));
+        }
+
+        return new ClusterLedger(vertx, addresses, config.getInteger("cluster.node", 0),
+                config.getLong("cluster.timeout", 5000L), accounts, transfers, journal, shards, lockManager);
+    }
+
+    /**
+     * Get the node owning an account. The ID is mixed differently than by {@link AccountShards#shardOf(UUID, int)},
+     * so the accounts of a node are still spread across its shards.
+     *
+     * @param id the ID of the account
+     * @param count the number of nodes
+     * @return the index of the node
+     */
+    public static int nodeOf(UUID id, int count) {
+        long hash = id.getMostSignificantBits() * 0x9E3779B97F4A7C15L + id.getLeastSignificantBits();
+        hash ^= hash >>> 29;
+        hash *= 0xBF58476D1CE4E5B9L;
+        hash ^= hash >>> 32;
+        return (int) Math.floorMod(hash, (long) count);
+    }
+
+    /**
+     * Check whether this node owns an account.
+     *
+     * @param id the ID of the account
+     * @return <code>true</code> if the account belongs to this node; <code>false</code> otherwise
+     */
+    public boolean owns(UUID id) {
+        return nodeOf(id, nodes.size()) == node;
+    }
+
+    /**
+     * Get the node owning an account.
+     *
+     * @param id the ID of the account
+     * @return the index of the node
+     */
+    public int ownerOf(UUID id) {
+        return nodeOf(id, nodes.size());
+    }
+
+    /**
+     * Draw the ID of a new account owned by this node.
+     *
+     * @return the ID
+     */
+    public UUID newAccountID() {
+        UUID id;
+
+        do {
+            id = DataStore.getIdGenerator().next();
+        } while (!owns(id));
+
+        return id;
+    }
+
+    /**
+     * Check whether a request was forwarded by another node.
+     *
+     * @param request the request
+     * @return <code>true</code> if the request comes from another node; <code>false</code> otherwise
+     */
+    public static boolean isForwarded(HttpServerRequest request) {
+        return request.getHeader(FORWARDED) != null;
+    }
+
+    /**
+     * Forward a request to another node and relay its response, or reply <code>503</code> if the node cannot be
+     * reached.
+     *
+     * @param routingContext the request
+     * @param owner the index of the node
+     */
+    public void forward(RoutingContext routingContext, int owner) {
+        HttpServerRequest request = routingContext.request();
+        HttpServerResponse response = routingContext.response();
+
+        send(owner, request.method(), request.uri(), routingContext.getBody(), request, (status, headers, body) -> {
+            if (status == 0) {
+                response.setStatusCode(503).end();
+                return;
+            }
+
+            response.setStatusCode(status);
+
+            for (String name : FORWARDED_HEADERS) {
+                String value = headers.apply(name);
+
+                if (value != null) {
+                    response.putHeader(name, value);
+                }
+            }
+
+            response.end(body);
+        });
+    }
+
+    /**
+     * Look a transfer up on the other nodes, one after the other.
+     *
+     * @param uri the URI of the transfer (with its query)
+     * @return a future completed with the status and body of the first response which is not <code>404</code>,
+     * or <code>null</code> if no node knows the transfer
+     */
+    public Future<IdempotencyCache.Response> find(String uri) {
+        Future<IdempotencyCache.Response> found = Future.future();
+        find(uri, 0, found);
+        return found;
+    }
+
+    private void find(String uri, int next, Future<IdempotencyCache.Response> found) {
+        if (next == node) {
+            next++;
+        }
+
+        if (next >= nodes.size()) {
+            found.complete(null);
+            return;
+        }
+
+        int asked = next;
+
+        send(asked, HttpMethod.GET, uri, null, null, (status, headers, body) -> {
+            if (status == 0 || status == 404) {
+                find(uri, asked + 1, found);
+            } else {
+                found.complete(new IdempotencyCache.Response(status, body));
+            }
+        });
+    }
+
+    /**
+     * Run a transfer from an account of this node to an account of another node.
+     *
+     * @param source the source account, owned by this node
+     * @param destinationID the ID of the destination account, owned by another node
+     * @param amount the amount to be transferred
+     * @return a future completed with the recorded transfer once it is settled; with <code>null</code> if the
+     * source does not cover the amount or the destination refused it; with a {@link TransferStatus#PENDING} record
+     * if the destination could not be reached in time (the transfer is then settled or cancelled later); or failed
+     * if the request is invalid ({@link IllegalArgumentException}) or the reservation could not be journaled
+     */
+    public Future<TransferRecord> transfer(Account source, UUID destinationID, BigDecimal amount) {
+        Objects.requireNonNull(source, "Source account cannot be null");
+        Objects.requireNonNull(destinationID, "Destination account cannot be null");
+        Transfer.checkAmount(amount);
+
+        if (owns(destinationID)) {
+            throw new IllegalArgumentException("Destination account must belong to another node");
+        }
+
+        Future<TransferRecord> result = Future.future();
+
+        adjust(source, amount.negate()).setHandler(withdrawn -> {
+            if (withdrawn.failed()) {
+                result.fail(withdrawn.cause());
+                return;
+            }
+
+            if (!withdrawn.result()) {
+                Metrics.INSUFFICIENT_FUNDS.increment();
+                result.complete(null);
+                return;
+            }
+
+            JournalRecord reserved = JournalRecord.transfer(JournalRecord.Type.TRANSFER_RESERVED,
+                    DataStore.getIdGenerator().next(), source.id, destinationID, amount, System.currentTimeMillis());
+
+            reservations.put(reserved.getID(), reserved);
+            COMMITTING.add(reserved.getID());
+
+            append(reserved).setHandler(journaled -> {
+                if (journaled.failed()) {
+                    reservations.remove(reserved.getID());
+                    COMMITTING.remove(reserved.getID());
+                    adjust(source, amount).setHandler(refunded -> result.fail(journaled.cause()));
+                    return;
+                }
+
+                long deadline = System.currentTimeMillis() + timeout;
+
+                commit(reserved, source.getCurrency().getCurrencyCode(), deadline, result);
+            });
+        });
+
+        return result;
+    }
+
+    /**
+     * Ask again, every given number of milliseconds, for the commit of the reservations whose outcome is unknown
+     * (e.g. found in the journal on start).
+     *
+     * @param interval the interval (in milliseconds) between two rounds
+     * @return the ID of the timer
+     */
+    public long recover(long interval) {
+        return vertx.setPeriodic(interval, timer -> {
+            for (JournalRecord reserved : reservations.values()) {
+                Account source = accounts.get(reserved.getSourceID());
+
+                if (source != null && COMMITTING.add(reserved.getID())) {
+                    commit(reserved, source.getCurrency().getCurrencyCode(), 0, Future.future());
+                }
+            }
+        });
+    }
+
+    /**
+     * Ask the node owning the destination of a reservation to commit it, until it answers or the deadline passes
+     * (then the reservation is left to {@link #recover(long)}).
+     */
+    private void commit(JournalRecord reserved, String currency, long deadline, Future<TransferRecord> result) {
+        Buffer body = Buffer.buffer(new JsonObject()
+                .put("source", reserved.getSourceID().toString())
+                .put("destination", reserved.getDestinationID().toString())
+                .put("amount", reserved.getAmount().toPlainString())
+                .put("currency", currency)
+                .put("timestamp", reserved.getTimestamp())
+                .encode());
+
+        send(ownerOf(reserved.getDestinationID()), HttpMethod.POST, INTERNAL_PATH + reserved.getID() + "/commit",
+                body, null, (status, headers, response) -> {
+                    if (status == 200) {
+                        settle(reserved, JournalRecord.Type.TRANSFER_SETTLED, result);
+                    } else if (status == 409) {
+                        settle(reserved, JournalRecord.Type.TRANSFER_CANCELLED, result);
+                    } else if (System.currentTimeMillis() < deadline) {
+                        vertx.setTimer(Constants.CLUSTER_RETRY_DELAY, timer -> commit(reserved, currency, deadline, result));
+                    } else {
+                        COMMITTING.remove(reserved.getID());
+                        result.complete(record(reserved, TransferStatus.PENDING));
+                    }
+                });
+    }
+
+    /**
+     * Close a reservation once the participant answered: record the transfer if it was committed, give the amount
+     * back to the source if it was refused.
+     */
+    private void settle(JournalRecord reserved, JournalRecord.Type outcome, Future<TransferRecord> result) {
+        if (reservations.remove(reserved.getID()) == null) {
+            COMMITTING.remove(reserved.getID());
+            result.complete(null);
+            return;
+        }
+
+        if (outcome == JournalRecord.Type.TRANSFER_SETTLED) {
+            conclude(reserved, outcome, transfers.append(reserved.getID(), reserved.getSourceID(),
+                    reserved.getDestinationID(), reserved.getAmount(), reserved.getTimestamp(), TransferStatus.COMPLETED),
+                    result);
+            return;
+        }
+
+        Account source = accounts.get(reserved.getSourceID());
+
+        if (source == null) {
+            conclude(reserved, outcome, null, result);
+        } else {
+            adjust(source, reserved.getAmount()).setHandler(refunded -> conclude(reserved, outcome, null, result));
+        }
+    }
+
+    /**
+     * Journal the outcome of a reservation once applied, then let the participant forget a committed transfer.
+     */
+    private void conclude(JournalRecord reserved, JournalRecord.Type outcome, TransferRecord settled,
+                          Future<TransferRecord> result) {
+        append(JournalRecord.transfer(outcome, reserved.getID(), reserved.getSourceID(), reserved.getDestinationID(),
+                reserved.getAmount(), reserved.getTimestamp())).setHandler(journaled -> {
+            COMMITTING.remove(reserved.getID());
+
+            if (journaled.failed()) {
+                result.fail(journaled.cause());
+                return;
+            }
+
+            if (settled != null) {
+                send(ownerOf(reserved.getDestinationID()), HttpMethod.POST,
+                        INTERNAL_PATH + reserved.getID() + "/forget", null, null, (status, headers, body) -> {
+                        });
+            }
+
+            result.complete(settled);
+        });
+    }
+
+    /**
+     * Commit a transfer reserved by another node: put its amount into the destination (once, however many times
+     * the commit is asked for), or refuse it with <code>409</code> if the destination is gone or has another
+     * currency.
+     *
+     * @param routingContext the request, whose path holds the ID of the transfer
+     */
+    public void handleCommit(RoutingContext routingContext) {
+        HttpServerResponse response = routingContext.response();
+        JournalRecord committed;
+        String currency;
+
+        try {
+            JsonObject body = routingContext.getBodyAsJson();
+            committed = JournalRecord.transfer(JournalRecord.Type.TRANSFER_COMMITTED,
+                    UUID.fromString(routingContext.request().getParam("id")),
+                    UUID.fromString(body.getString("source")), UUID.fromString(body.getString("destination")),
+                    Transfer.checkAmount(new BigDecimal(body.getString("amount"))), body.getLong("timestamp"));
+            currency = body.getString("currency");
+        } catch (Exception e) {
+            response.setStatusCode(400).end();
+            return;
+        }
+
+        Commit commit = new Commit();
+        Commit previous = commits.putIfAbsent(committed.getID(), commit);
+
+        if (previous != null) {
+            // Answer a duplicate only once the first request is journaled (or undone), with the same status
+            previous.await().setHandler(status -> response.setStatusCode(status.result()).end());
+            return;
+        }
+
+        Account destination = accounts.get(committed.getDestinationID());
+
+        if (destination == null || !owns(destination.id)
+                || !destination.getCurrency().getCurrencyCode().equals(currency)) {
+            refuse(committed, commit, response);
+            return;
+        }
+
+        adjust(destination, committed.getAmount()).setHandler(deposited -> {
+            if (deposited.failed() || !deposited.result()) {
+                refuse(committed, commit, response);
+            } else {
+                journalCommit(committed, destination, commit, response);
+            }
+        });
+    }
+
+    /**
+     * Refuse a commit, which the node reserving it then cancels.
+     */
+    private void refuse(JournalRecord committed, Commit commit, HttpServerResponse response) {
+        commits.remove(committed.getID());
+        commit.complete(409);
+        response.setStatusCode(409).end();
+    }
+
+    /**
+     * Journal a commit once its amount is in the destination, or take the amount back out if that fails.
+     */
+    private void journalCommit(JournalRecord committed, Account destination, Commit commit,
+                               HttpServerResponse response) {
+        append(committed).setHandler(journaled -> {
+            if (journaled.failed()) {
+                adjust(destination, committed.getAmount().negate()).setHandler(withdrawn -> {
+                    commits.remove(committed.getID());
+                    commit.complete(500);
+                    response.setStatusCode(500).end();
+                });
+                return;
+            }
+
+            if (transfers.find(committed.getID()) < 0) {
+                transfers.append(committed.getID(), committed.getSourceID(), committed.getDestinationID(),
+                        committed.getAmount(), committed.getTimestamp(), TransferStatus.COMPLETED);
+            }
+
+            commit.complete(200);
+            response.setStatusCode(200).end();
+        });
+    }
+
+    /**
+     * Forget a committed transfer once the node which reserved it has settled it.
+     *
+     * @param routingContext the request, whose path holds the ID of the transfer
+     */
+    public void handleForget(RoutingContext routingContext) {
+        HttpServerResponse response = routingContext.response();
+        UUID id;
+
+        try {
+            id = UUID.fromString(routingContext.request().getParam("id"));
+        } catch (Exception e) {
+            response.setStatusCode(400).end();
+            return;
+        }
+
+        if (commits.remove(id) == null) {
+            response.setStatusCode(204).end();
+            return;
+        }
+
+        append(JournalRecord.transferForgotten(id)).setHandler(journaled ->
+                response.setStatusCode(journaled.succeeded() ? 204 : 500).end());
+    }
+
+    /**
+     * Get the record of a transfer reserved by this node whose outcome is still unknown.
+     *
+     * @param id the ID of the transfer
+     * @return the {@link TransferStatus#PENDING} record, or <code>null</code> if there is no such reservation
+     */
+    public TransferRecord getPending(UUID id) {
+        JournalRecord reserved = reservations.get(id);
+        return reserved == null ? null : record(reserved, TransferStatus.PENDING);
+    }
+
+    /**
+     * Get the number of nodes.
+     *
+     * @return the number of nodes
+     */
+    public int getCount() {
+        return nodes.size();
+    }
+
+    /**
+     * Get the index of this node.
+     *
+     * @return the index of this node
+     */
+    public int getNode() {
+        return node;
+    }
+
+    private static TransferRecord record(JournalRecord reserved, TransferStatus status) {
+        return new TransferRecord(reserved.getID(), reserved.getSourceID(), reserved.getDestinationID(),
+                reserved.getAmount(), reserved.getTimestamp(), status);
+    }
+
+    /**
+     * Journal a record, then publish it to the followers (see {@link ReplicationStream}).
+     */
+    /**
+     * Add a (positive or negative) amount to the balance of an account of this node the way transfers change it:
+     * on its shard if sharded, under its claim in the lock manager otherwise.
+     */
+    private Future<Boolean> adjust(Account account, BigDecimal delta) {
+        return shards != null ? shards.adjustBalance(account, delta) : account.adjustBalanceAsync(lockManager, delta);
+    }
+
+    private Future<Void> append(JournalRecord record) {
+        List<JournalRecord> records = Collections.singletonList(record);
+        Future<Void> appended = journal == null ? Future.succeededFuture() : journal.append(records);
+
+        return appended.map(v -> {
+            DataStore.publish(records);
+            return null;
+        });
+    }
+
+    /**
+     * Send a request to a node; the handler gets the status code, headers and body of the response, or
+     * <code>0</code> if the node could not be reached in time.
+     *
+     * @param original the request being forwarded (whose headers are carried over), or <code>null</code>
+     */
+    private void send(int to, HttpMethod method, String uri, Buffer body, HttpServerRequest original,
+                      ResponseHandler handler) {
+        String address = nodes.get(to);
+        int colon = address.lastIndexOf(':');
+        boolean[] handled = {false};
+
+        HttpClientRequest request = client.request(method, Integer.parseInt(address.substring(colon + 1)),
+                address.substring(0, colon), uri, response -> response.bodyHandler(buffer -> {
+                    if (!handled[0]) {
+                        handled[0] = true;
+                        handler.handle(response.statusCode(), response::getHeader, buffer);
+                    }
+                }));
+
+        request.setTimeout(timeout);
+        request.exceptionHandler(e -> {
+            if (!handled[0]) {
+                handled[0] = true;
+                handler.handle(0, name -> null, null);
+            }
+        });
+
+        if (original != null) {
+            for (String name : FORWARDED_HEADERS) {
+                String value = original.getHeader(name);
+
+                if (value != null) {
+                    request.putHeader(name, value);
+                }
+            }
+        } else if (body != null) {
+            request.putHeader("content-type", "application/json");
+        }
+
+        request.putHeader(FORWARDED, String.valueOf(node));
+
+        if (body == null) {
+            request.end();
+        } else {
+            request.end(body);
+        }
+    }
+
+    private interface ResponseHandler {
+        void handle(int status, Function<String, String> headers, Buffer body);
+    }
+
+    /**
+     * The commit of a transfer reserved by another node. The commit is asked for again if its answer is lost, so
+     * the requests arriving while it is in flight wait for its outcome rather than confirm a deposit that may still
+     * be undone.
+     */
+    static class Commit {
+
+        /**
+         * The status answered to the commit request, or <code>0</code> while it is in flight.
+         */
+        private int status;
+
+        private List<Handler<Integer>> waiters = new ArrayList<>(0);
+
+        /**
+         * Create a commit in flight.
+         */
+        Commit() {
+        }
+
+        /**
+         * Create a commit with a known outcome (e.g. restored from the journal).
+         *
+         * @param status the status answered to the commit request
+         */
+        Commit(int status) {
+            this.status = status;
+            this.waiters = null;
+        }
+
+        /**
+         * Wait for the outcome of the commit.
+         *
+         * @return a future completed with the status answered to the commit request, on the current context
+         */
+        synchronized Future<Integer> await() {
+            if (status != 0) {
+                return Future.succeededFuture(status);
+            }
+
+            Context context = Vertx.currentContext();
+            Future<Integer> future = Future.future();
+
+            waiters.add(outcome -> {
+                if (context == null) {
+                    future.complete(outcome);
+                } else {
+                    context.runOnContext(v -> future.complete(outcome));
+                }
+            });
+
+            return future;
+        }
+
+        /**
+         * Set the outcome of the commit, and hand it to the requests waiting for it.
+         *
+         * @param status the status answered to the commit request
+         */
+        void complete(int status) {
+            List<Handler<Integer>> done;
+
+            synchronized (this) {
+                this.status = status;
+                done = waiters;
+                waiters = null;
+            }
+
+            done.forEach(waiter -> waiter.handle(status));
+        }
+    }
+}
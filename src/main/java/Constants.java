@@ -5,6 +5,89 @@ public class Constants {
      */
     public static final int LOCK_WAIT_TIME = 1000;
 
+    /**
+     * The amount of failed CAS attempts on a lock-free balance after which it is striped (hot account)
+     */
+    public static final int HOT_ACCOUNT_THRESHOLD = 64;
+
+    /**
+     * The number of sub-balances of a hot account (the smallest power of two not below the number of cores)
+     */
+    public static final int HOT_ACCOUNT_STRIPES =
+            Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1);
+
+    /**
+     * The maximum number of elements in a page of a paginated listing
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    /**
+     * The number of bytes buffered before a chunk of a streamed listing is written
+     */
+    public static final int STREAM_CHUNK_SIZE = 16 * 1024;
+
+    /**
+     * The number of independently locked segments of the idempotency cache (a power of two, four per core)
+     */
+    public static final int IDEMPOTENCY_SEGMENTS =
+            Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 8 - 1);
+
+    /**
+     * The maximum length of an idempotency key
+     */
+    public static final int IDEMPOTENCY_KEY_MAX_LENGTH = 255;
+
+    /**
+     * The interval (in milliseconds) of the timer measuring the lag of each event loop
+     */
+    public static final int EVENT_LOOP_LAG_INTERVAL = 100;
+
+    /**
+     * The number of accounts tracked by the lock contention sketch (the memory used is fixed by it)
+     */
+    public static final int HOT_ACCOUNTS_CAPACITY = 256;
+
+    /**
+     * One contended lock acquisition in this many is recorded by the lock contention sketch
+     */
+    public static final int HOT_ACCOUNTS_SAMPLE_RATE = 8;
+
+    /**
+     * The default number of accounts listed by the hot accounts report
+     */
+    public static final int HOT_ACCOUNTS_DEFAULT_LIMIT = 10;
+
+    /**
+     * The delay (in milliseconds) before the commit of a transfer to another node is asked for again
+     */
+    public static final int CLUSTER_RETRY_DELAY = 100;
+
+    /**
+     * The interval (in milliseconds) between two attempts to commit the transfers to other nodes left pending
+     */
+    public static final int CLUSTER_RECOVERY_INTERVAL = 1000;
+
+    /**
+     * The interval (in milliseconds) between two heartbeats of the replication stream
+     */
+    public static final int REPLICATION_HEARTBEAT_INTERVAL = 100;
+
+    /**
+     * The delay (in milliseconds) before a follower connects again to its primary
+     */
+    public static final int REPLICATION_RETRY_DELAY = 1000;
+
+    /**
+     * The maximum number of transfers of a binary protocol connection being executed at once; the connection is not
+     * read further until some of them are answered
+     */
+    public static final int BINARY_MAX_IN_FLIGHT = 1024;
+
+    /**
+     * The interval (in milliseconds) between two checks of whether the exchange rates file was modified
+     */
+    public static final int FX_RATES_RELOAD_INTERVAL = 1000;
+
     private Constants(){
     }
 }
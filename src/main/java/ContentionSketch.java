@@ -0,0 +1,259 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Tracks the most contended accounts: those whose locks are most often found held by someone else.
+ *
+ * Contended lock acquisitions are sampled (one in a given rate) into a Space-Saving sketch of a fixed number
+ * of accounts, so the memory used does not depend on the number of accounts. When an account that is not
+ * tracked comes in and the sketch is full, it replaces the least contended one and inherits its count, which
+ * is then an overestimate by at most that inherited error. Timeouts are rare and always recorded.
+ *
+ * Uncontended acquisitions only cost a successful <code>tryLock</code>, and nothing is recorded for them.
+ */
+public class ContentionSketch {
+
+    /**
+     * A tracked account, as of when the sketch was read.
+     */
+    public static class HotAccount {
+
+        private final UUID id;
+
+        private final long contended;
+
+        private final long error;
+
+        private final long waitNanos;
+
+        private final long timeouts;
+
+        private HotAccount(Entry entry) {
+            this.id = entry.id;
+            this.contended = entry.count;
+            this.error = entry.error;
+            this.waitNanos = entry.waitNanos;
+            this.timeouts = entry.timeouts;
+        }
+
+        /**
+         * Get the ID of the account.
+         *
+         * @return the ID of the account
+         */
+        public UUID getID() {
+            return id;
+        }
+
+        /**
+         * Get the estimated number of contended lock acquisitions.
+         *
+         * @return the estimated number of contended acquisitions
+         */
+        public long getContended() {
+            return contended;
+        }
+
+        /**
+         * Get how much {@link #getContended()} may overestimate the account's count.
+         *
+         * @return the maximum overestimation
+         */
+        public long getError() {
+            return error;
+        }
+
+        /**
+         * Get the estimated time spent waiting for the account's lock since it is tracked.
+         *
+         * @return the estimated wait in nanoseconds
+         */
+        public long getWaitNanos() {
+            return waitNanos;
+        }
+
+        /**
+         * Get the number of lock timeouts on the account since it is tracked.
+         *
+         * @return the number of timeouts
+         */
+        public long getTimeouts() {
+            return timeouts;
+        }
+    }
+
+    private final int capacity;
+
+    private final int sampleRate;
+
+    private final Entry[] entries;
+
+    private final Map<UUID, Entry> index;
+
+    private int size;
+
+    /**
+     * Create a sketch.
+     *
+     * @param capacity the number of accounts tracked
+     * @param sampleRate one contended acquisition in this many is recorded (<code>1</code> records them all)
+     * @throws IllegalArgumentException if capacity or sampleRate is not positive
+     */
+    public ContentionSketch(int capacity, int sampleRate) {
+        if (capacity <= 0 || sampleRate <= 0) {
+            throw new IllegalArgumentException("Capacity and sample rate must be positive");
+        }
+
+        this.capacity = capacity;
+        this.sampleRate = sampleRate;
+        this.entries = new Entry[capacity];
+        this.index = new HashMap<>(capacity * 2);
+    }
+
+    /**
+     * Acquire the lock of an account, recording the wait if the lock was held by another thread.
+     *
+     * @param lock the lock
+     * @param id the ID of the account
+     */
+    public void lock(Lock lock, UUID id) {
+        if (lock.tryLock()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        lock.lock();
+        record(id, System.nanoTime() - start);
+    }
+
+    /**
+     * Acquire the lock of an account within a given time, recording the wait if the lock was held by another
+     * thread, or the timeout.
+     *
+     * @param lock the lock
+     * @param id the ID of the account
+     * @param timeout the maximum time (in milliseconds) to wait
+     * @return <code>true</code> if the lock was acquired; <code>false</code> if the time elapsed
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public boolean tryLock(Lock lock, UUID id, long timeout) throws InterruptedException {
+        if (lock.tryLock()) {
+            return true;
+        }
+
+        long start = System.nanoTime();
+
+        if (lock.tryLock(timeout, TimeUnit.MILLISECONDS)) {
+            record(id, System.nanoTime() - start);
+            return true;
+        }
+
+        recordTimeout(id, System.nanoTime() - start);
+        return false;
+    }
+
+    /**
+     * Record (if sampled) a contended lock acquisition.
+     *
+     * @param id the ID of the account
+     * @param waitNanos the time waited for the lock
+     */
+    public void record(UUID id, long waitNanos) {
+        if (sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0) {
+            add(id, sampleRate, waitNanos * sampleRate, false);
+        }
+    }
+
+    /**
+     * Record a lock acquisition that timed out.
+     *
+     * @param id the ID of the account
+     * @param waitNanos the time waited for the lock
+     */
+    public void recordTimeout(UUID id, long waitNanos) {
+        add(id, 1, waitNanos, true);
+    }
+
+    /**
+     * Get the most contended accounts.
+     *
+     * @param count the maximum number of accounts
+     * @return the accounts, most contended first
+     */
+    public synchronized List<HotAccount> top(int count) {
+        Entry[] sorted = Arrays.copyOf(entries, size);
+        Arrays.sort(sorted, Comparator.comparingLong((Entry entry) -> entry.count).reversed());
+
+        List<HotAccount> top = new ArrayList<>(Math.min(count, size));
+
+        for (int i = 0; i < sorted.length && i < count; i++) {
+            top.add(new HotAccount(sorted[i]));
+        }
+
+        return top;
+    }
+
+    /**
+     * Get the number of accounts tracked.
+     *
+     * @return the number of accounts tracked, at most the capacity
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private synchronized void add(UUID id, long weight, long waitNanos, boolean timeout) {
+        Entry entry = index.get(id);
+
+        if (entry == null) {
+            if (size < capacity) {
+                entry = new Entry();
+                entries[size++] = entry;
+            } else {
+                entry = entries[0];
+
+                for (int i = 1; i < size; i++) {
+                    if (entries[i].count < entry.count) {
+                        entry = entries[i];
+                    }
+                }
+
+                index.remove(entry.id);
+                entry.error = entry.count;
+                entry.waitNanos = 0;
+                entry.timeouts = 0;
+            }
+
+            entry.id = id;
+            index.put(id, entry);
+        }
+
+        entry.count += weight;
+        entry.waitNanos += waitNanos;
+
+        if (timeout) {
+            entry.timeouts++;
+        }
+    }
+
+    private static class Entry {
+
+        private UUID id;
+
+        private long count;
+
+        private long error;
+
+        private long waitNanos;
+
+        private long timeouts;
+    }
+}
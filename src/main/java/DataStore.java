@@ -1,22 +1,381 @@
-import java.util.Map;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DataStore {
 
-    private static Map<UUID, Account> accounts = new ConcurrentHashMap<>();
+    private static ConcurrentNavigableMap<UUID, Account> accounts = new ConcurrentSkipListMap<>();
+
+    private static TransferLog transfers = new TransferLog();
+
+    private static AccountLockManager lockManager = new AccountLockManager();
+
+    private static Journal journal;
+
+    private static IdempotencyCache idempotencyCache;
+
+    private static AtomicInteger shardIndexes = new AtomicInteger();
+
+    private static ConcurrentMap<UUID, JournalRecord> reservations = new ConcurrentHashMap<>();
+
+    private static ConcurrentMap<UUID, ClusterLedger.Commit> commits = new ConcurrentHashMap<>();
+
+    /**
+     * The state restored from the journal, as records (see {@link JournalReplay#snapshot()}), until it seeds the
+     * replication stream.
+     */
+    private static List<JournalRecord> restored = Collections.emptyList();
+
+    private static ReplicationStream replication;
 
-    private static Map<UUID, Transfer> transfers = new ConcurrentHashMap<>();
+    private static ReplicationFollower follower;
+
+    private static VirtualThreadExecutor virtualThreads;
+
+    private static volatile IdGenerator idGenerator = new TimeOrderedIdGenerator();
+
+    private static boolean idGeneratorConfigured;
+
+    private static volatile LockStripes lockStripes;
+
+    private static FxRateTable fxRates = new FxRateTable();
+
+    private static Path fxRatesFile;
 
     private DataStore(){
 
     }
 
-    public static Map<UUID, Account> getAccounts() {
+    public static ConcurrentNavigableMap<UUID, Account> getAccounts() {
         return accounts;
     }
 
-    public static Map<UUID, Transfer> getTransfers() {
+    public static TransferLog getTransfers() {
         return transfers;
     }
+
+    public static AccountLockManager getLockManager() {
+        return lockManager;
+    }
+
+    /**
+     * Open the journal (once per process) and restore the accounts and transfers it holds. The journal is
+     * then compacted into a snapshot in the background, every given number of milliseconds.
+     *
+     * @param directory the journal directory
+     * @param policy when the journal is synced to disk
+     * @param interval the interval (in milliseconds) between two syncs with the interval policy
+     * @param segmentSize the size (in bytes) past which a journal segment is closed
+     * @param snapshotInterval the interval (in milliseconds) between two snapshots, or <code>0</code> for none
+     * @param mode the balance representation of the restored accounts
+     * @return the journal
+     * @throws IOException if the journal cannot be read or opened
+     */
+    public static synchronized Journal openJournal(Path directory, Journal.FsyncPolicy policy, long interval,
+                                                   long segmentSize, long snapshotInterval,
+                                                   Balance.Mode mode) throws IOException {
+        if (journal == null) {
+            JournalReplay replay = new JournalReplay(transfers);
+            Journal opened = new Journal(directory, policy, interval, segmentSize, replay);
+            replay.restore(accounts, mode);
+            replay.getReserved().forEach(record -> reservations.put(record.getID(), record));
+            replay.getCommitted().forEach(record -> commits.put(record.getID(), new ClusterLedger.Commit(200)));
+            restored = replay.snapshot();
+
+            ScheduledExecutorService snapshots = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "journal-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            if (snapshotInterval > 0) {
+                snapshots.scheduleWithFixedDelay(() -> {
+                    try {
+                        opened.compact();
+                    } catch (IOException | RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }, snapshotInterval, snapshotInterval, TimeUnit.MILLISECONDS);
+            }
+
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                snapshots.shutdown();
+
+                try {
+                    opened.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }));
+
+            journal = opened;
+        }
+
+        return journal;
+    }
+
+    /**
+     * Get the journal.
+     *
+     * @return the journal, or <code>null</code> if the data store is not persisted
+     */
+    public static Journal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Get the idempotency cache, creating it on the first call.
+     *
+     * @param capacity the maximum number of responses kept (used on the first call only)
+     * @param ttl the time (in milliseconds) a response is kept for (used on the first call only)
+     * @return the idempotency cache
+     */
+    public static synchronized IdempotencyCache getIdempotencyCache(int capacity, long ttl) {
+        if (idempotencyCache == null) {
+            idempotencyCache = new IdempotencyCache(capacity, ttl);
+        }
+
+        return idempotencyCache;
+    }
+
+    /**
+     * Get the transfers to accounts of other nodes whose amount is reserved, but which are neither settled nor
+     * cancelled yet (see {@link ClusterLedger}).
+     *
+     * @return the {@link JournalRecord.Type#TRANSFER_RESERVED} records, by transfer ID
+     */
+    public static ConcurrentMap<UUID, JournalRecord> getReservations() {
+        return reservations;
+    }
+
+    /**
+     * Get the transfers from accounts of other nodes which were committed, but not yet settled by their node.
+     *
+     * @return the commits (restored from the {@link JournalRecord.Type#TRANSFER_COMMITTED} records, or in flight), by
+     * transfer ID
+     */
+    public static ConcurrentMap<UUID, ClusterLedger.Commit> getCommits() {
+        return commits;
+    }
+
+    /**
+     * Start publishing the mutations to followers (once per process), starting from the state restored from the
+     * journal, if any. It must be called before any mutation is made.
+     *
+     * @param vertx the Vert.x instance
+     * @param port the TCP port the followers connect to
+     * @param backlogSize the number of mutations kept for the followers catching up
+     * @return a future completed with the replication stream once followers can connect
+     */
+    public static synchronized Future<ReplicationStream> openReplication(Vertx vertx, int port, int backlogSize) {
+        if (replication != null) {
+            return Future.succeededFuture(replication);
+        }
+
+        ReplicationStream stream = new ReplicationStream(vertx, backlogSize);
+        stream.publish(restored);
+        restored = Collections.emptyList();
+        replication = stream;
+
+        return stream.listen(port).map(v -> stream);
+    }
+
+    /**
+     * Get the replication stream.
+     *
+     * @return the replication stream, or <code>null</code> if the mutations are not published to followers
+     */
+    public static ReplicationStream getReplication() {
+        return replication;
+    }
+
+    /**
+     * Publish mutations to the followers, if any, once they are journaled.
+     *
+     * @param records the mutations, written together
+     */
+    public static void publish(List<JournalRecord> records) {
+        ReplicationStream stream = replication;
+
+        if (stream != null) {
+            stream.publish(records);
+        }
+    }
+
+    /**
+     * Start following a primary (once per process): its mutations are applied to the data store from then on.
+     *
+     * @param vertx the Vert.x instance
+     * @param host the host of the primary's replication stream
+     * @param port the port of the primary's replication stream
+     * @param mode the balance representation of the replicated accounts
+     * @return the follower
+     */
+    public static synchronized ReplicationFollower openFollower(Vertx vertx, String host, int port, Balance.Mode mode) {
+        if (follower == null) {
+            follower = new ReplicationFollower(vertx, host, port, accounts, transfers, mode);
+            follower.start();
+        }
+
+        return follower;
+    }
+
+    /**
+     * Get the generator drawing the IDs of new accounts and transfers.
+     *
+     * @return the ID generator
+     */
+    public static IdGenerator getIdGenerator() {
+        return idGenerator;
+    }
+
+    /**
+     * Get the generator drawing the IDs of new accounts and transfers, creating it on the first call. All the
+     * instances of the verticle draw from the same generator, so it is never replaced once they use it (a new
+     * time-ordered generator would start the counters of their threads over, so IDs would no longer increase).
+     *
+     * @param mode the kind of IDs (used on the first call only)
+     * @return the ID generator
+     */
+    public static synchronized IdGenerator getIdGenerator(IdGenerator.Mode mode) {
+        if (!idGeneratorConfigured) {
+            idGenerator = IdGenerator.create(mode);
+            idGeneratorConfigured = true;
+        }
+
+        return idGenerator;
+    }
+
+    /**
+     * Set the generator drawing the IDs of new accounts and transfers.
+     *
+     * @param generator the ID generator
+     */
+    public static void setIdGenerator(IdGenerator generator) {
+        idGenerator = Objects.requireNonNull(generator, "ID generator cannot be null");
+    }
+
+    /**
+     * Get the pool of locks shared by the accounts created from then on.
+     *
+     * @return the lock stripes, or <code>null</code> if every account has a lock of its own
+     */
+    public static LockStripes getLockStripes() {
+        return lockStripes;
+    }
+
+    /**
+     * Get the pool of locks shared by the accounts, creating it on the first call. Since the stripes are taken in
+     * the order of their indexes, all the accounts of a process must share the same pool, so it is created before
+     * any account is.
+     *
+     * @param count the number of stripes, a power of two (used on the first call only)
+     * @return the lock stripes
+     * @throws IllegalArgumentException if count is not a positive power of two
+     */
+    public static synchronized LockStripes getLockStripes(int count) {
+        if (lockStripes == null) {
+            lockStripes = new LockStripes(count);
+        }
+
+        return lockStripes;
+    }
+
+    /**
+     * Set the pool of locks shared by the accounts created from then on.
+     *
+     * @param stripes the lock stripes, or <code>null</code> for a lock per account
+     */
+    static synchronized void setLockStripes(LockStripes stripes) {
+        lockStripes = stripes;
+    }
+
+    /**
+     * Get the exchange rates converting the amounts of transfers between accounts of different currencies.
+     *
+     * @return the exchange rates
+     */
+    public static FxRateTable getFxRates() {
+        return fxRates;
+    }
+
+    /**
+     * Load the exchange rates from a file (once per process), then load them again in the background whenever the
+     * file is modified, checking every given number of milliseconds.
+     *
+     * @param file the rates file
+     * @param interval the interval (in milliseconds) between two checks of the file
+     * @return the exchange rates
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file does not hold valid rates
+     */
+    public static synchronized FxRateTable openFxRates(Path file, long interval) throws IOException {
+        if (fxRatesFile == null) {
+            long[] modified = {Files.getLastModifiedTime(file).toMillis()};
+            fxRates.load(file);
+
+            ScheduledExecutorService reloads = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "fx-rates-reload");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            // A file which cannot be read or holds invalid rates leaves the current rates in place
+            reloads.scheduleWithFixedDelay(() -> {
+                try {
+                    long lastModified = Files.getLastModifiedTime(file).toMillis();
+
+                    if (lastModified != modified[0]) {
+                        modified[0] = lastModified;
+                        fxRates.load(file);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    e.printStackTrace();
+                }
+            }, interval, interval, TimeUnit.MILLISECONDS);
+
+            fxRatesFile = file;
+        }
+
+        return fxRates;
+    }
+
+    /**
+     * Get the executor running transfers on virtual threads, creating it on the first call.
+     *
+     * @return the executor
+     * @throws UnsupportedOperationException if the runtime has no virtual threads
+     */
+    public static synchronized VirtualThreadExecutor getVirtualThreadExecutor() {
+        if (virtualThreads == null) {
+            virtualThreads = new VirtualThreadExecutor();
+        }
+
+        return virtualThreads;
+    }
+
+    /**
+     * Hand out the shard indexes to the instances of the verticle, in the order they start.
+     *
+     * @param count the number of shards
+     * @return the index of the next shard, between <code>0</code> and count
+     */
+    public static int nextShardIndex(int count) {
+        return Math.floorMod(shardIndexes.getAndIncrement(), count);
+    }
 }
@@ -0,0 +1,81 @@
+import java.math.BigDecimal;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A <code>BigDecimal</code> balance guarded by a lock.
+ */
+public class DecimalBalance implements Balance {
+
+    /**
+     * The current value.
+     */
+    private BigDecimal value;
+
+    /**
+     * The lock used to perform changes on the value safely, either the balance's own or a stripe shared with
+     * other balances (see {@link LockStripes}).
+     */
+    private final Lock lock;
+
+    public DecimalBalance(BigDecimal value) {
+        this(value, new ReentrantLock());
+    }
+
+    public DecimalBalance(BigDecimal value, Lock lock) {
+        this.value = value;
+        this.lock = lock;
+    }
+
+    @Override
+    public BigDecimal get() {
+        try {
+            lock.lock();
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public BigDecimal set(BigDecimal value) {
+        try {
+            lock.lock();
+            BigDecimal previous = this.value;
+            this.value = value;
+            return previous;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean withdraw(BigDecimal amount) {
+        try {
+            lock.lock();
+            if (value.compareTo(amount) >= 0){
+                value = value.subtract(amount);
+                return true;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        return false;
+    }
+
+    @Override
+    public void deposit(BigDecimal amount) {
+        try {
+            lock.lock();
+            value = value.add(amount);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Lock getLock() {
+        return lock;
+    }
+}
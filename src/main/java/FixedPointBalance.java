@@ -0,0 +1,268 @@
+import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * A balance kept as a <code>long</code> in the currency's minor units (e.g. cents) and updated with
+ * CAS loops, so operations on units need neither a lock nor any allocation.
+ *
+ * Once the CAS loops fail often enough the account is considered hot: credits then land in striped
+ * sub-balances (much like <code>LongAdder</code> cells) and are only folded back into the main balance
+ * when a debit cannot be covered by it. While an account is hot, a read racing with a fold may briefly
+ * miss the amount being folded.
+ */
+public class FixedPointBalance implements Balance {
+
+    /**
+     * The distance (in longs) between two sub-balances, so that each sits on its own cache line.
+     */
+    private static final int PADDING = 8;
+
+    /**
+     * The number of decimal places of the currency's minor unit.
+     */
+    private final int scale;
+
+    /**
+     * The main balance in minor units.
+     */
+    private final AtomicLong units;
+
+    /**
+     * The sub-balances credits land in, or <code>null</code> while the account is not hot.
+     */
+    private volatile AtomicLongArray stripes;
+
+    /**
+     * The (approximate) number of failed CAS attempts on the main balance.
+     */
+    private int contention;
+
+    public FixedPointBalance(Currency currency, BigDecimal value) {
+        this.scale = Math.max(currency.getDefaultFractionDigits(), 0);
+        this.units = new AtomicLong(toUnits(value));
+    }
+
+    /**
+     * Get the number of decimal places of the minor unit.
+     *
+     * @return the number of decimal places of the minor unit
+     */
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * Convert an amount to minor units.
+     *
+     * @param amount the amount
+     * @return the amount in minor units
+     * @throws IllegalArgumentException if the amount has more decimal places than the currency allows or
+     * does not fit in a <code>long</code>
+     */
+    public long toUnits(BigDecimal amount) {
+        try {
+            return amount.movePointRight(scale).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Amount cannot be represented in minor units: " + amount);
+        }
+    }
+
+    /**
+     * Get the current value in minor units.
+     *
+     * @return the current value in minor units
+     */
+    public long getUnits() {
+        long sum = units.get();
+        AtomicLongArray current = stripes;
+
+        if (current != null) {
+            for (int i = 0; i < current.length(); i += PADDING) {
+                sum += current.get(i);
+            }
+        }
+
+        return sum;
+    }
+
+    /**
+     * Withdraw a given amount of minor units if the balance covers it.
+     *
+     * @param amount the (positive) amount of minor units to be withdrawn
+     * @return <code>true</code> if the operation was successful; <code>false</code> otherwise
+     */
+    public boolean withdrawUnits(long amount) {
+        if (withdrawFromMain(amount)) {
+            return true;
+        }
+
+        if (stripes == null) {
+            return false;
+        }
+
+        // Folds are serialized, so no amount is on its way from a stripe to the main balance while this one
+        // runs: the debit is only refused once the stripes are empty and the main balance still falls short
+        synchronized (this) {
+            do {
+                if (withdrawFromMain(amount)) {
+                    return true;
+                }
+            } while (fold() != 0);
+
+            return false;
+        }
+    }
+
+    /**
+     * Deposit a given amount of minor units.
+     *
+     * @param amount the (positive) amount of minor units to be deposited
+     * @return <code>true</code> if the operation was successful; <code>false</code> if the balance would overflow
+     */
+    public boolean depositUnits(long amount) {
+        long current;
+
+        while (stripes == null) {
+            current = units.get();
+
+            if (current > Long.MAX_VALUE - amount) {
+                return false;
+            }
+
+            if (units.compareAndSet(current, current + amount)) {
+                return true;
+            }
+
+            contended();
+        }
+
+        return depositToStripe(amount);
+    }
+
+    /**
+     * Check whether the account has been promoted to striped sub-balances.
+     *
+     * @return <code>true</code> if the account is hot; <code>false</code> otherwise
+     */
+    public boolean isHot() {
+        return stripes != null;
+    }
+
+    private boolean withdrawFromMain(long amount) {
+        long current;
+
+        do {
+            current = units.get();
+
+            if (current < amount) {
+                return false;
+            }
+        } while (!compareAndSet(current, current - amount));
+
+        return true;
+    }
+
+    private boolean compareAndSet(long expected, long value) {
+        if (units.compareAndSet(expected, value)) {
+            return true;
+        }
+
+        contended();
+        return false;
+    }
+
+    private boolean depositToStripe(long amount) {
+        AtomicLongArray current = stripes;
+        long id = Thread.currentThread().getId();
+        int index = ((int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & (current.length() / PADDING - 1)) * PADDING;
+        long value;
+
+        do {
+            value = current.get(index);
+
+            if (value > Long.MAX_VALUE - amount) {
+                return false;
+            }
+        } while (!current.compareAndSet(index, value, value + amount));
+
+        return true;
+    }
+
+    /**
+     * Move the sub-balances back into the main balance (with the monitor held).
+     *
+     * @return the amount of minor units moved
+     */
+    private long fold() {
+        AtomicLongArray current = stripes;
+        long sum = 0;
+
+        for (int i = 0; i < current.length(); i += PADDING) {
+            sum += current.getAndSet(i, 0);
+        }
+
+        if (sum != 0) {
+            units.addAndGet(sum);
+        }
+
+        return sum;
+    }
+
+    private void contended() {
+        if (++contention > Constants.HOT_ACCOUNT_THRESHOLD && stripes == null) {
+            promote();
+        }
+    }
+
+    /**
+     * Promote the account to striped sub-balances (done once per account).
+     */
+    synchronized void promote() {
+        if (stripes == null) {
+            stripes = new AtomicLongArray(Constants.HOT_ACCOUNT_STRIPES * PADDING);
+        }
+    }
+
+    @Override
+    public BigDecimal get() {
+        return BigDecimal.valueOf(getUnits(), scale);
+    }
+
+    @Override
+    public BigDecimal set(BigDecimal value) {
+        long newUnits = toUnits(value);
+        long previous = 0;
+        AtomicLongArray current = stripes;
+
+        // Every unit taken out is counted in the previous value, so that a deposit running meanwhile is either
+        // overwritten and counted there, or kept on top of the new value
+        if (current != null) {
+            for (int i = 0; i < current.length(); i += PADDING) {
+                previous += current.getAndSet(i, 0);
+            }
+        }
+
+        previous += units.getAndSet(newUnits);
+        return BigDecimal.valueOf(previous, scale);
+    }
+
+    @Override
+    public boolean withdraw(BigDecimal amount) {
+        return withdrawUnits(toUnits(amount));
+    }
+
+    @Override
+    public void deposit(BigDecimal amount) {
+        if (!depositUnits(toUnits(amount))) {
+            throw new ArithmeticException("Balance overflow");
+        }
+    }
+
+    @Override
+    public Lock getLock() {
+        return null;
+    }
+}
@@ -0,0 +1,209 @@
+import io.vertx.core.json.JsonObject;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The exchange rates converting the amount of a transfer between accounts of different currencies. The rates
+ * are held by an immutable snapshot, which an update replaces whole (copy on write): a transfer reads a consistent
+ * set of rates without taking any lock, and records the version of the snapshot it used.
+ *
+ * A rate is a fixed-point number with {@link #SCALE} decimal places. The amount credited is the amount debited
+ * times the rate, rounded down to the minor units of the destination currency, so a conversion never credits more
+ * than the rate gives.
+ */
+public class FxRateTable {
+
+    /**
+     * The number of decimal places of a rate.
+     */
+    public static final int SCALE = 8;
+
+    /**
+     * The rate converting amounts of one currency into another.
+     */
+    public static class Rate {
+
+        private final Currency to;
+
+        /**
+         * The rate, in units of 10<sup>-{@value #SCALE}</sup>.
+         */
+        private final long units;
+
+        private Rate(Currency to, long units) {
+            this.to = to;
+            this.units = units;
+        }
+
+        /**
+         * Convert an amount.
+         *
+         * @param amount the amount in the source currency
+         * @return the amount in the destination currency, rounded down to its minor units
+         */
+        public BigDecimal convert(BigDecimal amount) {
+            BigDecimal converted = amount.multiply(BigDecimal.valueOf(units, SCALE));
+            int digits = to.getDefaultFractionDigits();
+
+            // Pseudo-currencies (e.g. gold) have no minor units, so their amounts are not rounded
+            return digits < 0 ? converted.stripTrailingZeros() : converted.setScale(digits, RoundingMode.DOWN);
+        }
+
+        /**
+         * Get the value of the rate.
+         *
+         * @return the value of the rate, with {@value #SCALE} decimal places
+         */
+        public BigDecimal getValue() {
+            return BigDecimal.valueOf(units, SCALE);
+        }
+    }
+
+    /**
+     * A version of the rates, never modified once published.
+     */
+    public static class Snapshot {
+
+        private final long version;
+
+        /**
+         * The rates, by source then destination currency.
+         */
+        private final Map<Currency, Map<Currency, Rate>> rates;
+
+        private Snapshot(long version, Map<Currency, Map<Currency, Rate>> rates) {
+            this.version = version;
+            this.rates = rates;
+        }
+
+        /**
+         * Get the version of the rates.
+         *
+         * @return the version, <code>0</code> before the rates are first set
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Get the rate between two currencies.
+         *
+         * @param from the source currency
+         * @param to the destination currency
+         * @return the rate, or <code>null</code> if there is none
+         */
+        public Rate get(Currency from, Currency to) {
+            Map<Currency, Rate> fromRates = rates.get(from);
+            return fromRates == null ? null : fromRates.get(to);
+        }
+
+        /**
+         * Write the rates as they are given to {@link #update(JsonObject)}, with their version.
+         *
+         * @return the rates, as <code>{"version": ..., "rates": {"USD/EUR": "0.91000000", ...}}</code>
+         */
+        public JsonObject toJson() {
+            JsonObject pairs = new JsonObject();
+
+            rates.forEach((from, fromRates) -> fromRates.forEach((to, rate) ->
+                    pairs.put(from.getCurrencyCode() + "/" + to.getCurrencyCode(), rate.getValue().toPlainString())));
+
+            return new JsonObject().put("version", version).put("rates", pairs);
+        }
+    }
+
+    private volatile Snapshot current = new Snapshot(0, Collections.emptyMap());
+
+    /**
+     * Get the current rates.
+     *
+     * @return the current rates
+     */
+    public Snapshot get() {
+        return current;
+    }
+
+    /**
+     * Replace all the rates. The version of the new rates is the current time (in milliseconds), or one more than
+     * the previous version if that is later, so versions keep increasing across restarts.
+     *
+     * @param rates the rates by currency pair, e.g. <code>{"USD/EUR": "0.91"}</code>, as strings or numbers
+     * @return the new rates
+     * @throws NullPointerException if rates is <code>null</code>
+     * @throws IllegalArgumentException if a currency pair or a rate is invalid
+     */
+    public synchronized Snapshot update(JsonObject rates) {
+        Objects.requireNonNull(rates, "Rates cannot be null");
+
+        Map<Currency, Map<Currency, Rate>> parsed = new HashMap<>();
+
+        for (Map.Entry<String, Object> entry : rates) {
+            String[] pair = entry.getKey().split("/", -1);
+
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Currency pair must be FROM/TO, not " + entry.getKey());
+            }
+
+            Currency from = Currency.getInstance(pair[0].trim());
+            Currency to = Currency.getInstance(pair[1].trim());
+
+            if (from.equals(to)) {
+                throw new IllegalArgumentException("Currency pair " + entry.getKey() + " must have two currencies");
+            }
+
+            if (!(entry.getValue() instanceof String || entry.getValue() instanceof Number)) {
+                throw new IllegalArgumentException("Rate of " + entry.getKey() + " must be a number");
+            }
+
+            BigDecimal value = new BigDecimal(entry.getValue().toString().trim());
+            BigDecimal units = value.setScale(SCALE, RoundingMode.DOWN);
+
+            if (value.signum() <= 0 || units.compareTo(value) != 0 || units.unscaledValue().bitLength() >= Long.SIZE) {
+                throw new IllegalArgumentException("Rate of " + entry.getKey()
+                        + " must be positive with at most " + SCALE + " decimal places");
+            }
+
+            parsed.computeIfAbsent(from, currency -> new HashMap<>())
+                    .put(to, new Rate(to, units.unscaledValue().longValue()));
+        }
+
+        Snapshot snapshot = new Snapshot(Math.max(current.version + 1, System.currentTimeMillis()), parsed);
+        current = snapshot;
+
+        return snapshot;
+    }
+
+    /**
+     * Replace all the rates with those of a file, written as the <code>"rates"</code> of {@link Snapshot#toJson()}.
+     *
+     * @param file the file
+     * @return the new rates
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the file does not hold valid rates
+     */
+    public Snapshot load(Path file) throws IOException {
+        JsonObject rates;
+
+        try {
+            rates = new JsonObject(new String(Files.readAllBytes(file), StandardCharsets.UTF_8)).getJsonObject("rates");
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid rates file " + file, e);
+        }
+
+        if (rates == null) {
+            throw new IllegalArgumentException("Rates file " + file + " has no rates");
+        }
+
+        return update(rates);
+    }
+}
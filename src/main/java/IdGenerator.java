@@ -0,0 +1,73 @@
+import java.util.UUID;
+
+/**
+ * Draws the IDs of new accounts and transfers.
+ */
+public interface IdGenerator {
+
+    /**
+     * The kinds of IDs a generator can draw.
+     */
+    enum Mode {
+        /**
+         * IDs starting with their creation time, drawn without contention (see {@link TimeOrderedIdGenerator}).
+         */
+        TIME_ORDERED,
+
+        /**
+         * Random IDs (version 4 UUIDs), drawn from a shared <code>SecureRandom</code>.
+         */
+        RANDOM;
+
+        /**
+         * Parse a mode from its configuration name (e.g. <code>"time-ordered"</code>).
+         *
+         * @param name the configuration name
+         * @return the mode
+         * @throws IllegalArgumentException if there is no mode with the given name
+         */
+        public static Mode fromName(String name) {
+            return valueOf(name.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    /**
+     * Draw a new ID.
+     *
+     * @return the ID, never drawn before
+     */
+    UUID next();
+
+    /**
+     * Mix the bits of an ID, so that IDs drawn by one thread (which share their low bits when time-ordered) spread
+     * evenly over the lock stripes, the shards and the index of the transfer log.
+     *
+     * @param mostSigBits the most significant bits of the ID
+     * @param leastSigBits the least significant bits of the ID
+     * @return the hash of the ID
+     */
+    static long hash(long mostSigBits, long leastSigBits) {
+        long hash = mostSigBits * 0x9E3779B97F4A7C15L ^ leastSigBits;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Create a generator of the given kind.
+     *
+     * @param mode the kind of IDs
+     * @return the generator
+     */
+    static IdGenerator create(Mode mode) {
+        switch (mode) {
+            case RANDOM:
+                return UUID::randomUUID;
+            default:
+                return new TimeOrderedIdGenerator();
+        }
+    }
+}
@@ -0,0 +1,365 @@
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers the response to each request made with an idempotency key, so that a retried request gets
+ * the original response instead of being executed again.
+ *
+ * Keys are spread over independently locked segments, each an insertion-ordered map from which the oldest
+ * completed entries are evicted once the segment is full or their time to live has elapsed. A request
+ * still in flight is never evicted; a retry arriving meanwhile waits for its response.
+ */
+public class IdempotencyCache {
+
+    /**
+     * A stored response.
+     */
+    public static class Response {
+
+        private final int statusCode;
+
+        private final Buffer body;
+
+        public Response(int statusCode, Buffer body) {
+            this.statusCode = statusCode;
+            this.body = body;
+        }
+
+        /**
+         * Get the HTTP status code.
+         *
+         * @return the HTTP status code
+         */
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        /**
+         * Get the body.
+         *
+         * @return the body, or <code>null</code> if the response has none
+         */
+        public Buffer getBody() {
+            return body;
+        }
+    }
+
+    /**
+     * The result of {@link #claim(String, byte[])} when the key is in use for a different request.
+     */
+    public static final Response MISMATCH = new Response(422, null);
+
+    private final Segment[] segments;
+
+    private final int segmentCapacity;
+
+    private final long ttl;
+
+    private final LongSupplier clock;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder mismatches = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Create a cache.
+     *
+     * @param capacity the maximum number of completed responses kept
+     * @param ttl the time (in milliseconds) a response is kept for
+     * @throws IllegalArgumentException if capacity or ttl is not positive
+     */
+    public IdempotencyCache(int capacity, long ttl) {
+        this(capacity, ttl, System::currentTimeMillis);
+    }
+
+    IdempotencyCache(int capacity, long ttl, LongSupplier clock) {
+        if (capacity <= 0 || ttl <= 0) {
+            throw new IllegalArgumentException("Capacity and time to live must be positive");
+        }
+
+        int count = Math.min(Integer.highestOneBit(capacity), Constants.IDEMPOTENCY_SEGMENTS);
+
+        this.segments = new Segment[count];
+        this.segmentCapacity = (capacity + count - 1) / count;
+        this.ttl = ttl;
+        this.clock = Objects.requireNonNull(clock, "Clock cannot be null");
+
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Claim a key for a request. If the key is new, the caller owns it and must either
+     * {@link #complete(String, Response) complete} or {@link #release(String) release} it; otherwise the
+     * caller gets the response of the request that claimed it first (once there is one).
+     *
+     * @param key the idempotency key
+     * @param fingerprint a digest of the request (see {@link #fingerprint(Buffer)}), to detect a key reused for a
+     * different request
+     * @return <code>null</code> if the caller now owns the key; otherwise a future completed (on the caller's
+     * context) with the stored response, {@link #MISMATCH} if the fingerprints differ, or failed if the first
+     * request was released
+     */
+    public Future<Response> claim(String key, byte[] fingerprint) {
+        Objects.requireNonNull(key, "Key cannot be null");
+        Objects.requireNonNull(fingerprint, "Fingerprint cannot be null");
+
+        Segment segment = segment(key);
+        long now = clock.getAsLong();
+        Entry entry;
+
+        synchronized (segment) {
+            entry = segment.get(key);
+
+            if (entry != null && entry.response != null && entry.expiresAt <= now) {
+                segment.remove(key);
+                evictions.increment();
+                entry = null;
+            }
+
+            if (entry == null) {
+                segment.put(key, new Entry(fingerprint));
+                evict(segment, now);
+                misses.increment();
+                return null;
+            }
+
+            if (!Arrays.equals(entry.fingerprint, fingerprint)) {
+                mismatches.increment();
+                return Future.succeededFuture(MISMATCH);
+            }
+
+            hits.increment();
+
+            if (entry.response != null) {
+                return Future.succeededFuture(entry.response);
+            }
+
+            Waiter waiter = new Waiter(Vertx.currentContext(), Future.future());
+            entry.waiters.add(waiter);
+            return waiter.future;
+        }
+    }
+
+    /**
+     * Get the fingerprint of a request: the SHA-256 digest of its body, so that two different bodies reusing a key
+     * are told apart (unlike with a 32-bit hash, which collides after a few tens of thousands of bodies).
+     *
+     * @param body the body of the request
+     * @return the fingerprint
+     */
+    public static byte[] fingerprint(Buffer body) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(body.getBytes());
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Store the response to the request that claimed a key, and hand it to the retries waiting for it.
+     *
+     * @param key the idempotency key
+     * @param response the response
+     */
+    public void complete(String key, Response response) {
+        Objects.requireNonNull(response, "Response cannot be null");
+
+        for (Waiter waiter : finish(key, response)) {
+            waiter.complete(response, null);
+        }
+    }
+
+    /**
+     * Forget a claimed key without storing a response (e.g. when the request could not be carried out and
+     * may be retried); the retries waiting for it fail.
+     *
+     * @param key the idempotency key
+     */
+    public void release(String key) {
+        IllegalStateException cause = new IllegalStateException("Request with key " + key + " was not completed");
+
+        for (Waiter waiter : finish(key, null)) {
+            waiter.complete(null, cause);
+        }
+    }
+
+    /**
+     * Get the number of requests whose key was already known for the same body.
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of requests whose key was new.
+     *
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of requests whose key was already known for another body.
+     *
+     * @return the number of mismatches
+     */
+    public long getMismatches() {
+        return mismatches.sum();
+    }
+
+    /**
+     * Get the number of responses dropped because the cache was full or they expired.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Get the number of keys currently held (completed or in flight).
+     *
+     * @return the number of keys
+     */
+    public int size() {
+        int size = 0;
+
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+
+        return size;
+    }
+
+    private List<Waiter> finish(String key, Response response) {
+        Segment segment = segment(key);
+
+        synchronized (segment) {
+            Entry entry = segment.get(key);
+
+            if (entry == null || entry.response != null) {
+                return new ArrayList<>();
+            }
+
+            if (response == null) {
+                segment.remove(key);
+            } else {
+                entry.response = response;
+                entry.expiresAt = clock.getAsLong() + ttl;
+            }
+
+            return entry.waiters;
+        }
+    }
+
+    /**
+     * Drop the oldest completed entries of a segment while it is over capacity or they have expired.
+     * Entries are in claim order, so the scan stops at the first one that is neither.
+     */
+    private void evict(Segment segment, long now) {
+        Iterator<Entry> iterator = segment.values().iterator();
+        int size = segment.size();
+
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            boolean full = size > segmentCapacity;
+
+            if (entry.response == null) {
+                if (!full) {
+                    break;
+                }
+
+                continue;
+            }
+
+            if (!full && entry.expiresAt > now) {
+                break;
+            }
+
+            iterator.remove();
+            evictions.increment();
+            size--;
+        }
+    }
+
+    private Segment segment(String key) {
+        int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+    }
+
+    private static class Segment extends LinkedHashMap<String, Entry> {
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static class Entry {
+
+        private final byte[] fingerprint;
+
+        /**
+         * The response, or <code>null</code> while the request is in flight.
+         */
+        private Response response;
+
+        private long expiresAt;
+
+        private final List<Waiter> waiters = new ArrayList<>(0);
+
+        private Entry(byte[] fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    private static class Waiter {
+
+        private final Context context;
+
+        private final Future<Response> future;
+
+        private Waiter(Context context, Future<Response> future) {
+            this.context = context;
+            this.future = future;
+        }
+
+        private void complete(Response response, Throwable cause) {
+            if (context == null) {
+                complete(future, response, cause);
+            } else {
+                context.runOnContext(v -> complete(future, response, cause));
+            }
+        }
+
+        private static void complete(Future<Response> future, Response response, Throwable cause) {
+            if (cause == null) {
+                future.complete(response);
+            } else {
+                future.fail(cause);
+            }
+        }
+    }
+}
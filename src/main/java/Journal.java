@@ -0,0 +1,561 @@
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal of the data store's mutations.
+ *
+ * Every record is framed as <code>[length][record][CRC32]</code>. A single writer thread drains the
+ * pending records, writes them with one <code>FileChannel</code> call and syncs them to disk according to
+ * the {@link FsyncPolicy}; appends never block the caller, which is notified (on its own context) once its
+ * records are as durable as the policy promises.
+ *
+ * A write that fails is cut off the file, so that the records appended after it are not hidden from replay by a
+ * torn frame; should that fail too, or should a sync fail (after which what reached the disk is unknown), the
+ * journal stops accepting records.
+ *
+ * The journal is a directory of numbered segment files. Full segments are {@link #compact() compacted}
+ * into a {@link JournalSnapshot} of the accounts, after which they are kept as history files: opening a journal
+ * replays the transfers of the history, then one snapshot and the segments written since.
+ */
+public class Journal implements AutoCloseable {
+
+    /**
+     * When the journal is synced to disk.
+     */
+    public enum FsyncPolicy {
+        /**
+         * After every append, before it is acknowledged.
+         */
+        ALWAYS,
+
+        /**
+         * Every few milliseconds; appends are acknowledged once written to the file.
+         */
+        INTERVAL,
+
+        /**
+         * Once per group of concurrent appends, before they are acknowledged.
+         */
+        GROUP;
+
+        /**
+         * Parse a policy from its configuration name (e.g. <code>"group"</code>).
+         *
+         * @param name the configuration name
+         * @return the policy
+         * @throws IllegalArgumentException if there is no policy with the given name
+         */
+        public static FsyncPolicy fromName(String name) {
+            return valueOf(name.trim().toUpperCase());
+        }
+    }
+
+    /**
+     * The size of the frame around a record (length and checksum).
+     */
+    private static final int FRAME_SIZE = 8;
+
+    private static final String PREFIX = "journal-";
+
+    private static final String HISTORY_PREFIX = "history-";
+
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+
+    /**
+     * The size (in bytes) past which a segment is closed and a new one started.
+     */
+    private final long segmentSize;
+
+    /**
+     * The current segment; replaced (under the journal's monitor) when the journal rolls over.
+     */
+    private FileChannel channel;
+
+    private long segment;
+
+    private final Object compaction = new Object();
+
+    private final FsyncPolicy policy;
+
+    /**
+     * The interval (in milliseconds) between two syncs with the {@link FsyncPolicy#INTERVAL} policy.
+     */
+    private final long interval;
+
+    private final BlockingQueue<Append> pending = new LinkedBlockingQueue<>();
+
+    private final Thread writer;
+
+    private volatile boolean running = true;
+
+    /**
+     * The failure after which no record is accepted any more, or <code>null</code>.
+     */
+    private volatile IOException failure;
+
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Open a journal, replaying the records it already holds (the transfers of the history, as
+     * {@link JournalRecord.Type#TRANSFER_ARCHIVED} records, then the latest snapshot and every later segment)
+     * before any new record is appended. A torn or corrupted tail (e.g. after a crash in the middle of a
+     * write) is discarded.
+     *
+     * @param directory the journal directory (created if missing)
+     * @param policy when the journal is synced to disk
+     * @param interval the interval (in milliseconds) between two syncs with the {@link FsyncPolicy#INTERVAL} policy
+     * @param segmentSize the size (in bytes) past which a segment is closed and a new one started
+     * @param replay receives every record already in the journal, in order
+     * @throws IOException if the journal cannot be read or opened
+     */
+    public Journal(Path directory, FsyncPolicy policy, long interval, long segmentSize,
+                   Consumer<JournalRecord> replay) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.policy = Objects.requireNonNull(policy, "Policy cannot be null");
+        this.interval = interval;
+        this.segmentSize = segmentSize;
+
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Segment size must be positive");
+        }
+
+        for (long number : numbers(HISTORY_PREFIX)) {
+            try (FileChannel replayed = FileChannel.open(history(number), StandardOpenOption.READ)) {
+                replay(replayed, archive(replay));
+            }
+        }
+
+        long base = JournalSnapshot.read(directory, replay);
+        segment = base;
+
+        for (long number : numbers(PREFIX)) {
+            if (number <= base) {
+                // Left over by a compaction interrupted after its snapshot was written.
+                try (FileChannel replayed = FileChannel.open(file(number), StandardOpenOption.READ)) {
+                    replay(replayed, archive(replay));
+                }
+
+                Files.move(file(number), history(number), StandardCopyOption.REPLACE_EXISTING);
+                continue;
+            }
+
+            try (FileChannel replayed = FileChannel.open(file(number), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                replayed.truncate(replay(replayed, replay));
+            }
+
+            segment = number;
+        }
+
+        segment++;
+        channel = FileChannel.open(file(segment), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+
+        this.writer = new Thread(this::write, "journal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Append a record.
+     *
+     * @param record the record
+     * @return a future completed once the record is durable (as defined by the policy)
+     */
+    public Future<Void> append(JournalRecord record) {
+        return append(Collections.singletonList(record));
+    }
+
+    /**
+     * Append several records, which are written together.
+     *
+     * @param records the records
+     * @return a future completed once the records are durable (as defined by the policy), or failed with an
+     * {@link IllegalStateException} if the journal is closed or no longer accepts records
+     */
+    public Future<Void> append(List<JournalRecord> records) {
+        Future<Void> future = Future.future();
+
+        if (!running) {
+            future.fail(new IllegalStateException("Journal is closed"));
+        } else if (failure != null) {
+            future.fail(failed());
+        } else {
+            pending.add(new Append(records, Vertx.currentContext(), future));
+        }
+
+        return future;
+    }
+
+    /**
+     * Stop accepting records, write the pending ones, wait for a running compaction, sync and close the file.
+     *
+     * @throws IOException if the journal cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (compaction) {
+            synchronized (this) {
+                if (channel.isOpen()) {
+                    channel.force(false);
+                    channel.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Close the current segment and start a new one, unless the current segment is still empty.
+     *
+     * @return the number of the last closed segment; every record appended before the call is in it or
+     * in an earlier segment
+     * @throws IOException if the new segment cannot be created
+     * @throws IllegalStateException if the journal is closed
+     */
+    public synchronized long roll() throws IOException {
+        if (!channel.isOpen()) {
+            throw new IllegalStateException("Journal is closed");
+        }
+
+        if (channel.position() == 0) {
+            return segment - 1;
+        }
+
+        channel.force(false);
+        channel.close();
+        channel = FileChannel.open(file(segment + 1), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+
+        return segment++;
+    }
+
+    /**
+     * Fold the closed segments into a new snapshot of the accounts and move them to the history. The snapshot is built
+     * from the files (the previous snapshot and the segments written since), not from the live accounts, so
+     * appends go on meanwhile and the snapshot is exactly the state at the end of the last closed segment.
+     *
+     * Transfers are not part of the snapshot: they stay in the history, whose transfers alone are replayed when the
+     * journal is opened (their amounts are already in the snapshot's balances).
+     *
+     * @return the last segment covered by the snapshot
+     * @throws IOException if the snapshot cannot be written
+     * @throws IllegalStateException if the journal is closed
+     */
+    public long compact() throws IOException {
+        synchronized (compaction) {
+            long last = roll();
+            JournalReplay scratch = new JournalReplay(null);
+            long base = JournalSnapshot.read(directory, scratch);
+
+            if (last <= base) {
+                return base;
+            }
+
+            for (long number : numbers(PREFIX)) {
+                if (number > base && number <= last) {
+                    try (FileChannel replayed = FileChannel.open(file(number), StandardOpenOption.READ)) {
+                        replay(replayed, scratch);
+                    }
+                }
+            }
+
+            JournalSnapshot.write(directory, last, scratch.snapshot());
+
+            for (long number : numbers(PREFIX)) {
+                if (number <= last) {
+                    Files.move(file(number), history(number), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+
+            return last;
+        }
+    }
+
+    private void write() {
+        List<Append> batch = new ArrayList<>();
+        long lastSync = System.currentTimeMillis();
+        boolean dirty = false;
+
+        while (running || !pending.isEmpty()) {
+            try {
+                Append first = pending.poll(policy == FsyncPolicy.INTERVAL ? interval : 100, TimeUnit.MILLISECONDS);
+
+                if (first != null) {
+                    batch.add(first);
+                    pending.drainTo(batch);
+                }
+            } catch (InterruptedException e) {
+                running = false;
+            }
+
+            // The appends of the batch before this one are already acknowledged, so a failure only fails the rest
+            int completed = 0;
+
+            try {
+                if (failure != null) {
+                    IllegalStateException failed = failed();
+                    batch.forEach(append -> append.complete(failed));
+                    completed = batch.size();
+                } else if (policy == FsyncPolicy.ALWAYS) {
+                    for (Append append : batch) {
+                        RuntimeException invalid = null;
+
+                        // A record that cannot be encoded is never written, so it only fails its own append
+                        try {
+                            writeRecords(Collections.singletonList(append), true);
+                        } catch (RuntimeException e) {
+                            invalid = e;
+                        }
+
+                        append.complete(invalid);
+                        completed++;
+                    }
+                } else if (!batch.isEmpty()) {
+                    writeRecords(batch, policy == FsyncPolicy.GROUP);
+                    dirty |= policy == FsyncPolicy.INTERVAL;
+                    batch.forEach(append -> append.complete(null));
+                    completed = batch.size();
+                }
+
+                if (dirty && System.currentTimeMillis() - lastSync >= interval) {
+                    synchronized (this) {
+                        try {
+                            channel.force(false);
+                        } catch (IOException e) {
+                            // The records written since the last sync were acknowledged, and may be lost
+                            failure = e;
+                            throw e;
+                        }
+                    }
+
+                    lastSync = System.currentTimeMillis();
+                    dirty = false;
+                }
+            } catch (IOException | RuntimeException e) {
+                batch.subList(completed, batch.size()).forEach(append -> append.complete(e));
+            }
+
+            batch.clear();
+        }
+    }
+
+    private void writeRecords(List<Append> batch, boolean sync) throws IOException {
+        int size = 0;
+
+        for (Append append : batch) {
+            for (JournalRecord record : append.records) {
+                size += record.maxSize() + FRAME_SIZE;
+            }
+        }
+
+        if (buffer.capacity() < size) {
+            buffer = ByteBuffer.allocateDirect(Integer.highestOneBit(size) * 2);
+        }
+
+        buffer.clear();
+
+        for (Append append : batch) {
+            for (JournalRecord record : append.records) {
+                int start = buffer.position();
+                buffer.position(start + 4);
+                record.encode(buffer);
+
+                int end = buffer.position();
+                buffer.putInt(start, end - start - 4);
+
+                ByteBuffer payload = buffer.duplicate();
+                payload.position(start + 4).limit(end);
+                crc.reset();
+                crc.update(payload);
+                buffer.putInt((int) crc.getValue());
+            }
+        }
+
+        buffer.flip();
+
+        synchronized (this) {
+            long start = channel.position();
+            boolean written = false;
+
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+
+                written = true;
+
+                if (sync) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                // The records are failed, so they must not be replayed either
+                try {
+                    channel.truncate(start);
+                } catch (IOException rollback) {
+                    e.addSuppressed(rollback);
+                    failure = e;
+                }
+
+                if (written) {
+                    failure = e;
+                }
+
+                throw e;
+            }
+
+            if (channel.position() >= segmentSize) {
+                try {
+                    roll();
+                } catch (IOException e) {
+                    // The records are written, only the next ones are refused
+                    failure = e;
+                }
+            }
+        }
+    }
+
+    private IllegalStateException failed() {
+        return new IllegalStateException("Journal failed", failure);
+    }
+
+    private Path file(long number) {
+        return directory.resolve(String.format("%s%020d%s", PREFIX, number, SUFFIX));
+    }
+
+    private Path history(long number) {
+        return directory.resolve(String.format("%s%020d%s", HISTORY_PREFIX, number, SUFFIX));
+    }
+
+    private List<Long> numbers(String prefix) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                numbers.add(Long.parseLong(name.substring(prefix.length(), name.length() - SUFFIX.length())));
+            }
+        }
+
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    /**
+     * Pass on the transfers of a history file, whose amounts are already in the snapshot, as archived records.
+     */
+    private static Consumer<JournalRecord> archive(Consumer<JournalRecord> replay) {
+        return record -> {
+            JournalRecord archived = record.toArchived();
+
+            if (archived != null) {
+                replay.accept(archived);
+            }
+        };
+    }
+
+    /**
+     * Read the records of a journal file.
+     *
+     * @return the position right after the last valid record
+     */
+    private static long replay(FileChannel channel, Consumer<JournalRecord> replay) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        CRC32 crc = new CRC32();
+        long position = 0;
+        long size = channel.size();
+
+        while (position + FRAME_SIZE <= size) {
+            header.clear();
+            channel.read(header, position);
+            int length = header.getInt(0);
+
+            if (length <= 0 || position + FRAME_SIZE + length > size) {
+                break;
+            }
+
+            ByteBuffer record = ByteBuffer.allocate(length + 4);
+
+            while (record.hasRemaining()) {
+                channel.read(record, position + 4 + record.position());
+            }
+
+            crc.reset();
+            crc.update(record.array(), 0, length);
+
+            if ((int) crc.getValue() != record.getInt(length)) {
+                break;
+            }
+
+            record.position(0).limit(length);
+
+            try {
+                replay.accept(JournalRecord.decode(record));
+            } catch (IllegalArgumentException e) {
+                break;
+            }
+
+            position += FRAME_SIZE + length;
+        }
+
+        return position;
+    }
+
+    private static class Append {
+
+        private final List<JournalRecord> records;
+
+        private final Context context;
+
+        private final Future<Void> future;
+
+        private Append(List<JournalRecord> records, Context context, Future<Void> future) {
+            this.records = records;
+            this.context = context;
+            this.future = future;
+        }
+
+        private void complete(Throwable cause) {
+            if (context == null) {
+                complete(future, cause);
+            } else {
+                context.runOnContext(v -> complete(future, cause));
+            }
+        }
+
+        private static void complete(Future<Void> future, Throwable cause) {
+            if (cause == null) {
+                future.complete();
+            } else {
+                future.fail(cause);
+            }
+        }
+    }
+}
@@ -0,0 +1,514 @@
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Currency;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * A mutation of the data store, as written to the {@link Journal}.
+ */
+public class JournalRecord {
+
+    /**
+     * The kinds of mutations.
+     */
+    public enum Type {
+        ACCOUNT_CREATED,
+
+        /**
+         * The balance of an account was set to a new value; only written by earlier versions, which replay it in
+         * journal order (see {@link #BALANCE_ADJUSTED}).
+         */
+        BALANCE_SET,
+        ACCOUNT_DELETED,
+        TRANSFER,
+
+        /**
+         * The amount of a transfer to another node was taken out of the source (see {@link ClusterLedger}).
+         */
+        TRANSFER_RESERVED,
+
+        /**
+         * The amount of a transfer from another node was put into the destination.
+         */
+        TRANSFER_COMMITTED,
+
+        /**
+         * A reserved transfer was committed by the node owning its destination.
+         */
+        TRANSFER_SETTLED,
+
+        /**
+         * A reserved transfer was refused by the node owning its destination and its amount given back.
+         */
+        TRANSFER_CANCELLED,
+
+        /**
+         * The node which reserved a committed transfer settled it, so it no longer needs to be remembered.
+         */
+        TRANSFER_FORGOTTEN,
+
+        /**
+         * A completed transfer between accounts of different currencies, whose amount was converted.
+         */
+        TRANSFER_CONVERTED,
+
+        /**
+         * The balance of an account was set to a new value, recorded as the (positive or negative) amount it
+         * added: like transfers, it is then replayed as an addition, whatever the order in which it reached the
+         * journal relative to the transfers of the account.
+         */
+        BALANCE_ADJUSTED,
+
+        /**
+         * A completed transfer replayed from the history, whose amounts are already in the balances of the
+         * snapshot: it is only recorded. Never written to a segment (see {@link #toArchived()}).
+         */
+        TRANSFER_ARCHIVED
+    }
+
+    private static final Type[] TYPES = Type.values();
+
+    private final Type type;
+
+    /**
+     * ID of the account or of the transfer.
+     */
+    private final UUID id;
+
+    private final String user;
+
+    private final Currency currency;
+
+    /**
+     * Balance of the account or amount of the transfer.
+     */
+    private final BigDecimal amount;
+
+    private final UUID sourceID;
+
+    private final UUID destinationID;
+
+    private final long timestamp;
+
+    /**
+     * Converted amount of a transfer between accounts of different currencies, or <code>null</code>.
+     */
+    private final BigDecimal destinationAmount;
+
+    private final long rateVersion;
+
+    private JournalRecord(Type type, UUID id, String user, Currency currency, BigDecimal amount,
+                          UUID sourceID, UUID destinationID, long timestamp) {
+        this(type, id, user, currency, amount, sourceID, destinationID, timestamp, null, 0);
+    }
+
+    private JournalRecord(Type type, UUID id, String user, Currency currency, BigDecimal amount,
+                          UUID sourceID, UUID destinationID, long timestamp, BigDecimal destinationAmount,
+                          long rateVersion) {
+        this.type = type;
+        this.id = id;
+        this.user = user;
+        this.currency = currency;
+        this.amount = amount;
+        this.sourceID = sourceID;
+        this.destinationID = destinationID;
+        this.timestamp = timestamp;
+        this.destinationAmount = destinationAmount;
+        this.rateVersion = rateVersion;
+    }
+
+    /**
+     * Create the record of a newly created account.
+     *
+     * @param account the account
+     * @return the record
+     */
+    public static JournalRecord accountCreated(Account account) {
+        return accountCreated(account.id, account.getUser(), account.getCurrency(), account.getBalance());
+    }
+
+    /**
+     * Create the record of an account with a given balance.
+     *
+     * @param id the ID of the account
+     * @param user the user of the account
+     * @param currency the currency of the account
+     * @param balance the balance of the account
+     * @return the record
+     */
+    public static JournalRecord accountCreated(UUID id, String user, Currency currency, BigDecimal balance) {
+        return new JournalRecord(Type.ACCOUNT_CREATED, id, user, currency, balance, null, null, 0);
+    }
+
+    /**
+     * Create the record of an account whose balance was set.
+     *
+     * @param id the ID of the account
+     * @param balance the new balance
+     * @return the record
+     */
+    public static JournalRecord balanceSet(UUID id, BigDecimal balance) {
+        return new JournalRecord(Type.BALANCE_SET, id, null, null, balance, null, null, 0);
+    }
+
+    /**
+     * Create the record of an account whose balance was set, as the amount the new balance added.
+     *
+     * @param id the ID of the account
+     * @param delta the new balance minus the previous one
+     * @return the record
+     */
+    public static JournalRecord balanceAdjusted(UUID id, BigDecimal delta) {
+        return new JournalRecord(Type.BALANCE_ADJUSTED, id, null, null, delta, null, null, 0);
+    }
+
+    /**
+     * Create the record of a deleted account.
+     *
+     * @param id the ID of the account
+     * @return the record
+     */
+    public static JournalRecord accountDeleted(UUID id) {
+        return new JournalRecord(Type.ACCOUNT_DELETED, id, null, null, null, null, null, 0);
+    }
+
+    /**
+     * Create the record of a completed transfer ({@link Type#TRANSFER_CONVERTED} if its amount was converted).
+     *
+     * @param transfer the recorded transfer
+     * @return the record
+     */
+    public static JournalRecord transfer(TransferRecord transfer) {
+        if (transfer.getRateVersion() != 0) {
+            return new JournalRecord(Type.TRANSFER_CONVERTED, transfer.id, null, null, transfer.getAmount(),
+                    transfer.getSourceID(), transfer.getDestinationID(), transfer.getTimestamp(),
+                    transfer.getDestinationAmount(), transfer.getRateVersion());
+        }
+
+        return new JournalRecord(Type.TRANSFER, transfer.id, null, null, transfer.getAmount(),
+                transfer.getSourceID(), transfer.getDestinationID(), transfer.getTimestamp());
+    }
+
+    /**
+     * Create the record of a step of a transfer between accounts of two nodes.
+     *
+     * @param type the step (one of the <code>TRANSFER_*</code> types but {@link Type#TRANSFER_FORGOTTEN})
+     * @param id the ID of the transfer
+     * @param sourceID the ID of the source account
+     * @param destinationID the ID of the destination account
+     * @param amount the amount of the transfer
+     * @param timestamp the time the transfer was reserved at (milliseconds since the epoch)
+     * @return the record
+     */
+    public static JournalRecord transfer(Type type, UUID id, UUID sourceID, UUID destinationID, BigDecimal amount,
+                                         long timestamp) {
+        return new JournalRecord(type, id, null, null, amount, sourceID, destinationID, timestamp);
+    }
+
+    /**
+     * Create the record of a committed transfer which no longer needs to be remembered.
+     *
+     * @param id the ID of the transfer
+     * @return the record
+     */
+    public static JournalRecord transferForgotten(UUID id) {
+        return new JournalRecord(Type.TRANSFER_FORGOTTEN, id, null, null, null, null, null, 0);
+    }
+
+    /**
+     * Get the record of the transfer this record completed, as replayed from the history.
+     *
+     * @return a {@link Type#TRANSFER_ARCHIVED} record, or <code>null</code> if this record did not complete a
+     * transfer
+     */
+    public JournalRecord toArchived() {
+        switch (type) {
+            case TRANSFER:
+            case TRANSFER_CONVERTED:
+            case TRANSFER_SETTLED:
+            case TRANSFER_COMMITTED:
+                return new JournalRecord(Type.TRANSFER_ARCHIVED, id, null, null, amount, sourceID, destinationID,
+                        timestamp, getDestinationAmount(), rateVersion);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Get the kind of mutation.
+     *
+     * @return the kind of mutation
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Get the ID of the account or of the transfer.
+     *
+     * @return the ID of the account or of the transfer
+     */
+    public UUID getID() {
+        return id;
+    }
+
+    /**
+     * Get the user of a created account.
+     *
+     * @return the user, or <code>null</code> for other mutations
+     */
+    public String getUser() {
+        return user;
+    }
+
+    /**
+     * Get the currency of a created account.
+     *
+     * @return the currency, or <code>null</code> for other mutations
+     */
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    /**
+     * Get the balance of the account or the amount of the transfer.
+     *
+     * @return the balance or amount, or <code>null</code> for deleted accounts
+     */
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    /**
+     * Get the ID of the source account of a transfer.
+     *
+     * @return the ID of the source account, or <code>null</code> for other mutations
+     */
+    public UUID getSourceID() {
+        return sourceID;
+    }
+
+    /**
+     * Get the ID of the destination account of a transfer.
+     *
+     * @return the ID of the destination account, or <code>null</code> for other mutations
+     */
+    public UUID getDestinationID() {
+        return destinationID;
+    }
+
+    /**
+     * Get the time a transfer was recorded at.
+     *
+     * @return the time the transfer was recorded at (milliseconds since the epoch)
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Get the amount a transfer put into its destination account.
+     *
+     * @return the converted amount of a {@link Type#TRANSFER_CONVERTED} record, or else the amount
+     */
+    public BigDecimal getDestinationAmount() {
+        return destinationAmount != null ? destinationAmount : amount;
+    }
+
+    /**
+     * Get the version of the exchange rates the amount of a transfer was converted with.
+     *
+     * @return the version, or <code>0</code> unless the record is a {@link Type#TRANSFER_CONVERTED} one
+     */
+    public long getRateVersion() {
+        return rateVersion;
+    }
+
+    /**
+     * Write the record to a buffer.
+     *
+     * @param buffer the buffer, which must have at least {@link #maxSize()} bytes remaining
+     */
+    public void encode(ByteBuffer buffer) {
+        buffer.put((byte) type.ordinal());
+        putUUID(buffer, id);
+
+        switch (type) {
+            case ACCOUNT_CREATED:
+                putString(buffer, user);
+                putString(buffer, currency.getCurrencyCode());
+                putDecimal(buffer, amount);
+                break;
+            case BALANCE_SET:
+            case BALANCE_ADJUSTED:
+                putDecimal(buffer, amount);
+                break;
+            case TRANSFER:
+            case TRANSFER_RESERVED:
+            case TRANSFER_COMMITTED:
+            case TRANSFER_SETTLED:
+            case TRANSFER_CANCELLED:
+                putUUID(buffer, sourceID);
+                putUUID(buffer, destinationID);
+                putDecimal(buffer, amount);
+                buffer.putLong(timestamp);
+                break;
+            case TRANSFER_CONVERTED:
+            case TRANSFER_ARCHIVED:
+                putUUID(buffer, sourceID);
+                putUUID(buffer, destinationID);
+                putDecimal(buffer, amount);
+                buffer.putLong(timestamp);
+                putDecimal(buffer, destinationAmount);
+                buffer.putLong(rateVersion);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Get an upper bound of the encoded size of the record.
+     *
+     * @return an upper bound of the encoded size in bytes
+     */
+    public int maxSize() {
+        int size = 1 + 16 + 8 + 32;
+
+        if (user != null) {
+            size += 4 + user.length() * 3 + 4 + 3 * 3;
+        }
+
+        if (amount != null) {
+            size += 8 + amount.unscaledValue().bitLength() / 8 + 1;
+        }
+
+        if (destinationAmount != null) {
+            size += 8 + destinationAmount.unscaledValue().bitLength() / 8 + 1 + 8;
+        }
+
+        return size;
+    }
+
+    /**
+     * Read a record from a buffer.
+     *
+     * @param buffer the buffer
+     * @return the record
+     * @throws IllegalArgumentException if the buffer does not hold a valid record
+     */
+    public static JournalRecord decode(ByteBuffer buffer) {
+        try {
+            Type type = TYPES[buffer.get()];
+            UUID id = getUUID(buffer);
+
+            switch (type) {
+                case ACCOUNT_CREATED:
+                    String user = getString(buffer);
+                    Currency currency = Currency.getInstance(getString(buffer));
+                    return new JournalRecord(type, id, user, currency, getDecimal(buffer), null, null, 0);
+                case BALANCE_SET:
+                case BALANCE_ADJUSTED:
+                    return new JournalRecord(type, id, null, null, getDecimal(buffer), null, null, 0);
+                case TRANSFER:
+                case TRANSFER_RESERVED:
+                case TRANSFER_COMMITTED:
+                case TRANSFER_SETTLED:
+                case TRANSFER_CANCELLED:
+                    UUID sourceID = getUUID(buffer);
+                    UUID destinationID = getUUID(buffer);
+                    BigDecimal amount = getDecimal(buffer);
+                    return new JournalRecord(type, id, null, null, amount, sourceID, destinationID, buffer.getLong());
+                case TRANSFER_CONVERTED:
+                case TRANSFER_ARCHIVED:
+                    UUID convertedSourceID = getUUID(buffer);
+                    UUID convertedDestinationID = getUUID(buffer);
+                    BigDecimal debited = getDecimal(buffer);
+                    long timestamp = buffer.getLong();
+                    return new JournalRecord(type, id, null, null, debited, convertedSourceID, convertedDestinationID,
+                            timestamp, getDecimal(buffer), buffer.getLong());
+                default:
+                    return new JournalRecord(type, id, null, null, null, null, null, 0);
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid journal record", e);
+        }
+    }
+
+    private static void putUUID(ByteBuffer buffer, UUID id) {
+        buffer.putLong(id.getMostSignificantBits());
+        buffer.putLong(id.getLeastSignificantBits());
+    }
+
+    private static UUID getUUID(ByteBuffer buffer) {
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putDecimal(ByteBuffer buffer, BigDecimal value) {
+        byte[] unscaled = value.unscaledValue().toByteArray();
+        buffer.putInt(value.scale());
+        buffer.putInt(unscaled.length);
+        buffer.put(unscaled);
+    }
+
+    private static BigDecimal getDecimal(ByteBuffer buffer) {
+        int scale = buffer.getInt();
+        byte[] unscaled = new byte[buffer.getInt()];
+        buffer.get(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        JournalRecord that = (JournalRecord) o;
+        return timestamp == that.timestamp &&
+                rateVersion == that.rateVersion &&
+                type == that.type &&
+                Objects.equals(id, that.id) &&
+                Objects.equals(user, that.user) &&
+                Objects.equals(currency, that.currency) &&
+                Objects.equals(amount, that.amount) &&
+                Objects.equals(sourceID, that.sourceID) &&
+                Objects.equals(destinationID, that.destinationID) &&
+                Objects.equals(destinationAmount, that.destinationAmount);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, id, user, currency, amount, sourceID, destinationID, timestamp, destinationAmount,
+                rateVersion);
+    }
+
+    @Override
+    public String toString() {
+        return "JournalRecord{" +
+                "type=" + type +
+                ", id=" + id +
+                ", user='" + user + '\'' +
+                ", currency=" + currency +
+                ", amount=" + amount +
+                ", source=" + sourceID +
+                ", destination=" + destinationID +
+                ", timestamp=" + timestamp +
+                ", destinationAmount=" + destinationAmount +
+                ", rateVersion=" + rateVersion +
+                '}';
+    }
+}
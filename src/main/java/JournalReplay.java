@@ -0,0 +1,177 @@
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Rebuilds the data store from the records of a {@link Journal}.
+ *
+ * Transfers and balance updates are folded into the balances as plain additions, so the final balances do not
+ * depend on the order in which concurrent changes of the same account reached the journal.
+ *
+ * The transfers between nodes (see {@link ClusterLedger}) which are reserved but not yet settled or cancelled,
+ * and those committed but not yet forgotten, are kept apart so their protocol can resume after a restart.
+ */
+public class JournalReplay implements Consumer<JournalRecord> {
+
+    /**
+     * The creation records of the live accounts, in creation order.
+     */
+    private final Map<UUID, JournalRecord> created = new LinkedHashMap<>();
+
+    private final Map<UUID, BigDecimal> balances = new HashMap<>();
+
+    /**
+     * The reservations of transfers to other nodes which are neither settled nor cancelled.
+     */
+    private final Map<UUID, JournalRecord> reserved = new LinkedHashMap<>();
+
+    /**
+     * The commits of transfers from other nodes which are not forgotten.
+     */
+    private final Map<UUID, JournalRecord> committed = new LinkedHashMap<>();
+
+    /**
+     * Receives the replayed transfers; <code>null</code> when only the accounts are rebuilt.
+     */
+    private final TransferLog transfers;
+
+    public JournalReplay(TransferLog transfers) {
+        this.transfers = transfers;
+    }
+
+    @Override
+    public void accept(JournalRecord record) {
+        switch (record.getType()) {
+            case ACCOUNT_CREATED:
+                created.put(record.getID(), record);
+                balances.put(record.getID(), record.getAmount());
+                break;
+            case BALANCE_SET:
+                balances.computeIfPresent(record.getID(), (id, balance) -> record.getAmount());
+                break;
+            case BALANCE_ADJUSTED:
+                balances.computeIfPresent(record.getID(), (id, balance) -> balance.add(record.getAmount()));
+                break;
+            case ACCOUNT_DELETED:
+                created.remove(record.getID());
+                balances.remove(record.getID());
+                break;
+            case TRANSFER:
+            case TRANSFER_CONVERTED:
+                balances.computeIfPresent(record.getSourceID(), (id, balance) -> balance.subtract(record.getAmount()));
+                balances.computeIfPresent(record.getDestinationID(),
+                        (id, balance) -> balance.add(record.getDestinationAmount()));
+
+                append(record);
+                break;
+            case TRANSFER_RESERVED:
+                balances.computeIfPresent(record.getSourceID(), (id, balance) -> balance.subtract(record.getAmount()));
+                reserved.put(record.getID(), record);
+                break;
+            case TRANSFER_SETTLED:
+                if (reserved.remove(record.getID()) != null) {
+                    append(record);
+                }
+                break;
+            case TRANSFER_CANCELLED:
+                if (reserved.remove(record.getID()) != null) {
+                    balances.computeIfPresent(record.getSourceID(), (id, balance) -> balance.add(record.getAmount()));
+                }
+                break;
+            case TRANSFER_COMMITTED:
+                balances.computeIfPresent(record.getDestinationID(), (id, balance) -> balance.add(record.getAmount()));
+                committed.put(record.getID(), record);
+                append(record);
+                break;
+            case TRANSFER_FORGOTTEN:
+                committed.remove(record.getID());
+                break;
+            case TRANSFER_ARCHIVED:
+                append(record);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void append(JournalRecord record) {
+        if (transfers != null && transfers.find(record.getID()) < 0) {
+            transfers.append(record.getID(), record.getSourceID(), record.getDestinationID(), record.getAmount(),
+                    record.getDestinationAmount(), record.getRateVersion(), record.getTimestamp(),
+                    TransferStatus.COMPLETED);
+        }
+    }
+
+    /**
+     * Get the replayed accounts as of the last record, as written to a {@link JournalSnapshot}.
+     *
+     * @return the creation record of each live account, carrying its balance before the reserved and committed
+     * transfers between nodes, followed by the records of these transfers (which bring the balances up to date)
+     */
+    public List<JournalRecord> snapshot() {
+        Map<UUID, BigDecimal> unfolded = new HashMap<>(balances);
+
+        for (JournalRecord record : reserved.values()) {
+            unfolded.computeIfPresent(record.getSourceID(), (id, balance) -> balance.add(record.getAmount()));
+        }
+
+        for (JournalRecord record : committed.values()) {
+            unfolded.computeIfPresent(record.getDestinationID(), (id, balance) -> balance.subtract(record.getAmount()));
+        }
+
+        List<JournalRecord> records = new ArrayList<>(created.size() + reserved.size() + committed.size());
+
+        for (JournalRecord record : created.values()) {
+            records.add(JournalRecord.accountCreated(record.getID(), record.getUser(), record.getCurrency(),
+                    unfolded.get(record.getID())));
+        }
+
+        records.addAll(reserved.values());
+        records.addAll(committed.values());
+
+        return records;
+    }
+
+    /**
+     * Get the reservations of transfers to other nodes which are neither settled nor cancelled.
+     *
+     * @return the {@link JournalRecord.Type#TRANSFER_RESERVED} records, in order
+     */
+    public Collection<JournalRecord> getReserved() {
+        return reserved.values();
+    }
+
+    /**
+     * Get the commits of transfers from other nodes which are not forgotten.
+     *
+     * @return the {@link JournalRecord.Type#TRANSFER_COMMITTED} records, in order
+     */
+    public Collection<JournalRecord> getCommitted() {
+        return committed.values();
+    }
+
+    /**
+     * Create the replayed accounts.
+     *
+     * @param accounts receives the accounts
+     * @param mode the balance representation of the accounts
+     * @throws IllegalStateException if an account ends up with a negative balance
+     */
+    public void restore(Map<UUID, Account> accounts, Balance.Mode mode) {
+        for (JournalRecord record : created.values()) {
+            BigDecimal balance = balances.get(record.getID());
+
+            if (balance.signum() < 0) {
+                throw new IllegalStateException("Account " + record.getID() + " has a negative balance in the journal");
+            }
+
+            accounts.put(record.getID(), new Account(record.getID(), record.getUser(), record.getCurrency(), balance, mode));
+        }
+    }
+}
@@ -0,0 +1,171 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Snapshot of the account table, standing for every journal segment up to a given one.
+ *
+ * A snapshot is a header (<code>[magic][version][segment][count]</code>), one length-prefixed
+ * {@link JournalRecord.Type#ACCOUNT_CREATED} record per account carrying its balance, the records of the
+ * transfers between nodes still in progress (see {@link JournalReplay#snapshot()}), and a CRC32 of all
+ * of the above. It is written to a temporary file, synced, then renamed, so a snapshot file is always complete.
+ */
+public class JournalSnapshot {
+
+    private static final int MAGIC = 0x4D54534E;
+
+    private static final int VERSION = 1;
+
+    private static final String PREFIX = "snapshot-";
+
+    private static final String SUFFIX = ".bin";
+
+    private JournalSnapshot() {
+
+    }
+
+    /**
+     * Read the latest snapshot of a journal directory.
+     *
+     * @param directory the journal directory
+     * @param replay receives the records of the snapshot
+     * @return the last segment covered by the snapshot, or <code>0</code> if there is no snapshot
+     * @throws IOException if the snapshot cannot be read or is corrupted
+     */
+    public static long read(Path directory, Consumer<JournalRecord> replay) throws IOException {
+        List<Long> segments = list(directory);
+
+        if (segments.isEmpty()) {
+            return 0;
+        }
+
+        long segment = segments.get(segments.size() - 1);
+        Path file = file(directory, segment);
+        CRC32 crc = new CRC32();
+
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), 64 * 1024)) {
+            DataInputStream data = new DataInputStream(new CheckedInputStream(in, crc));
+
+            if (data.readInt() != MAGIC || data.readInt() != VERSION || data.readLong() != segment) {
+                throw new IOException("Invalid snapshot header in " + file);
+            }
+
+            int count = data.readInt();
+            List<JournalRecord> records = new ArrayList<>(count);
+            byte[] bytes = new byte[256];
+
+            for (int i = 0; i < count; i++) {
+                int length = data.readInt();
+
+                if (bytes.length < length) {
+                    bytes = new byte[length];
+                }
+
+                data.readFully(bytes, 0, length);
+
+                try {
+                    records.add(JournalRecord.decode(ByteBuffer.wrap(bytes, 0, length)));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Invalid snapshot record in " + file, e);
+                }
+            }
+
+            int checksum = (int) crc.getValue();
+
+            if (new DataInputStream(in).readInt() != checksum) {
+                throw new IOException("Invalid snapshot checksum in " + file);
+            }
+
+            records.forEach(replay);
+        }
+
+        return segment;
+    }
+
+    /**
+     * Write a snapshot and delete the snapshots it supersedes.
+     *
+     * @param directory the journal directory
+     * @param segment the last segment covered by the snapshot
+     * @param accounts the account records (see {@link JournalReplay#snapshot()})
+     * @throws IOException if the snapshot cannot be written
+     */
+    public static void write(Path directory, long segment, Collection<JournalRecord> accounts) throws IOException {
+        Path file = file(directory, segment);
+        Path temporary = directory.resolve(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporary), 64 * 1024)) {
+            DataOutputStream data = new DataOutputStream(new CheckedOutputStream(out, crc));
+            ByteBuffer buffer = ByteBuffer.allocate(256);
+
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeLong(segment);
+            data.writeInt(accounts.size());
+
+            for (JournalRecord record : accounts) {
+                if (buffer.capacity() < record.maxSize()) {
+                    buffer = ByteBuffer.allocate(record.maxSize());
+                }
+
+                buffer.clear();
+                record.encode(buffer);
+                data.writeInt(buffer.position());
+                data.write(buffer.array(), 0, buffer.position());
+            }
+
+            data.flush();
+            new DataOutputStream(out).writeInt((int) crc.getValue());
+        }
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+
+        for (long older : list(directory)) {
+            if (older < segment) {
+                Files.delete(file(directory, older));
+            }
+        }
+    }
+
+    private static Path file(Path directory, long segment) {
+        return directory.resolve(String.format("%s%020d%s", PREFIX, segment, SUFFIX));
+    }
+
+    private static List<Long> list(Path directory) throws IOException {
+        List<Long> segments = new ArrayList<>();
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                segments.add(Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+            }
+        }
+
+        Collections.sort(segments);
+        return segments;
+    }
+}
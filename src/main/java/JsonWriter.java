@@ -0,0 +1,313 @@
+import io.vertx.core.buffer.Buffer;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.UUID;
+
+/**
+ * Writes the JSON representation of accounts, transfers, batch results and hot accounts as UTF-8 straight into a
+ * {@link Buffer}, without reflection and without building an intermediate <code>String</code>.
+ *
+ * Balances are read through the account's accessors; lock-free balances are written from their minor
+ * units without creating a <code>BigDecimal</code>.
+ */
+public class JsonWriter {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    /**
+     * The initial capacity of the buffer of a single object.
+     */
+    private static final int OBJECT_SIZE = 256;
+
+    private JsonWriter() {
+
+    }
+
+    /**
+     * Write a value to a new buffer.
+     *
+     * @param value an account, a transfer, a batch result, a hot account or an iterable of those
+     * @return the buffer
+     * @throws IllegalArgumentException if the value cannot be written
+     */
+    public static Buffer toBuffer(Object value) {
+        int count = value instanceof Collection ? ((Collection<?>) value).size() + 1 : 1;
+        Buffer buffer = Buffer.buffer(OBJECT_SIZE * count);
+        write(buffer, value);
+        return buffer;
+    }
+
+    /**
+     * Append a value to a buffer.
+     *
+     * @param buffer the buffer
+     * @param value an account, a transfer, a batch result, a hot account or an iterable of those
+     * @throws IllegalArgumentException if the value cannot be written
+     */
+    public static void write(Buffer buffer, Object value) {
+        if (value instanceof Account) {
+            writeAccount(buffer, (Account) value);
+        } else if (value instanceof TransferRecord) {
+            writeTransfer(buffer, (TransferRecord) value);
+        } else if (value instanceof TransferBatch.Result) {
+            writeResult(buffer, (TransferBatch.Result) value);
+        } else if (value instanceof ContentionSketch.HotAccount) {
+            writeHotAccount(buffer, (ContentionSketch.HotAccount) value);
+        } else if (value instanceof Iterable) {
+            writeArray(buffer, ((Iterable<?>) value).iterator());
+        } else {
+            throw new IllegalArgumentException("Cannot write " + (value == null ? "null" : value.getClass().getName()));
+        }
+    }
+
+    private static void writeArray(Buffer buffer, Iterator<?> values) {
+        buffer.appendByte((byte) '[');
+
+        while (values.hasNext()) {
+            write(buffer, values.next());
+
+            if (values.hasNext()) {
+                buffer.appendByte((byte) ',');
+            }
+        }
+
+        buffer.appendByte((byte) ']');
+    }
+
+    private static void writeAccount(Buffer buffer, Account account) {
+        buffer.appendByte((byte) '{');
+        writeName(buffer, "id");
+        writeUUID(buffer, account.id);
+        buffer.appendByte((byte) ',');
+        writeName(buffer, "user");
+        writeString(buffer, account.getUser());
+        buffer.appendByte((byte) ',');
+        writeName(buffer, "currency");
+        writeString(buffer, account.getCurrency().getCurrencyCode());
+        buffer.appendByte((byte) ',');
+        writeName(buffer, "balance");
+
+        Balance balance = account.getBalanceHolder();
+
+        if (balance instanceof FixedPointBalance) {
+            FixedPointBalance fixedPoint = (FixedPointBalance) balance;
+            writeDecimal(buffer, fixedPoint.getUnits(), fixedPoint.getScale());
+        } else {
+            writeDecimal(buffer, account.getBalance());
+        }
+
+        buffer.appendByte((byte) '}');
+    }
+
+    private static void writeTransfer(Buffer buffer, TransferRecord record) {
+        buffer.appendByte((byte) '{');
+        writeName(buffer, "id");
+        writeUUID(buffer, record.id);
+        buffer.appendByte((byte) ',');
+        writeName(buffer, "source-id");
+        writeUUID(buffer, record.getSourceID());
+        buffer.appendByte((byte) ',');
+        writeName(buffer, "dest-id");
+        writeUUID(buffer, record.getDestinationID());
+        buffer.appendByte((byte) ',');
+        writeName(buffer, "amount");
+        writeDecimal(buffer, record.getAmount());
+
+        if (record.getRateVersion() != 0) {
+            buffer.appendByte((byte) ',');
+            writeName(buffer, "dest-amount");
+            writeDecimal(buffer, record.getDestinationAmount());
+            buffer.appendByte((byte) ',');
+            writeName(buffer, "rate-version");
+            writeLong(buffer, record.getRateVersion());
+        }
+
+        buffer.appendByte((byte) ',');
+        writeName(buffer, "timestamp");
+        writeLong(buffer, record.getTimestamp());
+        buffer.appendByte((byte) ',');
+        writeName(buffer, "status");
+        writeString(buffer, record.getStatus().getName());
+
+        if (record.getSource() != null) {
+            buffer.appendByte((byte) ',');
+            writeName(buffer, "source");
+            writeAccount(buffer, record.getSource());
+        }
+
+        if (record.getDestination() != null) {
+            buffer.appendByte((byte) ',');
+            writeName(buffer, "destination");
+            writeAccount(buffer, record.getDestination());
+        }
+
+        buffer.appendByte((byte) '}');
+    }
+
+    private static void writeResult(Buffer buffer, TransferBatch.Result result) {
+        buffer.appendByte((byte) '{');
+        writeName(buffer, "status");
+        writeString(buffer, result.getStatus().getName());
+
+        if (result.getRecord() != null) {
+            buffer.appendByte((byte) ',');
+            writeName(buffer, "transfer");
+            writeTransfer(buffer, result.getRecord());
+        }
+
+        buffer.appendByte((byte) '}');
+    }
+
+    private static void writeHotAccount(Buffer buffer, ContentionSketch.HotAccount account) {
+        buffer.appendByte((byte) '{');
+        writeName(buffer, "id");
+        writeUUID(buffer, account.getID());
+        buffer.appendByte((byte) ',');
+        writeName(buffer, "contended");
+        writeLong(buffer, account.getContended());
+        buffer.appendByte((byte) ',');
+        writeName(buffer, "error");
+        writeLong(buffer, account.getError());
+        buffer.appendByte((byte) ',');
+        writeName(buffer, "wait-ms");
+        writeDecimal(buffer, account.getWaitNanos() / 1000, 3);
+        buffer.appendByte((byte) ',');
+        writeName(buffer, "timeouts");
+        writeLong(buffer, account.getTimeouts());
+        buffer.appendByte((byte) '}');
+    }
+
+    private static void writeName(Buffer buffer, String name) {
+        writeString(buffer, name);
+        buffer.appendByte((byte) ':');
+    }
+
+    /**
+     * Write a string, escaping what JSON requires and encoding the rest as UTF-8.
+     */
+    static void writeString(Buffer buffer, String value) {
+        buffer.appendByte((byte) '"');
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c == '"' || c == '\\') {
+                buffer.appendByte((byte) '\\').appendByte((byte) c);
+            } else if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+                buffer.appendByte((byte) '\\').appendByte((byte) 'u')
+                        .appendByte(HEX[c >>> 12]).appendByte(HEX[(c >>> 8) & 0xF])
+                        .appendByte(HEX[(c >>> 4) & 0xF]).appendByte(HEX[c & 0xF]);
+            } else if (c < 0x80) {
+                buffer.appendByte((byte) c);
+            } else if (c < 0x800) {
+                buffer.appendByte((byte) (0xC0 | c >>> 6))
+                        .appendByte((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.appendByte((byte) (0xF0 | codePoint >>> 18))
+                        .appendByte((byte) (0x80 | (codePoint >>> 12) & 0x3F))
+                        .appendByte((byte) (0x80 | (codePoint >>> 6) & 0x3F))
+                        .appendByte((byte) (0x80 | codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer.appendByte((byte) '?');
+            } else {
+                buffer.appendByte((byte) (0xE0 | c >>> 12))
+                        .appendByte((byte) (0x80 | (c >>> 6) & 0x3F))
+                        .appendByte((byte) (0x80 | c & 0x3F));
+            }
+        }
+
+        buffer.appendByte((byte) '"');
+    }
+
+    static void writeUUID(Buffer buffer, UUID id) {
+        buffer.appendByte((byte) '"');
+        writeHex(buffer, id.getMostSignificantBits() >>> 32, 8);
+        buffer.appendByte((byte) '-');
+        writeHex(buffer, id.getMostSignificantBits() >>> 16, 4);
+        buffer.appendByte((byte) '-');
+        writeHex(buffer, id.getMostSignificantBits(), 4);
+        buffer.appendByte((byte) '-');
+        writeHex(buffer, id.getLeastSignificantBits() >>> 48, 4);
+        buffer.appendByte((byte) '-');
+        writeHex(buffer, id.getLeastSignificantBits(), 12);
+        buffer.appendByte((byte) '"');
+    }
+
+    private static void writeHex(Buffer buffer, long value, int digits) {
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            buffer.appendByte(HEX[(int) (value >>> shift) & 0xF]);
+        }
+    }
+
+    static void writeLong(Buffer buffer, long value) {
+        if (value == Long.MIN_VALUE) {
+            writeAscii(buffer, Long.toString(value));
+            return;
+        }
+
+        if (value < 0) {
+            buffer.appendByte((byte) '-');
+            value = -value;
+        }
+
+        long divisor = 1;
+
+        while (divisor <= value / 10) {
+            divisor *= 10;
+        }
+
+        for (; divisor > 0; divisor /= 10) {
+            buffer.appendByte((byte) ('0' + value / divisor % 10));
+        }
+    }
+
+    /**
+     * Write a decimal given as an unscaled value and a (small, non-negative) scale in plain notation, which
+     * is what <code>BigDecimal.toString()</code> gives for such values.
+     */
+    static void writeDecimal(Buffer buffer, long unscaled, int scale) {
+        if (scale == 0) {
+            writeLong(buffer, unscaled);
+            return;
+        }
+
+        if (unscaled == Long.MIN_VALUE) {
+            writeDecimal(buffer, BigDecimal.valueOf(unscaled, scale));
+            return;
+        }
+
+        if (unscaled < 0) {
+            buffer.appendByte((byte) '-');
+            unscaled = -unscaled;
+        }
+
+        long factor = 1;
+
+        for (int i = 0; i < scale; i++) {
+            factor *= 10;
+        }
+
+        writeLong(buffer, unscaled / factor);
+        buffer.appendByte((byte) '.');
+
+        long fraction = unscaled % factor;
+
+        for (long digit = factor / 10; digit > 0; digit /= 10) {
+            buffer.appendByte((byte) ('0' + fraction / digit % 10));
+        }
+    }
+
+    private static void writeDecimal(Buffer buffer, BigDecimal value) {
+        writeAscii(buffer, value.toString());
+    }
+
+    private static void writeAscii(Buffer buffer, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            buffer.appendByte((byte) value.charAt(i));
+        }
+    }
+}
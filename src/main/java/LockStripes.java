@@ -0,0 +1,88 @@
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed pool of locks shared by the accounts with <code>decimal</code> balances, instead of a lock for each of
+ * them: an account is guarded by the stripe given by the top bits of a hash of its ID. Accounts sharing a stripe
+ * are then serialized together, which only matters for the few accounts contended at the same time.
+ *
+ * A transfer takes the stripes of its two accounts in the order of their indexes (and one stripe only if both
+ * accounts share it), so that two transfers never each hold a stripe the other waits for.
+ */
+public class LockStripes {
+
+    /**
+     * A lock of the pool, which knows its place in the order the stripes are taken in.
+     */
+    public static class Stripe extends ReentrantLock {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The index of the stripe in the pool.
+         */
+        public final int index;
+
+        Stripe(int index) {
+            this.index = index;
+        }
+    }
+
+    private final Stripe[] stripes;
+
+    /**
+     * The number of bits of the hash dropped to get the index of a stripe.
+     */
+    private final int shift;
+
+    /**
+     * Create a pool of locks.
+     *
+     * @param count the number of stripes, a power of two
+     * @throws IllegalArgumentException if count is not a positive power of two
+     */
+    public LockStripes(int count) {
+        if (count <= 0 || Integer.bitCount(count) != 1) {
+            throw new IllegalArgumentException("The number of lock stripes must be a power of two");
+        }
+
+        stripes = new Stripe[count];
+
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe(i);
+        }
+
+        shift = Long.SIZE - Integer.numberOfTrailingZeros(count);
+    }
+
+    /**
+     * Get the stripe guarding an account.
+     *
+     * @param id the ID of the account
+     * @return the stripe
+     */
+    public Stripe get(UUID id) {
+        return stripes[indexOf(id)];
+    }
+
+    /**
+     * Get the index of the stripe guarding an account.
+     *
+     * @param id the ID of the account
+     * @return the index, between <code>0</code> and the number of stripes
+     */
+    public int indexOf(UUID id) {
+        // A shift by 64 is a shift by 0, hence the mask for a single stripe
+        long hash = IdGenerator.hash(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        return (int) (hash >>> shift) & (stripes.length - 1);
+    }
+
+    /**
+     * Get the number of stripes.
+     *
+     * @return the number of stripes
+     */
+    public int size() {
+        return stripes.length;
+    }
+}
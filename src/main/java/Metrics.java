@@ -0,0 +1,284 @@
+import io.vertx.core.buffer.Buffer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Operational metrics of the service, exposed in the Prometheus text format by <code>GET /metrics</code>.
+ *
+ * Metrics are meant to be left on in production: counters are {@link LongAdder}s and histograms have fixed
+ * buckets of them, so recording a value takes no lock and allocates nothing. The text is only built when
+ * the metrics are scraped.
+ */
+public class Metrics {
+
+    /**
+     * A histogram of durations with fixed buckets, from 50 microseconds to 10 seconds.
+     */
+    public static class Histogram {
+
+        private static final long[] BOUNDS = {
+                50_000L, 100_000L, 250_000L, 500_000L,
+                1_000_000L, 2_500_000L, 5_000_000L, 10_000_000L, 25_000_000L, 50_000_000L,
+                100_000_000L, 250_000_000L, 500_000_000L,
+                1_000_000_000L, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L};
+
+        private static final String[] LABELS = {
+                "0.00005", "0.0001", "0.00025", "0.0005",
+                "0.001", "0.0025", "0.005", "0.01", "0.025", "0.05",
+                "0.1", "0.25", "0.5",
+                "1", "2.5", "5", "10", "+Inf"};
+
+        /**
+         * The number of values of each bucket (not cumulative), the last one being for values above all bounds.
+         */
+        private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+
+        private final LongAdder sum = new LongAdder();
+
+        public Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Record a duration.
+         *
+         * @param nanos the duration in nanoseconds
+         */
+        public void record(long nanos) {
+            int bucket = 0;
+
+            while (bucket < BOUNDS.length && nanos > BOUNDS[bucket]) {
+                bucket++;
+            }
+
+            buckets[bucket].increment();
+            sum.add(nanos);
+        }
+
+        /**
+         * Get the number of durations recorded.
+         *
+         * @return the number of durations
+         */
+        public long getCount() {
+            long count = 0;
+
+            for (LongAdder bucket : buckets) {
+                count += bucket.sum();
+            }
+
+            return count;
+        }
+
+        private void write(StringBuilder out, String name, String labels) {
+            String separator = labels.isEmpty() ? "" : ",";
+            long cumulative = 0;
+
+            for (int i = 0; i < buckets.length; i++) {
+                cumulative += buckets[i].sum();
+                out.append(name).append("_bucket{").append(labels).append(separator)
+                        .append("le=\"").append(LABELS[i]).append("\"} ").append(cumulative).append('\n');
+            }
+
+            String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+            out.append(name).append("_sum").append(braces).append(' ').append(seconds(sum.sum())).append('\n');
+            out.append(name).append("_count").append(braces).append(' ').append(cumulative).append('\n');
+        }
+    }
+
+    /**
+     * The requests handled by a route.
+     */
+    public static class Route {
+
+        private static final String[] STATUS_CLASSES = {"1xx", "2xx", "3xx", "4xx", "5xx"};
+
+        private final String labels;
+
+        private final Histogram duration = new Histogram();
+
+        private final LongAdder[] statuses = new LongAdder[STATUS_CLASSES.length];
+
+        private Route(String method, String path) {
+            this.labels = "method=\"" + method + "\",route=\"" + path + "\"";
+
+            for (int i = 0; i < statuses.length; i++) {
+                statuses[i] = new LongAdder();
+            }
+        }
+
+        /**
+         * Record a request.
+         *
+         * @param statusCode the status code of the response
+         * @param nanos the time (in nanoseconds) from the request being routed to its response being written
+         */
+        public void record(int statusCode, long nanos) {
+            int statusClass = statusCode / 100 - 1;
+            statuses[Math.max(0, Math.min(statusClass, statuses.length - 1))].increment();
+            duration.record(nanos);
+        }
+    }
+
+    /**
+     * The time a transfer waits for the lock of its source account.
+     */
+    public static final Histogram SOURCE_LOCK_WAIT = new Histogram();
+
+    /**
+     * The time a transfer waits for the lock of its destination account.
+     */
+    public static final Histogram DESTINATION_LOCK_WAIT = new Histogram();
+
+    /**
+     * The number of transfers that gave up waiting for the lock of their source account.
+     */
+    public static final LongAdder SOURCE_LOCK_TIMEOUTS = new LongAdder();
+
+    /**
+     * The number of transfers that gave up waiting for the lock of their destination account.
+     */
+    public static final LongAdder DESTINATION_LOCK_TIMEOUTS = new LongAdder();
+
+    /**
+     * The number of transfers rejected because the source account could not cover them.
+     */
+    public static final LongAdder INSUFFICIENT_FUNDS = new LongAdder();
+
+    /**
+     * How late the periodic timers of the event loops fire.
+     */
+    public static final Histogram EVENT_LOOP_LAG = new Histogram();
+
+    /**
+     * The accounts whose locks are most contended, reported by <code>GET /admin/hot-accounts</code>.
+     */
+    public static final ContentionSketch CONTENTION =
+            new ContentionSketch(Constants.HOT_ACCOUNTS_CAPACITY, Constants.HOT_ACCOUNTS_SAMPLE_RATE);
+
+    private static final String PREFIX = "moneytransfer_";
+
+    private static final Map<String, Route> routes = new ConcurrentSkipListMap<>();
+
+    private static final Map<String, Reading> readings = new ConcurrentSkipListMap<>();
+
+    private Metrics() {
+
+    }
+
+    /**
+     * Get the metrics of a route, registering it on first use.
+     *
+     * @param method the HTTP method
+     * @param path the path of the route (e.g. <code>/accounts/:id</code>)
+     * @return the metrics of the route
+     */
+    public static Route route(String method, String path) {
+        return routes.computeIfAbsent(method + " " + path, key -> new Route(method, path));
+    }
+
+    /**
+     * Register a gauge, read each time the metrics are scraped. A metric registered twice keeps its first reader.
+     *
+     * @param name the name of the gauge (without the common prefix)
+     * @param help the description of the gauge
+     * @param value reads the value of the gauge
+     */
+    public static void gauge(String name, String help, LongSupplier value) {
+        readings.putIfAbsent(name, new Reading("gauge", help, value));
+    }
+
+    /**
+     * Register a counter kept elsewhere, read each time the metrics are scraped. A metric registered twice
+     * keeps its first reader.
+     *
+     * @param name the name of the counter (without the common prefix)
+     * @param help the description of the counter
+     * @param value reads the value of the counter
+     */
+    public static void counter(String name, String help, LongSupplier value) {
+        readings.putIfAbsent(name, new Reading("counter", help, value));
+    }
+
+    /**
+     * Write all metrics in the Prometheus text format.
+     *
+     * @return the metrics
+     */
+    public static Buffer scrape() {
+        StringBuilder out = new StringBuilder(16 * 1024);
+
+        header(out, "http_request_duration_seconds", "histogram",
+                "Time from a request being routed to its response being written.");
+
+        for (Route route : routes.values()) {
+            route.duration.write(out, PREFIX + "http_request_duration_seconds", route.labels);
+        }
+
+        header(out, "http_requests_total", "counter", "Requests handled, by route and status class.");
+
+        for (Route route : routes.values()) {
+            for (int i = 0; i < route.statuses.length; i++) {
+                out.append(PREFIX).append("http_requests_total{").append(route.labels).append(",status=\"")
+                        .append(Route.STATUS_CLASSES[i]).append("\"} ").append(route.statuses[i].sum()).append('\n');
+            }
+        }
+
+        header(out, "transfer_lock_wait_seconds", "histogram", "Time a transfer waits for the lock of an account.");
+        SOURCE_LOCK_WAIT.write(out, PREFIX + "transfer_lock_wait_seconds", "account=\"source\"");
+        DESTINATION_LOCK_WAIT.write(out, PREFIX + "transfer_lock_wait_seconds", "account=\"destination\"");
+
+        header(out, "transfer_lock_timeouts_total", "counter",
+                "Transfers that gave up waiting for the lock of an account.");
+        sample(out, "transfer_lock_timeouts_total{account=\"source\"}", SOURCE_LOCK_TIMEOUTS.sum());
+        sample(out, "transfer_lock_timeouts_total{account=\"destination\"}", DESTINATION_LOCK_TIMEOUTS.sum());
+
+        header(out, "transfer_insufficient_funds_total", "counter",
+                "Transfers rejected because the source account could not cover them.");
+        sample(out, "transfer_insufficient_funds_total", INSUFFICIENT_FUNDS.sum());
+
+        header(out, "event_loop_lag_seconds", "histogram", "How late the periodic timers of the event loops fire.");
+        EVENT_LOOP_LAG.write(out, PREFIX + "event_loop_lag_seconds", "");
+
+        for (Map.Entry<String, Reading> reading : readings.entrySet()) {
+            header(out, reading.getKey(), reading.getValue().type, reading.getValue().help);
+            sample(out, reading.getKey(), reading.getValue().value.getAsLong());
+        }
+
+        return Buffer.buffer(out.toString());
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, long value) {
+        out.append(PREFIX).append(name).append(' ').append(value).append('\n');
+    }
+
+    private static double seconds(long nanos) {
+        return (double) nanos / TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private static class Reading {
+
+        private final String type;
+
+        private final String help;
+
+        private final LongSupplier value;
+
+        private Reading(String type, String help, LongSupplier value) {
+            this.type = type;
+            this.help = help;
+            this.value = value;
+        }
+    }
+}
@@ -1,6 +1,8 @@
-import com.google.gson.Gson;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpMethod;
 import io.vertx.core.http.HttpServerResponse;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
@@ -8,20 +10,129 @@ import io.vertx.ext.web.RoutingContext;
 import io.vertx.ext.web.handler.BodyHandler;
 
 import java.math.BigDecimal;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Currency;
-import java.util.Map;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class MoneyTransferVerticle extends AbstractVerticle {
 
-    private Map<UUID, Account> accounts = DataStore.getAccounts();
+    /**
+     * Query parameters carried over to the next page of a listing.
+     */
+    private static final List<String> FORWARDED_PARAMS = Arrays.asList("expand", "direction", "since");
 
-    private Map<UUID, Transfer> transfers = DataStore.getTransfers();
+    private ConcurrentNavigableMap<UUID, Account> accounts = DataStore.getAccounts();
 
-    private Gson gson = new Gson();
+    private TransferLog transfers = DataStore.getTransfers();
+
+    private AccountLockManager lockManager = DataStore.getLockManager();
+
+    private Balance.Mode balanceMode;
+
+    private Journal journal;
+
+    private IdempotencyCache idempotencyCache;
+
+    /**
+     * The shards owning the accounts, or <code>null</code> if every instance changes any account under its locks.
+     */
+    private AccountShards shards;
+
+    /**
+     * Runs each transfer on a virtual thread of its own, or <code>null</code> if transfers claim their accounts
+     * through the lock manager without blocking the event loop.
+     */
+    private VirtualThreadExecutor virtualThreads;
+
+    /**
+     * The nodes the accounts are partitioned across, or <code>null</code> if this node owns every account.
+     */
+    private ClusterLedger cluster;
+
+    /**
+     * The replication of a primary's mutations, or <code>null</code> unless this process is a read-only follower.
+     */
+    private ReplicationFollower follower;
+
+    /**
+     * Held while reading the data store so that a frame of replicated mutations is never seen partly applied,
+     * or <code>null</code> unless this process is a follower.
+     */
+    private Lock reads;
 
     @Override
     public void start(Future<Void> fut) {
+        balanceMode = Balance.Mode.fromName(config().getString("balance.mode", "decimal"));
+        DataStore.getIdGenerator(IdGenerator.Mode.fromName(config().getString("id.generator", "time-ordered")));
+
+        int lockStripes = config().getInteger("lock.stripes", 0);
+
+        if (lockStripes > 0) {
+            try {
+                DataStore.getLockStripes(lockStripes);
+            } catch (IllegalArgumentException e) {
+                fut.fail(e);
+                return;
+            }
+        }
+
+        idempotencyCache = DataStore.getIdempotencyCache(config().getInteger("idempotency.capacity", 100000),
+                config().getLong("idempotency.ttl", 86400000L));
+
+        String primary = config().getString("replication.primary");
+
+        if (primary != null) {
+            int colon = primary.lastIndexOf(':');
+
+            try {
+                follower = DataStore.openFollower(vertx, primary.substring(0, colon),
+                        Integer.parseInt(primary.substring(colon + 1)), balanceMode);
+            } catch (Exception e) {
+                fut.fail(new IllegalArgumentException("Primary must be host:port, not " + primary, e));
+                return;
+            }
+
+            reads = follower.getReadLock();
+        }
+
+        if (config().getBoolean("sharding", false) && follower == null) {
+            if (balanceMode != Balance.Mode.FIXED_POINT) {
+                fut.fail(new IllegalArgumentException("Sharding needs fixed-point balances"));
+                return;
+            }
+
+            int count = context.getInstanceCount();
+            shards = new AccountShards(vertx, accounts, DataStore.nextShardIndex(count), count);
+        }
+
+        if (config().getBoolean("virtual.threads", false)) {
+            if (shards != null) {
+                fut.fail(new IllegalArgumentException("Virtual threads cannot be combined with sharding"));
+                return;
+            }
+
+            try {
+                virtualThreads = DataStore.getVirtualThreadExecutor();
+            } catch (UnsupportedOperationException e) {
+                fut.fail(e);
+                return;
+            }
+        }
+
         Router router = Router.router(vertx);
 
         router.route().handler(BodyHandler.create());
@@ -30,23 +141,198 @@ public class MoneyTransferVerticle extends AbstractVerticle {
                 .putHeader("content-type", "text/html")
                 .end("<h1>Money transfer service</h1>"));
 
-        router.get("/accounts").handler(this::getAccounts);
-        router.get("/accounts/:id").handler(this::getAccount);
-        router.post("/accounts").handler(this::addAccount);
-        router.put("/accounts/:id").handler(this::updateAccount);
-        router.delete("/accounts/:id").handler(this::deleteAccount);
+        route(router, HttpMethod.GET, "/accounts", this::getAccounts);
+        route(router, HttpMethod.GET, "/accounts/:id", routed(this::getAccount));
+        route(router, HttpMethod.POST, "/accounts", writable(this::addAccount));
+        route(router, HttpMethod.PUT, "/accounts/:id", writable(routed(this::updateAccount)));
+        route(router, HttpMethod.DELETE, "/accounts/:id", writable(routed(this::deleteAccount)));
+        route(router, HttpMethod.GET, "/accounts/:id/transfers", routed(this::getAccountTransfers));
+
+        route(router, HttpMethod.GET, "/transfers", this::getTransfers);
+        route(router, HttpMethod.GET, "/transfers/:id", this::getTransfer);
+        route(router, HttpMethod.POST, "/transfers", writable(this::routeTransfer));
+        route(router, HttpMethod.POST, "/transfers/batch", writable(this::routeBatch));
+
+        route(router, HttpMethod.GET, "/replication", this::getReplication);
+
+        if (config().containsKey("cluster.nodes") && follower == null) {
+            router.post(ClusterLedger.INTERNAL_PATH + ":id/commit").handler(routingContext -> cluster.handleCommit(routingContext));
+            router.post(ClusterLedger.INTERNAL_PATH + ":id/forget").handler(routingContext -> cluster.handleForget(routingContext));
+        }
+
+        route(router, HttpMethod.GET, "/admin/hot-accounts", this::getHotAccounts);
+        route(router, HttpMethod.GET, "/admin/fx-rates", this::getRates);
+        route(router, HttpMethod.PUT, "/admin/fx-rates", writable(this::updateRates));
+
+        router.get("/metrics").handler(routingContext -> routingContext.response()
+                .putHeader("content-type", "text/plain; version=0.0.4; charset=utf-8")
+                .end(Metrics.scrape()));
+
+        registerMetrics();
+
+        String journalPath = config().getString("journal.path");
+
+        if (journalPath == null || follower != null) {
+            openRates(router, fut);
+        } else {
+            Journal.FsyncPolicy policy = Journal.FsyncPolicy.fromName(config().getString("journal.fsync", "group"));
+            long interval = config().getLong("journal.fsync.interval", 10L);
+            long segmentSize = config().getLong("journal.segment.size", 64L * 1024 * 1024);
+            long snapshotInterval = config().getLong("journal.snapshot.interval", 60000L);
 
-        router.get("/transfers").handler(this::getTransfers);
-        router.get("/transfers/:id").handler(this::getTransfer);
-        router.post("/transfers").handler(this::addTransfer);
+            vertx.<Journal>executeBlocking(future -> {
+                try {
+                    future.complete(DataStore.openJournal(Paths.get(journalPath), policy, interval,
+                            segmentSize, snapshotInterval, balanceMode));
+                } catch (Exception e) {
+                    future.fail(e);
+                }
+            }, result -> {
+                if (result.succeeded()) {
+                    journal = result.result();
+                    openRates(router, fut);
+                } else {
+                    fut.fail(result.cause());
+                }
+            });
+        }
+    }
 
+    /**
+     * Add a route whose requests are counted and timed (until their response is written) in {@link Metrics}.
+     */
+    private void route(Router router, HttpMethod method, String path, Handler<RoutingContext> handler) {
+        Metrics.Route metrics = Metrics.route(method.name(), path);
+
+        router.route(method, path).handler(routingContext -> {
+            long start = System.nanoTime();
+            HttpServerResponse response = routingContext.response();
+
+            response.bodyEndHandler(v -> metrics.record(response.getStatusCode(), System.nanoTime() - start));
+            handler.handle(routingContext);
+        });
+    }
+
+    private void registerMetrics() {
+        Metrics.gauge("accounts", "Number of accounts.", accounts::size);
+        Metrics.gauge("transfers", "Number of transfers in the log.", transfers::size);
+        Metrics.gauge("idempotency_keys", "Number of idempotency keys held.", idempotencyCache::size);
+        Metrics.counter("idempotency_hits_total", "Requests whose idempotency key was already known.",
+                idempotencyCache::getHits);
+        Metrics.counter("idempotency_mismatches_total", "Requests reusing an idempotency key for another body.",
+                idempotencyCache::getMismatches);
+        Metrics.counter("idempotency_misses_total", "Requests whose idempotency key was new.",
+                idempotencyCache::getMisses);
+        Metrics.counter("idempotency_evictions_total", "Idempotent responses dropped.",
+                idempotencyCache::getEvictions);
+
+        Metrics.gauge("fx_rates_version", "Version of the exchange rates in use.",
+                () -> DataStore.getFxRates().get().getVersion());
+
+        if (virtualThreads != null) {
+            Metrics.gauge("virtual_thread_transfers", "Transfers running on virtual threads.", virtualThreads::getRunning);
+        }
+
+        if (follower != null) {
+            Metrics.gauge("replication_lag_milliseconds", "Milliseconds behind the primary.", follower::getLag);
+            Metrics.gauge("replication_sequence", "Sequence of the primary's mutations applied.", follower::getApplied);
+        }
+
+        // The timer of each event loop should fire every interval; how much later it does is the lag
+        long interval = TimeUnit.MILLISECONDS.toNanos(Constants.EVENT_LOOP_LAG_INTERVAL);
+        long[] expected = {System.nanoTime() + interval};
+
+        vertx.setPeriodic(Constants.EVENT_LOOP_LAG_INTERVAL, timer -> {
+            long now = System.nanoTime();
+            Metrics.EVENT_LOOP_LAG.record(Math.max(0, now - expected[0]));
+            expected[0] = Math.max(expected[0], now) + interval;
+        });
+    }
+
+    /**
+     * Load the exchange rates from their file, if one is configured (and this process is not a follower), then listen.
+     */
+    private void openRates(Router router, Future<Void> fut) {
+        String ratesPath = config().getString("fx.rates.path");
+
+        if (ratesPath == null || follower != null) {
+            listen(router, fut);
+            return;
+        }
+
+        vertx.<FxRateTable>executeBlocking(future -> {
+            try {
+                future.complete(DataStore.openFxRates(Paths.get(ratesPath), Constants.FX_RATES_RELOAD_INTERVAL));
+            } catch (Exception e) {
+                future.fail(e);
+            }
+        }, result -> {
+            if (result.succeeded()) {
+                listen(router, fut);
+            } else {
+                fut.fail(result.cause());
+            }
+        });
+    }
+
+    private void listen(Router router, Future<Void> fut) {
+        if (follower != null) {
+            serve(router, fut);
+            return;
+        }
+
+        try {
+            cluster = ClusterLedger.fromConfig(vertx, config(), accounts, transfers, journal, shards, lockManager);
+        } catch (Exception e) {
+            fut.fail(e);
+            return;
+        }
+
+        if (cluster != null) {
+            cluster.recover(Constants.CLUSTER_RECOVERY_INTERVAL);
+        }
+
+        Integer replicationPort = config().getInteger("replication.port");
+
+        if (replicationPort == null) {
+            own(router, fut);
+        } else {
+            DataStore.openReplication(vertx, replicationPort, config().getInteger("replication.backlog", 100000))
+                    .setHandler(result -> {
+                        if (result.succeeded()) {
+                            own(router, fut);
+                        } else {
+                            fut.fail(result.cause());
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Serve the shard owned by this instance (if the accounts are sharded), then the REST API.
+     */
+    private void own(Router router, Future<Void> fut) {
+        if (shards != null) {
+            shards.start().setHandler(result -> {
+                if (result.succeeded()) {
+                    serve(router, fut);
+                } else {
+                    fut.fail(result.cause());
+                }
+            });
+        } else {
+            serve(router, fut);
+        }
+    }
+
+    private void serve(Router router, Future<Void> fut) {
         vertx
             .createHttpServer()
             .requestHandler(router::accept)
             .listen(config().getInteger("http.port", 8080),
                     result -> {
                         if (result.succeeded()) {
-                            fut.complete();
+                            serveBinary(fut);
                         } else {
                             fut.fail(result.cause());
                         }
@@ -54,15 +340,309 @@ public class MoneyTransferVerticle extends AbstractVerticle {
             );
     }
 
+    /**
+     * Accept transfers over the binary protocol too, if a port is configured for it (and this process is not a follower).
+     */
+    private void serveBinary(Future<Void> fut) {
+        Integer binaryPort = config().getInteger("binary.port");
+
+        if (binaryPort == null || follower != null) {
+            fut.complete();
+            return;
+        }
+
+        new BinaryTransferServer(vertx, this::executeTransfer).listen(binaryPort).setHandler(fut.completer());
+    }
+
+    /**
+     * Reply once the given mutations are journaled (right away if the data store is not persisted).
+     */
+    private void journal(List<JournalRecord> records, HttpServerResponse response, Runnable reply) {
+        journal(records, reply, () -> sendError(500, response));
+    }
+
+    private void journal(List<JournalRecord> records, Runnable reply, Runnable failed) {
+        if (journal == null || records.isEmpty()) {
+            DataStore.publish(records);
+            reply.run();
+            return;
+        }
+
+        journal.append(records).setHandler(result -> {
+            if (result.succeeded()) {
+                DataStore.publish(records);
+                reply.run();
+            } else {
+                failed.run();
+            }
+        });
+    }
+
+    private void journal(JournalRecord record, HttpServerResponse response, Runnable reply) {
+        journal(Collections.singletonList(record), response, reply);
+    }
+
+    /**
+     * Reject the mutations with <code>405</code> if this process is a follower, which only serves reads.
+     */
+    private Handler<RoutingContext> writable(Handler<RoutingContext> handler) {
+        return routingContext -> {
+            if (follower == null) {
+                handler.handle(routingContext);
+            } else {
+                routingContext.response().putHeader("Allow", "GET");
+                sendError(405, routingContext.response());
+            }
+        };
+    }
+
+    /**
+     * Read the data store, under the read lock of the follower (if any) so the replicated mutations are seen whole.
+     */
+    private <T> T read(Supplier<T> reader) {
+        if (reads == null) {
+            return reader.get();
+        }
+
+        reads.lock();
+
+        try {
+            return reader.get();
+        } finally {
+            reads.unlock();
+        }
+    }
+
+    /**
+     * Forward the requests on an account owned by another node (see {@link ClusterLedger}) to that node; the
+     * other requests, including those already forwarded, are handled here.
+     */
+    private Handler<RoutingContext> routed(Handler<RoutingContext> handler) {
+        return routingContext -> {
+            int owner = -1;
+
+            if (cluster != null && !ClusterLedger.isForwarded(routingContext.request())) {
+                try {
+                    owner = cluster.ownerOf(UUID.fromString(routingContext.request().getParam("id")));
+                } catch (Exception e) {
+                    // Invalid IDs are rejected by the handler
+                }
+            }
+
+            if (owner < 0 || owner == cluster.getNode()) {
+                handler.handle(routingContext);
+            } else {
+                cluster.forward(routingContext, owner);
+            }
+        };
+    }
+
+    /**
+     * Reply once a change of accounts is done by their owners (see {@link AccountShards}), or with <code>503</code>
+     * if an owner is not served (yet) and <code>400</code> if the change was refused.
+     */
+    private <T> void owned(Future<T> change, HttpServerResponse response, Consumer<T> reply) {
+        change.setHandler(result -> {
+            if (result.succeeded()) {
+                reply.accept(result.result());
+            } else {
+                sendError(AccountShards.isUnreachable(result.cause()) ? 503 : 400, response);
+            }
+        });
+    }
+
     private void sendError(int statusCode, HttpServerResponse response) {
         // TODO: add logging message in order to investigate bad requests
         response.setStatusCode(statusCode).end();
     }
 
+    /**
+     * List elements in a stable order. With <code>limit</code> and/or <code>after</code> (the ID of the last
+     * element seen) a single page is returned, along with a <code>Link</code> header to the next one;
+     * otherwise every element is streamed.
+     *
+     * @param after gives the elements following a given ID (or all elements for <code>null</code>)
+     * @param idOf gives the ID of an element
+     */
+    private <T> void list(RoutingContext routingContext, Function<UUID, Iterator<T>> after, Function<T, UUID> idOf){
+        HttpServerResponse response = routingContext.response();
+        String limitParam = routingContext.request().getParam("limit");
+        String afterParam = routingContext.request().getParam("after");
+
+        if (limitParam == null && afterParam == null){
+            stream(response, after.apply(null));
+            return;
+        }
+
+        int limit;
+        Iterator<T> iterator;
+
+        try {
+            limit = limitParam == null ? Constants.MAX_PAGE_SIZE : Math.min(Integer.parseInt(limitParam), Constants.MAX_PAGE_SIZE);
+            iterator = after.apply(afterParam == null ? null : UUID.fromString(afterParam));
+
+            if (limit <= 0){
+                throw new IllegalArgumentException("Limit must be positive");
+            }
+        } catch (Exception e){
+            sendError(400, response);
+            return;
+        }
+
+        List<T> page = new ArrayList<>();
+        Buffer body = read(() -> {
+            while (page.size() < limit && iterator.hasNext()){
+                page.add(iterator.next());
+            }
+
+            return JsonWriter.toBuffer(page);
+        });
+
+        if (iterator.hasNext()){
+            String next = routingContext.request().path() + "?limit=" + limit + "&after=" + idOf.apply(page.get(page.size() - 1));
+
+            for (String name : FORWARDED_PARAMS){
+                String value = routingContext.request().getParam(name);
+
+                if (value != null){
+                    next += "&" + name + "=" + value;
+                }
+            }
+
+            response.putHeader("Link", "<" + next + ">; rel=\"next\"");
+        }
+
+        response.putHeader("content-type", "application/json")
+                .end(body);
+    }
+
+    /**
+     * Stream a JSON array of elements in chunks, pausing whenever the client does not keep up.
+     */
+    private void stream(HttpServerResponse response, Iterator<?> iterator){
+        response.setChunked(true)
+                .putHeader("content-type", "application/json")
+                .write("[");
+
+        writeChunks(response, iterator, true);
+    }
+
+    private void writeChunks(HttpServerResponse response, Iterator<?> iterator, boolean first){
+        while (iterator.hasNext()){
+            if (response.closed()){
+                return;
+            }
+
+            if (response.writeQueueFull()){
+                boolean next = first;
+                response.drainHandler(v -> writeChunks(response, iterator, next));
+                return;
+            }
+
+            Buffer chunk = Buffer.buffer(Constants.STREAM_CHUNK_SIZE);
+            boolean[] firstOfChunk = {first};
+
+            read(() -> {
+                while (chunk.length() < Constants.STREAM_CHUNK_SIZE && iterator.hasNext()){
+                    if (!firstOfChunk[0]){
+                        chunk.appendString(",");
+                    }
+
+                    JsonWriter.write(chunk, iterator.next());
+                    firstOfChunk[0] = false;
+                }
+
+                return chunk;
+            });
+
+            first = firstOfChunk[0];
+            response.write(chunk);
+        }
+
+        response.end("]");
+    }
+
     private void getAccounts(RoutingContext routingContext){
-        routingContext.response()
-                .putHeader("content-type", "application/json;")
-                .end(gson.toJson(accounts.values()));
+        list(routingContext,
+                id -> (id == null ? accounts : accounts.tailMap(id, false)).values().iterator(),
+                account -> account.id);
+    }
+
+    /**
+     * Report the replication of the mutations: on a follower, the sequence of the primary's stream applied so far
+     * and the lag (in milliseconds) behind it; on a primary, the sequence published so far and the number of
+     * followers connected.
+     */
+    private void getReplication(RoutingContext routingContext){
+        JsonObject status = new JsonObject();
+        ReplicationStream stream = DataStore.getReplication();
+
+        if (follower != null) {
+            status.put("role", "follower")
+                    .put("primary", config().getString("replication.primary"))
+                    .put("connected", follower.isConnected())
+                    .put("sequence", follower.getApplied())
+                    .put("lag", follower.getLag());
+        } else if (stream != null) {
+            status.put("role", "primary")
+                    .put("sequence", stream.getSequence())
+                    .put("followers", stream.getFollowers());
+        } else {
+            sendError(404, routingContext.response());
+            return;
+        }
+
+        routingContext.response().putHeader("content-type", "application/json").end(status.encode());
+    }
+
+    /**
+     * Get the exchange rates converting the amounts of transfers between accounts of different currencies.
+     */
+    private void getRates(RoutingContext routingContext){
+        routingContext.response().putHeader("content-type", "application/json")
+                .end(DataStore.getFxRates().get().toJson().encode());
+    }
+
+    /**
+     * Replace all the exchange rates; transfers created from then on use the new rates.
+     */
+    private void updateRates(RoutingContext routingContext){
+        HttpServerResponse response = routingContext.response();
+        FxRateTable.Snapshot rates;
+
+        try {
+            rates = DataStore.getFxRates().update(routingContext.getBodyAsJson().getJsonObject("rates"));
+        } catch (Exception e){
+            sendError(400, response);
+            return;
+        }
+
+        response.putHeader("content-type", "application/json").end(rates.toJson().encode());
+    }
+
+    /**
+     * List the accounts whose locks are the most contended, most contended first. The counts and wait times
+     * are estimates from a sample of the contended acquisitions (see {@link ContentionSketch}).
+     */
+    private void getHotAccounts(RoutingContext routingContext){
+        String limitParam = routingContext.request().getParam("limit");
+        HttpServerResponse response = routingContext.response();
+        int limit;
+
+        try {
+            limit = limitParam == null ? Constants.HOT_ACCOUNTS_DEFAULT_LIMIT : Integer.parseInt(limitParam);
+        } catch (NumberFormatException e){
+            sendError(400, response);
+            return;
+        }
+
+        if (limit <= 0 || limit > Constants.HOT_ACCOUNTS_CAPACITY){
+            sendError(400, response);
+            return;
+        }
+
+        response.putHeader("content-type", "application/json")
+                .end(JsonWriter.toBuffer(Metrics.CONTENTION.top(limit)));
     }
 
     private void getAccount(RoutingContext routingContext){
@@ -73,12 +653,16 @@ public class MoneyTransferVerticle extends AbstractVerticle {
             sendError(400, response);
         } else {
             try {
-                Account account = accounts.get(UUID.fromString(id));
+                UUID accountID = UUID.fromString(id);
+                Buffer body = read(() -> {
+                    Account account = accounts.get(accountID);
+                    return account == null ? null : JsonWriter.toBuffer(account);
+                });
 
-                if (account == null) {
+                if (body == null) {
                     sendError(404, response);
                 } else {
-                    response.putHeader("content-type", "application/json").end(gson.toJson(account));
+                    response.putHeader("content-type", "application/json").end(body);
                 }
             } catch (Exception e){
                 sendError(404, response);
@@ -88,26 +672,37 @@ public class MoneyTransferVerticle extends AbstractVerticle {
 
     private void addAccount(RoutingContext routingContext){
         HttpServerResponse response = routingContext.response();
-        JsonObject bodyAsJson;
-
-        try {
-            bodyAsJson = routingContext.getBodyAsJson();
-        } catch (Exception e){
-            sendError(400, response);
-            return;
-        }
 
         try{
-            String user = bodyAsJson.getString("user");
-            Currency currency = Currency.getInstance(bodyAsJson.getString("currency"));
-            BigDecimal balance = new BigDecimal(String.valueOf(bodyAsJson.getValue("balance")));
+            RequestParser.AccountRequest request = RequestParser.parseAccount(routingContext.getBody());
+            Currency currency = Currency.getInstance(request.getCurrency());
 
-            Account account = new Account(user, currency, balance);
-            accounts.putIfAbsent(account.id, account);
+            Account account = cluster == null
+                    ? new Account(request.getUser(), currency, request.getBalance(), balanceMode)
+                    : new Account(cluster.newAccountID(), request.getUser(), currency, request.getBalance(), balanceMode);
 
-            response.setStatusCode(201)
-                    .putHeader("content-type", "application/json")
-                    .end(gson.toJson(account));
+            // The account is only added once journaled, so no transfer can reach it before its creation is durable
+            journal(JournalRecord.accountCreated(account), response, () -> {
+                Future<Void> added;
+
+                if (shards == null) {
+                    accounts.putIfAbsent(account.id, account);
+                    added = Future.succeededFuture();
+                } else {
+                    added = shards.create(account);
+                }
+
+                added.setHandler(result -> {
+                    if (result.failed()) {
+                        journal(Collections.singletonList(JournalRecord.accountDeleted(account.id)), () -> {}, () -> {});
+                    }
+                });
+
+                owned(added, response, v -> response
+                        .setStatusCode(201)
+                        .putHeader("content-type", "application/json")
+                        .end(JsonWriter.toBuffer(account)));
+            });
 
         } catch (Exception e){
             sendError(400, response);
@@ -117,16 +712,16 @@ public class MoneyTransferVerticle extends AbstractVerticle {
     private void updateAccount(RoutingContext routingContext){
         String id = routingContext.request().getParam("id");
         HttpServerResponse response = routingContext.response();
-        JsonObject bodyAsJson;
+        RequestParser.AccountRequest request;
 
         try {
-            bodyAsJson = routingContext.getBodyAsJson();
+            request = RequestParser.parseAccount(routingContext.getBody());
         } catch (Exception e){
             sendError(400, response);
             return;
         }
 
-        if (id == null || bodyAsJson == null){
+        if (id == null){
             sendError(400, response);
         } else{
             try {
@@ -136,11 +731,25 @@ public class MoneyTransferVerticle extends AbstractVerticle {
                     sendError(404, response);
                 } else {
                     try {
-                        BigDecimal newBalance = new BigDecimal(String.valueOf(bodyAsJson.getValue("balance")));
-                        account.setBalance(newBalance);
+                        BigDecimal newBalance = request.getBalance();
+                        Future<BigDecimal> set;
+
+                        if (shards == null) {
+                            set = Future.succeededFuture(account.setBalance(newBalance));
+                        } else {
+                            set = shards.setBalance(account, newBalance);
+                        }
 
-                        response.putHeader("content-type", "application/json")
-                                .end(gson.toJson(account));
+                        // The difference the new balance made is journaled (transfers running meanwhile are journaled
+                        // as differences too, in whatever order), and taken back should that fail (unless the money
+                        // was spent meanwhile)
+                        owned(set, response, previous -> journal(
+                                Collections.singletonList(JournalRecord.balanceAdjusted(account.id,
+                                        newBalance.subtract(previous))),
+                                () -> response.putHeader("content-type", "application/json")
+                                        .end(JsonWriter.toBuffer(account)),
+                                () -> adjustBalance(account, previous.subtract(newBalance))
+                                        .setHandler(adjusted -> sendError(500, response))));
                     } catch (Exception e){
                         sendError(400, response);
                     }
@@ -164,8 +773,27 @@ public class MoneyTransferVerticle extends AbstractVerticle {
                 if (account == null) {
                     sendError(404, response);
                 } else {
-                    accounts.remove(account.id);
-                    response.setStatusCode(204).end();
+                    Future<Boolean> removed;
+
+                    if (shards == null) {
+                        accounts.remove(account.id);
+                        removed = Future.succeededFuture(true);
+                    } else {
+                        removed = shards.delete(account);
+                    }
+
+                    // Should the removal not be journaled, the account is put back
+                    owned(removed, response, v -> journal(
+                            Collections.singletonList(JournalRecord.accountDeleted(account.id)),
+                            () -> response.setStatusCode(204).end(),
+                            () -> {
+                                if (shards == null) {
+                                    accounts.putIfAbsent(account.id, account);
+                                    sendError(500, response);
+                                } else {
+                                    shards.create(account).setHandler(created -> sendError(500, response));
+                                }
+                            }));
                 }
             } catch (Exception e){
                 sendError(404, response);
@@ -174,10 +802,96 @@ public class MoneyTransferVerticle extends AbstractVerticle {
         }
     }
 
+    /**
+     * Add a (positive or negative) amount to the balance of an account, through its shard if sharded or under its
+     * claim in the lock manager otherwise.
+     */
+    private Future<Boolean> adjustBalance(Account account, BigDecimal delta){
+        if (shards != null){
+            return shards.adjustBalance(account, delta);
+        }
+
+        return account.adjustBalanceAsync(lockManager, delta);
+    }
+
+    private boolean isExpanded(RoutingContext routingContext){
+        return "accounts".equals(routingContext.request().getParam("expand"));
+    }
+
+    private TransferRecord expand(TransferRecord record){
+        return record.expand(accounts.get(record.getSourceID()), accounts.get(record.getDestinationID()));
+    }
+
     private void getTransfers(RoutingContext routingContext){
-        routingContext.response()
-                .putHeader("content-type", "application/json;")
-                .end(gson.toJson(transfers.values()));
+        boolean expanded = isExpanded(routingContext);
+
+        list(routingContext,
+                id -> {
+                    int row = id == null ? -1 : transfers.find(id);
+
+                    if (id != null && row < 0){
+                        throw new IllegalArgumentException("Unknown transfer " + id);
+                    }
+
+                    Iterator<TransferRecord> iterator = transfers.iterator(row + 1);
+
+                    return expanded ? expand(iterator) : iterator;
+                },
+                record -> record.id);
+    }
+
+    private void getAccountTransfers(RoutingContext routingContext){
+        HttpServerResponse response = routingContext.response();
+        UUID accountID;
+        TransferLog.Direction direction;
+        long since;
+
+        try {
+            accountID = UUID.fromString(routingContext.request().getParam("id"));
+        } catch (Exception e){
+            sendError(404, response);
+            return;
+        }
+
+        try {
+            String directionParam = routingContext.request().getParam("direction");
+            String sinceParam = routingContext.request().getParam("since");
+
+            direction = directionParam == null ? null : TransferLog.Direction.fromName(directionParam);
+            since = sinceParam == null ? Long.MIN_VALUE : Long.parseLong(sinceParam);
+        } catch (Exception e){
+            sendError(400, response);
+            return;
+        }
+
+        if (!accounts.containsKey(accountID)){
+            sendError(404, response);
+            return;
+        }
+
+        boolean expanded = isExpanded(routingContext);
+
+        list(routingContext,
+                id -> {
+                    Iterator<TransferRecord> iterator = transfers.iterator(accountID, direction, since, id);
+
+                    return expanded ? expand(iterator) : iterator;
+                },
+                record -> record.id);
+    }
+
+    private Iterator<TransferRecord> expand(Iterator<TransferRecord> iterator){
+        return new Iterator<TransferRecord>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public TransferRecord next() {
+                return expand(iterator.next());
+            }
+        };
     }
 
     private void getTransfer(RoutingContext routingContext){
@@ -188,12 +902,34 @@ public class MoneyTransferVerticle extends AbstractVerticle {
             sendError(400, response);
         } else {
             try {
-                Transfer transfer = transfers.get(UUID.fromString(id));
+                UUID transferID = UUID.fromString(id);
+                TransferRecord record = transfers.get(transferID);
+
+                if (record == null && cluster != null) {
+                    record = cluster.getPending(transferID);
+                }
 
-                if (transfer == null) {
+                if (record == null && cluster != null && !ClusterLedger.isForwarded(routingContext.request())) {
+                    cluster.find(routingContext.request().uri()).setHandler(found -> {
+                        if (found.succeeded() && found.result() != null) {
+                            send(response, found.result());
+                        } else {
+                            sendError(404, response);
+                        }
+                    });
+                } else if (record == null) {
                     sendError(404, response);
                 } else {
-                    response.putHeader("content-type", "application/json").end(gson.toJson(transfer));
+                    TransferRecord found = record;
+                    boolean expanded = isExpanded(routingContext);
+
+                    response.putHeader("content-type", "application/json").end(read(() -> {
+                        if (expanded) {
+                            expand(found);
+                        }
+
+                        return JsonWriter.toBuffer(found);
+                    }));
                 }
             } catch (Exception e){
                 sendError(404, response);
@@ -201,40 +937,335 @@ public class MoneyTransferVerticle extends AbstractVerticle {
         }
     }
 
+    /**
+     * Forward a transfer request to the node owning its source account (see {@link ClusterLedger}), unless this
+     * node owns it (or the request cannot be parsed, which is then rejected here).
+     */
+    private void routeTransfer(RoutingContext routingContext){
+        int owner = -1;
+
+        if (cluster != null && !ClusterLedger.isForwarded(routingContext.request())) {
+            try {
+                owner = cluster.ownerOf(RequestParser.parseTransfer(routingContext.getBody()).getSourceID());
+            } catch (Exception e) {
+                // Invalid requests are rejected below
+            }
+        }
+
+        if (owner < 0 || owner == cluster.getNode()) {
+            addTransfer(routingContext);
+        } else {
+            cluster.forward(routingContext, owner);
+        }
+    }
+
     private void addTransfer(RoutingContext routingContext){
         HttpServerResponse response = routingContext.response();
-        JsonObject bodyAsJson;
+        String key = routingContext.request().getHeader("Idempotency-Key");
+
+        if (key == null){
+            addTransfer(routingContext, reply -> send(response, reply), () -> sendError(500, response));
+            return;
+        }
+
+        if (key.isEmpty() || key.length() > Constants.IDEMPOTENCY_KEY_MAX_LENGTH){
+            sendError(400, response);
+            return;
+        }
+
+        Future<IdempotencyCache.Response> stored = idempotencyCache.claim(key,
+                IdempotencyCache.fingerprint(routingContext.getBody()));
+
+        if (stored == null){
+            addTransfer(routingContext,
+                    reply -> {
+                        idempotencyCache.complete(key, reply);
+                        send(response, reply);
+                    },
+                    () -> {
+                        idempotencyCache.release(key);
+                        sendError(500, response);
+                    });
+        } else {
+            stored.setHandler(result -> {
+                if (result.failed()){
+                    sendError(409, response);
+                } else {
+                    if (result.result() != IdempotencyCache.MISMATCH){
+                        response.putHeader("Idempotent-Replayed", "true");
+                    }
+
+                    send(response, result.result());
+                }
+            });
+        }
+    }
+
+    /**
+     * Execute a transfer request, handing its response to reply (or calling failed if it could not be journaled).
+     */
+    private void addTransfer(RoutingContext routingContext, Consumer<IdempotencyCache.Response> reply, Runnable failed){
+        Future<TransferRecord> executed;
 
         try {
-            bodyAsJson = routingContext.getBodyAsJson();
+            executed = executeTransfer(RequestParser.parseTransfer(routingContext.getBody()));
         } catch (Exception e){
-            sendError(400, response);
+            reply.accept(new IdempotencyCache.Response(400, null));
             return;
         }
 
-        try{
-            String sourceID = bodyAsJson.getString("source-id");
-            String destinationID = bodyAsJson.getString("dest-id");
-            BigDecimal amount = new BigDecimal(String.valueOf(bodyAsJson.getValue("amount")));
+        executed.setHandler(result -> {
+            if (result.failed() && result.cause() instanceof UnrevertedTransferException){
+                // The money was moved for good, so the failure is stored as the response: a retry must not pay again
+                reply.accept(new IdempotencyCache.Response(500, null));
+            } else if (result.failed()){
+                failed.run();
+            } else if (result.result() == null){
+                reply.accept(new IdempotencyCache.Response(400, null));
+            } else {
+                TransferRecord record = result.result();
+                int statusCode = record.getStatus() == TransferStatus.PENDING ? 202 : 201;
 
-            Account sourceAccount = accounts.get(UUID.fromString(sourceID));
-            Account destinationAccount = accounts.get(UUID.fromString(destinationID));
+                reply.accept(new IdempotencyCache.Response(statusCode, JsonWriter.toBuffer(record)));
+            }
+        });
+    }
 
-            Transfer transfer = new Transfer(sourceAccount, destinationAccount, amount);
+    /**
+     * Execute a transfer request, whether it came over REST or over the binary protocol ({@link BinaryTransferServer}).
+     * A transfer to an account of another node goes through {@link ClusterLedger#transfer(Account, UUID, BigDecimal)}.
+     *
+     * @param request the transfer request
+     * @return a future completed with the recorded transfer (with the {@link TransferStatus#PENDING} status if the
+     * node of its destination could not tell in time whether it took the money); with <code>null</code> if the
+     * transfer was refused; or failed if it could not be journaled (the money is then moved back, or, should that
+     * fail too, the failure is an {@link UnrevertedTransferException}) or an account could not be reached
+     * @throws IllegalArgumentException if the request is not valid (e.g. an account does not exist)
+     * @throws NullPointerException if the request or one of its fields is <code>null</code>
+     */
+    private Future<TransferRecord> executeTransfer(RequestParser.TransferRequest request){
+        Objects.requireNonNull(request, "Request cannot be null");
 
-            if (transfer.execute()){
-                transfers.put(transfer.id, transfer);
+        if (cluster != null && !cluster.owns(request.getDestinationID())){
+            Account source = accounts.get(request.getSourceID());
 
-                response.setStatusCode(201)
-                        .putHeader("content-type", "application/json")
-                        .end(gson.toJson(transfer));
+            if (source == null){
+                throw new IllegalArgumentException("Source account does not exist");
+            }
+
+            return cluster.transfer(source, request.getDestinationID(), request.getAmount());
+        }
+
+        Transfer transfer = createTransfer(request);
+        Future<TransferRecord> recorded = Future.future();
+
+        Future<Boolean> executed;
+
+        if (shards != null){
+            executed = shards.transfer(transfer);
+        } else if (virtualThreads != null){
+            executed = virtualThreads.execute(transfer::execute);
+        } else {
+            executed = transfer.executeAsync(lockManager);
+        }
+
+        executed.setHandler(result -> {
+            if (result.failed() && AccountShards.isUnreachable(result.cause())){
+                recorded.fail(result.cause());
+            } else if (result.succeeded() && result.result()){
+                TransferRecord record = record(transfer);
+
+                // The transfer is only recorded once journaled; should that fail the money is moved back, so a
+                // retry does not pay twice and the followers (which are not sent the transfer) do not diverge
+                journal(Collections.singletonList(JournalRecord.transfer(record)),
+                        () -> recorded.complete(transfers.append(record)),
+                        () -> revertTransfer(transfer).setHandler(reverted -> {
+                            if (reverted.failed() || !reverted.result()){
+                                // The destination no longer covers it: the transfer stays, although not journaled
+                                transfers.append(record);
+                                recorded.fail(new UnrevertedTransferException(transfer));
+                            } else {
+                                recorded.fail(new IllegalStateException("Transfer could not be journaled"));
+                            }
+                        }));
             }
             else{
-                sendError(400, response);
+                recorded.complete(null);
+            }
+        });
+
+        return recorded;
+    }
+
+    private static TransferRecord record(Transfer transfer){
+        return new TransferRecord(transfer.id, transfer.getSource().id, transfer.getDestination().id,
+                transfer.getAmount(), transfer.getDestinationAmount(), transfer.getRateVersion(),
+                System.currentTimeMillis(), TransferStatus.COMPLETED);
+    }
+
+    /**
+     * Revert the transfers of a batch which could not be journaled, last first, recording (although not journaled)
+     * those which can no longer be reverted.
+     */
+    private Future<Void> revertTransfers(List<TransferBatch.Result> completed, int i){
+        if (i < 0){
+            return Future.succeededFuture();
+        }
+
+        Future<Void> reverted = Future.future();
+        TransferBatch.Result item = completed.get(i);
+
+        revertTransfer(item.getTransfer()).setHandler(result -> {
+            if (result.failed() || !result.result()){
+                transfers.append(item.getRecord());
+            }
+
+            revertTransfers(completed, i - 1).setHandler(reverted.completer());
+        });
+
+        return reverted;
+    }
+
+    /**
+     * Revert a transfer executed by {@link #executeTransfer(RequestParser.TransferRequest)}, the same way it was
+     * executed.
+     */
+    private Future<Boolean> revertTransfer(Transfer transfer){
+        if (shards != null){
+            return shards.revert(transfer);
+        } else if (virtualThreads != null){
+            return virtualThreads.execute(transfer::revert);
+        } else {
+            return transfer.revertAsync(lockManager);
+        }
+    }
+
+    private void send(HttpServerResponse response, IdempotencyCache.Response reply){
+        if (reply.getBody() == null){
+            sendError(reply.getStatusCode(), response);
+        } else {
+            response.setStatusCode(reply.getStatusCode())
+                    .putHeader("content-type", "application/json")
+                    .end(reply.getBody());
+        }
+    }
+
+    /**
+     * Forward a batch to the node owning all of its accounts (see {@link ClusterLedger}), unless this node owns them
+     * (or the request cannot be parsed, which is then rejected here); a batch whose accounts are owned by several
+     * nodes is rejected with <code>422</code>, as no node could run it.
+     */
+    private void routeBatch(RoutingContext routingContext){
+        Set<Integer> owners = new HashSet<>();
+
+        if (cluster != null && !ClusterLedger.isForwarded(routingContext.request())) {
+            try {
+                for (RequestParser.TransferRequest request : RequestParser.parseTransfers(routingContext.getBody())) {
+                    for (UUID id : Arrays.asList(request.getSourceID(), request.getDestinationID())) {
+                        if (id != null) {
+                            owners.add(cluster.ownerOf(id));
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                // Invalid requests are rejected below
+                owners.clear();
             }
+        }
+
+        if (owners.size() > 1) {
+            sendError(422, routingContext.response());
+        } else if (owners.isEmpty() || owners.contains(cluster.getNode())) {
+            addTransferBatch(routingContext);
+        } else {
+            cluster.forward(routingContext, owners.iterator().next());
+        }
+    }
 
+    private void addTransferBatch(RoutingContext routingContext){
+        HttpServerResponse response = routingContext.response();
+        TransferBatch.Mode mode;
+        List<RequestParser.TransferRequest> requests;
+
+        try {
+            String modeName = routingContext.request().getParam("mode");
+            mode = modeName == null ? TransferBatch.Mode.BEST_EFFORT : TransferBatch.Mode.fromName(modeName);
+            requests = RequestParser.parseTransfers(routingContext.getBody());
         } catch (Exception e){
             sendError(400, response);
+            return;
+        }
+
+        if (requests.isEmpty()){
+            sendError(400, response);
+            return;
+        }
+
+        List<Transfer> requested = new ArrayList<>(requests.size());
+
+        for (RequestParser.TransferRequest request : requests){
+            try {
+                requested.add(createTransfer(request));
+            } catch (Exception e){
+                requested.add(null);
+            }
+        }
+
+        TransferBatch batch = new TransferBatch(requested, mode);
+
+        (shards == null ? batch.executeAsync(lockManager) : batch.executeAsync(shards)).setHandler(result -> {
+            if (result.failed()){
+                Throwable cause = result.cause();
+                sendError(AccountShards.isUnreachable(cause) ? 503
+                        : cause instanceof UnsupportedOperationException ? 422 : 400, response);
+                return;
+            }
+
+            List<TransferBatch.Result> completed = new ArrayList<>();
+            List<JournalRecord> records = new ArrayList<>();
+
+            for (TransferBatch.Result item : result.result()){
+                if (item.getStatus() == TransferBatch.Status.COMPLETED){
+                    item.setRecord(record(item.getTransfer()));
+                    completed.add(item);
+                    records.add(JournalRecord.transfer(item.getRecord()));
+                }
+            }
+
+            int statusCode = mode == TransferBatch.Mode.BEST_EFFORT ? 200
+                    : completed.size() == requests.size() ? 201 : 400;
+
+            // As for a single transfer, the transfers are only recorded once journaled, or moved back otherwise
+            journal(records,
+                    () -> {
+                        completed.forEach(item -> transfers.append(item.getRecord()));
+                        response.setStatusCode(statusCode)
+                                .putHeader("content-type", "application/json")
+                                .end(JsonWriter.toBuffer(result.result()));
+                    },
+                    () -> revertTransfers(completed, completed.size() - 1)
+                            .setHandler(reverted -> sendError(500, response)));
+        });
+    }
+
+    private Transfer createTransfer(RequestParser.TransferRequest request){
+        Objects.requireNonNull(request, "Request cannot be null");
+
+        Account sourceAccount = accounts.get(request.getSourceID());
+        Account destinationAccount = accounts.get(request.getDestinationID());
+
+        return new Transfer(sourceAccount, destinationAccount, request.getAmount());
+    }
+
+    /**
+     * A transfer which could neither be journaled nor moved back: it took place, so it must not be retried.
+     */
+    private static class UnrevertedTransferException extends IllegalStateException {
+
+        private static final long serialVersionUID = 1L;
+
+        private UnrevertedTransferException(Transfer transfer) {
+            super("Transfer " + transfer.id + " could neither be journaled nor moved back");
         }
     }
 }
@@ -0,0 +1,322 @@
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetClient;
+import io.vertx.core.net.NetClientOptions;
+import io.vertx.core.net.NetSocket;
+import io.vertx.core.parsetools.RecordParser;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Tails the {@link ReplicationStream} of a primary and applies its records to the data store of this process,
+ * which then only serves reads.
+ *
+ * Each frame of the stream is applied at once under the write lock of {@link #getReadLock()}, which readers hold
+ * while they read the accounts and transfers, so they never see part of a frame (e.g. the debit of a transfer
+ * without its credit). As when the journal is replayed, transfers are folded into the balances as plain additions.
+ *
+ * The follower reconnects whenever the connection is lost, and resumes from the last frame it applied.
+ */
+public class ReplicationFollower {
+
+    private final Vertx vertx;
+
+    private final String host;
+
+    private final int port;
+
+    private final Map<UUID, Account> accounts;
+
+    private final TransferLog transfers;
+
+    private final Balance.Mode mode;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * The reservations of transfers to other nodes made by the primary, which are given back if cancelled.
+     */
+    private final Map<UUID, JournalRecord> reserved = new HashMap<>();
+
+    private NetClient client;
+
+    private volatile boolean connected;
+
+    private long epoch;
+
+    private volatile long applied;
+
+    /**
+     * The sequence of the primary as of the last frame received.
+     */
+    private volatile long sequence;
+
+    /**
+     * The time (milliseconds since the epoch) the last frame received was published at by the primary.
+     */
+    private volatile long publishedAt;
+
+    /**
+     * Create a follower; it connects once {@link #start()} is called.
+     *
+     * @param vertx the Vert.x instance
+     * @param host the host of the primary's replication stream
+     * @param port the port of the primary's replication stream
+     * @param accounts the accounts of this process
+     * @param transfers the transfers of this process
+     * @param mode the balance representation of the replicated accounts
+     */
+    public ReplicationFollower(Vertx vertx, String host, int port, Map<UUID, Account> accounts, TransferLog transfers,
+                               Balance.Mode mode) {
+        this.vertx = Objects.requireNonNull(vertx, "Vert.x cannot be null");
+        this.host = Objects.requireNonNull(host, "Host cannot be null");
+        this.port = port;
+        this.accounts = Objects.requireNonNull(accounts, "Accounts cannot be null");
+        this.transfers = Objects.requireNonNull(transfers, "Transfers cannot be null");
+        this.mode = Objects.requireNonNull(mode, "Mode cannot be null");
+    }
+
+    /**
+     * Connect to the primary (on a context of its own), and keep connecting whenever the connection is lost.
+     */
+    public void start() {
+        publishedAt = System.currentTimeMillis();
+
+        vertx.getOrCreateContext().runOnContext(v -> {
+            client = vertx.createNetClient(new NetClientOptions().setConnectTimeout(Constants.REPLICATION_RETRY_DELAY));
+            connect();
+        });
+    }
+
+    /**
+     * Get the lock readers hold so they never see a frame partly applied.
+     *
+     * @return the read lock
+     */
+    public Lock getReadLock() {
+        return lock.readLock();
+    }
+
+    /**
+     * Check whether the follower is connected to the primary.
+     *
+     * @return <code>true</code> if the follower is connected; <code>false</code> otherwise
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Get the sequence of the last frame applied.
+     *
+     * @return the sequence
+     */
+    public long getApplied() {
+        return applied;
+    }
+
+    /**
+     * Get the sequence of the primary, as of the last frame received.
+     *
+     * @return the sequence
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Get how far behind the primary the follower is: the time since the last frame received was published.
+     * Frames are applied as they are received and the primary sends heartbeats, so the lag stays below the
+     * heartbeat interval (plus the transfer time) while the follower is connected, and grows once it is not.
+     *
+     * @return the lag (in milliseconds)
+     */
+    public long getLag() {
+        return Math.max(0, System.currentTimeMillis() - publishedAt);
+    }
+
+    private void connect() {
+        client.connect(port, host, result -> {
+            if (result.failed()) {
+                vertx.setTimer(Constants.REPLICATION_RETRY_DELAY, timer -> connect());
+                return;
+            }
+
+            NetSocket socket = result.result();
+            int[] length = {-1};
+            RecordParser parser = RecordParser.newFixed(4, null);
+
+            parser.setOutput(buffer -> {
+                if (length[0] < 0) {
+                    length[0] = buffer.getInt(0);
+
+                    if (length[0] < ReplicationStream.HEADER_SIZE || length[0] > ReplicationStream.MAX_FRAME_SIZE) {
+                        socket.close();
+                        return;
+                    }
+
+                    parser.fixedSizeMode(length[0]);
+                } else {
+                    length[0] = -1;
+                    parser.fixedSizeMode(4);
+
+                    try {
+                        receive(buffer);
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                        socket.close();
+                    }
+                }
+            });
+
+            connected = true;
+            socket.handler(parser);
+            socket.exceptionHandler(e -> socket.close());
+            socket.closeHandler(v -> {
+                connected = false;
+                vertx.setTimer(Constants.REPLICATION_RETRY_DELAY, timer -> connect());
+            });
+            socket.write(Buffer.buffer(ReplicationStream.HANDSHAKE_SIZE).appendLong(epoch).appendLong(applied));
+        });
+    }
+
+    /**
+     * Apply a frame (without its length) of the stream.
+     *
+     * @throws IllegalStateException if a frame is missing, in which case the follower reconnects to catch up
+     */
+    void receive(Buffer frame) {
+        ReplicationStream.Kind kind = ReplicationStream.kind(frame);
+        long frameSequence = ReplicationStream.sequence(frame);
+
+        switch (kind) {
+            case RESET:
+                reset(ReplicationStream.epoch(frame), frameSequence, ReplicationStream.records(frame));
+                break;
+            case RECORDS:
+                if (ReplicationStream.epoch(frame) != epoch || frameSequence != applied + 1) {
+                    throw new IllegalStateException("Replication frame " + frameSequence + " follows " + applied);
+                }
+
+                apply(frameSequence, ReplicationStream.records(frame));
+                break;
+            default:
+                if (ReplicationStream.epoch(frame) != epoch || frameSequence != applied) {
+                    throw new IllegalStateException("Replication is at " + frameSequence + ", not " + applied);
+                }
+                break;
+        }
+
+        sequence = frameSequence;
+        publishedAt = ReplicationStream.publishedAt(frame);
+    }
+
+    private void reset(long resetEpoch, long resetSequence, List<JournalRecord> records) {
+        JournalReplay replay = new JournalReplay(transfers);
+        Map<UUID, Account> restored = new HashMap<>();
+
+        lock.writeLock().lock();
+
+        try {
+            records.forEach(replay);
+            replay.restore(restored, mode);
+
+            accounts.clear();
+            accounts.putAll(restored);
+            reserved.clear();
+            replay.getReserved().forEach(record -> reserved.put(record.getID(), record));
+
+            epoch = resetEpoch;
+            applied = resetSequence;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(long frameSequence, List<JournalRecord> records) {
+        lock.writeLock().lock();
+
+        try {
+            for (JournalRecord record : records) {
+                apply(record);
+            }
+
+            applied = frameSequence;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void apply(JournalRecord record) {
+        switch (record.getType()) {
+            case ACCOUNT_CREATED:
+                accounts.put(record.getID(), new Account(record.getID(), record.getUser(), record.getCurrency(),
+                        record.getAmount(), mode));
+                break;
+            case BALANCE_SET:
+                add(record.getID(), null, record.getAmount());
+                break;
+            case BALANCE_ADJUSTED:
+                add(record.getID(), record.getAmount(), null);
+                break;
+            case ACCOUNT_DELETED:
+                accounts.remove(record.getID());
+                break;
+            case TRANSFER:
+            case TRANSFER_CONVERTED:
+                add(record.getSourceID(), record.getAmount().negate(), null);
+                add(record.getDestinationID(), record.getDestinationAmount(), null);
+                append(record);
+                break;
+            case TRANSFER_RESERVED:
+                add(record.getSourceID(), record.getAmount().negate(), null);
+                reserved.put(record.getID(), record);
+                break;
+            case TRANSFER_SETTLED:
+                if (reserved.remove(record.getID()) != null) {
+                    append(record);
+                }
+                break;
+            case TRANSFER_CANCELLED:
+                if (reserved.remove(record.getID()) != null) {
+                    add(record.getSourceID(), record.getAmount(), null);
+                }
+                break;
+            case TRANSFER_COMMITTED:
+                add(record.getDestinationID(), record.getAmount(), null);
+                append(record);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Add an amount to the balance of an account (or set it), bypassing the checks of the account: the primary
+     * already made them, and records of concurrent transfers may reach the stream in another order than they ran.
+     */
+    private void add(UUID id, BigDecimal amount, BigDecimal balance) {
+        Account account = accounts.get(id);
+
+        if (account != null) {
+            Balance holder = account.getBalanceHolder();
+            holder.set(balance != null ? balance : holder.get().add(amount));
+        }
+    }
+
+    private void append(JournalRecord record) {
+        if (transfers.find(record.getID()) < 0) {
+            transfers.append(record.getID(), record.getSourceID(), record.getDestinationID(), record.getAmount(),
+                    record.getDestinationAmount(), record.getRateVersion(), record.getTimestamp(),
+                    TransferStatus.COMPLETED);
+        }
+    }
+}
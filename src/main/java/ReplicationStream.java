@@ -0,0 +1,352 @@
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetServer;
+import io.vertx.core.net.NetSocket;
+import io.vertx.core.parsetools.RecordParser;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Publishes the mutations of the data store to the {@link ReplicationFollower followers} connected over TCP.
+ *
+ * Every group of records written together (e.g. to the {@link Journal}) is one frame of the stream, numbered by a
+ * sequence which starts over (in a new epoch) when the process restarts. A follower connects, sends the epoch and
+ * sequence of the last frame it applied, and is sent every later frame; a follower which is new, from another
+ * epoch, or too far behind for the frames kept in the backlog, is first sent a reset frame with
+ * the whole state at the current sequence. That state is rebuilt from the published records (as for the snapshots
+ * of the journal), not read from the live accounts, whose balances run ahead of the records being published.
+ * Transfers published before a follower's reset are not sent to it.
+ *
+ * A frame is <code>[length][kind][epoch][sequence][published at][count]</code> followed by <code>count</code>
+ * length-prefixed {@link JournalRecord records}. Heartbeats (frames without records, carrying the current sequence)
+ * are sent every {@link Constants#REPLICATION_HEARTBEAT_INTERVAL} milliseconds, so followers can tell their lag.
+ */
+public class ReplicationStream {
+
+    /**
+     * The kinds of frames.
+     */
+    enum Kind {
+        RECORDS, RESET, HEARTBEAT
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+
+    /**
+     * The size of a frame without its records.
+     */
+    static final int HEADER_SIZE = 1 + 8 + 8 + 8 + 4;
+
+    /**
+     * The size of the opening message of a follower (the epoch and sequence of the last frame it applied).
+     */
+    static final int HANDSHAKE_SIZE = 8 + 8;
+
+    /**
+     * The maximum size of a frame a follower accepts.
+     */
+    static final int MAX_FRAME_SIZE = 256 * 1024 * 1024;
+
+    /**
+     * The state as of the last published frame, sent to the followers which need a reset.
+     */
+    private final JournalReplay state = new JournalReplay(null);
+
+    /**
+     * The last published frames, oldest first.
+     */
+    private final Deque<Frame> backlog = new ArrayDeque<>();
+
+    private final int backlogSize;
+
+    private final List<Subscriber> subscribers = new ArrayList<>();
+
+    private long sequence;
+
+    private final long epoch = new SecureRandom().nextLong();
+
+    private final Vertx vertx;
+
+    private NetServer server;
+
+    /**
+     * Create a stream; followers can connect once it {@link #listen(int) listens}.
+     *
+     * @param vertx the Vert.x instance
+     * @param backlogSize the number of frames kept for the followers catching up
+     */
+    public ReplicationStream(Vertx vertx, int backlogSize) {
+        this.vertx = vertx;
+        this.backlogSize = backlogSize;
+
+        if (backlogSize < 0) {
+            throw new IllegalArgumentException("Backlog size cannot be negative");
+        }
+    }
+
+    /**
+     * Accept followers on a given port and start sending them heartbeats.
+     *
+     * @param port the TCP port
+     * @return a future completed once followers can connect
+     */
+    public Future<Void> listen(int port) {
+        Future<Void> listening = Future.future();
+
+        server = vertx.createNetServer().connectHandler(this::accept).listen(port, result -> {
+            if (result.succeeded()) {
+                vertx.setPeriodic(Constants.REPLICATION_HEARTBEAT_INTERVAL, timer -> heartbeat());
+                listening.complete();
+            } else {
+                listening.fail(result.cause());
+            }
+        });
+
+        return listening;
+    }
+
+    /**
+     * Publish records written together (e.g. the records of a transfer batch), which followers apply at once.
+     *
+     * @param records the records
+     */
+    public synchronized void publish(List<JournalRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+
+        records.forEach(state);
+
+        Frame frame = new Frame(++sequence, encode(Kind.RECORDS, epoch, sequence, records));
+
+        if (backlogSize > 0) {
+            if (backlog.size() == backlogSize) {
+                backlog.removeFirst();
+            }
+
+            backlog.addLast(frame);
+        }
+
+        for (Subscriber subscriber : subscribers) {
+            subscriber.send(frame.buffer);
+        }
+    }
+
+    /**
+     * Get the sequence of the last published frame.
+     *
+     * @return the sequence
+     */
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Get the number of connected followers.
+     *
+     * @return the number of followers
+     */
+    public synchronized int getFollowers() {
+        return subscribers.size();
+    }
+
+    private synchronized void heartbeat() {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+
+        Buffer frame = encode(Kind.HEARTBEAT, epoch, sequence, Collections.emptyList());
+
+        for (Subscriber subscriber : subscribers) {
+            subscriber.send(frame);
+        }
+    }
+
+    private void accept(NetSocket socket) {
+        Subscriber subscriber = new Subscriber(socket, vertx.getOrCreateContext());
+
+        RecordParser parser = RecordParser.newFixed(HANDSHAKE_SIZE,
+                buffer -> subscribe(subscriber, buffer.getLong(0), buffer.getLong(8)));
+
+        socket.handler(parser);
+        socket.closeHandler(v -> unsubscribe(subscriber));
+        socket.exceptionHandler(e -> socket.close());
+    }
+
+    private synchronized void subscribe(Subscriber subscriber, long appliedEpoch, long applied) {
+        if (subscribers.contains(subscriber)) {
+            return;
+        }
+
+        long first = backlog.isEmpty() ? sequence + 1 : backlog.peekFirst().sequence;
+
+        if (appliedEpoch == epoch && applied > 0 && applied >= first - 1 && applied <= sequence) {
+            for (Frame frame : backlog) {
+                if (frame.sequence > applied) {
+                    subscriber.send(frame.buffer);
+                }
+            }
+        } else {
+            subscriber.send(encode(Kind.RESET, epoch, sequence, state.snapshot()));
+        }
+
+        subscribers.add(subscriber);
+    }
+
+    private synchronized void unsubscribe(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+    }
+
+    /**
+     * Write a frame.
+     *
+     * @param kind the kind of frame
+     * @param epoch the epoch of the stream
+     * @param sequence the sequence of the frame (the current sequence for resets and heartbeats)
+     * @param records the records of the frame
+     * @return the frame
+     */
+    static Buffer encode(Kind kind, long epoch, long sequence, Collection<JournalRecord> records) {
+        Buffer buffer = Buffer.buffer(HEADER_SIZE + 4 + records.size() * 64);
+        ByteBuffer encoded = ByteBuffer.allocate(256);
+
+        buffer.appendInt(0)
+                .appendByte((byte) kind.ordinal())
+                .appendLong(epoch)
+                .appendLong(sequence)
+                .appendLong(System.currentTimeMillis())
+                .appendInt(records.size());
+
+        for (JournalRecord record : records) {
+            if (encoded.capacity() < record.maxSize()) {
+                encoded = ByteBuffer.allocate(record.maxSize());
+            }
+
+            encoded.clear();
+            record.encode(encoded);
+            buffer.appendInt(encoded.position()).appendBytes(encoded.array(), 0, encoded.position());
+        }
+
+        return buffer.setInt(0, buffer.length() - 4);
+    }
+
+    /**
+     * Get the kind of a frame (without its length).
+     *
+     * @param frame the frame
+     * @return the kind of the frame
+     * @throws IllegalArgumentException if the frame is not valid
+     */
+    static Kind kind(Buffer frame) {
+        int kind = frame.getByte(0);
+
+        if (kind < 0 || kind >= KINDS.length) {
+            throw new IllegalArgumentException("Invalid replication frame kind " + kind);
+        }
+
+        return KINDS[kind];
+    }
+
+    /**
+     * Get the epoch of a frame (without its length).
+     *
+     * @param frame the frame
+     * @return the epoch
+     */
+    static long epoch(Buffer frame) {
+        return frame.getLong(1);
+    }
+
+    /**
+     * Get the sequence of a frame (without its length).
+     *
+     * @param frame the frame
+     * @return the sequence
+     */
+    static long sequence(Buffer frame) {
+        return frame.getLong(9);
+    }
+
+    /**
+     * Get the time a frame (without its length) was published at.
+     *
+     * @param frame the frame
+     * @return the time the frame was published at (milliseconds since the epoch)
+     */
+    static long publishedAt(Buffer frame) {
+        return frame.getLong(17);
+    }
+
+    /**
+     * Read the records of a frame (without its length).
+     *
+     * @param frame the frame
+     * @return the records
+     * @throws IllegalArgumentException if the frame is not valid
+     */
+    static List<JournalRecord> records(Buffer frame) {
+        int count = frame.getInt(HEADER_SIZE - 4);
+        List<JournalRecord> records = new ArrayList<>(count);
+        ByteBuffer bytes = ByteBuffer.wrap(frame.getBytes());
+        int position = HEADER_SIZE;
+
+        for (int i = 0; i < count; i++) {
+            int length = bytes.getInt(position);
+            bytes.limit(position + 4 + length).position(position + 4);
+            records.add(JournalRecord.decode(bytes));
+            bytes.limit(bytes.capacity());
+            position += 4 + length;
+        }
+
+        return records;
+    }
+
+    private static class Frame {
+
+        private final long sequence;
+
+        private final Buffer buffer;
+
+        private Frame(long sequence, Buffer buffer) {
+            this.sequence = sequence;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * A connected follower, whose socket is only written on the context it was accepted on.
+     */
+    private static class Subscriber {
+
+        private final NetSocket socket;
+
+        private final Context context;
+
+        private Subscriber(NetSocket socket, Context context) {
+            this.socket = socket;
+            this.context = context;
+        }
+
+        /**
+         * Queue a frame; a follower which does not keep up is disconnected, and catches up once it reconnects.
+         */
+        private void send(Buffer frame) {
+            context.runOnContext(v -> {
+                if (socket.writeQueueFull()) {
+                    socket.close();
+                } else {
+                    socket.write(frame);
+                }
+            });
+        }
+    }
+}
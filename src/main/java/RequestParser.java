@@ -0,0 +1,701 @@
+import io.vertx.core.buffer.Buffer;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Parses the JSON bodies of account and transfer requests straight from the request bytes: the whole
+ * body is checked to be valid JSON, the expected fields are decoded in place (IDs into their two
+ * <code>long</code>s, amounts into an unscaled <code>long</code> and a scale) and any other field is
+ * skipped, so no intermediate tree is built.
+ */
+public class RequestParser {
+
+    /**
+     * The requested fields of a transfer.
+     */
+    public static class TransferRequest {
+
+        private long sourceMostSigBits;
+
+        private long sourceLeastSigBits;
+
+        private long destinationMostSigBits;
+
+        private long destinationLeastSigBits;
+
+        private final Amount amount = new Amount();
+
+        private int found;
+
+        /**
+         * Get the ID of the source account.
+         *
+         * @return the ID of the source account
+         */
+        public UUID getSourceID() {
+            return new UUID(sourceMostSigBits, sourceLeastSigBits);
+        }
+
+        /**
+         * Get the ID of the destination account.
+         *
+         * @return the ID of the destination account
+         */
+        public UUID getDestinationID() {
+            return new UUID(destinationMostSigBits, destinationLeastSigBits);
+        }
+
+        /**
+         * Get the amount to transfer.
+         *
+         * @return the amount to transfer
+         */
+        public BigDecimal getAmount() {
+            return amount.toDecimal();
+        }
+
+        /**
+         * Create a request from its decoded fields (e.g. of a {@link BinaryTransferServer} frame).
+         *
+         * @param sourceMostSigBits the most significant bits of the ID of the source account
+         * @param sourceLeastSigBits the least significant bits of the ID of the source account
+         * @param destinationMostSigBits the most significant bits of the ID of the destination account
+         * @param destinationLeastSigBits the least significant bits of the ID of the destination account
+         * @param unscaledAmount the unscaled amount to transfer
+         * @param scale the scale of the amount
+         * @return the transfer request
+         */
+        static TransferRequest of(long sourceMostSigBits, long sourceLeastSigBits, long destinationMostSigBits,
+                                  long destinationLeastSigBits, long unscaledAmount, int scale) {
+            TransferRequest request = new TransferRequest();
+
+            request.sourceMostSigBits = sourceMostSigBits;
+            request.sourceLeastSigBits = sourceLeastSigBits;
+            request.destinationMostSigBits = destinationMostSigBits;
+            request.destinationLeastSigBits = destinationLeastSigBits;
+            request.amount.unscaled = unscaledAmount;
+            request.amount.scale = scale;
+            request.found = SOURCE_FOUND | DESTINATION_FOUND | AMOUNT_FOUND;
+
+            return request;
+        }
+    }
+
+    /**
+     * The requested fields of an account.
+     */
+    public static class AccountRequest {
+
+        private String user;
+
+        private String currency;
+
+        private final Amount balance = new Amount();
+
+        private boolean hasBalance;
+
+        /**
+         * Get the user of the account.
+         *
+         * @return the user, or <code>null</code> if it was not given
+         */
+        public String getUser() {
+            return user;
+        }
+
+        /**
+         * Get the currency code of the account.
+         *
+         * @return the currency code, or <code>null</code> if it was not given
+         */
+        public String getCurrency() {
+            return currency;
+        }
+
+        /**
+         * Get the initial balance of the account.
+         *
+         * @return the balance, or <code>null</code> if it was not given
+         */
+        public BigDecimal getBalance() {
+            return hasBalance ? balance.toDecimal() : null;
+        }
+    }
+
+    /**
+     * A decimal number, kept as an unscaled <code>long</code> and a scale unless it does not fit.
+     */
+    private static class Amount {
+
+        private long unscaled;
+
+        private int scale;
+
+        private BigDecimal decimal;
+
+        private BigDecimal toDecimal() {
+            return decimal != null ? decimal : BigDecimal.valueOf(unscaled, scale);
+        }
+    }
+
+    private static final byte[] SOURCE_ID = "source-id".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] DEST_ID = "dest-id".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] AMOUNT = "amount".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] USER = "user".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] CURRENCY = "currency".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] BALANCE = "balance".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int SOURCE_FOUND = 1;
+
+    private static final int DESTINATION_FOUND = 2;
+
+    private static final int AMOUNT_FOUND = 4;
+
+    private static final int MAX_DEPTH = 64;
+
+    /**
+     * The most decimal digits that always fit in a <code>long</code>.
+     */
+    private static final int MAX_LONG_DIGITS = 18;
+
+    private final Buffer buffer;
+
+    private final int end;
+
+    private int position;
+
+    /**
+     * Start and end of the last string read, and whether it had escapes.
+     */
+    private int stringStart;
+
+    private int stringEnd;
+
+    private boolean escaped;
+
+    private RequestParser(Buffer buffer) {
+        this.buffer = buffer;
+        this.end = buffer.length();
+    }
+
+    /**
+     * Parse the body of a transfer request.
+     *
+     * @param body the request body
+     * @return the transfer request
+     * @throws IllegalArgumentException if the body is not valid JSON, not an object, or lacks a valid
+     * <code>source-id</code>, <code>dest-id</code> or <code>amount</code>
+     */
+    public static TransferRequest parseTransfer(Buffer body) {
+        RequestParser parser = new RequestParser(body);
+        TransferRequest request = parser.readTransfer();
+        parser.finish();
+
+        if (request == null) {
+            throw new IllegalArgumentException("Invalid transfer");
+        }
+
+        return request;
+    }
+
+    /**
+     * Parse the body of a batch of transfer requests.
+     *
+     * @param body the request body
+     * @return the transfer requests, in order; <code>null</code> stands for an element that is valid JSON
+     * but not a valid transfer
+     * @throws IllegalArgumentException if the body is not valid JSON or not an array
+     */
+    public static List<TransferRequest> parseTransfers(Buffer body) {
+        RequestParser parser = new RequestParser(body);
+        List<TransferRequest> requests = new ArrayList<>();
+
+        parser.expect('[');
+
+        if (!parser.consume(']')) {
+            do {
+                requests.add(parser.readTransfer());
+            } while (parser.consume(','));
+
+            parser.expect(']');
+        }
+
+        parser.finish();
+        return requests;
+    }
+
+    /**
+     * Parse the body of an account request.
+     *
+     * @param body the request body
+     * @return the account request
+     * @throws IllegalArgumentException if the body is not valid JSON or not an object
+     */
+    public static AccountRequest parseAccount(Buffer body) {
+        RequestParser parser = new RequestParser(body);
+        AccountRequest request = new AccountRequest();
+
+        parser.expect('{');
+
+        if (!parser.consume('}')) {
+            do {
+                parser.readString();
+                parser.expect(':');
+
+                if (parser.nameIs(USER)) {
+                    request.user = parser.readOptionalString();
+                } else if (parser.nameIs(CURRENCY)) {
+                    request.currency = parser.readOptionalString();
+                } else if (parser.nameIs(BALANCE)) {
+                    request.hasBalance = parser.readAmount(request.balance);
+                } else {
+                    parser.skipValue(0);
+                }
+            } while (parser.consume(','));
+
+            parser.expect('}');
+        }
+
+        parser.finish();
+        return request;
+    }
+
+    /**
+     * Read a transfer object (or skip any other value).
+     *
+     * @return the transfer request, or <code>null</code> if the value is not a valid transfer
+     */
+    private TransferRequest readTransfer() {
+        if (peek() != '{') {
+            skipValue(0);
+            return null;
+        }
+
+        TransferRequest request = new TransferRequest();
+
+        expect('{');
+
+        if (!consume('}')) {
+            do {
+                readString();
+                expect(':');
+
+                if (nameIs(SOURCE_ID)) {
+                    UUID id = readID();
+
+                    if (id != null) {
+                        request.sourceMostSigBits = id.getMostSignificantBits();
+                        request.sourceLeastSigBits = id.getLeastSignificantBits();
+                        request.found |= SOURCE_FOUND;
+                    } else {
+                        request.found &= ~SOURCE_FOUND;
+                    }
+                } else if (nameIs(DEST_ID)) {
+                    UUID id = readID();
+
+                    if (id != null) {
+                        request.destinationMostSigBits = id.getMostSignificantBits();
+                        request.destinationLeastSigBits = id.getLeastSignificantBits();
+                        request.found |= DESTINATION_FOUND;
+                    } else {
+                        request.found &= ~DESTINATION_FOUND;
+                    }
+                } else if (nameIs(AMOUNT)) {
+                    if (readAmount(request.amount)) {
+                        request.found |= AMOUNT_FOUND;
+                    } else {
+                        request.found &= ~AMOUNT_FOUND;
+                    }
+                } else {
+                    skipValue(0);
+                }
+            } while (consume(','));
+
+            expect('}');
+        }
+
+        return request.found == (SOURCE_FOUND | DESTINATION_FOUND | AMOUNT_FOUND) ? request : null;
+    }
+
+    /**
+     * Read an account or transfer ID.
+     *
+     * @return the ID, or <code>null</code> if the value is not a string holding a UUID
+     */
+    private UUID readID() {
+        if (peek() != '"') {
+            skipValue(0);
+            return null;
+        }
+
+        readString();
+
+        if (!escaped && stringEnd - stringStart == 36 && isCanonicalUUID()) {
+            return new UUID(hex(stringStart, 8) << 32 | hex(stringStart + 9, 4) << 16 | hex(stringStart + 14, 4),
+                    hex(stringStart + 19, 4) << 48 | hex(stringStart + 24, 12));
+        }
+
+        try {
+            return UUID.fromString(decodeString());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Read an amount given as a JSON number or as a string holding a number.
+     *
+     * @return <code>true</code> if the amount is valid; <code>false</code> otherwise
+     */
+    private boolean readAmount(Amount amount) {
+        byte first = peek();
+        amount.decimal = null;
+
+        if (first == '"') {
+            readString();
+
+            try {
+                amount.decimal = new BigDecimal(decodeString());
+                return true;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+
+        if (first != '-' && (first < '0' || first > '9')) {
+            skipValue(0);
+            return false;
+        }
+
+        int start = position;
+        boolean negative = consumeByte('-');
+        long unscaled = 0;
+        int digits = 0;
+        int scale = 0;
+
+        if (!consumeByte('0')) {
+            digits += readDigits();
+            unscaled = digitsValue(start + (negative ? 1 : 0), position);
+        }
+
+        if (consumeByte('.')) {
+            int fractionStart = position;
+            scale = readDigits();
+            digits += scale;
+
+            if (digits <= MAX_LONG_DIGITS) {
+                for (int i = fractionStart; i < position; i++) {
+                    unscaled = unscaled * 10 + (buffer.getByte(i) - '0');
+                }
+            }
+        }
+
+        boolean exponent = consumeByte('e') || consumeByte('E');
+
+        if (exponent) {
+            if (!consumeByte('+')) {
+                consumeByte('-');
+            }
+
+            readDigits();
+        }
+
+        if (exponent || digits > MAX_LONG_DIGITS) {
+            amount.decimal = new BigDecimal(buffer.getString(start, position, "US-ASCII"));
+        } else {
+            amount.unscaled = negative ? -unscaled : unscaled;
+            amount.scale = scale;
+        }
+
+        return true;
+    }
+
+    private String readOptionalString() {
+        if (peek() != '"') {
+            skipValue(0);
+            return null;
+        }
+
+        readString();
+        return decodeString();
+    }
+
+    /**
+     * Skip any JSON value, checking its syntax.
+     */
+    private void skipValue(int depth) {
+        if (depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("JSON is nested too deeply");
+        }
+
+        byte next = peek();
+
+        if (next == '{') {
+            expect('{');
+
+            if (!consume('}')) {
+                do {
+                    readString();
+                    expect(':');
+                    skipValue(depth + 1);
+                } while (consume(','));
+
+                expect('}');
+            }
+        } else if (next == '[') {
+            expect('[');
+
+            if (!consume(']')) {
+                do {
+                    skipValue(depth + 1);
+                } while (consume(','));
+
+                expect(']');
+            }
+        } else if (next == '"') {
+            readString();
+        } else if (next == '-' || next >= '0' && next <= '9') {
+            readAmount(new Amount());
+        } else if (!consumeLiteral("true") && !consumeLiteral("false") && !consumeLiteral("null")) {
+            throw malformed();
+        }
+    }
+
+    /**
+     * Read a string, recording where its content starts and ends.
+     */
+    private void readString() {
+        expect('"');
+        stringStart = position;
+        escaped = false;
+
+        while (true) {
+            if (position >= end) {
+                throw malformed();
+            }
+
+            byte b = buffer.getByte(position++);
+
+            if (b == '"') {
+                stringEnd = position - 1;
+                return;
+            }
+
+            if (b >= 0 && b < 0x20) {
+                throw malformed();
+            }
+
+            if (b == '\\') {
+                escaped = true;
+
+                if (position >= end) {
+                    throw malformed();
+                }
+
+                byte escape = buffer.getByte(position++);
+
+                if (escape == 'u') {
+                    for (int i = 0; i < 4; i++) {
+                        if (position >= end || Character.digit(buffer.getByte(position++), 16) < 0) {
+                            throw malformed();
+                        }
+                    }
+                } else if ("\"\\/bfnrt".indexOf(escape) < 0) {
+                    throw malformed();
+                }
+            }
+        }
+    }
+
+    /**
+     * Decode the content of the last string read.
+     */
+    private String decodeString() {
+        if (!escaped) {
+            return buffer.getString(stringStart, stringEnd, "UTF-8");
+        }
+
+        StringBuilder builder = new StringBuilder(stringEnd - stringStart);
+        int start = stringStart;
+
+        for (int i = stringStart; i < stringEnd; i++) {
+            if (buffer.getByte(i) != '\\') {
+                continue;
+            }
+
+            builder.append(buffer.getString(start, i, "UTF-8"));
+            byte escape = buffer.getByte(++i);
+
+            switch (escape) {
+                case 'b': builder.append('\b'); break;
+                case 'f': builder.append('\f'); break;
+                case 'n': builder.append('\n'); break;
+                case 'r': builder.append('\r'); break;
+                case 't': builder.append('\t'); break;
+                case 'u':
+                    builder.append((char) hex(i + 1, 4));
+                    i += 4;
+                    break;
+                default: builder.append((char) escape); break;
+            }
+
+            start = i + 1;
+        }
+
+        return builder.append(buffer.getString(start, stringEnd, "UTF-8")).toString();
+    }
+
+    /**
+     * Check whether the last string read is the given field name.
+     */
+    private boolean nameIs(byte[] name) {
+        if (escaped) {
+            return decodeString().equals(new String(name, StandardCharsets.US_ASCII));
+        }
+
+        if (stringEnd - stringStart != name.length) {
+            return false;
+        }
+
+        for (int i = 0; i < name.length; i++) {
+            if (buffer.getByte(stringStart + i) != name[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean isCanonicalUUID() {
+        for (int i = 0; i < 36; i++) {
+            byte b = buffer.getByte(stringStart + i);
+
+            if (i == 8 || i == 13 || i == 18 || i == 23 ? b != '-' : Character.digit(b, 16) < 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Read a hexadecimal number whose digits were already checked.
+     */
+    private long hex(int start, int digits) {
+        long value = 0;
+
+        for (int i = start; i < start + digits; i++) {
+            value = value << 4 | Character.digit(buffer.getByte(i), 16) & 0xF;
+        }
+
+        return value;
+    }
+
+    private int readDigits() {
+        int start = position;
+
+        while (position < end && buffer.getByte(position) >= '0' && buffer.getByte(position) <= '9') {
+            position++;
+        }
+
+        if (position == start) {
+            throw malformed();
+        }
+
+        return position - start;
+    }
+
+    private long digitsValue(int start, int stop) {
+        long value = 0;
+
+        for (int i = start; i < stop && i < start + MAX_LONG_DIGITS; i++) {
+            value = value * 10 + (buffer.getByte(i) - '0');
+        }
+
+        return value;
+    }
+
+    private byte peek() {
+        skipWhitespace();
+
+        if (position >= end) {
+            throw malformed();
+        }
+
+        return buffer.getByte(position);
+    }
+
+    private void expect(char c) {
+        if (!consume(c)) {
+            throw malformed();
+        }
+    }
+
+    /**
+     * Skip whitespace and consume the given character if it comes next.
+     */
+    private boolean consume(char c) {
+        skipWhitespace();
+        return consumeByte(c);
+    }
+
+    private boolean consumeByte(char c) {
+        if (position < end && buffer.getByte(position) == c) {
+            position++;
+            return true;
+        }
+
+        return false;
+    }
+
+    private boolean consumeLiteral(String literal) {
+        if (position + literal.length() > end) {
+            return false;
+        }
+
+        for (int i = 0; i < literal.length(); i++) {
+            if (buffer.getByte(position + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+
+        position += literal.length();
+        return true;
+    }
+
+    private void skipWhitespace() {
+        while (position < end) {
+            byte b = buffer.getByte(position);
+
+            if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                return;
+            }
+
+            position++;
+        }
+    }
+
+    /**
+     * Check that nothing but whitespace follows the parsed value.
+     */
+    private void finish() {
+        skipWhitespace();
+
+        if (position != end) {
+            throw malformed();
+        }
+    }
+
+    private IllegalArgumentException malformed() {
+        return new IllegalArgumentException("Malformed JSON at byte " + position);
+    }
+}
@@ -1,11 +1,21 @@
+import io.vertx.core.Future;
+
 import java.math.BigDecimal;
+import java.util.Comparator;
 import java.util.Objects;
 import java.util.UUID;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 
 public class Transfer {
 
+    /**
+     * The order in which the locks of accounts are taken by anything holding several of them: lock stripes in the
+     * order of their indexes, as accounts owned by different transfers may share them, after the locks of the
+     * accounts themselves, in the order of their IDs.
+     */
+    static final Comparator<Account> LOCK_ORDER = Comparator.comparingInt(Transfer::stripeOf)
+            .thenComparing(account -> account.id);
+
     /**
      * Unique ID of the transfer.
      */
@@ -26,8 +36,30 @@ public class Transfer {
      */
     private final BigDecimal amount;
 
+    /**
+     * Amount of money to be put into the destination account: the amount itself, or the amount converted into the
+     * destination's currency.
+     */
+    private final BigDecimal destinationAmount;
+
+    /**
+     * Version of the exchange rates the amount was converted with, or <code>0</code> if both accounts have the same
+     * currency.
+     */
+    private final long rateVersion;
+
+    /**
+     * Amount of money to be transferred in minor units (only used by lock-free accounts).
+     */
+    private final transient long amountUnits;
+
+    /**
+     * Amount of money to be put into the destination account in minor units (only used by lock-free accounts).
+     */
+    private final transient long destinationUnits;
+
     public Transfer(Account source, Account destination, BigDecimal amount) {
-        this.id = UUID.randomUUID();
+        this.id = DataStore.getIdGenerator().next();
         this.source = Objects.requireNonNull(source, "Source account cannot be null");
         this.destination = Objects.requireNonNull(destination, "Destination account cannot be null");
 
@@ -35,15 +67,58 @@ public class Transfer {
             throw new IllegalArgumentException("Source and destination accounts must differ");
         }
 
-        if (!this.source.getCurrency().equals(this.destination.getCurrency())){
-            throw new IllegalArgumentException("Source and destination accounts must have the same currency");
+        this.amount = checkAmount(amount);
+
+        if (this.source.getCurrency().equals(this.destination.getCurrency())){
+            this.destinationAmount = amount;
+            this.rateVersion = 0;
+        } else {
+            FxRateTable.Snapshot rates = DataStore.getFxRates().get();
+            FxRateTable.Rate rate = rates.get(this.source.getCurrency(), this.destination.getCurrency());
+
+            if (rate == null){
+                throw new IllegalArgumentException("There is no exchange rate from " + this.source.getCurrency()
+                        + " to " + this.destination.getCurrency());
+            }
+
+            this.destinationAmount = rate.convert(amount);
+            this.rateVersion = rates.getVersion();
+
+            if (this.destinationAmount.signum() == 0){
+                throw new IllegalArgumentException("Amount is too small to be converted");
+            }
+
+            checkAmount(this.destinationAmount);
+        }
+
+        if (this.source.isLockFree() != this.destination.isLockFree()){
+            throw new IllegalArgumentException("Source and destination accounts must have the same balance representation");
         }
 
-        this.amount = Objects.requireNonNull(amount, "Amount cannot be null");
+        this.amountUnits = this.source.isLockFree() ? units(this.source).toUnits(amount) : 0;
+        this.destinationUnits = this.source.isLockFree() ? units(this.destination).toUnits(destinationAmount) : 0;
+    }
+
+    /**
+     * Check that an amount can be transferred.
+     *
+     * @param amount the amount
+     * @return the amount
+     * @throws NullPointerException if amount is <code>null</code>
+     * @throws IllegalArgumentException if amount is not positive or has too many digits
+     */
+    static BigDecimal checkAmount(BigDecimal amount){
+        Objects.requireNonNull(amount, "Amount cannot be null");
 
         if (amount.compareTo(BigDecimal.ZERO) <= 0){
             throw new IllegalArgumentException("Amount must be positive");
         }
+
+        if (amount.unscaledValue().bitLength() >= Long.SIZE || amount.scale() != (byte) amount.scale()){
+            throw new IllegalArgumentException("Amount has too many digits");
+        }
+
+        return amount;
     }
 
     /**
@@ -73,33 +148,75 @@ public class Transfer {
         return amount;
     }
 
+    /**
+     * Get the amount to be put into the destination account.
+     *
+     * @return the amount, converted into the destination's currency if the accounts' currencies differ
+     */
+    public BigDecimal getDestinationAmount() {
+        return destinationAmount;
+    }
+
+    /**
+     * Get the version of the exchange rates the amount was converted with (see {@link FxRateTable}).
+     *
+     * @return the version, or <code>0</code> if the accounts have the same currency
+     */
+    public long getRateVersion() {
+        return rateVersion;
+    }
+
     /**
      * Execute the transfer.
      *
      * @return <code>true</code> if the transfer was successful; <code>false</code> otherwise
      */
     boolean execute(){
-        Lock sourceLock = source.getLock();
-        Lock destLock = destination.getLock();
+        if (source.isLockFree()){
+            return transferUnits();
+        }
+
+        boolean sourceFirst = lockedFirst(source, destination);
+        Account first = sourceFirst ? source : destination;
+        Account second = sourceFirst ? destination : source;
+        Lock firstLock = first.getLock();
+        Lock secondLock = second.getLock();
 
         try {
-            if (sourceLock.tryLock(Constants.LOCK_WAIT_TIME, TimeUnit.MILLISECONDS)){
+            long start = System.nanoTime();
+
+            if (Metrics.CONTENTION.tryLock(firstLock, first.id, Constants.LOCK_WAIT_TIME)){
+                long firstGranted = System.nanoTime();
+                (sourceFirst ? Metrics.SOURCE_LOCK_WAIT : Metrics.DESTINATION_LOCK_WAIT).record(firstGranted - start);
+
                 try {
-                    if (destLock.tryLock(Constants.LOCK_WAIT_TIME, TimeUnit.MILLISECONDS)) {
+                    if (secondLock == firstLock
+                            || Metrics.CONTENTION.tryLock(secondLock, second.id, Constants.LOCK_WAIT_TIME)) {
+                        (sourceFirst ? Metrics.DESTINATION_LOCK_WAIT : Metrics.SOURCE_LOCK_WAIT)
+                                .record(System.nanoTime() - firstGranted);
+
                         try {
                             if (source.withdraw(amount)){
-                                if (destination.deposit(amount)){
+                                if (destination.deposit(destinationAmount)){
                                     return true;
                                 }
+                            } else {
+                                Metrics.INSUFFICIENT_FUNDS.increment();
                             }
 
                         } finally {
-                            destLock.unlock();
+                            if (secondLock != firstLock) {
+                                secondLock.unlock();
+                            }
                         }
+                    } else {
+                        (sourceFirst ? Metrics.DESTINATION_LOCK_TIMEOUTS : Metrics.SOURCE_LOCK_TIMEOUTS).increment();
                     }
                 } finally {
-                    sourceLock.unlock();
+                    firstLock.unlock();
                 }
+            } else {
+                (sourceFirst ? Metrics.SOURCE_LOCK_TIMEOUTS : Metrics.DESTINATION_LOCK_TIMEOUTS).increment();
             }
         } catch (InterruptedException e) {
             e.printStackTrace();
@@ -108,6 +225,216 @@ public class Transfer {
         return false;
     }
 
+    /**
+     * Execute the transfer without parking the calling thread: the accounts are claimed through the
+     * given lock manager and the money is moved once both are granted.
+     *
+     * @param lockManager the lock manager guarding the accounts
+     * @return a future completed with <code>true</code> if the transfer was successful; <code>false</code> otherwise
+     */
+    Future<Boolean> executeAsync(AccountLockManager lockManager){
+        if (source.isLockFree()){
+            return Future.succeededFuture(apply());
+        }
+
+        Future<Boolean> result = Future.future();
+
+        lockManager.acquireAll(source.id, destination.id).setHandler(granted -> {
+            try {
+                result.complete(apply());
+            } catch (Exception e) {
+                result.fail(e);
+            } finally {
+                lockManager.releaseAll(source.id, destination.id);
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Revert the transfer (see {@link #revert()}) without parking the calling thread, claiming the accounts
+     * through the given lock manager as {@link #executeAsync(AccountLockManager)} does.
+     *
+     * @param lockManager the lock manager guarding the accounts
+     * @return a future completed with <code>true</code> if the transfer was reverted; <code>false</code> otherwise
+     */
+    Future<Boolean> revertAsync(AccountLockManager lockManager){
+        if (source.isLockFree()){
+            return Future.succeededFuture(revert());
+        }
+
+        Future<Boolean> result = Future.future();
+
+        lockManager.acquireAll(source.id, destination.id).setHandler(granted -> {
+            try {
+                result.complete(revert());
+            } catch (Exception e) {
+                result.fail(e);
+            } finally {
+                lockManager.releaseAll(source.id, destination.id);
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Move the money between the accounts. Unless the accounts are lock-free, the caller must already own
+     * both of them through an {@link AccountLockManager}, so the account locks are only ever held briefly
+     * by single-account operations.
+     *
+     * @return <code>true</code> if the transfer was successful; <code>false</code> otherwise
+     */
+    boolean apply(){
+        if (source.isLockFree()){
+            return transferUnits();
+        }
+
+        if (!move(source, amount, destination, destinationAmount)){
+            Metrics.INSUFFICIENT_FUNDS.increment();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Move the money back after a successful {@link #apply()}, under the same ownership rules.
+     *
+     * @return <code>true</code> if the transfer was reverted; <code>false</code> if the destination no longer covers it
+     */
+    boolean revert(){
+        if (source.isLockFree()){
+            if (!units(destination).withdrawUnits(destinationUnits)){
+                return false;
+            }
+
+            units(source).depositUnits(amountUnits);
+            return true;
+        }
+
+        return move(destination, destinationAmount, source, amount);
+    }
+
+    /**
+     * Take the money out of the source account, the first step of a transfer run by the owners of its accounts
+     * (see {@link AccountShards}), which are the only ones changing them.
+     *
+     * @return <code>true</code> if the source covered the amount; <code>false</code> otherwise
+     */
+    boolean debit(){
+        boolean debited = source.isLockFree() ? units(source).withdrawUnits(amountUnits) : source.withdraw(amount);
+
+        if (!debited){
+            Metrics.INSUFFICIENT_FUNDS.increment();
+        }
+
+        return debited;
+    }
+
+    /**
+     * Put the money into the destination account, once it was taken out of the source by {@link #debit()}.
+     *
+     * @return <code>true</code> if the destination was credited; <code>false</code> if it cannot hold the amount
+     */
+    boolean credit(){
+        return source.isLockFree()
+                ? units(destination).depositUnits(destinationUnits)
+                : destination.deposit(destinationAmount);
+    }
+
+    /**
+     * Take the (converted) money back out of the destination account, the first step of reverting a transfer run
+     * by the owners of its accounts, which then give it back to the source with {@link #refund()}.
+     *
+     * @return <code>true</code> if the destination covered the amount; <code>false</code> otherwise
+     */
+    boolean reclaim(){
+        return source.isLockFree()
+                ? units(destination).withdrawUnits(destinationUnits)
+                : destination.withdraw(destinationAmount);
+    }
+
+    /**
+     * Give the money back to the source account after a {@link #debit()} whose {@link #credit()} failed, or
+     * after a {@link #reclaim()}.
+     */
+    void refund(){
+        if (source.isLockFree()){
+            units(source).depositUnits(amountUnits);
+        } else {
+            source.deposit(amount);
+        }
+    }
+
+    private boolean move(Account from, BigDecimal fromAmount, Account to, BigDecimal toAmount){
+        boolean fromFirst = lockedFirst(from, to);
+        Account first = fromFirst ? from : to;
+        Account second = fromFirst ? to : from;
+        Lock firstLock = first.getLock();
+        Lock secondLock = second.getLock();
+
+        Metrics.CONTENTION.lock(firstLock, first.id);
+        try {
+            if (secondLock != firstLock) {
+                Metrics.CONTENTION.lock(secondLock, second.id);
+            }
+
+            try {
+                return from.withdraw(fromAmount) && to.deposit(toAmount);
+            } finally {
+                if (secondLock != firstLock) {
+                    secondLock.unlock();
+                }
+            }
+        } finally {
+            firstLock.unlock();
+        }
+    }
+
+    /**
+     * Tell whether the lock of an account is taken before the lock of another, as defined by {@link #LOCK_ORDER}.
+     *
+     * @param account the account whose lock would be taken first
+     * @param other the other account
+     * @return <code>true</code> if the lock of account is taken first; <code>false</code> otherwise
+     */
+    private static boolean lockedFirst(Account account, Account other){
+        return LOCK_ORDER.compare(account, other) <= 0;
+    }
+
+    private static int stripeOf(Account account){
+        Lock lock = account.getLock();
+        return lock instanceof LockStripes.Stripe ? ((LockStripes.Stripe) lock).index : -1;
+    }
+
+    /**
+     * Move the money between two lock-free accounts: the source is debited first and the destination
+     * credited afterwards; should the credit fail the debit is compensated.
+     *
+     * @return <code>true</code> if the transfer was successful; <code>false</code> otherwise
+     */
+    private boolean transferUnits(){
+        FixedPointBalance sourceBalance = units(source);
+
+        if (!sourceBalance.withdrawUnits(amountUnits)){
+            Metrics.INSUFFICIENT_FUNDS.increment();
+            return false;
+        }
+
+        if (!units(destination).depositUnits(destinationUnits)){
+            sourceBalance.depositUnits(amountUnits);
+            return false;
+        }
+
+        return true;
+    }
+
+    private static FixedPointBalance units(Account account){
+        return (FixedPointBalance) account.getBalanceHolder();
+    }
+
     @Override
     public String toString() {
         return "Transfer{" +
@@ -115,6 +442,8 @@ public class Transfer {
                 ", source=" + source.id +
                 ", destination=" + destination.id +
                 ", amount=" + amount +
+                ", destinationAmount=" + destinationAmount +
+                ", rateVersion=" + rateVersion +
                 '}';
     }
 }
@@ -0,0 +1,368 @@
+import io.vertx.core.Future;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * A group of transfers executed together: the lock of every account involved is taken once for the
+ * whole batch instead of once per transfer.
+ *
+ * An {@link Mode#ALL_OR_NOTHING} batch owns its accounts until it is either applied or reverted, so that no
+ * other change can drain a destination before the batch is rolled back: through the lock of every account
+ * (which any change of a <code>decimal</code> balance takes), or by running on the single shard owning all of
+ * its accounts. Such a batch is rejected with an {@link UnsupportedOperationException} whenever its accounts
+ * cannot be owned this way (accounts with <code>fixed-point</code> balances changed without locks, or owned by
+ * several shards).
+ */
+public class TransferBatch {
+
+    /**
+     * How the failure of a transfer affects the rest of the batch.
+     */
+    public enum Mode {
+        /**
+         * Every transfer is attempted on its own.
+         */
+        BEST_EFFORT,
+
+        /**
+         * Either every transfer succeeds or none of them is applied.
+         */
+        ALL_OR_NOTHING;
+
+        /**
+         * Parse a mode from its request name (e.g. <code>"all-or-nothing"</code>).
+         *
+         * @param name the request name
+         * @return the mode
+         * @throws IllegalArgumentException if there is no mode with the given name
+         */
+        public static Mode fromName(String name) {
+            return valueOf(name.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    /**
+     * The outcome of a single transfer of the batch.
+     */
+    public enum Status {
+        COMPLETED("completed"),
+        FAILED("failed"),
+        INVALID("invalid"),
+        ABORTED("aborted");
+
+        private final String name;
+
+        Status(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Get the name of the outcome, as written in responses.
+         *
+         * @return the name of the outcome
+         */
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * The result of a single transfer of the batch.
+     */
+    public static class Result {
+
+        private final Status status;
+
+        private final Transfer transfer;
+
+        /**
+         * The recorded transfer, set once a completed transfer is stored.
+         */
+        private TransferRecord record;
+
+        private Result(Status status, Transfer transfer) {
+            this.status = status;
+            this.transfer = transfer;
+        }
+
+        /**
+         * Get the outcome of the transfer.
+         *
+         * @return the outcome of the transfer
+         */
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * Get the transfer.
+         *
+         * @return the transfer, or <code>null</code> if the request for it was invalid
+         */
+        public Transfer getTransfer() {
+            return transfer;
+        }
+
+        /**
+         * Get the recorded transfer.
+         *
+         * @return the recorded transfer, or <code>null</code> if the transfer did not complete
+         */
+        public TransferRecord getRecord() {
+            return record;
+        }
+
+        /**
+         * Set the recorded transfer.
+         *
+         * @param record the recorded transfer
+         */
+        void setRecord(TransferRecord record) {
+            this.record = record;
+        }
+    }
+
+    /**
+     * The transfers of the batch; <code>null</code> stands for an invalid transfer request.
+     */
+    private final List<Transfer> transfers;
+
+    private final Mode mode;
+
+    public TransferBatch(List<Transfer> transfers, Mode mode) {
+        this.transfers = Objects.requireNonNull(transfers, "Transfers cannot be null");
+        this.mode = Objects.requireNonNull(mode, "Mode cannot be null");
+
+        if (transfers.isEmpty()){
+            throw new IllegalArgumentException("Batch cannot be empty");
+        }
+    }
+
+    /**
+     * Execute the batch without parking the calling thread: all accounts are claimed at once through the
+     * given lock manager and the transfers are applied in order once every lock is granted.
+     *
+     * Accounts with <code>fixed-point</code> balances are claimed too, so that batches never interleave, but single
+     * transfers between them do not claim them, so an {@link Mode#ALL_OR_NOTHING} batch of such accounts is
+     * rejected.
+     *
+     * @param lockManager the lock manager guarding the accounts
+     * @return a future completed with the result of each transfer, in request order, or failed with an
+     * {@link UnsupportedOperationException} if the batch is {@link Mode#ALL_OR_NOTHING} and has lock-free accounts
+     */
+    Future<List<Result>> executeAsync(AccountLockManager lockManager){
+        Set<UUID> ids = new HashSet<>();
+
+        for (Transfer transfer : transfers) {
+            if (transfer != null) {
+                if (mode == Mode.ALL_OR_NOTHING && transfer.getSource().isLockFree()) {
+                    return Future.failedFuture(new UnsupportedOperationException(
+                            "All-or-nothing batches cannot own lock-free accounts"));
+                }
+
+                ids.add(transfer.getSource().id);
+                ids.add(transfer.getDestination().id);
+            }
+        }
+
+        if (ids.isEmpty()) {
+            return Future.succeededFuture(apply());
+        }
+
+        Future<List<Result>> results = Future.future();
+
+        lockManager.acquireAll(ids).setHandler(granted -> {
+            try {
+                results.complete(apply());
+            } catch (Exception e) {
+                results.fail(e);
+            } finally {
+                lockManager.releaseAll(granted.result());
+            }
+        });
+
+        return results;
+    }
+
+    /**
+     * Execute the batch on the shards owning its accounts. An {@link Mode#ALL_OR_NOTHING} batch is applied in a
+     * single step by the shard owning all of its accounts; a {@link Mode#BEST_EFFORT} batch is run one transfer
+     * after the other, each through {@link AccountShards#transfer(Transfer)}, so other requests may run between
+     * two transfers of the batch.
+     *
+     * @param shards the shards owning the accounts
+     * @return a future completed with the result of each transfer, in request order, or failed with an
+     * {@link UnsupportedOperationException} if the batch is {@link Mode#ALL_OR_NOTHING} and its accounts are owned
+     * by several shards
+     */
+    Future<List<Result>> executeAsync(AccountShards shards){
+        Status[] statuses = new Status[transfers.size()];
+        Future<List<Result>> results = Future.future();
+
+        if (mode == Mode.ALL_OR_NOTHING) {
+            Set<Integer> owners = new HashSet<>();
+            UUID owned = null;
+
+            for (Transfer transfer : transfers) {
+                if (transfer != null) {
+                    owned = transfer.getSource().id;
+                    owners.add(AccountShards.shardOf(owned, shards.getCount()));
+                    owners.add(AccountShards.shardOf(transfer.getDestination().id, shards.getCount()));
+                }
+            }
+
+            if (owners.size() > 1) {
+                results.fail(new UnsupportedOperationException(
+                        "All-or-nothing batches cannot span accounts of several shards"));
+            } else if (owned == null) {
+                results.complete(apply());
+            } else {
+                shards.apply(this, owned).setHandler(results.completer());
+            }
+        } else if (markInvalid(statuses)) {
+            results.complete(results(statuses));
+        } else {
+            applyNext(shards, statuses, 0, results);
+        }
+
+        return results;
+    }
+
+    private void applyNext(AccountShards shards, Status[] statuses, int i, Future<List<Result>> results){
+        if (i == statuses.length) {
+            results.complete(results(statuses));
+            return;
+        }
+
+        if (statuses[i] == Status.INVALID) {
+            applyNext(shards, statuses, i + 1, results);
+            return;
+        }
+
+        shards.transfer(transfers.get(i)).setHandler(applied -> {
+            if (applied.succeeded() && applied.result()) {
+                statuses[i] = Status.COMPLETED;
+                applyNext(shards, statuses, i + 1, results);
+            } else if (applied.failed() && AccountShards.isUnreachable(applied.cause())) {
+                results.fail(applied.cause());
+            } else {
+                statuses[i] = Status.FAILED;
+                applyNext(shards, statuses, i + 1, results);
+            }
+        });
+    }
+
+    /**
+     * Apply the transfers of the batch. The caller must own every account involved; the locks of the accounts
+     * of an {@link Mode#ALL_OR_NOTHING} batch are moreover held until it is applied or reverted.
+     *
+     * @return the result of each transfer, in request order
+     */
+    List<Result> apply(){
+        List<Lock> locks = mode == Mode.ALL_OR_NOTHING ? lockAccounts() : Collections.emptyList();
+
+        try {
+            return applyLocked();
+        } finally {
+            for (int i = locks.size() - 1; i >= 0; i--) {
+                locks.get(i).unlock();
+            }
+        }
+    }
+
+    private List<Result> applyLocked(){
+        Status[] statuses = new Status[transfers.size()];
+        boolean aborted = markInvalid(statuses);
+
+        for (int i = 0; i < statuses.length && !aborted; i++) {
+            if (statuses[i] == Status.INVALID) {
+                continue;
+            }
+
+            if (transfers.get(i).apply()) {
+                statuses[i] = Status.COMPLETED;
+            } else {
+                statuses[i] = Status.FAILED;
+
+                if (mode == Mode.ALL_OR_NOTHING) {
+                    aborted = true;
+
+                    for (int j = i - 1; j >= 0; j--) {
+                        if (statuses[j] == Status.COMPLETED && transfers.get(j).revert()) {
+                            statuses[j] = Status.ABORTED;
+                        }
+                    }
+                }
+            }
+        }
+
+        return results(statuses);
+    }
+
+    /**
+     * Take the lock of every account of the batch (lock stripes shared by several accounts only once), in the
+     * order single transfers take them.
+     *
+     * @return the locks taken, in the order they were taken
+     */
+    private List<Lock> lockAccounts(){
+        SortedSet<Account> accounts = new TreeSet<>(Transfer.LOCK_ORDER);
+
+        for (Transfer transfer : transfers) {
+            if (transfer != null) {
+                accounts.add(transfer.getSource());
+                accounts.add(transfer.getDestination());
+            }
+        }
+
+        List<Lock> locks = new ArrayList<>(accounts.size());
+
+        for (Account account : accounts) {
+            Lock lock = account.getLock();
+
+            if (lock != null && !locks.contains(lock)) {
+                Metrics.CONTENTION.lock(lock, account.id);
+                locks.add(lock);
+            }
+        }
+
+        return locks;
+    }
+
+    /**
+     * Mark the invalid transfer requests of the batch.
+     *
+     * @return <code>true</code> if the batch is aborted because of them; <code>false</code> otherwise
+     */
+    private boolean markInvalid(Status[] statuses){
+        boolean aborted = false;
+
+        for (int i = 0; i < statuses.length; i++) {
+            if (transfers.get(i) == null) {
+                statuses[i] = Status.INVALID;
+                aborted |= mode == Mode.ALL_OR_NOTHING;
+            }
+        }
+
+        return aborted;
+    }
+
+    private List<Result> results(Status[] statuses){
+        List<Result> results = new ArrayList<>(statuses.length);
+
+        for (int i = 0; i < statuses.length; i++) {
+            results.add(new Result(statuses[i] == null ? Status.ABORTED : statuses[i], transfers.get(i)));
+        }
+
+        return Collections.unmodifiableList(results);
+    }
+}
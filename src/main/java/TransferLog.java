@@ -0,0 +1,464 @@
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Append-only, columnar store of transfers. Each transfer is a row spread over primitive arrays (the three
+ * 128-bit IDs, the amounts debited and credited as unscaled <code>long</code>s and their scales, the version of the
+ * exchange rates, the timestamp and the status), so
+ * a transfer costs a few dozen bytes and keeps no account reachable.
+ *
+ * Appends are serialized; reads never block appends. Rows live in fixed-size chunks that are never
+ * copied, and transfers are found by ID through an open-addressing index that only stores row numbers.
+ * Each account also has the (ascending) rows of its own transfers, so its history is read without
+ * scanning the others.
+ */
+public class TransferLog implements Iterable<TransferRecord> {
+
+    /**
+     * Which transfers of an account to read.
+     */
+    public enum Direction {
+        /**
+         * Transfers to the account.
+         */
+        IN,
+
+        /**
+         * Transfers from the account.
+         */
+        OUT;
+
+        /**
+         * Parse a direction from its request name (e.g. <code>"in"</code>).
+         *
+         * @param name the request name
+         * @return the direction
+         * @throws IllegalArgumentException if there is no direction with the given name
+         */
+        public static Direction fromName(String name) {
+            return valueOf(name.trim().toUpperCase());
+        }
+    }
+
+    private static final int CHUNK_BITS = 13;
+
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final TransferStatus[] STATUSES = TransferStatus.values();
+
+    /**
+     * The chunks holding the rows; replaced (never modified in place) when a chunk is added.
+     */
+    private volatile Chunk[] chunks = new Chunk[0];
+
+    /**
+     * The number of rows; written after the row itself, so readers never see a partial row.
+     */
+    private volatile int size;
+
+    /**
+     * Open-addressing index from transfer ID to row number plus one (zero marks an empty slot).
+     */
+    private int[] index = new int[1024];
+
+    private final StampedLock indexLock = new StampedLock();
+
+    /**
+     * The rows of the transfers of each account, in the order they were recorded.
+     */
+    private final Map<UUID, Rows> accountRows = new ConcurrentHashMap<>();
+
+    /**
+     * Record a transfer.
+     *
+     * @param transfer the transfer
+     * @param status the status of the transfer
+     * @return the recorded transfer
+     * @throws IllegalArgumentException if a transfer with the same ID was already recorded
+     */
+    public TransferRecord append(Transfer transfer, TransferStatus status) {
+        Objects.requireNonNull(transfer, "Transfer cannot be null");
+
+        return append(transfer.id, transfer.getSource().id, transfer.getDestination().id, transfer.getAmount(),
+                transfer.getDestinationAmount(), transfer.getRateVersion(), System.currentTimeMillis(), status);
+    }
+
+    /**
+     * Record a transfer built beforehand (e.g. once it is journaled).
+     *
+     * @param record the transfer
+     * @return the recorded transfer
+     * @throws IllegalArgumentException if a transfer with the same ID was already recorded
+     */
+    public TransferRecord append(TransferRecord record) {
+        Objects.requireNonNull(record, "Record cannot be null");
+
+        return append(record.id, record.getSourceID(), record.getDestinationID(), record.getAmount(),
+                record.getDestinationAmount(), record.getRateVersion(), record.getTimestamp(), record.getStatus());
+    }
+
+    /**
+     * Record a transfer between accounts of the same currency.
+     *
+     * @param id the ID of the transfer
+     * @param sourceID the ID of the source account
+     * @param destinationID the ID of the destination account
+     * @param amount the amount transferred
+     * @param timestamp the time the transfer was made at (milliseconds since the epoch)
+     * @param status the status of the transfer
+     * @return the recorded transfer
+     * @throws IllegalArgumentException if a transfer with the same ID was already recorded
+     */
+    public TransferRecord append(UUID id, UUID sourceID, UUID destinationID, BigDecimal amount,
+                                 long timestamp, TransferStatus status) {
+        return append(id, sourceID, destinationID, amount, amount, 0, timestamp, status);
+    }
+
+    /**
+     * Record a transfer.
+     *
+     * @param id the ID of the transfer
+     * @param sourceID the ID of the source account
+     * @param destinationID the ID of the destination account
+     * @param amount the amount taken out of the source account
+     * @param destinationAmount the amount put into the destination account
+     * @param rateVersion the version of the exchange rates the amount was converted with, or <code>0</code>
+     * @param timestamp the time the transfer was made at (milliseconds since the epoch)
+     * @param status the status of the transfer
+     * @return the recorded transfer
+     * @throws IllegalArgumentException if a transfer with the same ID was already recorded
+     */
+    public synchronized TransferRecord append(UUID id, UUID sourceID, UUID destinationID, BigDecimal amount,
+                                              BigDecimal destinationAmount, long rateVersion, long timestamp,
+                                              TransferStatus status) {
+        Objects.requireNonNull(status, "Status cannot be null");
+
+        if (find(id) >= 0) {
+            throw new IllegalArgumentException("Transfer " + id + " is already recorded");
+        }
+
+        int row = size;
+        int chunkIndex = row >>> CHUNK_BITS;
+
+        if (chunkIndex == chunks.length) {
+            Chunk[] grown = Arrays.copyOf(chunks, chunkIndex + 1);
+            grown[chunkIndex] = new Chunk();
+            chunks = grown;
+        }
+
+        chunks[chunkIndex].set(row & CHUNK_MASK, id, sourceID, destinationID, amount, destinationAmount, rateVersion,
+                timestamp, status);
+        size = row + 1;
+
+        long stamp = indexLock.writeLock();
+        try {
+            if ((row + 1) * 2 > index.length) {
+                rehash(index.length * 2);
+            }
+
+            insert(index, row);
+        } finally {
+            indexLock.unlockWrite(stamp);
+        }
+
+        accountRows.computeIfAbsent(sourceID, key -> new Rows()).add(row);
+        accountRows.computeIfAbsent(destinationID, key -> new Rows()).add(row);
+
+        return get(row);
+    }
+
+    /**
+     * Get a transfer by ID.
+     *
+     * @param id the ID of the transfer
+     * @return the transfer, or <code>null</code> if there is no such transfer
+     */
+    public TransferRecord get(UUID id) {
+        int row = find(id);
+        return row < 0 ? null : get(row);
+    }
+
+    /**
+     * Find the row of a transfer.
+     *
+     * @param id the ID of the transfer
+     * @return the row of the transfer, or <code>-1</code> if there is no such transfer
+     */
+    public int find(UUID id) {
+        long stamp = indexLock.tryOptimisticRead();
+        int row = probe(id.getMostSignificantBits(), id.getLeastSignificantBits());
+
+        if (!indexLock.validate(stamp)) {
+            stamp = indexLock.readLock();
+            try {
+                row = probe(id.getMostSignificantBits(), id.getLeastSignificantBits());
+            } finally {
+                indexLock.unlockRead(stamp);
+            }
+        }
+
+        return row;
+    }
+
+    /**
+     * Get the transfer recorded at a given row.
+     *
+     * @param row the row
+     * @return the transfer
+     * @throws IndexOutOfBoundsException if there is no such row
+     */
+    public TransferRecord get(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " is out of bounds");
+        }
+
+        return chunks[row >>> CHUNK_BITS].get(row & CHUNK_MASK);
+    }
+
+    /**
+     * Get the number of recorded transfers.
+     *
+     * @return the number of recorded transfers
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Iterate over the transfers in the order they were recorded, starting at a given row.
+     *
+     * @param from the first row
+     * @return an iterator over the transfers
+     */
+    public Iterator<TransferRecord> iterator(int from) {
+        return new Iterator<TransferRecord>() {
+
+            private int row = from;
+
+            @Override
+            public boolean hasNext() {
+                return row < size;
+            }
+
+            @Override
+            public TransferRecord next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                return get(row++);
+            }
+        };
+    }
+
+    @Override
+    public Iterator<TransferRecord> iterator() {
+        return iterator(0);
+    }
+
+    /**
+     * Iterate over the transfers of an account in the order they were recorded. Only the account's own
+     * transfers are read, whatever the total number of transfers.
+     *
+     * @param accountID the ID of the account
+     * @param direction the transfers to read, or <code>null</code> for transfers in both directions
+     * @param since the time (milliseconds since the epoch) before which transfers are skipped
+     * @param after the ID of the transfer to start after, or <code>null</code> to start at the first one
+     * @return an iterator over the transfers
+     * @throws IllegalArgumentException if after is not a transfer of the account
+     */
+    public Iterator<TransferRecord> iterator(UUID accountID, Direction direction, long since, UUID after) {
+        Objects.requireNonNull(accountID, "Account ID cannot be null");
+
+        Rows rows = accountRows.getOrDefault(accountID, new Rows());
+        int count = rows.size;
+        int[] items = rows.items;
+        int from = 0;
+
+        if (after != null) {
+            int row = find(after);
+            from = row < 0 ? -1 : Arrays.binarySearch(items, 0, count, row);
+
+            if (from < 0) {
+                throw new IllegalArgumentException("Transfer " + after + " is not a transfer of account " + accountID);
+            }
+
+            from++;
+        }
+
+        int start = from;
+
+        return new Iterator<TransferRecord>() {
+
+            private int position = start;
+
+            private TransferRecord next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && position < count) {
+                    TransferRecord record = get(items[position++]);
+
+                    if (record.getTimestamp() >= since
+                            && (direction != Direction.IN || record.getDestinationID().equals(accountID))
+                            && (direction != Direction.OUT || record.getSourceID().equals(accountID))) {
+                        next = record;
+                    }
+                }
+
+                return next != null;
+            }
+
+            @Override
+            public TransferRecord next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                TransferRecord record = next;
+                next = null;
+                return record;
+            }
+        };
+    }
+
+    private int probe(long mostSigBits, long leastSigBits) {
+        int[] table = index;
+        int mask = table.length - 1;
+
+        for (int slot = hash(mostSigBits, leastSigBits) & mask, probes = 0; probes < table.length; slot = (slot + 1) & mask, probes++) {
+            int row = table[slot] - 1;
+
+            if (row < 0) {
+                return -1;
+            }
+
+            Chunk chunk = chunks[row >>> CHUNK_BITS];
+            int offset = (row & CHUNK_MASK) * 2;
+
+            if (chunk.ids[offset] == mostSigBits && chunk.ids[offset + 1] == leastSigBits) {
+                return row;
+            }
+        }
+
+        return -1;
+    }
+
+    private void insert(int[] table, int row) {
+        Chunk chunk = chunks[row >>> CHUNK_BITS];
+        int offset = (row & CHUNK_MASK) * 2;
+        int mask = table.length - 1;
+        int slot = hash(chunk.ids[offset], chunk.ids[offset + 1]) & mask;
+
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+
+        table[slot] = row + 1;
+    }
+
+    private void rehash(int capacity) {
+        int[] table = new int[capacity];
+
+        for (int row = 0; row < size - 1; row++) {
+            insert(table, row);
+        }
+
+        index = table;
+    }
+
+    private static int hash(long mostSigBits, long leastSigBits) {
+        return (int) IdGenerator.hash(mostSigBits, leastSigBits);
+    }
+
+    /**
+     * A growable array of rows with a single writer (the appender) and lock-free readers: the array is
+     * published before the size, so a reader that saw a size sees at least that many rows.
+     */
+    private static class Rows {
+
+        private volatile int[] items = new int[4];
+
+        private volatile int size;
+
+        private void add(int row) {
+            int[] current = items;
+
+            if (size == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+
+            current[size] = row;
+            items = current;
+            size = size + 1;
+        }
+    }
+
+    private static class Chunk {
+
+        private final long[] ids = new long[CHUNK_SIZE * 2];
+
+        private final long[] sources = new long[CHUNK_SIZE * 2];
+
+        private final long[] destinations = new long[CHUNK_SIZE * 2];
+
+        private final long[] amounts = new long[CHUNK_SIZE];
+
+        private final byte[] scales = new byte[CHUNK_SIZE];
+
+        private final long[] destinationAmounts = new long[CHUNK_SIZE];
+
+        private final byte[] destinationScales = new byte[CHUNK_SIZE];
+
+        private final long[] rateVersions = new long[CHUNK_SIZE];
+
+        private final long[] timestamps = new long[CHUNK_SIZE];
+
+        private final byte[] statuses = new byte[CHUNK_SIZE];
+
+        private void set(int offset, UUID id, UUID sourceID, UUID destinationID, BigDecimal amount,
+                         BigDecimal destinationAmount, long rateVersion, long timestamp, TransferStatus status) {
+            setUUID(ids, offset, id);
+            setUUID(sources, offset, sourceID);
+            setUUID(destinations, offset, destinationID);
+
+            amounts[offset] = amount.unscaledValue().longValueExact();
+            scales[offset] = (byte) amount.scale();
+            destinationAmounts[offset] = destinationAmount.unscaledValue().longValueExact();
+            destinationScales[offset] = (byte) destinationAmount.scale();
+            rateVersions[offset] = rateVersion;
+            timestamps[offset] = timestamp;
+            statuses[offset] = (byte) status.ordinal();
+        }
+
+        private TransferRecord get(int offset) {
+            return new TransferRecord(
+                    getUUID(ids, offset),
+                    getUUID(sources, offset),
+                    getUUID(destinations, offset),
+                    BigDecimal.valueOf(amounts[offset], scales[offset]),
+                    BigDecimal.valueOf(destinationAmounts[offset], destinationScales[offset]),
+                    rateVersions[offset],
+                    timestamps[offset],
+                    STATUSES[statuses[offset]]);
+        }
+
+        private static void setUUID(long[] column, int offset, UUID id) {
+            column[offset * 2] = id.getMostSignificantBits();
+            column[offset * 2 + 1] = id.getLeastSignificantBits();
+        }
+
+        private static UUID getUUID(long[] column, int offset) {
+            return new UUID(column[offset * 2], column[offset * 2 + 1]);
+        }
+    }
+}
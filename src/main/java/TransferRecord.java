@@ -0,0 +1,183 @@
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * A read-only view of a transfer stored in the {@link TransferLog}. The accounts are referenced by ID
+ * only, unless they were expanded.
+ */
+public class TransferRecord {
+
+    /**
+     * Unique ID of the transfer.
+     */
+    public final UUID id;
+
+    /**
+     * ID of the source account.
+     */
+    private final UUID sourceID;
+
+    /**
+     * ID of the destination account.
+     */
+    private final UUID destinationID;
+
+    /**
+     * Amount of money transferred.
+     */
+    private final BigDecimal amount;
+
+    /**
+     * Amount of money put into the destination account, converted into its currency if it differs from the source's.
+     */
+    private final BigDecimal destinationAmount;
+
+    /**
+     * Version of the exchange rates the amount was converted with, or <code>0</code> if it was not converted.
+     */
+    private final long rateVersion;
+
+    /**
+     * The time the transfer was recorded at (milliseconds since the epoch).
+     */
+    private final long timestamp;
+
+    /**
+     * The status of the transfer.
+     */
+    private final TransferStatus status;
+
+    /**
+     * Source account, only set when expanded.
+     */
+    private Account source;
+
+    /**
+     * Destination account, only set when expanded.
+     */
+    private Account destination;
+
+    TransferRecord(UUID id, UUID sourceID, UUID destinationID, BigDecimal amount, long timestamp, TransferStatus status) {
+        this(id, sourceID, destinationID, amount, amount, 0, timestamp, status);
+    }
+
+    TransferRecord(UUID id, UUID sourceID, UUID destinationID, BigDecimal amount, BigDecimal destinationAmount,
+                   long rateVersion, long timestamp, TransferStatus status) {
+        this.id = id;
+        this.sourceID = sourceID;
+        this.destinationID = destinationID;
+        this.amount = amount;
+        this.destinationAmount = destinationAmount;
+        this.rateVersion = rateVersion;
+        this.timestamp = timestamp;
+        this.status = status;
+    }
+
+    /**
+     * Get the ID of the source account.
+     *
+     * @return the ID of the source account
+     */
+    public UUID getSourceID() {
+        return sourceID;
+    }
+
+    /**
+     * Get the ID of the destination account.
+     *
+     * @return the ID of the destination account
+     */
+    public UUID getDestinationID() {
+        return destinationID;
+    }
+
+    /**
+     * Get the amount transferred.
+     *
+     * @return the amount transferred
+     */
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    /**
+     * Get the amount put into the destination account.
+     *
+     * @return the amount, converted into the destination's currency if it differs from the source's
+     */
+    public BigDecimal getDestinationAmount() {
+        return destinationAmount;
+    }
+
+    /**
+     * Get the version of the exchange rates the amount was converted with (see {@link FxRateTable}).
+     *
+     * @return the version, or <code>0</code> if the amount was not converted
+     */
+    public long getRateVersion() {
+        return rateVersion;
+    }
+
+    /**
+     * Get the time the transfer was recorded at.
+     *
+     * @return the time the transfer was recorded at (milliseconds since the epoch)
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Get the status of the transfer.
+     *
+     * @return the status of the transfer
+     */
+    public TransferStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Get the source account.
+     *
+     * @return the source account, or <code>null</code> if the transfer was not expanded
+     */
+    public Account getSource() {
+        return source;
+    }
+
+    /**
+     * Get the destination account.
+     *
+     * @return the destination account, or <code>null</code> if the transfer was not expanded
+     */
+    public Account getDestination() {
+        return destination;
+    }
+
+    /**
+     * Attach the current state of the accounts (if they still exist) to the record.
+     *
+     * @param source the source account, or <code>null</code>
+     * @param destination the destination account, or <code>null</code>
+     * @return this record
+     */
+    public TransferRecord expand(Account source, Account destination) {
+        this.source = source;
+        this.destination = destination;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "TransferRecord{" +
+                "id=" + id +
+                ", source=" + sourceID +
+                ", destination=" + destinationID +
+                ", amount=" + amount +
+                ", destinationAmount=" + destinationAmount +
+                ", rateVersion=" + rateVersion +
+                ", timestamp=" + timestamp +
+                ", status=" + status +
+                '}';
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * The status of a recorded transfer.
+ */
+public enum TransferStatus {
+    COMPLETED("completed"),
+
+    /**
+     * Reserved on the source, but not yet committed by the node owning the destination (see {@link ClusterLedger}).
+     */
+    PENDING("pending");
+
+    private final String name;
+
+    TransferStatus(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Get the name of the status, as written in responses.
+     *
+     * @return the name of the status
+     */
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,95 @@
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs blocking work (e.g. {@link Transfer#execute()}, which waits for the locks of its accounts) on a virtual thread
+ * per task, and hands the result back to the Vert.x context of the caller. Unlike <code>executeBlocking</code>, the
+ * work is not bounded by a fixed pool of worker threads: a task waiting for a lock only parks its own virtual thread,
+ * so tens of thousands of contended transfers can be waiting at once.
+ *
+ * Virtual threads need Java 21 or later. The project is built for Java 8, so the executor is looked up reflectively
+ * and only the runtime needs to be recent.
+ */
+public class VirtualThreadExecutor {
+
+    private final ExecutorService executor;
+
+    private final AtomicInteger running = new AtomicInteger();
+
+    /**
+     * Create an executor.
+     *
+     * @throws UnsupportedOperationException if the runtime has no virtual threads
+     */
+    public VirtualThreadExecutor() {
+        try {
+            executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or later, not "
+                    + System.getProperty("java.version"), e);
+        }
+    }
+
+    /**
+     * Run a task on a new virtual thread.
+     *
+     * @param task the task, which may block
+     * @param <T> the type of the result
+     * @return a future completed (on the context of the caller, if any) with the result of the task, or failed with
+     * what it threw
+     */
+    public <T> Future<T> execute(Callable<T> task) {
+        Context context = Vertx.currentContext();
+        Future<T> result = Future.future();
+
+        running.incrementAndGet();
+
+        executor.execute(() -> {
+            T value = null;
+            Exception failure = null;
+
+            try {
+                value = task.call();
+            } catch (Exception e) {
+                failure = e;
+            } finally {
+                running.decrementAndGet();
+            }
+
+            complete(context, result, value, failure);
+        });
+
+        return result;
+    }
+
+    /**
+     * Get the number of tasks running (or waiting, e.g. for a lock).
+     *
+     * @return the number of tasks
+     */
+    public int getRunning() {
+        return running.get();
+    }
+
+    private static <T> void complete(Context context, Future<T> result, T value, Exception failure) {
+        if (context == null) {
+            complete(result, value, failure);
+        } else {
+            context.runOnContext(v -> complete(result, value, failure));
+        }
+    }
+
+    private static <T> void complete(Future<T> result, T value, Exception failure) {
+        if (failure == null) {
+            result.complete(value);
+        } else {
+            result.fail(failure);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+import io.vertx.core.Future;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.UUID;
+
+public class AccountLockManagerTest {
+
+    @Test
+    public void testAcquireFreeLock() {
+        AccountLockManager lockManager = new AccountLockManager();
+        UUID id = UUID.randomUUID();
+
+        Assert.assertTrue(lockManager.acquire(id).isComplete());
+        Assert.assertTrue(lockManager.isLocked(id));
+
+        lockManager.release(id);
+        Assert.assertFalse(lockManager.isLocked(id));
+    }
+
+    @Test
+    public void testWaitersAreGrantedInOrder() {
+        AccountLockManager lockManager = new AccountLockManager();
+        UUID id = UUID.randomUUID();
+        List<Integer> granted = new ArrayList<>();
+
+        lockManager.acquire(id);
+
+        for (int i = 0; i < 3; i++) {
+            int waiter = i;
+            lockManager.acquire(id).setHandler(result -> granted.add(waiter));
+        }
+
+        Assert.assertTrue(granted.isEmpty());
+
+        for (int i = 0; i < 3; i++) {
+            lockManager.release(id);
+            Assert.assertEquals(i + 1, granted.size());
+        }
+
+        Assert.assertEquals(Integer.valueOf(0), granted.get(0));
+        Assert.assertEquals(Integer.valueOf(1), granted.get(1));
+        Assert.assertEquals(Integer.valueOf(2), granted.get(2));
+
+        lockManager.release(id);
+        Assert.assertFalse(lockManager.isLocked(id));
+    }
+
+    @Test
+    public void testQueuedWaitIsRecorded() {
+        AccountLockManager lockManager = new AccountLockManager();
+        UUID id = UUID.randomUUID();
+
+        lockManager.acquire(id);
+
+        for (int i = 0; i < 200; i++) {
+            lockManager.acquire(id);
+        }
+
+        for (int i = 0; i < 201; i++) {
+            lockManager.release(id);
+        }
+
+        Assert.assertFalse(lockManager.isLocked(id));
+        Assert.assertTrue(Metrics.CONTENTION.top(Constants.HOT_ACCOUNTS_CAPACITY).stream()
+                .anyMatch(account -> account.getID().equals(id)));
+    }
+
+    @Test
+    public void testAcquireAllInOppositeOrder() {
+        AccountLockManager lockManager = new AccountLockManager();
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+
+        Future<Void> forward = lockManager.acquireAll(first, second);
+        Future<Void> backward = lockManager.acquireAll(second, first);
+
+        Assert.assertTrue(forward.isComplete());
+        Assert.assertFalse(backward.isComplete());
+
+        lockManager.releaseAll(first, second);
+        Assert.assertTrue(backward.isComplete());
+
+        lockManager.releaseAll(second, first);
+        Assert.assertFalse(lockManager.isLocked(first));
+        Assert.assertFalse(lockManager.isLocked(second));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReleaseFreeLock() {
+        new AccountLockManager().release(UUID.randomUUID());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAcquireAllSameAccount() {
+        UUID id = UUID.randomUUID();
+
+        new AccountLockManager().acquireAll(id, id);
+    }
+
+    @Test
+    public void testExecuteAsync() {
+        AccountLockManager lockManager = new AccountLockManager();
+        Account accountAlex = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN);
+        Account accountBen = new Account("ben", Currency.getInstance("USD"), BigDecimal.ZERO);
+
+        lockManager.acquire(accountBen.id);
+
+        Future<Boolean> result = new Transfer(accountAlex, accountBen, BigDecimal.ONE).executeAsync(lockManager);
+
+        Assert.assertFalse(result.isComplete());
+        Assert.assertEquals(BigDecimal.TEN, accountAlex.getBalance());
+
+        lockManager.release(accountBen.id);
+
+        Assert.assertTrue(result.result());
+        Assert.assertEquals(BigDecimal.valueOf(9), accountAlex.getBalance());
+        Assert.assertEquals(BigDecimal.ONE, accountBen.getBalance());
+        Assert.assertFalse(lockManager.isLocked(accountAlex.id));
+        Assert.assertFalse(lockManager.isLocked(accountBen.id));
+    }
+}
@@ -0,0 +1,204 @@
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+public class AccountShardsTest {
+
+    private Vertx vertx;
+
+    private ConcurrentHashMap<UUID, Account> accounts;
+
+    private AccountShards[] shards;
+
+    @Before
+    public void setUp() throws Exception {
+        vertx = Vertx.vertx();
+        accounts = new ConcurrentHashMap<>();
+        shards = new AccountShards[2];
+
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new AccountShards(vertx, accounts, i, shards.length);
+            await(shards[i].start());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Test
+    public void testShardOfIsInRange() {
+        for (int i = 0; i < 1000; i++) {
+            UUID id = UUID.randomUUID();
+            int shard = AccountShards.shardOf(id, 3);
+
+            Assert.assertTrue(shard >= 0 && shard < 3);
+            Assert.assertEquals(shard, AccountShards.shardOf(id, 3));
+        }
+    }
+
+    @Test
+    public void testTimeOrderedIdsSpread() {
+        // IDs drawn by one thread differ only in their timestamp and counter bits
+        IdGenerator generator = new TimeOrderedIdGenerator();
+        int[] counts = new int[4];
+
+        for (int i = 0; i < 100000; i++) {
+            counts[AccountShards.shardOf(generator.next(), counts.length)]++;
+        }
+
+        for (int count : counts) {
+            Assert.assertTrue(count > 23000 && count < 27000);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidIndex() {
+        new AccountShards(vertx, accounts, 2, 2);
+    }
+
+    @Test
+    public void testSameShardTransfer() throws Exception {
+        Account accountAlex = create(0, BigDecimal.TEN);
+        Account accountBen = create(0, BigDecimal.ZERO);
+
+        Assert.assertTrue(await(shards[1].transfer(new Transfer(accountAlex, accountBen, BigDecimal.valueOf(6)))));
+        Assert.assertFalse(await(shards[1].transfer(new Transfer(accountAlex, accountBen, BigDecimal.valueOf(6)))));
+
+        Assert.assertEquals(0, BigDecimal.valueOf(4).compareTo(accountAlex.getBalance()));
+        Assert.assertEquals(0, BigDecimal.valueOf(6).compareTo(accountBen.getBalance()));
+    }
+
+    @Test
+    public void testCrossShardTransfer() throws Exception {
+        Account accountAlex = create(0, BigDecimal.TEN);
+        Account accountBen = create(1, BigDecimal.ZERO);
+
+        Assert.assertTrue(await(shards[0].transfer(new Transfer(accountAlex, accountBen, BigDecimal.valueOf(6)))));
+        Assert.assertFalse(await(shards[1].transfer(new Transfer(accountAlex, accountBen, BigDecimal.valueOf(6)))));
+
+        Assert.assertEquals(0, BigDecimal.valueOf(4).compareTo(accountAlex.getBalance()));
+        Assert.assertEquals(0, BigDecimal.valueOf(6).compareTo(accountBen.getBalance()));
+    }
+
+    @Test
+    public void testCrossShardTransferToDeletedAccountIsRefunded() throws Exception {
+        Account accountAlex = create(0, BigDecimal.TEN);
+        Account accountBen = create(1, BigDecimal.ZERO);
+
+        Assert.assertTrue(await(shards[0].delete(accountBen)));
+        Assert.assertFalse(await(shards[0].transfer(new Transfer(accountAlex, accountBen, BigDecimal.valueOf(6)))));
+
+        Assert.assertEquals(0, BigDecimal.TEN.compareTo(accountAlex.getBalance()));
+        Assert.assertEquals(0, BigDecimal.ZERO.compareTo(accountBen.getBalance()));
+    }
+
+    @Test
+    public void testOpposingCrossShardTransfers() throws Exception {
+        Account accountAlex = create(0, BigDecimal.valueOf(1000));
+        Account accountBen = create(1, BigDecimal.valueOf(1000));
+        Future<?>[] transfers = new Future<?>[200];
+
+        for (int i = 0; i < transfers.length; i++) {
+            transfers[i] = i % 2 == 0
+                    ? shards[0].transfer(new Transfer(accountAlex, accountBen, BigDecimal.ONE))
+                    : shards[1].transfer(new Transfer(accountBen, accountAlex, BigDecimal.ONE));
+        }
+
+        for (Future<?> transfer : transfers) {
+            Assert.assertEquals(Boolean.TRUE, await(transfer));
+        }
+
+        Assert.assertEquals(0, BigDecimal.valueOf(1000).compareTo(accountAlex.getBalance()));
+        Assert.assertEquals(0, BigDecimal.valueOf(1000).compareTo(accountBen.getBalance()));
+    }
+
+    @Test
+    public void testAllOrNothingBatchRevertsConvertedTransfer() throws Exception {
+        DataStore.getFxRates().update(new JsonObject().put("USD/EUR", "0.9"));
+
+        try {
+            Account accountAlex = create(0, BigDecimal.TEN);
+            Account accountBen = create(0, Currency.getInstance("EUR"), BigDecimal.ZERO);
+
+            // There is no EUR/USD rate, so the money cannot be transferred back: the credit itself is taken back
+            List<TransferBatch.Result> results = await(new TransferBatch(Arrays.asList(
+                    new Transfer(accountAlex, accountBen, BigDecimal.valueOf(6)),
+                    new Transfer(accountAlex, accountBen, BigDecimal.valueOf(6))),
+                    TransferBatch.Mode.ALL_OR_NOTHING).executeAsync(shards[0]));
+
+            Assert.assertEquals(TransferBatch.Status.ABORTED, results.get(0).getStatus());
+            Assert.assertEquals(TransferBatch.Status.FAILED, results.get(1).getStatus());
+            Assert.assertEquals(0, BigDecimal.TEN.compareTo(accountAlex.getBalance()));
+            Assert.assertEquals(0, BigDecimal.ZERO.compareTo(accountBen.getBalance()));
+        } finally {
+            DataStore.getFxRates().update(new JsonObject());
+        }
+    }
+
+    @Test
+    public void testAllOrNothingBatchAcrossShardsIsRejected() throws Exception {
+        Account accountAlex = create(0, BigDecimal.TEN);
+        Account accountBen = create(1, BigDecimal.ZERO);
+
+        Future<List<TransferBatch.Result>> results = new TransferBatch(
+                Collections.singletonList(new Transfer(accountAlex, accountBen, BigDecimal.ONE)),
+                TransferBatch.Mode.ALL_OR_NOTHING).executeAsync(shards[0]);
+
+        Assert.assertTrue(results.failed());
+        Assert.assertTrue(results.cause() instanceof UnsupportedOperationException);
+        Assert.assertEquals(0, BigDecimal.TEN.compareTo(accountAlex.getBalance()));
+    }
+
+    /**
+     * Create an account owned by the given shard.
+     */
+    private Account create(int shard, BigDecimal balance) throws Exception {
+        return create(shard, Currency.getInstance("USD"), balance);
+    }
+
+    /**
+     * Create an account of a given currency owned by the given shard.
+     */
+    private Account create(int shard, Currency currency, BigDecimal balance) throws Exception {
+        Account account;
+
+        do {
+            account = new Account("alex", currency, balance, Balance.Mode.FIXED_POINT);
+        } while (AccountShards.shardOf(account.id, shards.length) != shard);
+
+        await(shards[1 - shard].create(account));
+        Assert.assertTrue(accounts.containsKey(account.id));
+
+        return account;
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        CompletableFuture<T> result = new CompletableFuture<>();
+
+        future.setHandler(done -> {
+            if (done.succeeded()) {
+                result.complete(done.result());
+            } else {
+                result.completeExceptionally(done.cause());
+            }
+        });
+
+        return result.get(10, TimeUnit.SECONDS);
+    }
+}
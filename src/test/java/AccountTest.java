@@ -1,3 +1,4 @@
+import io.vertx.core.Future;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -6,6 +7,7 @@ import java.util.Currency;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class AccountTest {
 
@@ -125,4 +127,134 @@ public class AccountTest {
             Assert.assertEquals(BigDecimal.ZERO, account.getBalance());
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testFixedPointWithdrawAndDeposit() {
+        Account account = new Account("alex", Currency.getInstance("USD"), BigDecimal.valueOf(100), Balance.Mode.FIXED_POINT);
+
+        Assert.assertTrue(account.isLockFree());
+        Assert.assertNull(account.getLock());
+        Assert.assertTrue(account.withdraw(BigDecimal.valueOf(10.55)));
+        Assert.assertEquals(new BigDecimal("89.45"), account.getBalance());
+        Assert.assertFalse(account.withdraw(BigDecimal.valueOf(100)));
+        Assert.assertTrue(account.deposit(BigDecimal.valueOf(0.55)));
+        Assert.assertEquals(new BigDecimal("90.00"), account.getBalance());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFixedPointTooManyDecimals() {
+        Account account = new Account("alex", Currency.getInstance("USD"), BigDecimal.ZERO, Balance.Mode.FIXED_POINT);
+        account.deposit(BigDecimal.valueOf(0.001));
+    }
+
+    @Test
+    public void testFixedPointUpdatedConcurrently() throws InterruptedException {
+        Account account = new Account("alex", Currency.getInstance("USD"), BigDecimal.valueOf(50), Balance.Mode.FIXED_POINT);
+
+        ExecutorService tasker = Executors.newFixedThreadPool(10);
+
+        for (int i = 0; i < 1000; i++){
+            tasker.execute(() -> account.deposit(BigDecimal.TEN));
+            tasker.execute(() -> account.withdraw(BigDecimal.TEN));
+        }
+
+        tasker.shutdown();
+
+        if (tasker.awaitTermination(60, TimeUnit.SECONDS)){
+            Assert.assertEquals(0, account.getBalance().compareTo(BigDecimal.valueOf(50)));
+        }
+    }
+
+    @Test
+    public void testHotAccount() throws InterruptedException {
+        Account account = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN, Balance.Mode.FIXED_POINT);
+        FixedPointBalance balance = (FixedPointBalance) account.getBalanceHolder();
+
+        balance.promote();
+        Assert.assertTrue(balance.isHot());
+
+        ExecutorService tasker = Executors.newFixedThreadPool(10);
+
+        for (int i = 0; i < 1000; i++){
+            tasker.execute(() -> account.deposit(BigDecimal.ONE));
+        }
+
+        tasker.shutdown();
+
+        if (tasker.awaitTermination(60, TimeUnit.SECONDS)){
+            Assert.assertEquals(new BigDecimal("1010.00"), account.getBalance());
+            Assert.assertTrue(account.withdraw(BigDecimal.valueOf(1005)));
+            Assert.assertEquals(new BigDecimal("5.00"), account.getBalance());
+            Assert.assertFalse(account.withdraw(BigDecimal.TEN));
+        }
+
+        account.setBalance(BigDecimal.ONE);
+        Assert.assertEquals(new BigDecimal("1.00"), account.getBalance());
+    }
+
+    @Test
+    public void testSetBalanceCanBeUndone() {
+        for (Balance.Mode mode : Balance.Mode.values()) {
+            Account account = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN, mode);
+
+            BigDecimal previous = account.setBalance(BigDecimal.valueOf(4));
+            Assert.assertEquals(0, BigDecimal.TEN.compareTo(previous));
+
+            Assert.assertTrue(account.adjustBalance(previous.subtract(BigDecimal.valueOf(4))));
+            Assert.assertEquals(0, BigDecimal.TEN.compareTo(account.getBalance()));
+            Assert.assertFalse(account.adjustBalance(BigDecimal.valueOf(-11)));
+            Assert.assertTrue(account.adjustBalance(BigDecimal.ZERO));
+            Assert.assertEquals(0, BigDecimal.TEN.compareTo(account.getBalance()));
+        }
+    }
+
+    @Test
+    public void testAdjustBalanceAsyncWaitsForClaim() {
+        AccountLockManager lockManager = new AccountLockManager();
+        Account account = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN);
+
+        Assert.assertTrue(lockManager.acquire(account.id).isComplete());
+
+        Future<Boolean> adjusted = account.adjustBalanceAsync(lockManager, BigDecimal.ONE.negate());
+
+        Assert.assertFalse(adjusted.isComplete());
+        Assert.assertEquals(0, BigDecimal.TEN.compareTo(account.getBalance()));
+
+        lockManager.release(account.id);
+
+        Assert.assertTrue(adjusted.result());
+        Assert.assertEquals(0, BigDecimal.valueOf(9).compareTo(account.getBalance()));
+        Assert.assertFalse(lockManager.isLocked(account.id));
+    }
+
+    @Test
+    public void testHotAccountNeverRefusesCoveredWithdrawal() throws InterruptedException {
+        Account account = new Account("alex", Currency.getInstance("USD"), BigDecimal.ZERO, Balance.Mode.FIXED_POINT);
+        FixedPointBalance balance = (FixedPointBalance) account.getBalanceHolder();
+        AtomicInteger refused = new AtomicInteger();
+
+        balance.promote();
+
+        ExecutorService tasker = Executors.newFixedThreadPool(8);
+
+        // Every task withdraws what it just deposited, so the balance always covers it, whatever the other
+        // tasks fold in the meantime
+        for (int i = 0; i < 8; i++) {
+            tasker.execute(() -> {
+                for (int j = 0; j < 100000; j++) {
+                    balance.depositUnits(1);
+
+                    if (!balance.withdrawUnits(1)) {
+                        refused.incrementAndGet();
+                    }
+                }
+            });
+        }
+
+        tasker.shutdown();
+
+        Assert.assertTrue(tasker.awaitTermination(60, TimeUnit.SECONDS));
+        Assert.assertEquals(0, refused.get());
+        Assert.assertEquals(0, balance.getUnits());
+    }
+}
@@ -0,0 +1,172 @@
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetSocket;
+import io.vertx.core.parsetools.RecordParser;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+public class BinaryTransferServerTest {
+
+    private Vertx vertx;
+
+    private Map<UUID, Account> accounts;
+
+    private TransferLog transfers;
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+        accounts = new ConcurrentHashMap<>();
+        transfers = new TransferLog();
+    }
+
+    @After
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Test
+    public void testEncodeAndDecodeRequest() {
+        UUID sourceID = UUID.randomUUID();
+        UUID destinationID = UUID.randomUUID();
+
+        Buffer frame = BinaryTransferServer.encodeRequest(7, sourceID, destinationID, new BigDecimal("12.34"));
+        Buffer body = body(frame);
+        RequestParser.TransferRequest request = BinaryTransferServer.request(body);
+
+        Assert.assertEquals(BinaryTransferServer.REQUEST_SIZE, frame.getInt(0));
+        Assert.assertEquals(BinaryTransferServer.REQUEST_SIZE, body.length());
+        Assert.assertEquals(7, BinaryTransferServer.correlation(body));
+        Assert.assertEquals(sourceID, request.getSourceID());
+        Assert.assertEquals(destinationID, request.getDestinationID());
+        Assert.assertEquals(new BigDecimal("12.34"), request.getAmount());
+    }
+
+    @Test
+    public void testEncodeAndDecodeResponse() {
+        TransferRecord record = new TransferRecord(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(),
+                BigDecimal.ONE, 123, TransferStatus.COMPLETED);
+
+        Buffer frame = BinaryTransferServer.encodeResponse(-1, BinaryTransferServer.Status.COMPLETED, record);
+        Buffer body = body(frame);
+
+        Assert.assertEquals(BinaryTransferServer.RESPONSE_SIZE, frame.getInt(0));
+        Assert.assertEquals(BinaryTransferServer.RESPONSE_SIZE, body.length());
+        Assert.assertEquals(-1, BinaryTransferServer.correlation(body));
+        Assert.assertEquals(BinaryTransferServer.Status.COMPLETED, BinaryTransferServer.status(body));
+        Assert.assertEquals(record.id, BinaryTransferServer.transferID(body));
+        Assert.assertEquals(123, BinaryTransferServer.timestamp(body));
+
+        body = body(BinaryTransferServer.encodeResponse(2, BinaryTransferServer.Status.REFUSED, null));
+
+        Assert.assertEquals(BinaryTransferServer.Status.REFUSED, BinaryTransferServer.status(body));
+        Assert.assertNull(BinaryTransferServer.transferID(body));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAmountTooLarge() {
+        BinaryTransferServer.encodeRequest(1, UUID.randomUUID(), UUID.randomUUID(), new BigDecimal("1e20").setScale(0));
+    }
+
+    @Test
+    public void testPipelinedTransfers() throws Exception {
+        Account accountAlex = new Account("alex", Currency.getInstance("EUR"), BigDecimal.TEN);
+        Account accountBen = new Account("ben", Currency.getInstance("EUR"), BigDecimal.ZERO);
+
+        accounts.put(accountAlex.id, accountAlex);
+        accounts.put(accountBen.id, accountBen);
+
+        int port = freePort();
+        await(new BinaryTransferServer(vertx, this::execute).listen(port));
+
+        // Three requests in one write: a transfer, one the source cannot cover, and one from an unknown account
+        Buffer requests = Buffer.buffer()
+                .appendBuffer(BinaryTransferServer.encodeRequest(1, accountAlex.id, accountBen.id, BigDecimal.valueOf(4)))
+                .appendBuffer(BinaryTransferServer.encodeRequest(2, accountAlex.id, accountBen.id, BigDecimal.valueOf(7)))
+                .appendBuffer(BinaryTransferServer.encodeRequest(3, UUID.randomUUID(), accountBen.id, BigDecimal.ONE));
+
+        Map<Long, Buffer> responses = send(port, requests, 3);
+
+        Assert.assertEquals(BinaryTransferServer.Status.COMPLETED, BinaryTransferServer.status(responses.get(1L)));
+        Assert.assertEquals(BinaryTransferServer.Status.REFUSED, BinaryTransferServer.status(responses.get(2L)));
+        Assert.assertEquals(BinaryTransferServer.Status.INVALID, BinaryTransferServer.status(responses.get(3L)));
+
+        Assert.assertNotNull(transfers.get(BinaryTransferServer.transferID(responses.get(1L))));
+        Assert.assertEquals(0, BigDecimal.valueOf(6).compareTo(accountAlex.getBalance()));
+        Assert.assertEquals(0, BigDecimal.valueOf(4).compareTo(accountBen.getBalance()));
+    }
+
+    private Future<TransferRecord> execute(RequestParser.TransferRequest request) {
+        Transfer transfer = new Transfer(accounts.get(request.getSourceID()), accounts.get(request.getDestinationID()),
+                request.getAmount());
+
+        return Future.succeededFuture(transfer.execute() ? transfers.append(transfer, TransferStatus.COMPLETED) : null);
+    }
+
+    /**
+     * Send requests on a new connection and wait for a given number of responses (without their length), by
+     * correlation.
+     */
+    private Map<Long, Buffer> send(int port, Buffer requests, int count) throws Exception {
+        CompletableFuture<Map<Long, Buffer>> result = new CompletableFuture<>();
+        Map<Long, Buffer> responses = new HashMap<>();
+
+        vertx.createNetClient().connect(port, "localhost", connected -> {
+            if (connected.failed()) {
+                result.completeExceptionally(connected.cause());
+                return;
+            }
+
+            NetSocket socket = connected.result();
+
+            socket.handler(RecordParser.newFixed(4 + BinaryTransferServer.RESPONSE_SIZE, frame -> {
+                Buffer body = body(frame);
+                responses.put(BinaryTransferServer.correlation(body), body);
+
+                if (responses.size() == count) {
+                    result.complete(responses);
+                }
+            }));
+            socket.write(requests);
+        });
+
+        return result.get(10, TimeUnit.SECONDS);
+    }
+
+    private static Buffer body(Buffer frame) {
+        return frame.getBuffer(4, frame.length());
+    }
+
+    private static int freePort() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        CompletableFuture<T> result = new CompletableFuture<>();
+
+        future.setHandler(done -> {
+            if (done.succeeded()) {
+                result.complete(done.result());
+            } else {
+                result.completeExceptionally(done.cause());
+            }
+        });
+
+        return result.get(10, TimeUnit.SECONDS);
+    }
+}
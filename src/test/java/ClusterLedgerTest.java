@@ -0,0 +1,106 @@
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.UUID;
+
+public class ClusterLedgerTest {
+
+    private Vertx vertx;
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+    }
+
+    @After
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Test
+    public void testNodeOfIsInRange() {
+        for (int i = 0; i < 1000; i++) {
+            UUID id = UUID.randomUUID();
+            int node = ClusterLedger.nodeOf(id, 3);
+
+            Assert.assertTrue(node >= 0 && node < 3);
+            Assert.assertEquals(node, ClusterLedger.nodeOf(id, 3));
+        }
+    }
+
+    @Test
+    public void testNewAccountIsOwned() {
+        ClusterLedger cluster = ledger(1);
+
+        for (int i = 0; i < 100; i++) {
+            UUID id = cluster.newAccountID();
+
+            Assert.assertTrue(cluster.owns(id));
+            Assert.assertEquals(1, cluster.ownerOf(id));
+        }
+    }
+
+    @Test
+    public void testDuplicateCommitWaitsForOutcome() {
+        ClusterLedger.Commit commit = new ClusterLedger.Commit();
+        Future<Integer> duplicate = commit.await();
+
+        Assert.assertFalse(duplicate.isComplete());
+
+        commit.complete(500);
+
+        Assert.assertEquals(Integer.valueOf(500), duplicate.result());
+        Assert.assertEquals(Integer.valueOf(500), commit.await().result());
+        Assert.assertEquals(Integer.valueOf(200), new ClusterLedger.Commit(200).await().result());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidNode() {
+        ledger(3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidAddress() {
+        new ClusterLedger(vertx, Collections.singletonList("localhost"), 0, 1000, new HashMap<>(),
+                new TransferLog(), null, null, new AccountLockManager());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTransferToOwnedAccount() {
+        ClusterLedger cluster = ledger(0);
+        Account source = new Account(cluster.newAccountID(), "alex", Currency.getInstance("USD"), BigDecimal.TEN,
+                Balance.Mode.DECIMAL);
+
+        cluster.transfer(source, cluster.newAccountID(), BigDecimal.ONE);
+    }
+
+    @Test
+    public void testTransferNotCoveredIsNotReserved() {
+        ClusterLedger cluster = ledger(0);
+        Account source = new Account(cluster.newAccountID(), "alex", Currency.getInstance("USD"), BigDecimal.ONE,
+                Balance.Mode.DECIMAL);
+        UUID destination;
+
+        do {
+            destination = UUID.randomUUID();
+        } while (cluster.owns(destination));
+
+        Assert.assertNull(cluster.transfer(source, destination, BigDecimal.TEN).result());
+        Assert.assertEquals(BigDecimal.ONE, source.getBalance());
+        Assert.assertTrue(DataStore.getReservations().isEmpty());
+    }
+
+    private ClusterLedger ledger(int node) {
+        return new ClusterLedger(vertx, Arrays.asList("localhost:18081", "localhost:18082", "localhost:18083"),
+                node, 1000, new HashMap<>(), new TransferLog(), null, null, new AccountLockManager());
+    }
+}
@@ -0,0 +1,122 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class ContentionSketchTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroCapacity() {
+        new ContentionSketch(0, 1);
+    }
+
+    @Test
+    public void testHeavyHittersAmongNoise() {
+        ContentionSketch sketch = new ContentionSketch(16, 1);
+        UUID hot = UUID.randomUUID();
+        UUID warm = UUID.randomUUID();
+
+        for (int i = 0; i < 10000; i++) {
+            sketch.record(UUID.randomUUID(), 10);
+
+            if (i % 5 == 0) {
+                sketch.record(hot, 1000);
+            }
+
+            if (i % 10 == 0) {
+                sketch.record(warm, 1000);
+            }
+        }
+
+        List<ContentionSketch.HotAccount> top = sketch.top(2);
+
+        Assert.assertEquals(16, sketch.size());
+        Assert.assertEquals(2, top.size());
+        Assert.assertEquals(hot, top.get(0).getID());
+        Assert.assertEquals(warm, top.get(1).getID());
+        Assert.assertTrue(top.get(0).getContended() - top.get(0).getError() <= 2000);
+        Assert.assertTrue(top.get(0).getContended() >= 2000);
+        Assert.assertEquals(2000 * 1000, top.get(0).getWaitNanos());
+    }
+
+    @Test
+    public void testSampling() {
+        ContentionSketch sketch = new ContentionSketch(4, 8);
+        UUID id = UUID.randomUUID();
+
+        for (int i = 0; i < 8000; i++) {
+            sketch.record(id, 1);
+        }
+
+        ContentionSketch.HotAccount account = sketch.top(1).get(0);
+
+        Assert.assertEquals(0, account.getContended() % 8);
+        Assert.assertTrue(account.getContended() > 6000 && account.getContended() < 10000);
+        Assert.assertEquals(account.getContended(), account.getWaitNanos());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        ContentionSketch sketch = new ContentionSketch(4, 1000);
+        UUID id = UUID.randomUUID();
+        Lock lock = new ReentrantLock();
+
+        Thread holder = new Thread(lock::lock);
+        holder.start();
+        holder.join();
+
+        Assert.assertFalse(sketch.tryLock(lock, id, 1));
+
+        ContentionSketch.HotAccount account = sketch.top(10).get(0);
+
+        Assert.assertEquals(id, account.getID());
+        Assert.assertEquals(1, account.getTimeouts());
+        Assert.assertTrue(account.getWaitNanos() > 0);
+    }
+
+    @Test
+    public void testUncontendedLockIsNotRecorded() throws Exception {
+        ContentionSketch sketch = new ContentionSketch(4, 1);
+        Lock lock = new ReentrantLock();
+
+        sketch.lock(lock, UUID.randomUUID());
+        lock.unlock();
+        Assert.assertTrue(sketch.tryLock(lock, UUID.randomUUID(), 1));
+        lock.unlock();
+
+        Assert.assertEquals(0, sketch.size());
+        Assert.assertTrue(sketch.top(10).isEmpty());
+    }
+
+    @Test
+    public void testContendedLockIsRecorded() throws Exception {
+        ContentionSketch sketch = new ContentionSketch(4, 1);
+        UUID id = UUID.randomUUID();
+        Lock lock = new ReentrantLock();
+
+        lock.lock();
+        Thread waiter = new Thread(() -> {
+            sketch.lock(lock, id);
+            lock.unlock();
+        });
+        waiter.start();
+
+        while (!((ReentrantLock) lock).hasQueuedThreads()) {
+            Thread.sleep(1);
+        }
+
+        Thread.sleep(5);
+        lock.unlock();
+        waiter.join();
+
+        ContentionSketch.HotAccount account = sketch.top(1).get(0);
+
+        Assert.assertEquals(id, account.getID());
+        Assert.assertEquals(1, account.getContended());
+        Assert.assertTrue(account.getWaitNanos() >= 5_000_000);
+        Assert.assertEquals(0, account.getTimeouts());
+    }
+}
@@ -0,0 +1,101 @@
+import io.vertx.core.json.JsonObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Currency;
+
+public class FxRateTableTest {
+
+    private static final Currency USD = Currency.getInstance("USD");
+
+    private static final Currency EUR = Currency.getInstance("EUR");
+
+    @Test
+    public void testUpdate() {
+        FxRateTable table = new FxRateTable();
+        FxRateTable.Snapshot before = table.get();
+
+        FxRateTable.Snapshot rates = table.update(new JsonObject().put("USD/EUR", "0.912345").put("EUR/USD", 1.0961));
+
+        Assert.assertSame(rates, table.get());
+        Assert.assertEquals(0, before.getVersion());
+        Assert.assertNull(before.get(USD, EUR));
+        Assert.assertEquals(new BigDecimal("0.91234500"), rates.get(USD, EUR).getValue());
+        Assert.assertEquals(new BigDecimal("1.09610000"), rates.get(EUR, USD).getValue());
+        Assert.assertNull(rates.get(USD, Currency.getInstance("GBP")));
+    }
+
+    @Test
+    public void testVersionsIncrease() {
+        FxRateTable table = new FxRateTable();
+        long previous = table.get().getVersion();
+
+        for (int i = 0; i < 100; i++) {
+            long version = table.update(new JsonObject().put("USD/EUR", "0.9")).getVersion();
+
+            Assert.assertTrue(version > previous);
+            previous = version;
+        }
+    }
+
+    @Test
+    public void testConvertRoundsDown() {
+        FxRateTable.Snapshot rates = new FxRateTable().update(new JsonObject()
+                .put("USD/EUR", "0.99999999")
+                .put("EUR/JPY", "161.2345"));
+
+        Assert.assertEquals(new BigDecimal("99.99"), rates.get(USD, EUR).convert(new BigDecimal("100")));
+        Assert.assertEquals(new BigDecimal("161"), rates.get(EUR, Currency.getInstance("JPY")).convert(BigDecimal.ONE));
+    }
+
+    @Test
+    public void testInvalidRates() {
+        FxRateTable table = new FxRateTable();
+
+        for (JsonObject rates : new JsonObject[]{
+                new JsonObject().put("USD-EUR", "0.9"),
+                new JsonObject().put("USD/XYZ", "0.9"),
+                new JsonObject().put("USD/USD", "1"),
+                new JsonObject().put("USD/EUR", "0"),
+                new JsonObject().put("USD/EUR", "-0.9"),
+                new JsonObject().put("USD/EUR", "0.123456789"),
+                new JsonObject().put("USD/EUR", "abc"),
+                new JsonObject().put("USD/EUR", true)}) {
+            try {
+                table.update(rates);
+                Assert.fail("Accepted " + rates);
+            } catch (IllegalArgumentException e) {
+                Assert.assertEquals(0, table.get().getVersion());
+            }
+        }
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        FxRateTable table = new FxRateTable();
+        Path file = Files.createTempFile("fx-rates", ".json");
+        JsonObject written = table.update(new JsonObject().put("USD/EUR", "0.9")).toJson();
+
+        Files.write(file, written.encode().getBytes(StandardCharsets.UTF_8));
+
+        FxRateTable loaded = new FxRateTable();
+        loaded.load(file);
+
+        Assert.assertEquals(written.getJsonObject("rates"), loaded.get().toJson().getJsonObject("rates"));
+
+        Files.write(file, "{\"rates\": []}".getBytes(StandardCharsets.UTF_8));
+
+        try {
+            loaded.load(file);
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals(new BigDecimal("0.90000000"), loaded.get().get(USD, EUR).getValue());
+        }
+
+        Files.delete(file);
+    }
+}
@@ -0,0 +1,87 @@
+import io.vertx.core.Future;
+import io.vertx.core.buffer.Buffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class IdempotencyCacheTest {
+
+    private static final byte[] BODY = IdempotencyCache.fingerprint(Buffer.buffer("{\"amount\":1}"));
+
+    private static final byte[] OTHER_BODY = IdempotencyCache.fingerprint(Buffer.buffer("{\"amount\":2}"));
+
+    @Test
+    public void testClaimAndReplay() {
+        IdempotencyCache cache = new IdempotencyCache(100, 1000);
+
+        Assert.assertNull(cache.claim("a", BODY));
+
+        Future<IdempotencyCache.Response> pending = cache.claim("a", BODY);
+        Assert.assertFalse(pending.isComplete());
+
+        cache.complete("a", new IdempotencyCache.Response(201, Buffer.buffer("{}")));
+
+        Assert.assertEquals(201, pending.result().getStatusCode());
+        Assert.assertEquals("{}", cache.claim("a", BODY).result().getBody().toString());
+        Assert.assertEquals(1, cache.getMisses());
+        Assert.assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void testMismatch() {
+        IdempotencyCache cache = new IdempotencyCache(100, 1000);
+
+        Assert.assertNull(cache.claim("a", BODY));
+        Assert.assertSame(IdempotencyCache.MISMATCH, cache.claim("a", OTHER_BODY).result());
+        Assert.assertEquals(0, cache.getHits());
+        Assert.assertEquals(1, cache.getMismatches());
+    }
+
+    @Test
+    public void testRelease() {
+        IdempotencyCache cache = new IdempotencyCache(100, 1000);
+
+        Assert.assertNull(cache.claim("a", BODY));
+        Future<IdempotencyCache.Response> pending = cache.claim("a", BODY);
+
+        cache.release("a");
+
+        Assert.assertTrue(pending.failed());
+        Assert.assertNull(cache.claim("a", BODY));
+    }
+
+    @Test
+    public void testExpiry() {
+        AtomicLong now = new AtomicLong();
+        IdempotencyCache cache = new IdempotencyCache(100, 1000, now::get);
+
+        Assert.assertNull(cache.claim("a", BODY));
+        cache.complete("a", new IdempotencyCache.Response(201, Buffer.buffer("{}")));
+
+        now.set(999);
+        Assert.assertNotNull(cache.claim("a", BODY));
+
+        now.set(1000);
+        Assert.assertNull(cache.claim("a", BODY));
+        Assert.assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void testCapacity() {
+        IdempotencyCache cache = new IdempotencyCache(64, 1000);
+
+        Assert.assertNull(cache.claim("pending", BODY));
+
+        for (int i = 0; i < 10000; i++) {
+            String key = "key-" + i;
+            Assert.assertNull(cache.claim(key, BODY));
+            cache.complete(key, new IdempotencyCache.Response(201, Buffer.buffer("{}")));
+        }
+
+        Assert.assertTrue(cache.size() <= 64 + 1);
+        Assert.assertEquals(10001 - cache.size(), cache.getEvictions());
+        Assert.assertFalse(cache.claim("pending", BODY).isComplete());
+        Assert.assertNotNull(cache.claim("key-9999", BODY));
+    }
+}
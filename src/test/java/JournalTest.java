@@ -0,0 +1,385 @@
+import io.vertx.core.Future;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+public class JournalTest {
+
+    private static final long SEGMENT_SIZE = 1024 * 1024;
+
+    @Test
+    public void testEncodeAndDecode() {
+        Account account = new Account("alex", Currency.getInstance("EUR"), BigDecimal.valueOf(12.5));
+        TransferRecord transfer = new TransferRecord(UUID.randomUUID(), account.id, UUID.randomUUID(),
+                BigDecimal.valueOf(2.25), 42, TransferStatus.COMPLETED);
+        TransferRecord converted = new TransferRecord(UUID.randomUUID(), account.id, UUID.randomUUID(),
+                BigDecimal.valueOf(2.25), new BigDecimal("2.46"), 1561975100000L, 42, TransferStatus.COMPLETED);
+
+        Assert.assertEquals(JournalRecord.Type.TRANSFER_CONVERTED, JournalRecord.transfer(converted).getType());
+
+        for (JournalRecord record : Arrays.asList(
+                JournalRecord.accountCreated(account),
+                JournalRecord.balanceSet(account.id, BigDecimal.ONE),
+                JournalRecord.balanceAdjusted(account.id, new BigDecimal("-2.5")),
+                JournalRecord.accountDeleted(account.id),
+                JournalRecord.transfer(transfer),
+                JournalRecord.transfer(converted))) {
+            ByteBuffer buffer = ByteBuffer.allocate(record.maxSize());
+            record.encode(buffer);
+            buffer.flip();
+
+            Assert.assertEquals(record, JournalRecord.decode(buffer));
+        }
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        for (Journal.FsyncPolicy policy : Journal.FsyncPolicy.values()) {
+            Path directory = Files.createTempDirectory("journal");
+            List<JournalRecord> written = records(100);
+
+            try (Journal journal = new Journal(directory, policy, 5, 100, record -> Assert.fail())) {
+                await(journal.append(written.subList(0, 10)));
+
+                for (JournalRecord record : written.subList(10, written.size())) {
+                    journal.append(record);
+                }
+            }
+
+            Assert.assertEquals(policy.toString(), written, replay(directory));
+            Assert.assertTrue(files(directory).size() > 1);
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void testTornTail() throws Exception {
+        Path directory = Files.createTempDirectory("journal");
+        List<JournalRecord> written = records(3);
+
+        try (Journal journal = new Journal(directory, Journal.FsyncPolicy.ALWAYS, 0, SEGMENT_SIZE, record -> {})) {
+            await(journal.append(written));
+        }
+
+        try (FileChannel channel = FileChannel.open(files(directory).get(0), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        Assert.assertEquals(written.subList(0, 2), replay(directory));
+
+        try (Journal journal = new Journal(directory, Journal.FsyncPolicy.ALWAYS, 0, SEGMENT_SIZE, record -> {})) {
+            await(journal.append(written.get(2)));
+        }
+
+        Assert.assertEquals(written, replay(directory));
+        delete(directory);
+    }
+
+    @Test
+    public void testAppendAfterClose() throws Exception {
+        Path directory = Files.createTempDirectory("journal");
+        Journal journal = new Journal(directory, Journal.FsyncPolicy.GROUP, 0, SEGMENT_SIZE, record -> {});
+        journal.close();
+        delete(directory);
+
+        Future<Void> appended = journal.append(records(1));
+
+        Assert.assertTrue(appended.failed());
+        Assert.assertTrue(appended.cause() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testFailedAppendOnlyFailsItself() throws Exception {
+        Path directory = Files.createTempDirectory("journal");
+        List<JournalRecord> written = records(201);
+
+        try (Journal journal = new Journal(directory, Journal.FsyncPolicy.ALWAYS, 0, SEGMENT_SIZE, record -> {})) {
+            List<Future<Void>> appended = new ArrayList<>();
+
+            for (JournalRecord record : written.subList(0, 200)) {
+                appended.add(journal.append(record));
+            }
+
+            // A balance without an amount cannot be encoded
+            Future<Void> invalid = journal.append(JournalRecord.balanceSet(UUID.randomUUID(), null));
+
+            await(journal.append(written.get(200)));
+            Assert.assertTrue(invalid.failed());
+
+            for (Future<Void> future : appended) {
+                Assert.assertTrue(future.succeeded());
+            }
+        }
+
+        Assert.assertEquals(written, replay(directory));
+        delete(directory);
+    }
+
+    @Test
+    public void testCompact() throws Exception {
+        Path directory = Files.createTempDirectory("journal");
+        Account accountAlex = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN);
+        Account accountBen = new Account("ben", Currency.getInstance("USD"), BigDecimal.ZERO);
+        TransferRecord before = new TransferRecord(UUID.randomUUID(), accountAlex.id, accountBen.id,
+                BigDecimal.ONE, 1, TransferStatus.COMPLETED);
+        TransferRecord after = new TransferRecord(UUID.randomUUID(), accountBen.id, accountAlex.id,
+                BigDecimal.valueOf(0.5), 2, TransferStatus.COMPLETED);
+
+        try (Journal journal = new Journal(directory, Journal.FsyncPolicy.GROUP, 0, SEGMENT_SIZE, record -> {})) {
+            await(journal.append(Arrays.asList(
+                    JournalRecord.accountCreated(accountAlex),
+                    JournalRecord.accountCreated(accountBen),
+                    JournalRecord.transfer(before))));
+
+            long covered = journal.compact();
+
+            Assert.assertEquals(covered, journal.compact());
+            await(journal.append(JournalRecord.transfer(after)));
+        }
+
+        Assert.assertEquals(3, files(directory).size());
+
+        TransferLog transfers = new TransferLog();
+        JournalReplay replay = new JournalReplay(transfers);
+        Map<UUID, Account> accounts = new HashMap<>();
+
+        new Journal(directory, Journal.FsyncPolicy.GROUP, 0, SEGMENT_SIZE, replay).close();
+        replay.restore(accounts, Balance.Mode.DECIMAL);
+
+        Assert.assertEquals(0, BigDecimal.valueOf(9.5).compareTo(accounts.get(accountAlex.id).getBalance()));
+        Assert.assertEquals(0, BigDecimal.valueOf(0.5).compareTo(accounts.get(accountBen.id).getBalance()));
+        Assert.assertNotNull(transfers.get(before.id));
+        Assert.assertNotNull(transfers.get(after.id));
+
+        Iterator<TransferRecord> history = transfers.iterator(accountBen.id, null, 0, null);
+        Assert.assertEquals(before.id, history.next().id);
+        Assert.assertEquals(after.id, history.next().id);
+        Assert.assertFalse(history.hasNext());
+        delete(directory);
+    }
+
+    @Test
+    public void testInterruptedCompactionKeepsHistory() throws Exception {
+        Path directory = Files.createTempDirectory("journal");
+        Account accountAlex = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN);
+        Account accountBen = new Account("ben", Currency.getInstance("USD"), BigDecimal.ZERO);
+        TransferRecord transfer = new TransferRecord(UUID.randomUUID(), accountAlex.id, accountBen.id,
+                BigDecimal.ONE, 1, TransferStatus.COMPLETED);
+
+        try (Journal journal = new Journal(directory, Journal.FsyncPolicy.GROUP, 0, SEGMENT_SIZE, record -> {})) {
+            await(journal.append(Arrays.asList(
+                    JournalRecord.accountCreated(accountAlex),
+                    JournalRecord.accountCreated(accountBen),
+                    JournalRecord.transfer(transfer))));
+            journal.compact();
+        }
+
+        // As if the compaction stopped after writing the snapshot, before moving the segment to the history.
+        Path history = files(directory).get(0);
+        Files.move(history, directory.resolve(history.getFileName().toString().replace("history-", "journal-")));
+
+        TransferLog transfers = new TransferLog();
+        JournalReplay replay = new JournalReplay(transfers);
+        Map<UUID, Account> accounts = new HashMap<>();
+
+        new Journal(directory, Journal.FsyncPolicy.GROUP, 0, SEGMENT_SIZE, replay).close();
+        replay.restore(accounts, Balance.Mode.DECIMAL);
+
+        Assert.assertEquals(0, BigDecimal.valueOf(9).compareTo(accounts.get(accountAlex.id).getBalance()));
+        Assert.assertEquals(0, BigDecimal.ONE.compareTo(accounts.get(accountBen.id).getBalance()));
+        Assert.assertNotNull(transfers.get(transfer.id));
+        Assert.assertTrue(Files.exists(history));
+        delete(directory);
+    }
+
+    @Test
+    public void testReplay() {
+        TransferLog transfers = new TransferLog();
+        JournalReplay replay = new JournalReplay(transfers);
+        Account accountAlex = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN);
+        Account accountBen = new Account("ben", Currency.getInstance("USD"), BigDecimal.ONE);
+        Account accountCarl = new Account("carl", Currency.getInstance("USD"), BigDecimal.ONE);
+        TransferRecord transfer = new TransferRecord(UUID.randomUUID(), accountAlex.id, accountBen.id,
+                BigDecimal.valueOf(2.5), 42, TransferStatus.COMPLETED);
+
+        replay.accept(JournalRecord.accountCreated(accountAlex));
+        replay.accept(JournalRecord.accountCreated(accountBen));
+        replay.accept(JournalRecord.accountCreated(accountCarl));
+        replay.accept(JournalRecord.transfer(transfer));
+        replay.accept(JournalRecord.balanceSet(accountBen.id, BigDecimal.valueOf(3)));
+        replay.accept(JournalRecord.accountDeleted(accountCarl.id));
+
+        Map<UUID, Account> accounts = new HashMap<>();
+        replay.restore(accounts, Balance.Mode.FIXED_POINT);
+
+        Assert.assertEquals(2, accounts.size());
+        Assert.assertEquals(0, BigDecimal.valueOf(7.5).compareTo(accounts.get(accountAlex.id).getBalance()));
+        Assert.assertEquals(0, BigDecimal.valueOf(3).compareTo(accounts.get(accountBen.id).getBalance()));
+        Assert.assertEquals("alex", accounts.get(accountAlex.id).getUser());
+        Assert.assertTrue(accounts.get(accountAlex.id).isLockFree());
+        Assert.assertEquals(42, transfers.get(transfer.id).getTimestamp());
+    }
+
+    @Test
+    public void testReplayAdjustedBalanceInAnyOrder() {
+        Account accountAlex = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN);
+        Account accountBen = new Account("ben", Currency.getInstance("USD"), BigDecimal.ONE);
+        TransferRecord transfer = new TransferRecord(UUID.randomUUID(), accountAlex.id, accountBen.id,
+                BigDecimal.valueOf(4), 42, TransferStatus.COMPLETED);
+
+        // The balance of alex was set from 6 to 20 right after the transfer, but journaled first
+        List<JournalRecord> journaled = Arrays.asList(
+                JournalRecord.accountCreated(accountAlex),
+                JournalRecord.accountCreated(accountBen),
+                JournalRecord.balanceAdjusted(accountAlex.id, BigDecimal.valueOf(14)),
+                JournalRecord.transfer(transfer));
+
+        JournalReplay replay = new JournalReplay(null);
+        journaled.forEach(replay);
+
+        Map<UUID, Account> accounts = new HashMap<>();
+        replay.restore(accounts, Balance.Mode.DECIMAL);
+
+        Assert.assertEquals(0, BigDecimal.valueOf(20).compareTo(accounts.get(accountAlex.id).getBalance()));
+        Assert.assertEquals(0, BigDecimal.valueOf(5).compareTo(accounts.get(accountBen.id).getBalance()));
+    }
+
+    @Test
+    public void testReplayConverted() {
+        TransferLog transfers = new TransferLog();
+        JournalReplay replay = new JournalReplay(transfers);
+        Account accountAlex = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN);
+        Account accountBen = new Account("ben", Currency.getInstance("EUR"), BigDecimal.ONE);
+        TransferRecord transfer = new TransferRecord(UUID.randomUUID(), accountAlex.id, accountBen.id,
+                BigDecimal.valueOf(2.5), new BigDecimal("2.28"), 1561975100000L, 42, TransferStatus.COMPLETED);
+
+        replay.accept(JournalRecord.accountCreated(accountAlex));
+        replay.accept(JournalRecord.accountCreated(accountBen));
+        replay.accept(JournalRecord.transfer(transfer));
+
+        Map<UUID, Account> accounts = new HashMap<>();
+        replay.restore(accounts, Balance.Mode.DECIMAL);
+
+        Assert.assertEquals(0, BigDecimal.valueOf(7.5).compareTo(accounts.get(accountAlex.id).getBalance()));
+        Assert.assertEquals(0, new BigDecimal("3.28").compareTo(accounts.get(accountBen.id).getBalance()));
+        Assert.assertEquals(new BigDecimal("2.28"), transfers.get(transfer.id).getDestinationAmount());
+        Assert.assertEquals(1561975100000L, transfers.get(transfer.id).getRateVersion());
+    }
+
+    @Test
+    public void testCompactKeepsTransfersBetweenNodes() throws Exception {
+        Path directory = Files.createTempDirectory("journal");
+        Account accountAlex = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN);
+        Account accountBen = new Account("ben", Currency.getInstance("USD"), BigDecimal.ONE);
+        UUID remote = UUID.randomUUID();
+        JournalRecord reserved = JournalRecord.transfer(JournalRecord.Type.TRANSFER_RESERVED, UUID.randomUUID(),
+                accountAlex.id, remote, BigDecimal.valueOf(2), 1);
+        JournalRecord cancelled = JournalRecord.transfer(JournalRecord.Type.TRANSFER_RESERVED, UUID.randomUUID(),
+                accountAlex.id, remote, BigDecimal.valueOf(3), 2);
+        JournalRecord committed = JournalRecord.transfer(JournalRecord.Type.TRANSFER_COMMITTED, UUID.randomUUID(),
+                remote, accountBen.id, BigDecimal.valueOf(4), 3);
+        JournalRecord forgotten = JournalRecord.transfer(JournalRecord.Type.TRANSFER_COMMITTED, UUID.randomUUID(),
+                remote, accountBen.id, BigDecimal.valueOf(5), 4);
+
+        try (Journal journal = new Journal(directory, Journal.FsyncPolicy.GROUP, 0, SEGMENT_SIZE, record -> {})) {
+            await(journal.append(Arrays.asList(
+                    JournalRecord.accountCreated(accountAlex),
+                    JournalRecord.accountCreated(accountBen),
+                    reserved,
+                    cancelled,
+                    JournalRecord.transfer(JournalRecord.Type.TRANSFER_CANCELLED, cancelled.getID(), accountAlex.id,
+                            remote, BigDecimal.valueOf(3), 2),
+                    committed,
+                    forgotten,
+                    JournalRecord.transferForgotten(forgotten.getID()))));
+
+            journal.compact();
+        }
+
+        TransferLog transfers = new TransferLog();
+        JournalReplay replay = new JournalReplay(transfers);
+        Map<UUID, Account> accounts = new HashMap<>();
+
+        new Journal(directory, Journal.FsyncPolicy.GROUP, 0, SEGMENT_SIZE, replay).close();
+        replay.restore(accounts, Balance.Mode.DECIMAL);
+
+        Assert.assertEquals(0, BigDecimal.valueOf(8).compareTo(accounts.get(accountAlex.id).getBalance()));
+        Assert.assertEquals(0, BigDecimal.valueOf(10).compareTo(accounts.get(accountBen.id).getBalance()));
+        Assert.assertEquals(Collections.singletonList(reserved), new ArrayList<>(replay.getReserved()));
+        Assert.assertEquals(Collections.singletonList(committed), new ArrayList<>(replay.getCommitted()));
+        Assert.assertNotNull(transfers.get(committed.getID()));
+        delete(directory);
+    }
+
+    private static List<JournalRecord> records(int count) {
+        List<JournalRecord> records = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            records.add(JournalRecord.balanceSet(UUID.randomUUID(), BigDecimal.valueOf(i, 2)));
+        }
+
+        return records;
+    }
+
+    private static void await(Future<Void> future) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+
+        while (!future.isComplete() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+
+        Assert.assertTrue(future.succeeded());
+    }
+
+    private static List<JournalRecord> replay(Path directory) throws IOException {
+        List<JournalRecord> records = new ArrayList<>();
+        new Journal(directory, Journal.FsyncPolicy.GROUP, 0, SEGMENT_SIZE, records::add).close();
+        return records;
+    }
+
+    /**
+     * List the non-empty files of a journal directory, in name order.
+     */
+    private static List<Path> files(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                if (Files.size(file) > 0) {
+                    files.add(file);
+                }
+            }
+        }
+
+        Collections.sort(files);
+        return files;
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                Files.delete(file);
+            }
+        }
+
+        Files.delete(directory);
+    }
+}
@@ -0,0 +1,122 @@
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.UUID;
+
+public class JsonWriterTest {
+
+    @Test
+    public void testAccount() {
+        Account account = new Account("alex", Currency.getInstance("USD"), BigDecimal.valueOf(10));
+
+        Assert.assertEquals("{\"id\":\"" + account.id + "\",\"user\":\"alex\",\"currency\":\"USD\",\"balance\":10}",
+                JsonWriter.toBuffer(account).toString());
+    }
+
+    @Test
+    public void testFixedPointBalance() {
+        for (String value : Arrays.asList("0", "0.05", "12.3", "1234567.89", "-0.5")) {
+            Buffer buffer = Buffer.buffer();
+            BigDecimal decimal = new BigDecimal(value).setScale(2);
+
+            JsonWriter.writeDecimal(buffer, decimal.unscaledValue().longValueExact(), 2);
+
+            Assert.assertEquals(decimal.toString(), buffer.toString());
+        }
+
+        Account account = new Account("alex", Currency.getInstance("JPY"), BigDecimal.valueOf(150), Balance.Mode.FIXED_POINT);
+        Assert.assertEquals(150, new JsonObject(JsonWriter.toBuffer(account).toString()).getInteger("balance").intValue());
+    }
+
+    @Test
+    public void testNumbers() {
+        for (long value : new long[]{0, 7, 10, -42, Long.MAX_VALUE, Long.MIN_VALUE}) {
+            Buffer buffer = Buffer.buffer();
+            JsonWriter.writeLong(buffer, value);
+            Assert.assertEquals(Long.toString(value), buffer.toString());
+        }
+    }
+
+    @Test
+    public void testUUID() {
+        for (int i = 0; i < 100; i++) {
+            UUID id = UUID.randomUUID();
+            Buffer buffer = Buffer.buffer();
+            JsonWriter.writeUUID(buffer, id);
+            Assert.assertEquals("\"" + id + "\"", buffer.toString());
+        }
+    }
+
+    @Test
+    public void testEscaping() {
+        String user = "a\"b\\c\nd\u0001\u00e9\u20ac\ud83d\ude00\u2028";
+        Buffer buffer = Buffer.buffer();
+
+        JsonWriter.writeString(buffer, user);
+
+        Assert.assertEquals(user, new JsonArray("[" + buffer + "]").getString(0));
+    }
+
+    @Test
+    public void testTransfer() {
+        Account accountAlex = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN);
+        Account accountBen = new Account("ben", Currency.getInstance("USD"), BigDecimal.ZERO);
+        TransferLog log = new TransferLog();
+        TransferRecord record = log.append(new Transfer(accountAlex, accountBen, BigDecimal.valueOf(2.5)), TransferStatus.COMPLETED);
+
+        JsonObject json = new JsonObject(JsonWriter.toBuffer(record).toString());
+
+        Assert.assertEquals(record.id.toString(), json.getString("id"));
+        Assert.assertEquals(accountAlex.id.toString(), json.getString("source-id"));
+        Assert.assertEquals(accountBen.id.toString(), json.getString("dest-id"));
+        Assert.assertEquals(2.5, json.getDouble("amount"), 0);
+        Assert.assertEquals(record.getTimestamp(), json.getLong("timestamp").longValue());
+        Assert.assertEquals("completed", json.getString("status"));
+        Assert.assertFalse(json.containsKey("source"));
+        Assert.assertFalse(json.containsKey("rate-version"));
+
+        record.expand(accountAlex, null);
+        json = new JsonObject(JsonWriter.toBuffer(record).toString());
+
+        Assert.assertEquals("alex", json.getJsonObject("source").getString("user"));
+        Assert.assertFalse(json.containsKey("destination"));
+    }
+
+    @Test
+    public void testConvertedTransfer() {
+        TransferRecord record = new TransferRecord(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(),
+                BigDecimal.valueOf(2.5), new BigDecimal("2.28"), 1561975100000L, 42, TransferStatus.COMPLETED);
+
+        JsonObject json = new JsonObject(JsonWriter.toBuffer(record).toString());
+
+        Assert.assertEquals(2.5, json.getDouble("amount"), 0);
+        Assert.assertEquals(2.28, json.getDouble("dest-amount"), 0);
+        Assert.assertEquals(1561975100000L, json.getLong("rate-version").longValue());
+    }
+
+    @Test
+    public void testBatchResults() {
+        Account accountAlex = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN);
+        Account accountBen = new Account("ben", Currency.getInstance("USD"), BigDecimal.ZERO);
+        TransferBatch batch = new TransferBatch(Arrays.asList(
+                new Transfer(accountAlex, accountBen, BigDecimal.ONE), null), TransferBatch.Mode.BEST_EFFORT);
+
+        JsonArray json = new JsonArray(JsonWriter.toBuffer(batch.apply()).toString());
+
+        Assert.assertEquals(2, json.size());
+        Assert.assertEquals("completed", json.getJsonObject(0).getString("status"));
+        Assert.assertEquals("invalid", json.getJsonObject(1).getString("status"));
+        Assert.assertFalse(json.getJsonObject(1).containsKey("transfer"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedValue() {
+        JsonWriter.toBuffer("alex");
+    }
+}
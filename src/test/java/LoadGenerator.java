@@ -0,0 +1,522 @@
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetSocket;
+import io.vertx.core.parsetools.RecordParser;
+import org.HdrHistogram.Histogram;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Open-loop HTTP load generator for a running server, used by the <code>loadtest</code> profile.
+ *
+ * Requests are scheduled at a fixed rate whatever the server's response times, and the latency of each
+ * one is measured from the time it was scheduled rather than sent. A server that stalls therefore shows
+ * up in the latencies of every request that should have been sent meanwhile, instead of just slowing the
+ * generator down (coordinated omission).
+ *
+ * The generator creates the accounts, then mixes transfers between them with reads of an account and of
+ * its latest transfers, picking the accounts with a Zipf skew. The transfers are sent either over REST or over
+ * the binary protocol of {@link BinaryTransferServer}, so the overhead of the two can be compared. It is
+ * configured through system properties (see the README) and writes its report to standard output and to a file.
+ */
+public class LoadGenerator {
+
+    /**
+     * The routes exercised.
+     */
+    enum Route {
+        CREATE_TRANSFER("POST /transfers", 201),
+        CREATE_BINARY_TRANSFER("binary transfer", 201),
+        GET_ACCOUNT("GET /accounts/:id", 200),
+        GET_ACCOUNT_TRANSFERS("GET /accounts/:id/transfers", 200);
+
+        private final String name;
+
+        private final int expectedStatus;
+
+        Route(String name, int expectedStatus) {
+            this.name = name;
+            this.expectedStatus = expectedStatus;
+        }
+    }
+
+    /**
+     * The highest latency recorded (in microseconds); anything slower is counted as this.
+     */
+    private static final long MAX_LATENCY = TimeUnit.MINUTES.toMicros(1);
+
+    private static final int REQUEST_TIMEOUT = 30000;
+
+    private static final int PAGE_SIZE = 20;
+
+    private static final BigDecimal AMOUNT = new BigDecimal("0.01");
+
+    private final int port;
+
+    private final int rate;
+
+    private final int duration;
+
+    private final int warmup;
+
+    private final int accountCount;
+
+    private final double skew;
+
+    private final double reads;
+
+    private final int connections;
+
+    /**
+     * The port of the binary protocol the transfers are sent over, or <code>0</code> to send them over REST.
+     */
+    private final int binaryPort;
+
+    private final Map<Route, Histogram> latencies = new EnumMap<>(Route.class);
+
+    private final Map<Route, Long> errors = new EnumMap<>(Route.class);
+
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    private String[] accounts;
+
+    private double[] cumulative;
+
+    private Vertx vertx;
+
+    private HttpClient client;
+
+    private int inFlight;
+
+    private NetSocket[] sockets;
+
+    private long nextCorrelation;
+
+    /**
+     * The handlers of the binary transfers not answered yet, by correlation.
+     */
+    private final Map<Long, ResponseHandler> binaryResponses = new HashMap<>();
+
+    /**
+     * Create a generator.
+     *
+     * @param port the port of the server
+     * @param rate the number of requests per second
+     * @param duration the number of seconds measured
+     * @param warmup the number of seconds run before measuring
+     * @param accountCount the number of accounts created
+     * @param skew the exponent of the Zipf distribution of the accounts (<code>0</code> for uniform)
+     * @param reads the fraction of requests that are reads
+     * @param connections the maximum number of connections to the server
+     * @param binaryPort the port of the binary protocol to send the transfers over, or <code>0</code> to send them
+     * over REST
+     * @throws IllegalArgumentException if a parameter is out of range
+     */
+    public LoadGenerator(int port, int rate, int duration, int warmup, int accountCount, double skew,
+                         double reads, int connections, int binaryPort) {
+        if (rate <= 0 || duration <= 0 || warmup < 0 || accountCount < 2 || skew < 0 || reads < 0 || reads > 1
+                || connections <= 0 || binaryPort < 0) {
+            throw new IllegalArgumentException("Invalid load parameters");
+        }
+
+        this.port = port;
+        this.rate = rate;
+        this.duration = duration;
+        this.warmup = warmup;
+        this.accountCount = accountCount;
+        this.skew = skew;
+        this.reads = reads;
+        this.connections = connections;
+        this.binaryPort = binaryPort;
+
+        for (Route route : Route.values()) {
+            latencies.put(route, new Histogram(MAX_LATENCY, 3));
+            errors.put(route, 0L);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator(
+                Integer.getInteger("http.port", 8080),
+                Integer.getInteger("load.rate", 1000),
+                Integer.getInteger("load.duration", 30),
+                Integer.getInteger("load.warmup", 5),
+                Integer.getInteger("load.accounts", 1000),
+                Double.parseDouble(System.getProperty("load.skew", "0")),
+                Double.parseDouble(System.getProperty("load.reads", "0.5")),
+                Integer.getInteger("load.connections", 32),
+                "binary".equals(System.getProperty("load.protocol", "http")) ? Integer.getInteger("binary.port", 0) : 0);
+
+        String report = generator.run();
+        Path file = Paths.get(System.getProperty("load.report", "target/load-report.txt"));
+
+        System.out.println(report);
+
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+
+        Files.write(file, report.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Create the accounts, run the load and report on it.
+     *
+     * @return the report
+     * @throws Exception if the server cannot be reached or the accounts cannot be created
+     */
+    public String run() throws Exception {
+        vertx = Vertx.vertx();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+
+        // A single context, so the histograms are only ever touched by one thread
+        Context context = vertx.getOrCreateContext();
+
+        try {
+            context.runOnContext(v -> {
+                client = vertx.createHttpClient(new HttpClientOptions()
+                        .setDefaultHost("localhost")
+                        .setDefaultPort(port)
+                        .setKeepAlive(true)
+                        .setMaxPoolSize(connections));
+
+                awaitServer(System.currentTimeMillis() + REQUEST_TIMEOUT)
+                        .compose(ready -> createAccounts())
+                        .compose(created -> connectBinary())
+                        .setHandler(created -> {
+                            if (created.failed()) {
+                                done.completeExceptionally(created.cause());
+                            } else {
+                                generate(done);
+                            }
+                        });
+            });
+
+            done.get();
+            return report();
+        } finally {
+            CompletableFuture<Void> closed = new CompletableFuture<>();
+            vertx.close(v -> closed.complete(null));
+            closed.get(REQUEST_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private Future<Void> awaitServer(long deadline) {
+        Future<Void> ready = Future.future();
+
+        send(HttpMethod.GET, "/accounts?limit=1", null, (status, body) -> {
+            if (status == 200) {
+                ready.complete();
+            } else if (System.currentTimeMillis() > deadline) {
+                ready.fail(new IllegalStateException("Server not available on port " + port));
+            } else {
+                vertx.setTimer(200, t -> awaitServer(deadline).setHandler(ready.completer()));
+            }
+        });
+
+        return ready;
+    }
+
+    /**
+     * Create the accounts, at most one request per connection at a time.
+     */
+    private Future<Void> createAccounts() {
+        Future<Void> created = Future.future();
+        int[] next = {0};
+        int[] pending = {0};
+
+        accounts = new String[accountCount];
+        cumulative = zipf(accountCount, skew);
+
+        Runnable[] createNext = new Runnable[1];
+        createNext[0] = () -> {
+            while (!created.isComplete() && next[0] < accountCount && pending[0] < connections) {
+                int index = next[0]++;
+                pending[0]++;
+
+                send(HttpMethod.POST, "/accounts",
+                        "{\"user\":\"load" + index + "\",\"currency\":\"EUR\",\"balance\":1000000000}",
+                        (status, body) -> {
+                            pending[0]--;
+
+                            if (created.isComplete()) {
+                                return;
+                            }
+
+                            if (status != 201) {
+                                created.fail(new IllegalStateException("Cannot create account: " + status));
+                                return;
+                            }
+
+                            accounts[index] = new JsonObject(body.toString()).getString("id");
+
+                            if (next[0] == accountCount && pending[0] == 0) {
+                                created.complete();
+                            } else {
+                                createNext[0].run();
+                            }
+                        });
+            }
+        };
+
+        createNext[0].run();
+        return created;
+    }
+
+    /**
+     * Open the connections the binary transfers are sent over (if they are not sent over REST).
+     */
+    private Future<Void> connectBinary() {
+        Future<Void> connected = Future.future();
+        int[] pending = {connections};
+
+        if (binaryPort == 0) {
+            connected.complete();
+            return connected;
+        }
+
+        sockets = new NetSocket[connections];
+
+        for (int i = 0; i < connections; i++) {
+            int index = i;
+
+            vertx.createNetClient().connect(binaryPort, "localhost", result -> {
+                if (connected.isComplete()) {
+                    return;
+                }
+
+                if (result.failed()) {
+                    connected.fail(result.cause());
+                    return;
+                }
+
+                sockets[index] = result.result();
+                sockets[index].handler(RecordParser.newFixed(4 + BinaryTransferServer.RESPONSE_SIZE, frame -> {
+                    Buffer response = frame.getBuffer(4, frame.length());
+                    ResponseHandler handler = binaryResponses.remove(BinaryTransferServer.correlation(response));
+
+                    if (handler != null) {
+                        boolean completed = BinaryTransferServer.status(response) == BinaryTransferServer.Status.COMPLETED;
+                        handler.handle(completed ? 201 : 400, response);
+                    }
+                }));
+
+                if (--pending[0] == 0) {
+                    connected.complete();
+                }
+            });
+        }
+
+        return connected;
+    }
+
+    /**
+     * Send the requests on schedule, then wait for the last responses.
+     */
+    private void generate(CompletableFuture<Void> done) {
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long measured = start + TimeUnit.SECONDS.toNanos(warmup);
+        long end = measured + TimeUnit.SECONDS.toNanos(duration);
+        long[] next = {start};
+
+        vertx.setPeriodic(1, timer -> {
+            long now = System.nanoTime();
+
+            while (next[0] <= now && next[0] < end) {
+                request(next[0], next[0] >= measured);
+                next[0] += interval;
+            }
+
+            if (next[0] >= end) {
+                vertx.cancelTimer(timer);
+                awaitResponses(System.currentTimeMillis() + REQUEST_TIMEOUT, done);
+            }
+        });
+    }
+
+    private void awaitResponses(long deadline, CompletableFuture<Void> done) {
+        if (inFlight == 0 || System.currentTimeMillis() > deadline) {
+            done.complete(null);
+        } else {
+            vertx.setTimer(10, t -> awaitResponses(deadline, done));
+        }
+    }
+
+    private void request(long scheduled, boolean measured) {
+        Route route;
+        String uri = null;
+        String body = null;
+        int source = 0;
+        int destination = 0;
+
+        if (random.nextDouble() < reads) {
+            route = random.nextBoolean() ? Route.GET_ACCOUNT : Route.GET_ACCOUNT_TRANSFERS;
+            uri = "/accounts/" + accounts[pick()];
+
+            if (route == Route.GET_ACCOUNT_TRANSFERS) {
+                uri += "/transfers?limit=" + PAGE_SIZE;
+            }
+        } else {
+            source = pick();
+
+            do {
+                destination = pick();
+            } while (destination == source);
+
+            if (binaryPort == 0) {
+                route = Route.CREATE_TRANSFER;
+                uri = "/transfers";
+                body = "{\"source-id\":\"" + accounts[source] + "\",\"dest-id\":\"" + accounts[destination]
+                        + "\",\"amount\":0.01}";
+            } else {
+                route = Route.CREATE_BINARY_TRANSFER;
+            }
+        }
+
+        inFlight++;
+
+        ResponseHandler handler = (status, response) -> {
+            inFlight--;
+
+            if (!measured) {
+                return;
+            }
+
+            long latency = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - scheduled);
+            latencies.get(route).recordValue(Math.min(latency, MAX_LATENCY));
+
+            if (status != route.expectedStatus) {
+                errors.merge(route, 1L, Long::sum);
+            }
+        };
+
+        if (route == Route.CREATE_BINARY_TRANSFER) {
+            long correlation = nextCorrelation++;
+
+            binaryResponses.put(correlation, handler);
+            sockets[(int) (correlation % sockets.length)].write(BinaryTransferServer.encodeRequest(correlation,
+                    UUID.fromString(accounts[source]), UUID.fromString(accounts[destination]), AMOUNT));
+        } else {
+            send(route == Route.CREATE_TRANSFER ? HttpMethod.POST : HttpMethod.GET, uri, body, handler);
+        }
+    }
+
+    /**
+     * Send a request; the handler gets the status code and body, or <code>0</code> and <code>null</code> if
+     * the request failed.
+     */
+    private void send(HttpMethod method, String uri, String body, ResponseHandler handler) {
+        boolean[] handled = {false};
+
+        HttpClientRequest request = client.request(method, uri, response ->
+                response.bodyHandler(buffer -> {
+                    if (!handled[0]) {
+                        handled[0] = true;
+                        handler.handle(response.statusCode(), buffer);
+                    }
+                }));
+
+        request.setTimeout(REQUEST_TIMEOUT);
+        request.exceptionHandler(e -> {
+            if (!handled[0]) {
+                handled[0] = true;
+                handler.handle(0, null);
+            }
+        });
+
+        if (body == null) {
+            request.end();
+        } else {
+            request.putHeader("content-type", "application/json").end(body);
+        }
+    }
+
+    private interface ResponseHandler {
+        void handle(int status, Buffer body);
+    }
+
+    private int pick() {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        return Math.min(index < 0 ? -index - 1 : index, cumulative.length - 1);
+    }
+
+    /**
+     * The cumulative Zipf distribution of <code>n</code> ranks with exponent <code>s</code>.
+     */
+    private static double[] zipf(int n, double s) {
+        double[] cumulative = new double[n];
+        double sum = 0;
+
+        for (int k = 0; k < n; k++) {
+            sum += 1 / Math.pow(k + 1, s);
+            cumulative[k] = sum;
+        }
+
+        for (int k = 0; k < n; k++) {
+            cumulative[k] /= sum;
+        }
+
+        return cumulative;
+    }
+
+    private String report() {
+        StringBuilder report = new StringBuilder();
+        Histogram all = new Histogram(MAX_LATENCY, 3);
+        long allErrors = 0;
+
+        report.append(String.format("Open-loop load against port %d: %d req/s for %d s after a %d s warmup, "
+                        + "%d accounts, skew %.2f, %.0f%% reads, %d connections, transfers over %s%n%n",
+                port, rate, duration, warmup, accountCount, skew, reads * 100, connections,
+                binaryPort == 0 ? "REST" : "the binary protocol on port " + binaryPort));
+        report.append(String.format("%-30s %9s %7s %9s %9s %9s %9s %9s%n",
+                "route", "count", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+
+        for (Route route : Route.values()) {
+            Histogram histogram = latencies.get(route);
+            all.add(histogram);
+            allErrors += errors.get(route);
+            line(report, route.name, histogram, errors.get(route));
+        }
+
+        line(report, "all", all, allErrors);
+
+        if (inFlight > 0) {
+            report.append(String.format("%n%d requests still unanswered%n", inFlight));
+        }
+
+        return report.toString();
+    }
+
+    private void line(StringBuilder report, String name, Histogram histogram, long errors) {
+        double seconds = duration;
+
+        report.append(String.format("%-30s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f%n",
+                name, histogram.getTotalCount(), errors, histogram.getTotalCount() / seconds,
+                millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(99)),
+                millis(histogram.getValueAtPercentile(99.9)), millis(histogram.getMaxValue())));
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+}
@@ -0,0 +1,119 @@
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+public class LockStripesTest {
+
+    private static final Currency USD = Currency.getInstance("USD");
+
+    @After
+    public void tearDown() {
+        DataStore.setLockStripes(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPowerOfTwo() {
+        new LockStripes(12);
+    }
+
+    @Test
+    public void testStripeOfAccount() {
+        LockStripes stripes = new LockStripes(16);
+        DataStore.setLockStripes(stripes);
+
+        Account account = new Account("alex", USD, BigDecimal.TEN);
+        Account fixedPoint = new Account("ben", USD, BigDecimal.TEN, Balance.Mode.FIXED_POINT);
+
+        Assert.assertSame(stripes.get(account.id), account.getLock());
+        Assert.assertEquals(stripes.indexOf(account.id), ((LockStripes.Stripe) account.getLock()).index);
+        Assert.assertNull(fixedPoint.getLock());
+    }
+
+    @Test
+    public void testIndexes() {
+        LockStripes single = new LockStripes(1);
+        LockStripes stripes = new LockStripes(8);
+        boolean[] used = new boolean[8];
+
+        for (int i = 0; i < 1000; i++) {
+            UUID id = UUID.randomUUID();
+
+            Assert.assertEquals(0, single.indexOf(id));
+            used[stripes.indexOf(id)] = true;
+        }
+
+        for (boolean stripe : used) {
+            Assert.assertTrue(stripe);
+        }
+    }
+
+    @Test
+    public void testSameStripe() {
+        DataStore.setLockStripes(new LockStripes(1));
+
+        Account source = new Account("alex", USD, BigDecimal.TEN);
+        Account destination = new Account("ben", USD, BigDecimal.ZERO);
+
+        Assert.assertTrue(new Transfer(source, destination, BigDecimal.ONE).execute());
+        Assert.assertTrue(new Transfer(source, destination, BigDecimal.ONE).apply());
+        Assert.assertEquals(0, new BigDecimal(8).compareTo(source.getBalance()));
+        Assert.assertEquals(0, new BigDecimal(2).compareTo(destination.getBalance()));
+        Assert.assertSame(source.getLock(), destination.getLock());
+        Assert.assertFalse(((LockStripes.Stripe) source.getLock()).isLocked());
+    }
+
+    @Test
+    public void testOpposingTransfersShareStripes() throws Exception {
+        DataStore.setLockStripes(new LockStripes(4));
+
+        Account[] accounts = new Account[16];
+
+        for (int i = 0; i < accounts.length; i++) {
+            accounts[i] = new Account("user" + i, USD, BigDecimal.valueOf(1000));
+        }
+
+        List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < 8; t++) {
+            SplittableRandom random = new SplittableRandom(t);
+
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    int source = random.nextInt(accounts.length);
+                    int destination = (source + 1 + random.nextInt(accounts.length - 1)) % accounts.length;
+                    Transfer transfer = new Transfer(accounts[source], accounts[destination], BigDecimal.ONE);
+
+                    // Without ownership through the lock manager, apply takes the stripes without a timeout
+                    if (i % 2 == 0) {
+                        transfer.execute();
+                    } else {
+                        transfer.apply();
+                    }
+                }
+            });
+
+            threads.add(thread);
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join(30000);
+            Assert.assertFalse(thread.isAlive());
+        }
+
+        BigDecimal total = BigDecimal.ZERO;
+
+        for (Account account : accounts) {
+            total = total.add(account.getBalance());
+        }
+
+        Assert.assertEquals(0, BigDecimal.valueOf(16000).compareTo(total));
+    }
+}
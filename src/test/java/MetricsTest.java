@@ -0,0 +1,77 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+public class MetricsTest {
+
+    @Test
+    public void testHistogram() {
+        Metrics.Histogram histogram = new Metrics.Histogram();
+
+        histogram.record(0);
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(50));
+        histogram.record(TimeUnit.MICROSECONDS.toNanos(51));
+        histogram.record(TimeUnit.SECONDS.toNanos(60));
+
+        Assert.assertEquals(4, histogram.getCount());
+    }
+
+    @Test
+    public void testScrape() {
+        Metrics.Route route = Metrics.route("GET", "/test");
+        route.record(200, TimeUnit.MICROSECONDS.toNanos(40));
+        route.record(404, TimeUnit.MILLISECONDS.toNanos(2));
+        route.record(503, TimeUnit.SECONDS.toNanos(20));
+        Metrics.gauge("test_size", "A test gauge.", () -> 42);
+
+        String text = Metrics.scrape().toString();
+        String labels = "method=\"GET\",route=\"/test\"";
+
+        Assert.assertTrue(text.contains("# TYPE moneytransfer_http_request_duration_seconds histogram\n"));
+        Assert.assertTrue(text.contains("moneytransfer_http_request_duration_seconds_bucket{" + labels + ",le=\"0.00005\"} 1\n"));
+        Assert.assertTrue(text.contains("moneytransfer_http_request_duration_seconds_bucket{" + labels + ",le=\"0.0025\"} 2\n"));
+        Assert.assertTrue(text.contains("moneytransfer_http_request_duration_seconds_bucket{" + labels + ",le=\"10\"} 2\n"));
+        Assert.assertTrue(text.contains("moneytransfer_http_request_duration_seconds_bucket{" + labels + ",le=\"+Inf\"} 3\n"));
+        Assert.assertTrue(text.contains("moneytransfer_http_request_duration_seconds_count{" + labels + "} 3\n"));
+        Assert.assertTrue(text.contains("moneytransfer_http_requests_total{" + labels + ",status=\"2xx\"} 1\n"));
+        Assert.assertTrue(text.contains("moneytransfer_http_requests_total{" + labels + ",status=\"4xx\"} 1\n"));
+        Assert.assertTrue(text.contains("moneytransfer_http_requests_total{" + labels + ",status=\"5xx\"} 1\n"));
+        Assert.assertTrue(text.contains("# TYPE moneytransfer_test_size gauge\nmoneytransfer_test_size 42\n"));
+    }
+
+    @Test
+    public void testInsufficientFunds() {
+        for (Balance.Mode mode : Balance.Mode.values()) {
+            Account source = new Account("alex", Currency.getInstance("USD"), BigDecimal.ONE, mode);
+            Account destination = new Account("ben", Currency.getInstance("USD"), BigDecimal.ZERO, mode);
+            long before = Metrics.INSUFFICIENT_FUNDS.sum();
+
+            Assert.assertFalse(new Transfer(source, destination, BigDecimal.TEN).execute());
+            Assert.assertFalse(new Transfer(source, destination, BigDecimal.TEN).apply());
+            Assert.assertEquals(before + 2, Metrics.INSUFFICIENT_FUNDS.sum());
+        }
+    }
+
+    @Test
+    public void testLockTimeout() throws Exception {
+        Account source = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN);
+        Account destination = new Account("ben", Currency.getInstance("USD"), BigDecimal.ZERO);
+        long sourceWaits = Metrics.SOURCE_LOCK_WAIT.getCount();
+        long timeouts = Metrics.DESTINATION_LOCK_TIMEOUTS.sum();
+        long insufficient = Metrics.INSUFFICIENT_FUNDS.sum();
+        Lock lock = destination.getLock();
+
+        Thread holder = new Thread(lock::lock);
+        holder.start();
+        holder.join();
+
+        Assert.assertFalse(new Transfer(source, destination, BigDecimal.ONE).execute());
+        Assert.assertEquals(sourceWaits + 1, Metrics.SOURCE_LOCK_WAIT.getCount());
+        Assert.assertEquals(timeouts + 1, Metrics.DESTINATION_LOCK_TIMEOUTS.sum());
+        Assert.assertEquals(insufficient, Metrics.INSUFFICIENT_FUNDS.sum());
+    }
+}
@@ -1,4 +1,6 @@
 import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.response.Response;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -6,7 +8,12 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
 
 import static com.jayway.restassured.RestAssured.*;
 import static org.hamcrest.Matchers.equalTo;
@@ -311,6 +318,116 @@ public class MoneyTransferIT {
                 .statusCode(204);
     }
 
+    @Test
+    public void testGetAccountTransfers(){
+        Map.Entry<String, String> pair = addTwoAccounts();
+
+        String alexID = pair.getKey();
+        String benID = pair.getValue();
+        List<String> ids = new ArrayList<>();
+
+        for (int i = 0; i < 3; i++){
+            String jsonString = given()
+                    .body("{\"source-id\":\"" + alexID + "\", \"dest-id\":\"" + benID + "\", \"amount\":2}")
+                    .request()
+                    .post("/transfers")
+                    .thenReturn().asString();
+
+            ids.add(new JsonObject(jsonString).getString("id"));
+        }
+
+        String jsonString = given()
+                .body("{\"source-id\":\"" + benID + "\", \"dest-id\":\"" + alexID + "\", \"amount\":1}")
+                .request()
+                .post("/transfers")
+                .thenReturn().asString();
+
+        ids.add(new JsonObject(jsonString).getString("id"));
+
+        JsonArray all = new JsonArray(get("/accounts/" + alexID + "/transfers").thenReturn().asString());
+        Assert.assertEquals(4, all.size());
+
+        for (int i = 0; i < all.size(); i++){
+            Assert.assertEquals(ids.get(i), all.getJsonObject(i).getString("id"));
+        }
+
+        JsonArray in = new JsonArray(get("/accounts/" + alexID + "/transfers?direction=in").thenReturn().asString());
+        Assert.assertEquals(1, in.size());
+        Assert.assertEquals(ids.get(3), in.getJsonObject(0).getString("id"));
+
+        Response page = get("/accounts/" + benID + "/transfers?direction=in&limit=2").thenReturn();
+        Assert.assertEquals(2, new JsonArray(page.asString()).size());
+        Assert.assertTrue(page.header("Link").contains("&after=" + ids.get(1) + "&direction=in"));
+
+        JsonArray rest = new JsonArray(get("/accounts/" + benID + "/transfers?direction=in&limit=2&after=" + ids.get(1))
+                .thenReturn().asString());
+        Assert.assertEquals(1, rest.size());
+        Assert.assertEquals(ids.get(2), rest.getJsonObject(0).getString("id"));
+
+        long future = System.currentTimeMillis() + 60000;
+        Assert.assertEquals(0, new JsonArray(get("/accounts/" + alexID + "/transfers?since=" + future)
+                .thenReturn().asString()).size());
+
+        // test invalid parameters and unknown account
+        get("/accounts/" + alexID + "/transfers?direction=sideways").then()
+                .assertThat()
+                .statusCode(400);
+
+        get("/accounts/" + alexID + "/transfers?limit=1&after=" + UUID.randomUUID()).then()
+                .assertThat()
+                .statusCode(400);
+
+        get("/accounts/" + UUID.randomUUID() + "/transfers").then()
+                .assertThat()
+                .statusCode(404);
+
+        delete("/accounts/" + alexID).then()
+                .assertThat()
+                .statusCode(204);
+
+        delete("/accounts/" + benID).then()
+                .assertThat()
+                .statusCode(204);
+    }
+
+    @Test
+    public void testIdempotentTransfer(){
+        Map.Entry<String, String> pair = addTwoAccounts();
+
+        String alexID = pair.getKey();
+        String benID = pair.getValue();
+        String key = UUID.randomUUID().toString();
+        String body = "{\"source-id\":\"" + alexID + "\", \"dest-id\":\"" + benID + "\", \"amount\":4}";
+
+        Response first = given().header("Idempotency-Key", key).body(body).request().post("/transfers").thenReturn();
+        Response retry = given().header("Idempotency-Key", key).body(body).request().post("/transfers").thenReturn();
+
+        Assert.assertEquals(201, first.statusCode());
+        Assert.assertEquals(201, retry.statusCode());
+        Assert.assertEquals(first.asString(), retry.asString());
+        Assert.assertEquals("true", retry.header("Idempotent-Replayed"));
+
+        get("/accounts/" + alexID).then()
+                .assertThat()
+                .body("balance", equalTo(6));
+
+        // test a key reused for a different request
+        given().header("Idempotency-Key", key)
+                .body(body.replace("4}", "5}"))
+                .request()
+                .post("/transfers").then()
+                .assertThat()
+                .statusCode(422);
+
+        delete("/accounts/" + alexID).then()
+                .assertThat()
+                .statusCode(204);
+
+        delete("/accounts/" + benID).then()
+                .assertThat()
+                .statusCode(204);
+    }
+
     @Test
     public void testGetTransfer(){
         Map.Entry<String, String> pair = addTwoAccounts();
@@ -329,6 +446,14 @@ public class MoneyTransferIT {
         jsonStringTransfer = get("/transfers/" + transferID).thenReturn().asString();
 
         Assert.assertEquals(transferID, new JsonObject(jsonStringTransfer).getString("id"));
+        Assert.assertEquals(alexID, new JsonObject(jsonStringTransfer).getString("source-id"));
+        Assert.assertEquals(benID, new JsonObject(jsonStringTransfer).getString("dest-id"));
+
+        get("/transfers/" + transferID + "?expand=accounts").then()
+                .assertThat()
+                .statusCode(200)
+                .body("source.id", equalTo(alexID))
+                .body("destination.balance", equalTo(5));
 
         delete("/accounts/" + alexID).then()
                 .assertThat()
@@ -400,4 +525,145 @@ public class MoneyTransferIT {
                 .assertThat()
                 .statusCode(400);
     }
+
+    @Test
+    public void testTransferBatch(){
+        Map.Entry<String, String> pair = addTwoAccounts();
+
+        String alexID = pair.getKey();
+        String benID = pair.getValue();
+
+        String leg = "{\"source-id\":\"" + alexID + "\", \"dest-id\":\"" + benID + "\", \"amount\":4}";
+
+        // the third leg is not covered by the source account
+        given()
+                .body("[" + leg + ", " + leg + ", " + leg + "]")
+                .request()
+                .post("/transfers/batch?mode=all-or-nothing")
+                .then()
+                .assertThat()
+                .statusCode(400)
+                .body("status", equalTo(Arrays.asList("aborted", "aborted", "failed")));
+
+        get("/accounts/" + alexID).then()
+                .assertThat()
+                .body("balance", equalTo(10));
+
+        given()
+                .body("[" + leg + ", " + leg + ", " + leg + ", {\"amount\":4}]")
+                .request()
+                .post("/transfers/batch")
+                .then()
+                .assertThat()
+                .statusCode(200)
+                .body("status", equalTo(Arrays.asList("completed", "completed", "failed", "invalid")));
+
+        get("/accounts/" + benID).then()
+                .assertThat()
+                .body("balance", equalTo(8));
+
+        // test empty batch
+        given()
+                .body("[]")
+                .request()
+                .post("/transfers/batch")
+                .then()
+                .assertThat()
+                .statusCode(400);
+
+        delete("/accounts/" + alexID).then()
+                .assertThat()
+                .statusCode(204);
+
+        delete("/accounts/" + benID).then()
+                .assertThat()
+                .statusCode(204);
+    }
+
+    @Test
+    public void testPaginateAccounts(){
+        List<String> ids = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++){
+            String jsonString = given()
+                    .body("{\"user\":\"alex\", \"currency\":\"USD\", \"balance\":" + i + "}")
+                    .request()
+                    .post("/accounts")
+                    .thenReturn().asString();
+
+            ids.add(new JsonObject(jsonString).getString("id"));
+        }
+
+        List<String> seen = new ArrayList<>();
+        String next = "/accounts?limit=2";
+
+        while (next != null){
+            Response response = get(next).thenReturn();
+            Assert.assertEquals(200, response.statusCode());
+
+            JsonArray page = new JsonArray(response.asString());
+            Assert.assertTrue(page.size() <= 2);
+
+            for (int i = 0; i < page.size(); i++){
+                seen.add(page.getJsonObject(i).getString("id"));
+            }
+
+            String link = response.header("Link");
+            next = link == null ? null : link.substring(link.indexOf('<') + 1, link.indexOf('>'));
+        }
+
+        Assert.assertTrue(seen.containsAll(ids));
+        Assert.assertEquals(new TreeSet<>(seen).size(), seen.size());
+
+        // test invalid cursor and limit
+        get("/accounts?after=thomas").then()
+                .assertThat()
+                .statusCode(400);
+
+        get("/accounts?limit=0").then()
+                .assertThat()
+                .statusCode(400);
+
+        for (String id : ids){
+            delete("/accounts/" + id).then()
+                    .assertThat()
+                    .statusCode(204);
+        }
+    }
+
+    @Test
+    public void testMetrics(){
+        get("/accounts/" + UUID.randomUUID()).then()
+                .assertThat()
+                .statusCode(404);
+
+        Response response = get("/metrics").thenReturn();
+        String metrics = response.asString();
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.contentType().startsWith("text/plain"));
+        Assert.assertTrue(metrics.contains("moneytransfer_http_requests_total{method=\"GET\",route=\"/accounts/:id\",status=\"4xx\"}"));
+        Assert.assertTrue(metrics.contains("moneytransfer_transfer_lock_wait_seconds_count{account=\"source\"}"));
+        Assert.assertTrue(metrics.contains("moneytransfer_transfer_insufficient_funds_total "));
+        Assert.assertTrue(metrics.contains("moneytransfer_event_loop_lag_seconds_count "));
+        Assert.assertTrue(metrics.contains("\nmoneytransfer_accounts "));
+        Assert.assertTrue(metrics.contains("\nmoneytransfer_transfers "));
+    }
+
+    @Test
+    public void testHotAccounts(){
+        Response response = get("/admin/hot-accounts?limit=5").thenReturn();
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.contentType().startsWith("application/json"));
+        Assert.assertTrue(response.jsonPath().getList("$").size() <= 5);
+
+        get("/admin/hot-accounts?limit=0").then()
+                .assertThat()
+                .statusCode(400);
+
+        get("/admin/hot-accounts?limit=x").then()
+                .assertThat()
+                .statusCode(400);
+    }
 }
@@ -0,0 +1,118 @@
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ReplicationTest {
+
+    private static final long EPOCH = 42;
+
+    private Vertx vertx;
+
+    private Map<UUID, Account> accounts;
+
+    private TransferLog transfers;
+
+    private ReplicationFollower follower;
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+        accounts = new ConcurrentHashMap<>();
+        transfers = new TransferLog();
+        follower = new ReplicationFollower(vertx, "localhost", 0, accounts, transfers, Balance.Mode.DECIMAL);
+    }
+
+    @After
+    public void tearDown() {
+        vertx.close();
+    }
+
+    @Test
+    public void testEncodeAndDecode() {
+        Account account = new Account("alex", Currency.getInstance("EUR"), BigDecimal.TEN);
+        List<JournalRecord> records = Arrays.asList(
+                JournalRecord.accountCreated(account),
+                JournalRecord.balanceSet(account.id, BigDecimal.ONE));
+
+        Buffer frame = ReplicationStream.encode(ReplicationStream.Kind.RECORDS, EPOCH, 7, records);
+        Buffer body = frame.getBuffer(4, frame.length());
+
+        Assert.assertEquals(frame.length() - 4, frame.getInt(0));
+        Assert.assertEquals(ReplicationStream.Kind.RECORDS, ReplicationStream.kind(body));
+        Assert.assertEquals(EPOCH, ReplicationStream.epoch(body));
+        Assert.assertEquals(7, ReplicationStream.sequence(body));
+        Assert.assertEquals(records, ReplicationStream.records(body));
+    }
+
+    @Test
+    public void testResetThenRecords() {
+        Account accountAlex = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN);
+        Account accountBen = new Account("ben", Currency.getInstance("USD"), BigDecimal.ZERO);
+        TransferRecord transfer = new TransferRecord(UUID.randomUUID(), accountAlex.id, accountBen.id,
+                BigDecimal.valueOf(4), 1, TransferStatus.COMPLETED);
+
+        receive(ReplicationStream.Kind.RESET, 3, Arrays.asList(
+                JournalRecord.accountCreated(accountAlex),
+                JournalRecord.accountCreated(accountBen)));
+        receive(ReplicationStream.Kind.RECORDS, 4, Collections.singletonList(JournalRecord.transfer(transfer)));
+        receive(ReplicationStream.Kind.HEARTBEAT, 4, Collections.emptyList());
+
+        Assert.assertEquals(4, follower.getApplied());
+        Assert.assertEquals(0, BigDecimal.valueOf(6).compareTo(accounts.get(accountAlex.id).getBalance()));
+        Assert.assertEquals(0, BigDecimal.valueOf(4).compareTo(accounts.get(accountBen.id).getBalance()));
+        Assert.assertNotNull(transfers.get(transfer.id));
+    }
+
+    @Test
+    public void testCancelledReservationAfterReset() {
+        Account accountAlex = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN);
+        JournalRecord reserved = JournalRecord.transfer(JournalRecord.Type.TRANSFER_RESERVED, UUID.randomUUID(),
+                accountAlex.id, UUID.randomUUID(), BigDecimal.valueOf(3), 1);
+        JournalReplay primary = new JournalReplay(null);
+
+        primary.accept(JournalRecord.accountCreated(accountAlex));
+        primary.accept(reserved);
+
+        receive(ReplicationStream.Kind.RESET, 2, primary.snapshot());
+        Assert.assertEquals(0, BigDecimal.valueOf(7).compareTo(accounts.get(accountAlex.id).getBalance()));
+
+        receive(ReplicationStream.Kind.RECORDS, 3, Collections.singletonList(JournalRecord.transfer(
+                JournalRecord.Type.TRANSFER_CANCELLED, reserved.getID(), reserved.getSourceID(),
+                reserved.getDestinationID(), reserved.getAmount(), reserved.getTimestamp())));
+        Assert.assertEquals(0, BigDecimal.TEN.compareTo(accounts.get(accountAlex.id).getBalance()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMissingFrame() {
+        receive(ReplicationStream.Kind.RESET, 3, Collections.emptyList());
+        receive(ReplicationStream.Kind.RECORDS, 5, Collections.singletonList(
+                JournalRecord.accountDeleted(UUID.randomUUID())));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testOtherEpoch() {
+        receive(ReplicationStream.Kind.RESET, 3, Collections.emptyList());
+        follower.receive(body(ReplicationStream.encode(ReplicationStream.Kind.RECORDS, EPOCH + 1, 4,
+                Collections.singletonList(JournalRecord.accountDeleted(UUID.randomUUID())))));
+    }
+
+    private void receive(ReplicationStream.Kind kind, long sequence, List<JournalRecord> records) {
+        follower.receive(body(ReplicationStream.encode(kind, EPOCH, sequence, records)));
+    }
+
+    private static Buffer body(Buffer frame) {
+        return frame.getBuffer(4, frame.length());
+    }
+}
@@ -0,0 +1,141 @@
+import io.vertx.core.buffer.Buffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+public class RequestParserTest {
+
+    private static final UUID SOURCE = UUID.fromString("0b9c4f3e-6d2a-4c1b-9e8f-7a6b5c4d3e2f");
+
+    private static final UUID DESTINATION = UUID.fromString("F0E1D2C3-B4A5-4968-8776-655443322110");
+
+    @Test
+    public void testTransfer() {
+        RequestParser.TransferRequest request = RequestParser.parseTransfer(Buffer.buffer(
+                " {\"source-id\" : \"" + SOURCE + "\",\n\"dest-id\":\"" + DESTINATION + "\", \"amount\": 12.50 } "));
+
+        Assert.assertEquals(SOURCE, request.getSourceID());
+        Assert.assertEquals(DESTINATION, request.getDestinationID());
+        Assert.assertEquals(new BigDecimal("12.50"), request.getAmount());
+    }
+
+    @Test
+    public void testAmounts() {
+        for (String value : Arrays.asList("0", "7", "-3", "0.001", "123456789012345678", "1234567890.123456789",
+                "1e3", "2.5E-2", "99999999999999999999")) {
+            for (String amount : Arrays.asList(value, "\"" + value + "\"")) {
+                Assert.assertEquals(new BigDecimal(value), transfer("\"amount\":" + amount).getAmount());
+            }
+        }
+    }
+
+    @Test
+    public void testUnknownAndEscapedFields() {
+        RequestParser.TransferRequest request = transfer("\"note\":{\"tags\":[1,true,null,\"x\"]},\"am\\u006funt\":5");
+
+        Assert.assertEquals(new BigDecimal("5"), request.getAmount());
+        Assert.assertEquals(DESTINATION, request.getDestinationID());
+    }
+
+    @Test
+    public void testNonCanonicalID() {
+        RequestParser.TransferRequest request = RequestParser.parseTransfer(Buffer.buffer(
+                "{\"source-id\":\"1-2-3-4-5\",\"dest-id\":\"" + DESTINATION + "\",\"amount\":1}"));
+
+        Assert.assertEquals(UUID.fromString("1-2-3-4-5"), request.getSourceID());
+    }
+
+    @Test
+    public void testInvalidTransfer() {
+        for (String body : Arrays.asList(
+                "{}",
+                "{\"source-id\":\"" + SOURCE + "\",\"dest-id\":\"" + DESTINATION + "\"}",
+                "{\"source-id\":\"nope\",\"dest-id\":\"" + DESTINATION + "\",\"amount\":1}",
+                "{\"source-id\":7,\"dest-id\":\"" + DESTINATION + "\",\"amount\":1}",
+                "{\"source-id\":\"" + SOURCE + "\",\"dest-id\":\"" + DESTINATION + "\",\"amount\":true}",
+                "{\"source-id\":\"" + SOURCE + "\",\"dest-id\":\"" + DESTINATION + "\",\"amount\":\"ten\"}",
+                "[]")) {
+            try {
+                RequestParser.parseTransfer(Buffer.buffer(body));
+                Assert.fail(body);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testMalformed() {
+        String valid = "{\"source-id\":\"" + SOURCE + "\",\"dest-id\":\"" + DESTINATION + "\",\"amount\":1}";
+
+        for (String body : Arrays.asList("", "{", valid + "}", valid + " x", "{\"amount\":01}", "{\"amount\":1.}",
+                "{\"amount\":-}", "{\"a\":tru}", "{\"a\":\"\\x\"}", "{\"a\":\"\t\"}", "{\"a\" 1}", "{\"a\":1,}",
+                repeat("[", 100) + repeat("]", 100))) {
+            try {
+                RequestParser.parseTransfer(Buffer.buffer(body));
+                Assert.fail(body);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testTransfers() {
+        String valid = "{\"source-id\":\"" + SOURCE + "\",\"dest-id\":\"" + DESTINATION + "\",\"amount\":1}";
+        List<RequestParser.TransferRequest> requests = RequestParser.parseTransfers(
+                Buffer.buffer("[" + valid + ",{\"amount\":1},42," + valid + "]"));
+
+        Assert.assertEquals(4, requests.size());
+        Assert.assertEquals(SOURCE, requests.get(0).getSourceID());
+        Assert.assertNull(requests.get(1));
+        Assert.assertNull(requests.get(2));
+        Assert.assertEquals(DESTINATION, requests.get(3).getDestinationID());
+
+        Assert.assertTrue(RequestParser.parseTransfers(Buffer.buffer(" [ ] ")).isEmpty());
+
+        for (String body : Arrays.asList(valid, "[" + valid, "[" + valid + ",]")) {
+            try {
+                RequestParser.parseTransfers(Buffer.buffer(body));
+                Assert.fail(body);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testAccount() {
+        RequestParser.AccountRequest request = RequestParser.parseAccount(Buffer.buffer(
+                "{\"user\":\"Zo\\u00eb \\\"Z\\\" \u00e5\",\"currency\":\"EUR\",\"balance\":\"100.25\",\"extra\":[]}"));
+
+        Assert.assertEquals("Zo\u00eb \"Z\" \u00e5", request.getUser());
+        Assert.assertEquals("EUR", request.getCurrency());
+        Assert.assertEquals(new BigDecimal("100.25"), request.getBalance());
+
+        request = RequestParser.parseAccount(Buffer.buffer("{\"user\":1,\"balance\":null}"));
+
+        Assert.assertNull(request.getUser());
+        Assert.assertNull(request.getCurrency());
+        Assert.assertNull(request.getBalance());
+    }
+
+    private static RequestParser.TransferRequest transfer(String fields) {
+        return RequestParser.parseTransfer(Buffer.buffer("{\"source-id\":\"" + SOURCE + "\",\"dest-id\":\""
+                + DESTINATION + "\"," + fields + "}"));
+    }
+
+    private static String repeat(String value, int count) {
+        StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; i < count; i++) {
+            builder.append(value);
+        }
+
+        return builder.toString();
+    }
+}
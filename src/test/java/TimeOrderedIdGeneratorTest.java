@@ -0,0 +1,95 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class TimeOrderedIdGeneratorTest {
+
+    @Test
+    public void testVersionAndVariant() {
+        UUID id = new TimeOrderedIdGenerator().next();
+
+        Assert.assertEquals(7, id.version());
+        Assert.assertEquals(2, id.variant());
+    }
+
+    @Test
+    public void testTimestamp() {
+        UUID id = new TimeOrderedIdGenerator(() -> 1500000000000L).next();
+
+        Assert.assertEquals(1500000000000L, TimeOrderedIdGenerator.timestamp(id));
+    }
+
+    @Test
+    public void testIncreasingInOneMillisecond() {
+        IdGenerator generator = new TimeOrderedIdGenerator(() -> 1500000000000L);
+        UUID previous = generator.next();
+
+        for (int i = 0; i < 100000; i++) {
+            UUID id = generator.next();
+
+            Assert.assertTrue(id.compareTo(previous) > 0);
+            previous = id;
+        }
+    }
+
+    @Test
+    public void testIncreasingWhenClockGoesBack() {
+        long[] now = {1500000000000L};
+        IdGenerator generator = new TimeOrderedIdGenerator(() -> now[0]);
+
+        UUID first = generator.next();
+        now[0] -= 1000;
+        UUID second = generator.next();
+
+        Assert.assertTrue(second.compareTo(first) > 0);
+        Assert.assertEquals(1500000000000L, TimeOrderedIdGenerator.timestamp(second));
+    }
+
+    @Test
+    public void testOrderedAcrossMilliseconds() {
+        long[] now = {1500000000000L};
+        IdGenerator generator = new TimeOrderedIdGenerator(() -> now[0]);
+        IdGenerator other = new TimeOrderedIdGenerator(() -> now[0]);
+
+        UUID first = generator.next();
+        now[0]++;
+
+        Assert.assertTrue(other.next().compareTo(first) > 0);
+    }
+
+    @Test
+    public void testUniqueAcrossThreads() throws Exception {
+        IdGenerator generator = new TimeOrderedIdGenerator(() -> 1500000000000L);
+        Set<UUID> ids = ConcurrentHashMap.newKeySet();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < 10000; j++) {
+                    ids.add(generator.next());
+                }
+            });
+
+            threads.add(thread);
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(80000, ids.size());
+    }
+
+    @Test
+    public void testModes() {
+        Assert.assertEquals(IdGenerator.Mode.TIME_ORDERED, IdGenerator.Mode.fromName("time-ordered"));
+        Assert.assertEquals(4, IdGenerator.create(IdGenerator.Mode.RANDOM).next().version());
+        Assert.assertEquals(7, IdGenerator.create(IdGenerator.Mode.TIME_ORDERED).next().version());
+    }
+}
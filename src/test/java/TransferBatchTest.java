@@ -0,0 +1,127 @@
+import io.vertx.core.Future;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class TransferBatchTest {
+
+    @Test
+    public void testBestEffort() {
+        AccountLockManager lockManager = new AccountLockManager();
+        Account accountAlex = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN);
+        Account accountBen = new Account("ben", Currency.getInstance("USD"), BigDecimal.ZERO);
+        Account accountCarol = new Account("carol", Currency.getInstance("USD"), BigDecimal.ZERO);
+
+        List<Transfer> transfers = Arrays.asList(
+                new Transfer(accountAlex, accountBen, BigDecimal.valueOf(6)),
+                new Transfer(accountAlex, accountCarol, BigDecimal.valueOf(6)),
+                null,
+                new Transfer(accountBen, accountCarol, BigDecimal.valueOf(2)));
+
+        List<TransferBatch.Result> results = new TransferBatch(transfers, TransferBatch.Mode.BEST_EFFORT)
+                .executeAsync(lockManager).result();
+
+        Assert.assertEquals(TransferBatch.Status.COMPLETED, results.get(0).getStatus());
+        Assert.assertEquals(TransferBatch.Status.FAILED, results.get(1).getStatus());
+        Assert.assertEquals(TransferBatch.Status.INVALID, results.get(2).getStatus());
+        Assert.assertEquals(TransferBatch.Status.COMPLETED, results.get(3).getStatus());
+
+        Assert.assertEquals(BigDecimal.valueOf(4), accountAlex.getBalance());
+        Assert.assertEquals(BigDecimal.valueOf(4), accountBen.getBalance());
+        Assert.assertEquals(BigDecimal.valueOf(2), accountCarol.getBalance());
+        Assert.assertFalse(lockManager.isLocked(accountAlex.id));
+        Assert.assertFalse(lockManager.isLocked(accountBen.id));
+        Assert.assertFalse(lockManager.isLocked(accountCarol.id));
+    }
+
+    @Test
+    public void testAllOrNothingRollsBack() {
+        AccountLockManager lockManager = new AccountLockManager();
+        Account accountAlex = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN);
+        Account accountBen = new Account("ben", Currency.getInstance("USD"), BigDecimal.ZERO);
+
+        List<Transfer> transfers = Arrays.asList(
+                new Transfer(accountAlex, accountBen, BigDecimal.valueOf(6)),
+                new Transfer(accountBen, accountAlex, BigDecimal.ONE),
+                new Transfer(accountAlex, accountBen, BigDecimal.valueOf(6)),
+                new Transfer(accountBen, accountAlex, BigDecimal.ONE));
+
+        List<TransferBatch.Result> results = new TransferBatch(transfers, TransferBatch.Mode.ALL_OR_NOTHING)
+                .executeAsync(lockManager).result();
+
+        Assert.assertEquals(TransferBatch.Status.ABORTED, results.get(0).getStatus());
+        Assert.assertEquals(TransferBatch.Status.ABORTED, results.get(1).getStatus());
+        Assert.assertEquals(TransferBatch.Status.FAILED, results.get(2).getStatus());
+        Assert.assertEquals(TransferBatch.Status.ABORTED, results.get(3).getStatus());
+
+        Assert.assertEquals(0, BigDecimal.TEN.compareTo(accountAlex.getBalance()));
+        Assert.assertEquals(0, BigDecimal.ZERO.compareTo(accountBen.getBalance()));
+        Assert.assertFalse(((ReentrantLock) accountAlex.getLock()).isLocked());
+        Assert.assertFalse(((ReentrantLock) accountBen.getLock()).isLocked());
+    }
+
+    @Test
+    public void testAllOrNothingRejectsLockFreeAccounts() {
+        AccountLockManager lockManager = new AccountLockManager();
+        Account accountAlex = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN, Balance.Mode.FIXED_POINT);
+        Account accountBen = new Account("ben", Currency.getInstance("USD"), BigDecimal.ZERO, Balance.Mode.FIXED_POINT);
+
+        Future<List<TransferBatch.Result>> results = new TransferBatch(
+                Collections.singletonList(new Transfer(accountAlex, accountBen, BigDecimal.ONE)),
+                TransferBatch.Mode.ALL_OR_NOTHING).executeAsync(lockManager);
+
+        Assert.assertTrue(results.failed());
+        Assert.assertTrue(results.cause() instanceof UnsupportedOperationException);
+        Assert.assertEquals(0, BigDecimal.TEN.compareTo(accountAlex.getBalance()));
+        Assert.assertFalse(lockManager.isLocked(accountAlex.id));
+    }
+
+    @Test
+    public void testLockFreeBatchClaimsAccounts() {
+        AccountLockManager lockManager = new AccountLockManager();
+        Account accountAlex = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN, Balance.Mode.FIXED_POINT);
+        Account accountBen = new Account("ben", Currency.getInstance("USD"), BigDecimal.ZERO, Balance.Mode.FIXED_POINT);
+
+        lockManager.acquire(accountBen.id);
+
+        Future<List<TransferBatch.Result>> results = new TransferBatch(
+                Collections.singletonList(new Transfer(accountAlex, accountBen, BigDecimal.ONE)),
+                TransferBatch.Mode.BEST_EFFORT).executeAsync(lockManager);
+
+        Assert.assertFalse(results.isComplete());
+        Assert.assertEquals(0, BigDecimal.TEN.compareTo(accountAlex.getBalance()));
+
+        lockManager.release(accountBen.id);
+
+        Assert.assertEquals(TransferBatch.Status.COMPLETED, results.result().get(0).getStatus());
+        Assert.assertEquals(0, BigDecimal.ONE.compareTo(accountBen.getBalance()));
+        Assert.assertFalse(lockManager.isLocked(accountAlex.id));
+        Assert.assertFalse(lockManager.isLocked(accountBen.id));
+    }
+
+    @Test
+    public void testAllOrNothingWithInvalidTransfer() {
+        Account accountAlex = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN);
+        Account accountBen = new Account("ben", Currency.getInstance("USD"), BigDecimal.ZERO);
+
+        List<Transfer> transfers = Arrays.asList(new Transfer(accountAlex, accountBen, BigDecimal.ONE), null);
+
+        List<TransferBatch.Result> results = new TransferBatch(transfers, TransferBatch.Mode.ALL_OR_NOTHING)
+                .executeAsync(new AccountLockManager()).result();
+
+        Assert.assertEquals(TransferBatch.Status.ABORTED, results.get(0).getStatus());
+        Assert.assertEquals(TransferBatch.Status.INVALID, results.get(1).getStatus());
+        Assert.assertEquals(BigDecimal.TEN, accountAlex.getBalance());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyBatch() {
+        new TransferBatch(Collections.emptyList(), TransferBatch.Mode.BEST_EFFORT);
+    }
+}
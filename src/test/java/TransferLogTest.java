@@ -0,0 +1,123 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+public class TransferLogTest {
+
+    @Test
+    public void testAppendAndGet() {
+        TransferLog log = new TransferLog();
+        Account accountAlex = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN);
+        Account accountBen = new Account("ben", Currency.getInstance("USD"), BigDecimal.ZERO);
+        Transfer transfer = new Transfer(accountAlex, accountBen, BigDecimal.valueOf(1.25));
+
+        TransferRecord appended = log.append(transfer, TransferStatus.COMPLETED);
+        TransferRecord record = log.get(transfer.id);
+
+        Assert.assertEquals(1, log.size());
+        Assert.assertEquals(transfer.id, appended.id);
+        Assert.assertEquals(transfer.id, record.id);
+        Assert.assertEquals(accountAlex.id, record.getSourceID());
+        Assert.assertEquals(accountBen.id, record.getDestinationID());
+        Assert.assertEquals(BigDecimal.valueOf(1.25), record.getAmount());
+        Assert.assertEquals(TransferStatus.COMPLETED, record.getStatus());
+        Assert.assertTrue(record.getTimestamp() > 0);
+    }
+
+    @Test
+    public void testGetMissingTransfer() {
+        TransferLog log = new TransferLog();
+
+        Assert.assertNull(log.get(UUID.randomUUID()));
+        Assert.assertEquals(-1, log.find(UUID.randomUUID()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAppendTwice() {
+        TransferLog log = new TransferLog();
+        Account accountAlex = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN);
+        Account accountBen = new Account("ben", Currency.getInstance("USD"), BigDecimal.ZERO);
+        Transfer transfer = new Transfer(accountAlex, accountBen, BigDecimal.ONE);
+
+        log.append(transfer, TransferStatus.COMPLETED);
+        log.append(transfer, TransferStatus.COMPLETED);
+    }
+
+    @Test
+    public void testManyTransfers() {
+        TransferLog log = new TransferLog();
+        Account accountAlex = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN);
+        Account accountBen = new Account("ben", Currency.getInstance("USD"), BigDecimal.ZERO);
+        List<UUID> ids = new ArrayList<>();
+
+        for (int i = 0; i < 20000; i++) {
+            Transfer transfer = new Transfer(accountAlex, accountBen, BigDecimal.valueOf(i + 1));
+            log.append(transfer, TransferStatus.COMPLETED);
+            ids.add(transfer.id);
+        }
+
+        Assert.assertEquals(ids.size(), log.size());
+
+        for (int i = 0; i < ids.size(); i += 997) {
+            Assert.assertEquals(i, log.find(ids.get(i)));
+            Assert.assertEquals(BigDecimal.valueOf(i + 1), log.get(ids.get(i)).getAmount());
+        }
+
+        Iterator<TransferRecord> iterator = log.iterator(19998);
+        Assert.assertEquals(ids.get(19998), iterator.next().id);
+        Assert.assertEquals(ids.get(19999), iterator.next().id);
+        Assert.assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void testAccountIterator() {
+        TransferLog log = new TransferLog();
+        UUID alexID = UUID.randomUUID();
+        UUID benID = UUID.randomUUID();
+        UUID carlID = UUID.randomUUID();
+        List<UUID> ids = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            UUID id = UUID.randomUUID();
+            ids.add(id);
+
+            if (i % 2 == 0) {
+                log.append(id, alexID, benID, BigDecimal.ONE, i, TransferStatus.COMPLETED);
+            } else {
+                log.append(id, carlID, alexID, BigDecimal.ONE, i, TransferStatus.COMPLETED);
+            }
+        }
+
+        Assert.assertEquals(ids, collect(log.iterator(alexID, null, Long.MIN_VALUE, null)));
+        Assert.assertEquals(5, collect(log.iterator(benID, null, Long.MIN_VALUE, null)).size());
+        Assert.assertEquals(5, collect(log.iterator(alexID, TransferLog.Direction.IN, Long.MIN_VALUE, null)).size());
+        Assert.assertEquals(0, collect(log.iterator(benID, TransferLog.Direction.OUT, Long.MIN_VALUE, null)).size());
+        Assert.assertEquals(ids.subList(6, 10), collect(log.iterator(alexID, null, 6, null)));
+        Assert.assertEquals(ids.subList(4, 10), collect(log.iterator(alexID, null, Long.MIN_VALUE, ids.get(3))));
+        Assert.assertEquals(Arrays.asList(ids.get(6), ids.get(8)),
+                collect(log.iterator(alexID, TransferLog.Direction.OUT, 5, ids.get(5))));
+        Assert.assertFalse(log.iterator(UUID.randomUUID(), null, Long.MIN_VALUE, null).hasNext());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAccountIteratorForeignCursor() {
+        TransferLog log = new TransferLog();
+        UUID id = UUID.randomUUID();
+        log.append(id, UUID.randomUUID(), UUID.randomUUID(), BigDecimal.ONE, 0, TransferStatus.COMPLETED);
+
+        log.iterator(UUID.randomUUID(), null, Long.MIN_VALUE, id);
+    }
+
+    private static List<UUID> collect(Iterator<TransferRecord> iterator) {
+        List<UUID> ids = new ArrayList<>();
+        iterator.forEachRemaining(record -> ids.add(record.id));
+        return ids;
+    }
+}
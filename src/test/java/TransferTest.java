@@ -1,3 +1,6 @@
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -6,6 +9,11 @@ import java.util.Currency;
 
 public class TransferTest {
 
+    @After
+    public void tearDown() {
+        DataStore.getFxRates().update(new JsonObject());
+    }
+
     @Test
     public void testGetSource() {
         Account accountAlex = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN);
@@ -35,7 +43,68 @@ public class TransferTest {
 
     @Test
     public void testExecute() {
+        Account accountAlex = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN);
+        Account accountBen = new Account("ben", Currency.getInstance("USD"), BigDecimal.ZERO);
+
+        Assert.assertTrue(new Transfer(accountAlex, accountBen, BigDecimal.ONE).execute());
+        Assert.assertEquals(BigDecimal.valueOf(9), accountAlex.getBalance());
+        Assert.assertEquals(BigDecimal.ONE, accountBen.getBalance());
+
+        Assert.assertFalse(new Transfer(accountAlex, accountBen, BigDecimal.TEN).execute());
+        Assert.assertEquals(BigDecimal.valueOf(9), accountAlex.getBalance());
+        Assert.assertEquals(BigDecimal.ONE, accountBen.getBalance());
+    }
 
+    @Test
+    public void testExecuteFixedPoint() {
+        Account accountAlex = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN, Balance.Mode.FIXED_POINT);
+        Account accountBen = new Account("ben", Currency.getInstance("USD"), BigDecimal.ZERO, Balance.Mode.FIXED_POINT);
+
+        Assert.assertTrue(new Transfer(accountAlex, accountBen, BigDecimal.valueOf(2.5)).execute());
+        Assert.assertEquals(new BigDecimal("7.50"), accountAlex.getBalance());
+        Assert.assertEquals(new BigDecimal("2.50"), accountBen.getBalance());
+
+        Assert.assertFalse(new Transfer(accountAlex, accountBen, BigDecimal.TEN).execute());
+        Assert.assertEquals(new BigDecimal("7.50"), accountAlex.getBalance());
+        Assert.assertEquals(new BigDecimal("2.50"), accountBen.getBalance());
+    }
+
+    @Test
+    public void testRevertAsync() {
+        AccountLockManager lockManager = new AccountLockManager();
+        Account accountAlex = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN);
+        Account accountBen = new Account("ben", Currency.getInstance("USD"), BigDecimal.ZERO);
+
+        Transfer transfer = new Transfer(accountAlex, accountBen, BigDecimal.valueOf(4));
+        Assert.assertTrue(transfer.executeAsync(lockManager).result());
+
+        lockManager.acquire(accountBen.id);
+        Future<Boolean> reverted = transfer.revertAsync(lockManager);
+
+        Assert.assertFalse(reverted.isComplete());
+        lockManager.release(accountBen.id);
+
+        Assert.assertTrue(reverted.result());
+        Assert.assertEquals(0, BigDecimal.TEN.compareTo(accountAlex.getBalance()));
+        Assert.assertEquals(0, BigDecimal.ZERO.compareTo(accountBen.getBalance()));
+        Assert.assertFalse(lockManager.isLocked(accountAlex.id));
+        Assert.assertFalse(lockManager.isLocked(accountBen.id));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFixedPointTooManyDecimals() {
+        Account accountAlex = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN, Balance.Mode.FIXED_POINT);
+        Account accountBen = new Account("ben", Currency.getInstance("USD"), BigDecimal.ZERO, Balance.Mode.FIXED_POINT);
+
+        new Transfer(accountAlex, accountBen, BigDecimal.valueOf(0.001));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDifferentBalanceModes() {
+        Account accountAlex = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN);
+        Account accountBen = new Account("ben", Currency.getInstance("USD"), BigDecimal.ZERO, Balance.Mode.FIXED_POINT);
+
+        new Transfer(accountAlex, accountBen, BigDecimal.ONE);
     }
 
     @Test(expected = NullPointerException.class)
@@ -82,4 +151,59 @@ public class TransferTest {
 
         new Transfer(accountAlex, accountBen, BigDecimal.ONE);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testExecuteConverted() {
+        long version = DataStore.getFxRates().update(new JsonObject().put("USD/EUR", "0.9")).getVersion();
+        Account accountAlex = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN);
+        Account accountBen = new Account("ben", Currency.getInstance("EUR"), BigDecimal.ZERO);
+
+        // 1.11 * 0.9 = 0.999, rounded down to the cent
+        Transfer transfer = new Transfer(accountAlex, accountBen, new BigDecimal("1.11"));
+        Assert.assertEquals(new BigDecimal("0.99"), transfer.getDestinationAmount());
+        Assert.assertEquals(version, transfer.getRateVersion());
+
+        Assert.assertTrue(transfer.execute());
+        Assert.assertEquals(new BigDecimal("8.89"), accountAlex.getBalance());
+        Assert.assertEquals(new BigDecimal("0.99"), accountBen.getBalance());
+
+        Assert.assertTrue(transfer.revert());
+        Assert.assertEquals(new BigDecimal("10.00"), accountAlex.getBalance());
+        Assert.assertEquals(0, BigDecimal.ZERO.compareTo(accountBen.getBalance()));
+
+        TransferRecord record = new TransferLog().append(transfer, TransferStatus.COMPLETED);
+        Assert.assertEquals(new BigDecimal("0.99"), record.getDestinationAmount());
+        Assert.assertEquals(version, record.getRateVersion());
+    }
+
+    @Test
+    public void testApplyConvertedFixedPoint() {
+        DataStore.getFxRates().update(new JsonObject().put("EUR/JPY", "161.2345"));
+        Account accountAlex = new Account("alex", Currency.getInstance("EUR"), BigDecimal.TEN, Balance.Mode.FIXED_POINT);
+        Account accountBen = new Account("ben", Currency.getInstance("JPY"), BigDecimal.ZERO, Balance.Mode.FIXED_POINT);
+
+        Transfer transfer = new Transfer(accountAlex, accountBen, new BigDecimal("2.50"));
+
+        Assert.assertTrue(transfer.apply());
+        Assert.assertEquals(new BigDecimal("7.50"), accountAlex.getBalance());
+        Assert.assertEquals(new BigDecimal("403"), accountBen.getBalance());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoExchangeRate() {
+        DataStore.getFxRates().update(new JsonObject().put("USD/EUR", "0.9"));
+        Account accountAlex = new Account("alex", Currency.getInstance("EUR"), BigDecimal.TEN);
+        Account accountBen = new Account("ben", Currency.getInstance("USD"), BigDecimal.ZERO);
+
+        new Transfer(accountAlex, accountBen, BigDecimal.ONE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConvertedToZero() {
+        DataStore.getFxRates().update(new JsonObject().put("USD/EUR", "0.9"));
+        Account accountAlex = new Account("alex", Currency.getInstance("USD"), BigDecimal.TEN);
+        Account accountBen = new Account("ben", Currency.getInstance("EUR"), BigDecimal.ZERO);
+
+        new Transfer(accountAlex, accountBen, new BigDecimal("0.01"));
+    }
+}
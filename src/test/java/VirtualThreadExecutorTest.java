@@ -0,0 +1,80 @@
+import io.vertx.core.Future;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+public class VirtualThreadExecutorTest {
+
+    private VirtualThreadExecutor executor;
+
+    @Before
+    public void setUp() {
+        try {
+            executor = new VirtualThreadExecutor();
+        } catch (UnsupportedOperationException e) {
+            Assume.assumeNoException(e);
+        }
+    }
+
+    @Test
+    public void testResult() throws Exception {
+        Assert.assertEquals("done", await(executor.execute(() -> "done")));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFailure() throws Throwable {
+        try {
+            await(executor.execute(() -> {
+                throw new IllegalStateException("failed");
+            }));
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Test
+    public void testContendedTransfers() throws Exception {
+        Account accountAlex = new Account("alex", Currency.getInstance("USD"), BigDecimal.valueOf(10000));
+        Account accountBen = new Account("ben", Currency.getInstance("USD"), BigDecimal.valueOf(10000));
+        List<Future<Boolean>> executed = new ArrayList<>();
+
+        for (int i = 0; i < 10000; i++) {
+            Transfer transfer = i % 2 == 0
+                    ? new Transfer(accountAlex, accountBen, BigDecimal.ONE)
+                    : new Transfer(accountBen, accountAlex, BigDecimal.ONE);
+
+            executed.add(executor.execute(transfer::execute));
+        }
+
+        for (Future<Boolean> future : executed) {
+            await(future);
+        }
+
+        Assert.assertEquals(0, executor.getRunning());
+        Assert.assertEquals(0, BigDecimal.valueOf(20000)
+                .compareTo(accountAlex.getBalance().add(accountBen.getBalance())));
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        CompletableFuture<T> result = new CompletableFuture<>();
+
+        future.setHandler(done -> {
+            if (done.succeeded()) {
+                result.complete(done.result());
+            } else {
+                result.completeExceptionally(done.cause());
+            }
+        });
+
+        return result.get(10, TimeUnit.SECONDS);
+    }
+}